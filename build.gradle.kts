@@ -15,7 +15,20 @@ sourceSets {
     main {
         java.srcDirs("src/generated/java")
     }
+    // JMH benchmarks, reusing test utilities like the test keystore.
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    }
+}
+
+val jmhImplementation: Configuration by configurations.getting {
+    extendsFrom(configurations.testImplementation.get())
+}
+val jmhRuntimeOnly: Configuration by configurations.getting {
+    extendsFrom(configurations.testRuntimeOnly.get())
 }
+val jmhAnnotationProcessor: Configuration by configurations.getting
 
 repositories {
     mavenCentral()
@@ -24,9 +37,189 @@ repositories {
 dependencies {
     implementation("org.glassfish.jaxb:jaxb-runtime:2.3.6")
     testImplementation("org.junit.jupiter:junit-jupiter:5.9.2")
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.36")
+    jmhAnnotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.36")
 }
 
 tasks.withType<Test> {
     useJUnitPlatform()
+    // Maximum document size of the scaling tests, e.g. for a soak run.
+    project.findProperty("scaling.maxSize")?.let { systemProperty("scaling.maxSize", it) }
+}
+
+// Runs the load generator with the test keystore, options are passed by
+// -PloadTest.args, e.g.
+// ./gradlew loadTest -PloadTest.args="--format=xades --threads=8 --rate=500 --duration=60s"
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Runs the sign and validate load test."
+    classpath = sourceSets.test.get().runtimeClasspath
+    mainClass.set("loadtest.LoadTest")
+    args((project.findProperty("loadTest.args") ?: "").toString().split(" ").filter { it.isNotBlank() })
+}
+
+val jmhResultFile = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+
+// Runs benchmarks matching the -Pjmh.include regular expression, e.g.
+// ./gradlew jmh -Pjmh.include=XAdESBenchmark -Pjmh.threads=4
+//
+// Results are written as JSON to build/reports/jmh/results.json. Allocation
+// rates are measured by the GC profiler, other profilers may be set by the
+// comma separated -Pjmh.profilers, or none by an empty value. Options of
+// the forked JVMs are appended by -Pjmh.jvmArgs.
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs JMH benchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val profilers = (project.findProperty("jmh.profilers") ?: "gc").toString()
+        .split(",")
+        .filter { it.isNotBlank() }
+    args(project.findProperty("jmh.include") ?: ".*")
+    args("-t", project.findProperty("jmh.threads") ?: "1")
+    args("-rf", "json", "-rff", jmhResultFile)
+    profilers.forEach { args("-prof", it) }
+    project.findProperty("jmh.jvmArgs")?.let { args("-jvmArgsAppend", it) }
+    doFirst {
+        jmhResultFile.parentFile.mkdirs()
+    }
+}
+
+// Dumps classes loaded by warming up the signers into an AppCDS archive, so
+// JVMs started with -XX:SharedArchiveFile=build/cds/xades-demo.jsa map them
+// instead of loading. The archive is valid for the jmh classpath and JDK it
+// was created with, e.g. for the ColdStartBenchmark.
+val appCdsArchiveFile = layout.buildDirectory.file("cds/xades-demo.jsa").get().asFile
+
+tasks.register<JavaExec>("appCdsArchive") {
+    group = "build"
+    description = "Creates the AppCDS archive of the signer classes."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("benchmark.ColdStart")
+    jvmArgs("-XX:ArchiveClassesAtExit=$appCdsArchiveFile")
+    outputs.file(appCdsArchiveFile)
+    doFirst {
+        appCdsArchiveFile.parentFile.mkdirs()
+    }
+}
+
+// Compares results of the last jmh run with the committed baseline and fails
+// if throughput drops, or allocations per operation rise, more than the
+// tolerance (-Pjmh.tolerance, -Pjmh.allocationTolerance, fractions). Only
+// benchmarks matching -Pjmh.check are compared, and all of them have to be in
+// the results, e.g.
+// ./gradlew jmh jmhCheck -Pjmh.include='(XAdES|XMLDSig)Benchmark'
+val jmhBaselineFile = layout.projectDirectory.file("src/jmh/baseline.json").asFile
+
+tasks.register("jmhCheck") {
+    group = "verification"
+    description = "Compares JMH results with the baseline."
+    mustRunAfter("jmh")
+    doLast {
+        if (!jmhBaselineFile.exists()) {
+            throw GradleException("Baseline $jmhBaselineFile does not exist, record it by the jmhBaseline task.")
+        }
+        if (!jmhResultFile.exists()) {
+            throw GradleException("Results $jmhResultFile do not exist, run the jmh task first.")
+        }
+        val included = Regex((project.findProperty("jmh.check") ?: """benchmark\.(XAdES|XMLDSig)Benchmark\..*""").toString())
+        val tolerance = (project.findProperty("jmh.tolerance") ?: "0.1").toString().toDouble()
+        val allocationTolerance = (project.findProperty("jmh.allocationTolerance") ?: "0.1").toString().toDouble()
+
+        val baseline = readJmhResults(jmhBaselineFile).filterKeys { included.matches(it.substringBefore(" ")) }
+        val current = readJmhResults(jmhResultFile)
+        if (baseline.isEmpty()) {
+            throw GradleException("No benchmark of the baseline matches $included.")
+        }
+        val regressions = mutableListOf<String>()
+        val missing = mutableListOf<String>()
+        val row = "%-80s %14s %14s %8s %12s %12s %8s  %s"
+        logger.lifecycle(row.format("Benchmark", "Baseline", "Current", "Change", "Base B/op", "Curr. B/op", "Change", ""))
+        baseline.toSortedMap().forEach { (key, base) ->
+            val result = current[key]
+            if (result == null) {
+                logger.lifecycle(row.format(key, base.score.format(), "-", "-", base.allocation.format(), "-", "-", "MISSING"))
+                missing += key
+                return@forEach
+            }
+            // Lower is better for time modes (avgt, sample, ss), higher for throughput.
+            val scoreChange = (result.score - base.score) / base.score
+            val scoreRegressed = if (base.mode == "thrpt") scoreChange < -tolerance else scoreChange > tolerance
+            val allocationChange = if (base.allocation > 0 && result.allocation >= 0) (result.allocation - base.allocation) / base.allocation else null
+            val allocationRegressed = allocationChange != null && allocationChange > allocationTolerance
+            val status = when {
+                scoreRegressed && allocationRegressed -> "REGRESSION (score, allocations)"
+                scoreRegressed -> "REGRESSION (score)"
+                allocationRegressed -> "REGRESSION (allocations)"
+                else -> "ok"
+            }
+            if (status != "ok") regressions += key
+            logger.lifecycle(row.format(
+                key,
+                "${base.score.format()} ${base.unit}",
+                "${result.score.format()} ${result.unit}",
+                scoreChange.percent(),
+                base.allocation.format(),
+                result.allocation.format(),
+                allocationChange?.percent() ?: "-",
+                status
+            ))
+        }
+        if (missing.isNotEmpty()) {
+            throw GradleException("Benchmarks missing from the results: ${missing.joinToString()}")
+        }
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Benchmarks regressed: ${regressions.joinToString()}")
+        }
+    }
+}
+
+// Records results of the last jmh run as the new baseline. Baselines are
+// only comparable when recorded on the machine the check runs on.
+tasks.register("jmhBaseline") {
+    group = "verification"
+    description = "Stores the last JMH results as the baseline."
+    mustRunAfter("jmh")
+    doLast {
+        if (!jmhResultFile.exists()) {
+            throw GradleException("Results $jmhResultFile do not exist, run the jmh task first.")
+        }
+        jmhResultFile.copyTo(jmhBaselineFile, overwrite = true)
+        logger.lifecycle("Baseline stored to $jmhBaselineFile")
+    }
 }
 
+data class JmhResult(val mode: String, val score: Double, val unit: String, val allocation: Double)
+
+/**
+ * Reads JMH JSON results keyed by benchmark name, parameters and threads.
+ * Allocation is the normalized allocation rate of the GC profiler in bytes
+ * per operation, or -1 if it was not measured.
+ */
+fun readJmhResults(file: File): Map<String, JmhResult> {
+    @Suppress("UNCHECKED_CAST")
+    val results = groovy.json.JsonSlurper().parse(file) as List<Map<String, Any?>>
+    return results.associate { result ->
+        val params = (result["params"] as Map<*, *>?)?.entries
+            ?.sortedBy { it.key.toString() }
+            ?.joinToString(",") { "${it.key}=${it.value}" }
+            ?: ""
+        val key = "${result["benchmark"]} [$params] t=${result["threads"]}"
+        val primaryMetric = result["primaryMetric"] as Map<*, *>
+        // JMH before 1.37 prefixes secondary metrics of profilers with "·".
+        val secondaryMetrics = (result["secondaryMetrics"] as Map<*, *>?).orEmpty()
+            .mapKeys { it.key.toString().removePrefix("·") }
+        val allocation = (secondaryMetrics["gc.alloc.rate.norm"] as Map<*, *>?)?.get("score") as Number?
+        key to JmhResult(
+            result["mode"].toString(),
+            (primaryMetric["score"] as Number).toDouble(),
+            primaryMetric["scoreUnit"].toString(),
+            allocation?.toDouble() ?: -1.0
+        )
+    }
+}
+
+fun Double.format(): String = if (this < 0) "-" else "%.2f".format(this)
+
+fun Double.percent(): String = "%+.1f%%".format(this * 100)
@@ -0,0 +1,33 @@
+package benchmark;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import static utils.DocumentFactory.createDocumentToSign;
+
+/**
+ * Documents to sign of a given size, the someElement text is padded to make
+ * up the size.
+ */
+final class BenchmarkDocuments {
+
+    private static final String NAMESPACE = "https://github.com/vkuzel/XAdES-Demo";
+    private static final String FILLER = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ";
+
+    private BenchmarkDocuments() {
+    }
+
+    static Document documentToSign(int sizeKb) {
+        Document document = createDocumentToSign();
+        Node someElement = document.getElementsByTagNameNS(NAMESPACE, "someElement").item(0);
+        someElement.setTextContent(FILLER.repeat(sizeKb * 1024 / FILLER.length() + 1).substring(0, sizeKb * 1024));
+        return document;
+    }
+
+    /**
+     * Signing modifies the document, so every signature gets a fresh copy.
+     */
+    static Document copy(Document document) {
+        return (Document) document.cloneNode(true);
+    }
+}
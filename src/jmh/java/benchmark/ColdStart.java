@@ -0,0 +1,25 @@
+package benchmark;
+
+import xades.XAdESSigner;
+import xmldsig.XMLDSigSigner;
+
+import java.lang.management.ManagementFactory;
+
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Warms up both signers and prints the time since the JVM start. The
+ * appCdsArchive task runs it to archive the classes loaded on the way.
+ */
+public final class ColdStart {
+
+    private ColdStart() {
+    }
+
+    public static void main(String[] args) {
+        new XAdESSigner(getCertificate(), getPrivateKey()).warmUp();
+        new XMLDSigSigner(getCertificate(), getPrivateKey()).warmUp();
+        System.out.printf("Signers warmed up %d ms after the JVM start%n", ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+}
@@ -0,0 +1,52 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner;
+
+import java.util.concurrent.TimeUnit;
+
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Time to the first XAdES signature in a fresh JVM, i.e. including class
+ * loading and initialization of JAXB, the XML signature provider, etc.
+ * <p>
+ * Every fork measures a single operation. Compare runs with and without the
+ * AppCDS archive of the appCdsArchive task, e.g.:
+ * <pre>
+ * ./gradlew appCdsArchive
+ * ./gradlew jmh -Pjmh.include=ColdStartBenchmark -Pjmh.profilers= -Pjmh.jvmArgs=-XX:SharedArchiveFile=build/cds/xades-demo.jsa
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class ColdStartBenchmark {
+
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        // Documents to sign of the other benchmarks are built by JAXB, this
+        // one is not to keep JAXB cold.
+        document = LargeDocumentGenerator.ofSize(1024).toDocument();
+    }
+
+    @Benchmark
+    public Document firstSignature() {
+        return new XAdESSigner(getCertificate(), getPrivateKey()).signEnveloped(document);
+    }
+
+    @Benchmark
+    public Document firstSignatureAfterWarmUp() {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey());
+        signer.warmUp();
+        return signer.signEnveloped(document);
+    }
+}
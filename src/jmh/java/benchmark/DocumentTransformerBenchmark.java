@@ -0,0 +1,65 @@
+package benchmark;
+
+import document.DocumentTransformer;
+import https.github_com.vkuzel.xades_demo.SingableDocumentType;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.bind.JAXBElement;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.BenchmarkDocuments.documentToSign;
+
+/**
+ * Conversions between DOM documents, bytes and JAXB elements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentTransformerBenchmark {
+
+    @Param({"1", "64", "1024"})
+    public int sizeKb;
+
+    private Document document;
+    private byte[] content;
+    private JAXBElement<SingableDocumentType> jaxbElement;
+
+    @Setup
+    public void setUp() {
+        document = documentToSign(sizeKb);
+        content = DocumentTransformer.toBytes(document);
+        jaxbElement = DocumentTransformer.fromDocument(document, SingableDocumentType.class);
+    }
+
+    @Benchmark
+    public byte[] toBytes() {
+        return DocumentTransformer.toBytes(document);
+    }
+
+    @Benchmark
+    public Document fromBytes() {
+        return DocumentTransformer.fromBytes(content);
+    }
+
+    @Benchmark
+    public Document parse() throws IOException, SAXException {
+        return DocumentTransformer.parse(new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    public Document toDocument() {
+        return DocumentTransformer.toDocument(jaxbElement);
+    }
+
+    @Benchmark
+    public JAXBElement<SingableDocumentType> fromDocument() {
+        return DocumentTransformer.fromDocument(document, SingableDocumentType.class);
+    }
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import c14n.Canonicalizer;
+import c14n.Canonicalizer.Algorithm;
+import c14n.ParallelDigester;
+import c14n.ReferenceDigester;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of digesting a wide document, whose document element has many
+ * sections, by the {@link ParallelDigester} with the number of threads of its
+ * pool. Parallelism 0 canonicalizes on the benchmark thread by the
+ * {@link Canonicalizer}, as the signers and validators do without the
+ * parallel digester.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ParallelDigesterBenchmark {
+
+    private static final List<String> SHA256 = List.of("SHA-256");
+    private static final List<String> SHA256_URI = List.of(XAdESSigner.SHA256_DIGEST_ALGORITHM);
+
+    @Param({"16", "128"})
+    public int sizeMb;
+
+    @Param({"0", "1", "2", "4", "8"})
+    public int parallelism;
+
+    private Document document;
+    private ForkJoinPool pool;
+    private ParallelDigester digester;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Flat sections make the document wide.
+        document = LargeDocumentGenerator.ofSize(sizeMb * 1024L * 1024).withShape(32, 8, 1).toDocument();
+        if (parallelism > 0) {
+            pool = new ForkJoinPool(parallelism);
+            digester = new ParallelDigester(pool, 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public List<ReferenceDigester.Digest> digest() {
+        if (digester != null) return digester.digest(document, null, Algorithm.C14N_10, SHA256);
+        return ReferenceDigester.digestEnveloped(document, Canonicalizer.ALGORITHM, SHA256_URI);
+    }
+}
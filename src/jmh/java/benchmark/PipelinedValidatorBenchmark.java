@@ -0,0 +1,57 @@
+package benchmark;
+
+import document.ValidationTimes;
+import org.openjdk.jmh.annotations.*;
+import utils.LargeDocumentGenerator;
+import xades.PipelinedValidator;
+import xades.XAdESSigner;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.util.concurrent.TimeUnit;
+
+import static document.DocumentTransformer.toBytes;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Latency of validating large documents from bytes by the XAdESValidator,
+ * which parses the DOM and then canonicalizes and digests it on one thread,
+ * and by the PipelinedValidator, whose stages overlap on three threads. The
+ * pipeline pays off with at least three cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class PipelinedValidatorBenchmark {
+
+    @Param({"16", "128", "512"})
+    public int sizeMb;
+
+    @Param({"DOM", "PIPELINED"})
+    public String validation;
+
+    private XAdESValidator validator;
+    private PipelinedValidator pipelinedValidator;
+    private byte[] signedContent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        validator = new XAdESValidator(XAdESValidator.Options.defaults().withVerificationPath(VerificationPath.GENERIC));
+        pipelinedValidator = new PipelinedValidator(validator);
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        signedContent = toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(sizeMb * 1024L * 1024).toDocument()));
+    }
+
+    @Benchmark
+    public ValidationTimes validateBytes() throws XAdESValidationException {
+        return validation.equals("PIPELINED") ? pipelinedValidator.validate(signedContent) : validator.validate(signedContent);
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import xades.XAdESProfileSigner;
+import xades.XAdESSigner;
+import xades.XAdESSigner.PropertiesBinding;
+
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.BenchmarkDocuments.copy;
+import static benchmark.BenchmarkDocuments.documentToSign;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Signing the same XAdES profile by the generic JSR 105 signer and by the
+ * profile signer. Run with the GC profiler, the default of the jmh task,
+ * gc.alloc.rate.norm tells bytes allocated per signature; subtract the
+ * {@link #copyOnly()} of the document every signature gets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileSignerBenchmark {
+
+    @Param({"1", "64", "1024"})
+    public int sizeKb;
+
+    private XAdESSigner genericSigner;
+    private XAdESProfileSigner profileSigner;
+    private Document unsignedDocument;
+
+    @Setup
+    public void setUp() {
+        genericSigner = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA512_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        profileSigner = new XAdESProfileSigner(getCertificate(), getPrivateKey());
+        unsignedDocument = documentToSign(sizeKb);
+    }
+
+    @Benchmark
+    public Document copyOnly() {
+        return BenchmarkDocuments.copy(unsignedDocument);
+    }
+
+    @Benchmark
+    public Document genericSign() {
+        return genericSigner.signEnveloped(copy(unsignedDocument));
+    }
+
+    @Benchmark
+    public Document profileSign() {
+        return profileSigner.signEnveloped(copy(unsignedDocument));
+    }
+}
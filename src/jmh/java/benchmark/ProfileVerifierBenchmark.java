@@ -0,0 +1,57 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import xades.XAdESSigner;
+import xades.XAdESValidator;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.BenchmarkDocuments.copy;
+import static benchmark.BenchmarkDocuments.documentToSign;
+import static document.DocumentTransformer.toBytes;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Validation of signatures of the XAdESSigner profile by the generic JSR 105
+ * path and by the profile fast path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileVerifierBenchmark {
+
+    @Param({"1", "64", "1024"})
+    public int sizeKb;
+
+    @Param({"GENERIC", "PROFILE"})
+    public VerificationPath path;
+
+    private XAdESValidator validator;
+    private Document signedDocument;
+    private byte[] signedContent;
+
+    @Setup
+    public void setUp() {
+        validator = new XAdESValidator(XAdESValidator.Options.defaults().withVerificationPath(path));
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey());
+        signedDocument = signer.signEnveloped(copy(documentToSign(sizeKb)));
+        signedContent = toBytes(signedDocument);
+    }
+
+    @Benchmark
+    public void validate() throws XAdESValidationException {
+        validator.validate(signedDocument);
+    }
+
+    @Benchmark
+    public void validateBytes() throws XAdESValidationException {
+        validator.validate(signedContent);
+    }
+}
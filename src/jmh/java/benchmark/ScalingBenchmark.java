@@ -0,0 +1,63 @@
+package benchmark;
+
+import document.ValidationTimes;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner;
+import xades.XAdESValidator;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.BenchmarkDocuments.copy;
+import static document.DocumentTransformer.toBytes;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * XAdES signing and validation of generated documents, by their size and
+ * shape.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScalingBenchmark {
+
+    @Param({"16", "1024", "16384"})
+    public int sizeKb;
+
+    @Param({"1", "8"})
+    public int depth;
+
+    @Param({"0", "0.5"})
+    public double namespaceDensity;
+
+    private final XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey());
+    private final XAdESValidator validator = new XAdESValidator();
+
+    private Document unsignedDocument;
+    private byte[] signedContent;
+
+    @Setup
+    public void setUp() {
+        LargeDocumentGenerator generator = LargeDocumentGenerator.ofSize(sizeKb * 1024L)
+                .withShape(32, 8, depth)
+                .withMix(namespaceDensity, 0.2);
+        unsignedDocument = generator.toDocument();
+        signedContent = toBytes(signer.signEnveloped(copy(unsignedDocument)));
+    }
+
+    @Benchmark
+    public Document sign() {
+        return signer.signEnveloped(copy(unsignedDocument));
+    }
+
+    @Benchmark
+    public ValidationTimes validateBytes() throws XAdESValidationException {
+        return validator.validate(signedContent);
+    }
+}
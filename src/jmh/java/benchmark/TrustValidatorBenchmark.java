@@ -0,0 +1,55 @@
+package benchmark;
+
+import certificate.CertificateCache;
+import certificate.TrustValidator;
+import certificate.TrustValidator.TrustValidationException;
+import certificate.TrustValidator.TrustedPath;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static utils.KeyFactory.*;
+
+/**
+ * Compares a cold path validation (index lookup, CertPath construction and
+ * PKIX validation) with a warm one served from the caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrustValidatorBenchmark {
+
+    private final X509Certificate signer = getChainCertificate(SIGNER_ALIAS);
+    private final List<X509Certificate> intermediates = List.of(getChainCertificate(INTERMEDIATE_CA_ALIAS));
+    private final TrustValidator trustValidator = new TrustValidator(List.of(getChainCertificate(ROOT_CA_ALIAS)));
+
+    private CertificateCache.Entry entry;
+
+    @Setup
+    public void setUp() throws CertificateException {
+        entry = new CertificateCache().get(signer);
+    }
+
+    @Benchmark
+    public TrustedPath cold() throws TrustValidationException {
+        trustValidator.clear();
+        return trustValidator.validate(signer, intermediates);
+    }
+
+    @Benchmark
+    public TrustedPath warmPathCache() throws TrustValidationException {
+        return trustValidator.validate(signer, intermediates);
+    }
+
+    @Benchmark
+    public CertificateCache.Entry warmCertificateEntry() throws TrustValidationException {
+        trustValidator.validate(entry, intermediates);
+        return entry;
+    }
+}
@@ -0,0 +1,68 @@
+package benchmark;
+
+import document.ValidationTimes;
+import org.openjdk.jmh.annotations.*;
+import org.w3c.dom.Document;
+import xades.XAdESSigner;
+import xades.XAdESValidator;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.util.concurrent.TimeUnit;
+
+import static benchmark.BenchmarkDocuments.copy;
+import static benchmark.BenchmarkDocuments.documentToSign;
+import static document.DocumentTransformer.toBytes;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Signing and validation of XAdES documents. The state is per thread, DOM
+ * documents are not thread-safe, so the benchmarks scale with the -t option.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XAdESBenchmark {
+
+    private static final String ALGORITHM_NAMESPACE = "http://www.w3.org/2001/04/xmldsig-more#";
+
+    @Param({"1", "64", "1024"})
+    public int sizeKb;
+
+    @Param({"rsa-sha256", "rsa-sha512"})
+    public String algorithm;
+
+    private final XAdESValidator validator = new XAdESValidator();
+
+    private XAdESSigner signer;
+    private Document unsignedDocument;
+    private Document signedDocument;
+    private byte[] signedContent;
+
+    @Setup
+    public void setUp() {
+        signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(ALGORITHM_NAMESPACE + algorithm));
+        unsignedDocument = documentToSign(sizeKb);
+        signedDocument = signer.signEnveloped(copy(unsignedDocument));
+        signedContent = toBytes(signedDocument);
+    }
+
+    @Benchmark
+    public Document sign() {
+        return signer.signEnveloped(copy(unsignedDocument));
+    }
+
+    @Benchmark
+    public void validate() throws XAdESValidationException {
+        validator.validate(signedDocument);
+    }
+
+    @Benchmark
+    public ValidationTimes validateBytes() throws XAdESValidationException {
+        return validator.validate(signedContent);
+    }
+}
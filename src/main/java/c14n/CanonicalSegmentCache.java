@@ -0,0 +1,261 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
+import org.w3c.dom.events.MutationEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the canonical form of a document re-signed after small edits.
+ * The canonical octets of each child of the document element are kept by
+ * the child node, and DOM mutation events drop the segments of the children
+ * whose subtrees change. When the document is digested again, the untouched
+ * children are not canonicalized, their cached octets are digested.
+ * <p>
+ * A digest covers all the octets, so it cannot be combined from digests of
+ * the segments. Instead, states of the message digests are saved every
+ * 256 KB of the canonical form, and digesting resumes from the last state
+ * before the first changed child. So re-signing canonicalizes just the
+ * edited children and digests the document from the edit on.
+ * <p>
+ * The cache takes about the size of the canonical document. Renaming nodes
+ * by {@code setPrefix} or {@code renameNode} is not reported by the DOM
+ * Level 2 mutation events, call {@link #invalidate()} after such edits. Like
+ * the DOM, the cache is not thread-safe.
+ */
+public final class CanonicalSegmentCache {
+
+    private static final String USER_DATA_KEY = CanonicalSegmentCache.class.getName();
+    private static final String[] MUTATION_EVENTS = {"DOMNodeInserted", "DOMNodeRemoved", "DOMCharacterDataModified", "DOMAttrModified"};
+    private static final int CHECKPOINT_BYTES = 256 * 1024;
+
+    private final Document document;
+    private final Map<Algorithm, Segments> segments = new EnumMap<>(Algorithm.class);
+    private long canonicalizedBytes;
+
+    private CanonicalSegmentCache(Document document) {
+        this.document = document;
+    }
+
+    /**
+     * Attaches a cache to the document, the signers digest the document by
+     * it from then on.
+     *
+     * @return the cache, the one attached already if there is one.
+     * @throws IllegalArgumentException if the DOM does not support mutation
+     *                                  events.
+     */
+    public static CanonicalSegmentCache attach(Document document) {
+        CanonicalSegmentCache cache = of(document);
+        if (cache != null) return cache;
+        if (!(document instanceof EventTarget eventTarget)) {
+            throw new IllegalArgumentException("Document does not support mutation events!");
+        }
+        cache = new CanonicalSegmentCache(document);
+        EventListener listener = cache::mutated;
+        for (String type : MUTATION_EVENTS) {
+            eventTarget.addEventListener(type, listener, false);
+        }
+        document.setUserData(USER_DATA_KEY, cache, null);
+        return cache;
+    }
+
+    /**
+     * @return the cache attached to the document, or null.
+     */
+    public static CanonicalSegmentCache of(Document document) {
+        return (CanonicalSegmentCache) document.getUserData(USER_DATA_KEY);
+    }
+
+    /**
+     * Drops all the cached segments.
+     */
+    public void invalidate() {
+        segments.clear();
+    }
+
+    /**
+     * @return number of canonical octets canonicalized by the last digest,
+     * the others were cached.
+     */
+    public long canonicalizedBytes() {
+        return canonicalizedBytes;
+    }
+
+    /**
+     * Digests the whole document by each of the digest algorithms, like
+     * {@link Canonicalizer#canonicalize(Document, Node, Canonicalizer.Sink)}
+     * streamed into the digests would.
+     *
+     * @param jcaAlgorithms JCA names of the digest algorithms.
+     * @return digests in the order of the algorithms.
+     */
+    public List<ReferenceDigester.Digest> digest(Algorithm algorithm, List<String> jcaAlgorithms) {
+        Canonicalizer canonicalizer = ReferenceDigester.canonicalizer(algorithm);
+        Segments cached = segments.computeIfAbsent(algorithm, key -> new Segments());
+        canonicalizedBytes = 0;
+        if (cached.head == null) cached.head = canonicalize(sink -> canonicalizer.canonicalizeHead(document, null, sink));
+
+        List<Node> children = new ArrayList<>();
+        Element documentElement = document.getDocumentElement();
+        for (Node child = documentElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+            children.add(child);
+        }
+        int unchanged = 0;
+        while (unchanged < children.size() && unchanged < cached.order.size()
+                && children.get(unchanged) == cached.order.get(unchanged)
+                && cached.octets.containsKey(children.get(unchanged))) {
+            unchanged++;
+        }
+
+        // The order and octets are shared by the states of all the digest
+        // algorithms, so states after the first change are dropped for all.
+        for (List<Checkpoint> saved : cached.checkpoints.values()) {
+            while (!saved.isEmpty() && saved.get(saved.size() - 1).children() > unchanged) {
+                saved.remove(saved.size() - 1);
+            }
+        }
+        // Resumes from the last saved state before the first change.
+        List<Checkpoint> checkpoints = cached.checkpoints.computeIfAbsent(List.copyOf(jcaAlgorithms), key -> new ArrayList<>());
+        MessageDigest[] messageDigests;
+        int from;
+        long bytes;
+        if (checkpoints.isEmpty()) {
+            messageDigests = new MessageDigest[jcaAlgorithms.size()];
+            for (int i = 0; i < messageDigests.length; i++) {
+                messageDigests[i] = messageDigest(jcaAlgorithms.get(i));
+            }
+            update(messageDigests, cached.head);
+            from = 0;
+            bytes = cached.head.length;
+        } else {
+            Checkpoint checkpoint = checkpoints.get(checkpoints.size() - 1);
+            messageDigests = copy(checkpoint.messageDigests());
+            from = checkpoint.children();
+            bytes = checkpoint.bytes();
+        }
+
+        Map<Node, byte[]> octets = new IdentityHashMap<>();
+        long checkpointBytes = bytes;
+        for (int i = 0; i < children.size(); i++) {
+            Node child = children.get(i);
+            byte[] segment = cached.octets.get(child);
+            if (segment == null) {
+                Node end = child.getNextSibling();
+                segment = canonicalize(sink -> canonicalizer.canonicalizeChildren(child, end, null, sink));
+            }
+            octets.put(child, segment);
+            if (i < from) continue;
+            update(messageDigests, segment);
+            bytes += segment.length;
+            if (bytes - checkpointBytes >= CHECKPOINT_BYTES) {
+                checkpoints.add(new Checkpoint(i + 1, bytes, copy(messageDigests)));
+                checkpointBytes = bytes;
+            }
+        }
+        cached.order = children;
+        cached.octets = octets;
+
+        byte[] tail = canonicalize(sink -> canonicalizer.canonicalizeTail(document, null, sink));
+        update(messageDigests, tail);
+        bytes += tail.length;
+        ReferenceDigester.Digest[] digests = new ReferenceDigester.Digest[messageDigests.length];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = new ReferenceDigester.Digest(messageDigests[i].digest(), bytes);
+        }
+        return List.of(digests);
+    }
+
+    /**
+     * Drops the segment of the child of the document element the mutation
+     * is in. Mutations of the document element itself and around it change
+     * the head, and the namespaces the children inherit, so they drop all.
+     */
+    private void mutated(Event event) {
+        if (segments.isEmpty()) return;
+        Node target = (Node) event.getTarget();
+        Element documentElement = document.getDocumentElement();
+        Node child = target;
+        while (child != null && child.getParentNode() != documentElement) {
+            child = child.getParentNode();
+        }
+        if (child == null || target == documentElement) {
+            invalidate();
+            return;
+        }
+        for (Segments cached : segments.values()) {
+            cached.octets.remove(child);
+        }
+    }
+
+    private byte[] canonicalize(Part part) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        part.canonicalize(out::write);
+        canonicalizedBytes += out.size();
+        return out.toByteArray();
+    }
+
+    private static void update(MessageDigest[] messageDigests, byte[] octets) {
+        for (MessageDigest messageDigest : messageDigests) {
+            messageDigest.update(octets);
+        }
+    }
+
+    private static MessageDigest[] copy(MessageDigest[] messageDigests) {
+        MessageDigest[] copies = new MessageDigest[messageDigests.length];
+        try {
+            for (int i = 0; i < copies.length; i++) {
+                copies[i] = (MessageDigest) messageDigests[i].clone();
+            }
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+        return copies;
+    }
+
+    private static MessageDigest messageDigest(String jcaAlgorithm) {
+        try {
+            return MessageDigest.getInstance(jcaAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private interface Part {
+        void canonicalize(Canonicalizer.Sink sink);
+    }
+
+    /**
+     * @param children number of children of the document element digested.
+     * @param bytes    number of canonical octets digested.
+     */
+    private record Checkpoint(int children, long bytes, MessageDigest[] messageDigests) {
+    }
+
+    /**
+     * Segments of one canonicalization algorithm.
+     */
+    private static class Segments {
+
+        private byte[] head;
+        // Children of the document element as they were last digested.
+        private List<Node> order = List.of();
+        private Map<Node, byte[]> octets = new IdentityHashMap<>();
+        // Saved states by the digest algorithms.
+        private final Map<List<String>, List<Checkpoint>> checkpoints = new HashMap<>();
+    }
+}
@@ -0,0 +1,127 @@
+package c14n;
+
+/**
+ * Escapes and encodes the canonical form as UTF-8 into a reused buffer,
+ * which is drained to a {@link Canonicalizer.Sink} whenever it fills up.
+ * Shared by the canonicalizers of DOM nodes and of parsed events.
+ */
+final class CanonicalWriter {
+
+    private static final int BUFFER_SIZE = 8192;
+    // The longest UTF-8 sequence or character reference.
+    private static final int MAX_ENCODED_CHAR = 5;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private Canonicalizer.Sink sink;
+
+    void start(Canonicalizer.Sink sink) {
+        this.sink = sink;
+        position = 0;
+    }
+
+    void processingInstruction(String target, String data) {
+        write("<?");
+        write(target);
+        if (data != null && !data.isEmpty()) {
+            write(' ');
+            unescaped(data);
+        }
+        write("?>");
+    }
+
+    void comment(String data) {
+        write("<!--");
+        unescaped(data);
+        write("-->");
+    }
+
+    private void unescaped(String data) {
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '\r') {
+                write("&#xD;");
+            } else {
+                i = writeChar(data, i, c);
+            }
+        }
+    }
+
+    void text(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> write("&amp;");
+                case '<' -> write("&lt;");
+                case '>' -> write("&gt;");
+                case '\r' -> write("&#xD;");
+                default -> i = writeChar(text, i, c);
+            }
+        }
+    }
+
+    void attributeValue(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&' -> write("&amp;");
+                case '<' -> write("&lt;");
+                case '"' -> write("&quot;");
+                case '\t' -> write("&#x9;");
+                case '\n' -> write("&#xA;");
+                case '\r' -> write("&#xD;");
+                default -> i = writeChar(value, i, c);
+            }
+        }
+    }
+
+    void write(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            i = writeChar(string, i, string.charAt(i));
+        }
+    }
+
+    /**
+     * Encodes the character as UTF-8, a surrogate pair together with the
+     * following character.
+     *
+     * @return index of the last character encoded.
+     */
+    private int writeChar(String string, int index, char c) {
+        if (position > BUFFER_SIZE - MAX_ENCODED_CHAR) drain();
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xc0 | c >> 6);
+            buffer[position++] = (byte) (0x80 | c & 0x3f);
+        } else if (Character.isHighSurrogate(c) && index + 1 < string.length()
+                && Character.isLowSurrogate(string.charAt(index + 1))) {
+            int codePoint = Character.toCodePoint(c, string.charAt(index + 1));
+            buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+            buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+            buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+            buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            return index + 1;
+        } else {
+            buffer[position++] = (byte) (0xe0 | c >> 12);
+            buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+            buffer[position++] = (byte) (0x80 | c & 0x3f);
+        }
+        return index;
+    }
+
+    void write(char c) {
+        if (position == BUFFER_SIZE) drain();
+        buffer[position++] = (byte) c;
+    }
+
+    private void drain() {
+        sink.write(buffer, 0, position);
+        position = 0;
+    }
+
+    void flush() {
+        if (position > 0) drain();
+        sink = null;
+    }
+}
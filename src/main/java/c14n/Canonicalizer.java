@@ -0,0 +1,619 @@
+package c14n;
+
+import org.w3c.dom.*;
+
+import java.util.Arrays;
+
+/**
+ * Canonical XML 1.0 (http://www.w3.org/TR/2001/REC-xml-c14n-20010315),
+ * Canonical XML 1.1 (http://www.w3.org/TR/2008/REC-xml-c14n11-20080502) and
+ * Exclusive XML Canonicalization (http://www.w3.org/TR/2002/REC-xml-exc-c14n-20020718),
+ * with or without comments, of DOM nodes written as UTF-8 to a {@link Sink}.
+ * <p>
+ * It writes the octets the JSR 105 implementation digests for references
+ * canonicalized by the algorithm: of a whole document, optionally without
+ * an excluded subtree like the enveloped signature, or of an element
+ * subtree together with the namespaces and xml:* attributes it inherits.
+ * Like the JSR 105 implementation, namespaces are taken from the xmlns
+ * attributes present in the DOM, ancestors of a subtree also bind the
+ * prefixes of their names.
+ * <p>
+ * An instance reuses its buffers, so canonicalization does not allocate,
+ * and it is not thread-safe.
+ */
+public final class Canonicalizer {
+
+    public static final String ALGORITHM = "http://www.w3.org/TR/2001/REC-xml-c14n-20010315";
+
+    private static final String XMLNS_NAMESPACE = "http://www.w3.org/2000/xmlns/";
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+    private final Algorithm algorithm;
+    private final CanonicalWriter writer = new CanonicalWriter();
+    // The element whose subtree is canonicalized, or null for a document.
+    private Element apexElement;
+
+    // Namespace declarations rendered on the output ancestors of the current
+    // element, the default namespace has the empty prefix.
+    private String[] prefixes = new String[16];
+    private String[] uris = new String[16];
+    private int namespaces;
+
+    // Namespace declarations of the current start tag.
+    private String[] declaredPrefixes = new String[16];
+    private String[] declaredUris = new String[16];
+    // Attributes of the current start tag.
+    private Attr[] attributes = new Attr[16];
+
+    public Canonicalizer() {
+        this(Algorithm.C14N_10);
+    }
+
+    public Canonicalizer(Algorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    public Algorithm algorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Canonicalizes the whole document.
+     *
+     * @param excluded subtree left out, e.g. the signature removed by the
+     *                 enveloped signature transform, or null.
+     */
+    public void canonicalize(Document document, Node excluded, Sink sink) {
+        start(sink, null);
+        document(document, excluded, true, true);
+        flush();
+    }
+
+    /**
+     * Canonicalizes the whole document up to the start tag of the document
+     * element, which is included. Together with the children of the document
+     * element, see {@link #canonicalizeChildren(Node, Node, Node, Sink)}, and
+     * with {@link #canonicalizeTail(Document, Node, Sink)} it makes up the
+     * canonical document, so the parts can be canonicalized separately.
+     *
+     * @param excluded subtree left out, or null.
+     */
+    public void canonicalizeHead(Document document, Node excluded, Sink sink) {
+        start(sink, null);
+        document(document, excluded, true, false);
+        flush();
+    }
+
+    /**
+     * Canonicalizes the whole document from the end tag of the document
+     * element, see {@link #canonicalizeHead(Document, Node, Sink)}.
+     */
+    public void canonicalizeTail(Document document, Node excluded, Sink sink) {
+        start(sink, null);
+        document(document, excluded, false, true);
+        flush();
+    }
+
+    /**
+     * Canonicalizes a range of siblings as a part of the whole document,
+     * e.g. ranges of children of the document element canonicalized in
+     * parallel. Unlike the apex of a subtree, the siblings inherit nothing,
+     * just the namespaces their ancestors rendered are not rendered again.
+     * That is defined by the ancestors alone for the inclusive
+     * canonicalization, the exclusive one is not supported.
+     *
+     * @param end      the sibling following the range, or null.
+     * @param excluded subtree left out, or null.
+     */
+    public void canonicalizeChildren(Node first, Node end, Node excluded, Sink sink) {
+        if (algorithm.exclusive) {
+            throw new CanonicalizationException("Ranges of siblings of " + algorithm.uri + " are not supported");
+        }
+        start(sink, null);
+        renderAncestors(first.getParentNode());
+        for (Node child = first; child != end; child = child.getNextSibling()) {
+            if (child != excluded) node(child, excluded);
+        }
+        flush();
+    }
+
+    private void document(Document document, Node excluded, boolean head, boolean tail) {
+        boolean afterDocumentElement = false;
+        for (Node child = document.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child == excluded) continue;
+            if (child instanceof Element element) {
+                if (head && tail) {
+                    element(element, excluded);
+                } else if (head) {
+                    startTag(element);
+                } else {
+                    endTag(element);
+                }
+                afterDocumentElement = true;
+            } else if ((afterDocumentElement ? tail : head)
+                    && (child instanceof ProcessingInstruction || child instanceof Comment && algorithm.comments)) {
+                // Nodes around the document element are separated by line
+                // feeds.
+                if (afterDocumentElement) writer.write('\n');
+                node(child, excluded);
+                if (!afterDocumentElement) writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Canonicalizes the subtree of the element, e.g. one referenced by its
+     * Id.
+     */
+    public void canonicalize(Element element, Sink sink) {
+        canonicalize(element, null, sink);
+    }
+
+    /**
+     * Canonicalizes the subtree of the element.
+     *
+     * @param excluded subtree left out, e.g. the signature removed by the
+     *                 enveloped signature transform, or null.
+     */
+    public void canonicalize(Element element, Node excluded, Sink sink) {
+        start(sink, element);
+        element(element, excluded);
+        flush();
+    }
+
+    /**
+     * Canonicalizes just the start tag of the element, as the apex of its
+     * subtree. For content whose canonical form is known without the DOM,
+     * e.g. from a template.
+     */
+    public void canonicalizeStartTag(Element element, Sink sink) {
+        start(sink, element);
+        startTag(element);
+        flush();
+    }
+
+    private void start(Sink sink, Element apexElement) {
+        writer.start(sink);
+        this.apexElement = apexElement;
+        namespaces = 0;
+    }
+
+    private void element(Element element, Node excluded) {
+        int renderedNamespaces = namespaces;
+        startTag(element);
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child != excluded) node(child, excluded);
+        }
+        endTag(element);
+        namespaces = renderedNamespaces;
+    }
+
+    private void endTag(Element element) {
+        writer.write("</");
+        writer.write(element.getTagName());
+        writer.write('>');
+    }
+
+    private void node(Node node, Node excluded) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE -> element((Element) node, excluded);
+            case Node.TEXT_NODE, Node.CDATA_SECTION_NODE -> writer.text(node.getNodeValue());
+            case Node.PROCESSING_INSTRUCTION_NODE -> processingInstruction((ProcessingInstruction) node);
+            case Node.COMMENT_NODE -> {
+                if (algorithm.comments) comment((Comment) node);
+            }
+            case Node.ENTITY_REFERENCE_NODE -> {
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child != excluded) node(child, excluded);
+                }
+            }
+            default -> {
+                // Document types are not output.
+            }
+        }
+    }
+
+    private void startTag(Element element) {
+        writer.write('<');
+        writer.write(element.getTagName());
+
+        boolean apex = element == apexElement;
+        int declarations = 0;
+        int count = 0;
+        // Xerces creates the attribute map of an element on the first access.
+        NamedNodeMap attributeMap = element.hasAttributes() ? element.getAttributes() : null;
+        for (int i = 0; attributeMap != null && i < attributeMap.getLength(); i++) {
+            Attr attribute = (Attr) attributeMap.item(i);
+            if (isNamespaceDeclaration(attribute)) {
+                requireAbsolute(element, attribute);
+                if (!algorithm.exclusive && isRendered(prefix(attribute), attribute.getValue())) {
+                    declarations = declare(declarations, prefix(attribute), attribute.getValue());
+                }
+            } else {
+                count = add(count, attribute);
+            }
+        }
+        if (algorithm.exclusive) {
+            declarations = declareUtilizedNamespaces(element, count);
+        } else if (apex) {
+            declarations = declareInheritedNamespaces(element, declarations);
+            count = inheritXmlAttributes(element, count);
+        }
+
+        sortNamespaceDeclarations(declarations);
+        sortAttributes(count);
+        for (int i = 0; i < declarations; i++) {
+            String prefix = declaredPrefixes[i];
+            render(prefix, declaredUris[i]);
+            writer.write(prefix.isEmpty() ? " xmlns" : " xmlns:");
+            writer.write(prefix);
+            writer.write("=\"");
+            writer.attributeValue(declaredUris[i]);
+            writer.write('"');
+        }
+        for (int i = 0; i < count; i++) {
+            Attr attribute = attributes[i];
+            writer.write(' ');
+            writer.write(attribute.getName());
+            writer.write("=\"");
+            writer.attributeValue(attribute.getValue());
+            writer.write('"');
+        }
+        writer.write('>');
+    }
+
+    /**
+     * The apex inherits namespaces in scope from its ancestors that are not
+     * output. The innermost binding of a prefix is in scope, the prefix of
+     * an ancestor's name binds its namespace.
+     */
+    private int declareInheritedNamespaces(Element element, int declarations) {
+        int own = declarations;
+        for (Node ancestor = element.getParentNode(); ancestor instanceof Element parent; ancestor = ancestor.getParentNode()) {
+            if (parent.getNamespaceURI() != null) {
+                declarations = inherit(element, declarations, nameBinding(parent), parent.getNamespaceURI());
+            }
+            if (!parent.hasAttributes()) continue;
+            NamedNodeMap parentAttributes = parent.getAttributes();
+            for (int i = 0; i < parentAttributes.getLength(); i++) {
+                Attr attribute = (Attr) parentAttributes.item(i);
+                if (isNamespaceDeclaration(attribute)) {
+                    declarations = inherit(element, declarations, prefix(attribute), attribute.getValue());
+                }
+            }
+        }
+        // Bindings the apex declares itself are marked by a null URI.
+        int rendered = own;
+        for (int i = own; i < declarations; i++) {
+            if (declaredUris[i] != null && isRendered(declaredPrefixes[i], declaredUris[i])) {
+                declaredPrefixes[rendered] = declaredPrefixes[i];
+                declaredUris[rendered] = declaredUris[i];
+                rendered++;
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Renders the declarations the output ancestors of a range of siblings
+     * rendered, outermost first, as their start tags did.
+     */
+    private void renderAncestors(Node parent) {
+        if (!(parent instanceof Element element)) return;
+        renderAncestors(element.getParentNode());
+        if (!element.hasAttributes()) return;
+        NamedNodeMap attributeMap = element.getAttributes();
+        for (int i = 0; i < attributeMap.getLength(); i++) {
+            Attr attribute = (Attr) attributeMap.item(i);
+            if (isNamespaceDeclaration(attribute) && isRendered(prefix(attribute), attribute.getValue())) {
+                render(prefix(attribute), attribute.getValue());
+            }
+        }
+    }
+
+    /**
+     * Inner ancestors are visited first, so a prefix already declared is
+     * bound by an inner ancestor or by the element.
+     */
+    private int inherit(Element element, int declarations, String prefix, String uri) {
+        if (indexOfDeclaration(prefix, 0, declarations) >= 0) return declarations;
+        return declare(declarations, prefix, isDeclared(element, prefix) ? null : uri);
+    }
+
+    /**
+     * Of xml:* attributes declared by several ancestors, the JSR 105
+     * implementation inherits the outermost one, so does this. Canonical XML
+     * 1.1 does not inherit xml:id and joins xml:base values, the latter is
+     * not implemented.
+     */
+    private int inheritXmlAttributes(Element element, int count) {
+        int own = count;
+        for (Node ancestor = element.getParentNode(); ancestor instanceof Element parent; ancestor = ancestor.getParentNode()) {
+            if (!parent.hasAttributes()) continue;
+            NamedNodeMap parentAttributes = parent.getAttributes();
+            for (int i = 0; i < parentAttributes.getLength(); i++) {
+                Attr attribute = (Attr) parentAttributes.item(i);
+                if (!XML_NAMESPACE.equals(attribute.getNamespaceURI())) continue;
+                String localName = attribute.getLocalName();
+                if (algorithm.version11 && "id".equals(localName)) continue;
+                if (algorithm.version11 && "base".equals(localName)) {
+                    throw new CanonicalizationException("Inherited xml:base of " + algorithm.uri + " is not supported");
+                }
+                if (element.getAttributeNodeNS(XML_NAMESPACE, localName) != null) continue;
+                int inherited = indexOfXmlAttribute(localName, own, count);
+                if (inherited < 0) {
+                    count = add(count, attribute);
+                } else {
+                    attributes[inherited] = attribute;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Exclusive canonicalization renders just the namespaces of the element
+     * and attribute names, if the output ancestors did not render them.
+     */
+    private int declareUtilizedNamespaces(Element element, int count) {
+        int declarations = declareUtilizedNamespace(element, nameBinding(element), 0);
+        for (int i = 0; i < count; i++) {
+            String prefix = attributes[i].getPrefix();
+            if (prefix != null && !prefix.equals("xml") && !prefix.equals("xmlns")) {
+                declarations = declareUtilizedNamespace(element, prefix, declarations);
+            }
+        }
+        return declarations;
+    }
+
+    private int declareUtilizedNamespace(Element element, String prefix, int declarations) {
+        if (indexOfDeclaration(prefix, 0, declarations) >= 0) return declarations;
+        String uri = namespaceInScope(element, prefix);
+        if (uri == null || !isRendered(prefix, uri)) return declarations;
+        return declare(declarations, prefix, uri);
+    }
+
+    /**
+     * The namespace bound to the prefix by the xmlns attributes of the
+     * element or its ancestors, or null.
+     */
+    private String namespaceInScope(Element element, String prefix) {
+        boolean aboveApex = false;
+        for (Node node = element; node instanceof Element ancestor; node = node.getParentNode()) {
+            if (aboveApex && ancestor.getNamespaceURI() != null && nameBinding(ancestor).equals(prefix)) {
+                return ancestor.getNamespaceURI();
+            }
+            Attr declaration = ancestor.hasAttributes()
+                    ? ancestor.getAttributeNodeNS(XMLNS_NAMESPACE, prefix.isEmpty() ? "xmlns" : prefix)
+                    : null;
+            if (declaration != null) return declaration.getValue();
+            if (ancestor == apexElement) aboveApex = true;
+        }
+        return null;
+    }
+
+    private static boolean isDeclared(Element element, String prefix) {
+        return element.hasAttributes() && element.getAttributeNodeNS(XMLNS_NAMESPACE, prefix.isEmpty() ? "xmlns" : prefix) != null;
+    }
+
+    private static String nameBinding(Element element) {
+        String prefix = element.getPrefix();
+        return prefix == null ? "" : prefix;
+    }
+
+    private static boolean isNamespaceDeclaration(Attr attribute) {
+        return XMLNS_NAMESPACE.equals(attribute.getNamespaceURI());
+    }
+
+    private static String prefix(Attr declaration) {
+        return "xmlns".equals(declaration.getName()) ? "" : declaration.getLocalName();
+    }
+
+    /**
+     * Canonical XML does not define the form of relative namespace URIs,
+     * the JSR 105 implementation refuses them.
+     */
+    private static void requireAbsolute(Element element, Attr declaration) {
+        String uri = declaration.getValue();
+        if (!uri.isEmpty() && uri.indexOf(':') <= 0) {
+            throw new CanonicalizationException("Relative namespace " + uri + " of " + element.getTagName());
+        }
+    }
+
+    /**
+     * A declaration is rendered unless the output ancestors rendered the
+     * same one. The empty default namespace only undeclares a rendered one,
+     * and prefixes cannot be undeclared in XML 1.0.
+     */
+    private boolean isRendered(String prefix, String uri) {
+        // The xml prefix is bound implicitly.
+        if (prefix.equals("xml")) return false;
+        String rendered = renderedNamespace(prefix);
+        if (prefix.isEmpty()) {
+            return !uri.equals(rendered == null ? "" : rendered);
+        }
+        return !uri.isEmpty() && !uri.equals(rendered);
+    }
+
+    private String renderedNamespace(String prefix) {
+        for (int i = namespaces - 1; i >= 0; i--) {
+            if (prefixes[i].equals(prefix)) return uris[i];
+        }
+        return null;
+    }
+
+    private int indexOfDeclaration(String prefix, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (declaredPrefixes[i].equals(prefix)) return i;
+        }
+        return -1;
+    }
+
+    private int indexOfXmlAttribute(String localName, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (XML_NAMESPACE.equals(attributes[i].getNamespaceURI())
+                    && attributes[i].getLocalName().equals(localName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void render(String prefix, String uri) {
+        if (namespaces == prefixes.length) {
+            prefixes = Arrays.copyOf(prefixes, namespaces * 2);
+            uris = Arrays.copyOf(uris, namespaces * 2);
+        }
+        prefixes[namespaces] = prefix;
+        uris[namespaces] = uri;
+        namespaces++;
+    }
+
+    private int declare(int declarations, String prefix, String uri) {
+        if (declarations == declaredPrefixes.length) {
+            declaredPrefixes = Arrays.copyOf(declaredPrefixes, declarations * 2);
+            declaredUris = Arrays.copyOf(declaredUris, declarations * 2);
+        }
+        declaredPrefixes[declarations] = prefix;
+        declaredUris[declarations] = uri;
+        return declarations + 1;
+    }
+
+    private int add(int count, Attr attribute) {
+        if (count == attributes.length) {
+            attributes = Arrays.copyOf(attributes, count * 2);
+        }
+        attributes[count] = attribute;
+        return count + 1;
+    }
+
+    // Elements have a few attributes, the insertion sort does not allocate.
+    private void sortNamespaceDeclarations(int declarations) {
+        for (int i = 1; i < declarations; i++) {
+            String prefix = declaredPrefixes[i];
+            String uri = declaredUris[i];
+            int j = i - 1;
+            while (j >= 0 && declaredPrefixes[j].compareTo(prefix) > 0) {
+                declaredPrefixes[j + 1] = declaredPrefixes[j];
+                declaredUris[j + 1] = declaredUris[j];
+                j--;
+            }
+            declaredPrefixes[j + 1] = prefix;
+            declaredUris[j + 1] = uri;
+        }
+    }
+
+    private void sortAttributes(int count) {
+        for (int i = 1; i < count; i++) {
+            Attr attribute = attributes[i];
+            int j = i - 1;
+            while (j >= 0 && compareAttributes(attributes[j], attribute) > 0) {
+                attributes[j + 1] = attributes[j];
+                j--;
+            }
+            attributes[j + 1] = attribute;
+        }
+    }
+
+    /**
+     * Attributes are ordered by their namespace URI, attributes without
+     * namespace first, and then by their local name.
+     */
+    private static int compareAttributes(Attr a, Attr b) {
+        String namespaceA = a.getNamespaceURI() == null ? "" : a.getNamespaceURI();
+        String namespaceB = b.getNamespaceURI() == null ? "" : b.getNamespaceURI();
+        int comparison = namespaceA.compareTo(namespaceB);
+        if (comparison != 0) return comparison;
+        return localName(a).compareTo(localName(b));
+    }
+
+    private static String localName(Attr attribute) {
+        return attribute.getLocalName() != null ? attribute.getLocalName() : attribute.getName();
+    }
+
+    private void processingInstruction(ProcessingInstruction processingInstruction) {
+        writer.processingInstruction(processingInstruction.getTarget(), processingInstruction.getData());
+    }
+
+    private void comment(Comment comment) {
+        writer.comment(comment.getData());
+    }
+
+    private void flush() {
+        writer.flush();
+        apexElement = null;
+    }
+
+    /**
+     * Receives canonical octets, e.g. {@code MessageDigest::update}. The
+     * array is reused once the method returns.
+     */
+    @FunctionalInterface
+    public interface Sink {
+        void write(byte[] bytes, int offset, int length);
+    }
+
+    public enum Algorithm {
+        C14N_10(ALGORITHM, false, false, false),
+        C14N_10_WITH_COMMENTS(ALGORITHM + "#WithComments", true, false, false),
+        C14N_11("http://www.w3.org/2006/12/xml-c14n11", false, true, false),
+        C14N_11_WITH_COMMENTS("http://www.w3.org/2006/12/xml-c14n11#WithComments", true, true, false),
+        EXCLUSIVE("http://www.w3.org/2001/10/xml-exc-c14n#", false, false, true),
+        EXCLUSIVE_WITH_COMMENTS("http://www.w3.org/2001/10/xml-exc-c14n#WithComments", true, false, true);
+
+        private final String uri;
+        private final boolean comments;
+        private final boolean version11;
+        private final boolean exclusive;
+
+        Algorithm(String uri, boolean comments, boolean version11, boolean exclusive) {
+            this.uri = uri;
+            this.comments = comments;
+            this.version11 = version11;
+            this.exclusive = exclusive;
+        }
+
+        public String uri() {
+            return uri;
+        }
+
+        public boolean isExclusive() {
+            return exclusive;
+        }
+
+        /**
+         * The same algorithm without comments. Same-document references
+         * select nodes without comments, so they are not output even by an
+         * algorithm with comments.
+         */
+        public Algorithm withoutComments() {
+            return switch (this) {
+                case C14N_10_WITH_COMMENTS -> C14N_10;
+                case C14N_11_WITH_COMMENTS -> C14N_11;
+                case EXCLUSIVE_WITH_COMMENTS -> EXCLUSIVE;
+                default -> this;
+            };
+        }
+
+        /**
+         * @return the algorithm of the URI, or null if it is not known.
+         */
+        public static Algorithm of(String uri) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.uri.equals(uri)) return algorithm;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The canonical form of the node is not defined, or this implementation
+     * does not support it.
+     */
+    public static class CanonicalizationException extends RuntimeException {
+
+        public CanonicalizationException(String message) {
+            super(message);
+        }
+    }
+}
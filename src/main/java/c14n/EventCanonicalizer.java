@@ -0,0 +1,243 @@
+package c14n;
+
+import java.util.Arrays;
+
+/**
+ * Canonical XML 1.0 or 1.1 of a whole document without comments, from the
+ * events of a streaming parser, written as UTF-8 to a
+ * {@link Canonicalizer.Sink}. That is the form the reference with empty URI
+ * digests, the two versions differ only for document subsets. The caller
+ * leaves out events of an excluded subtree, like the enveloped signature.
+ * <p>
+ * Namespace declarations are taken from the events, as the
+ * {@link Canonicalizer} takes them from the xmlns attributes of the parsed
+ * DOM, so both write the same octets. The start tag is written when the
+ * next event comes, after its namespaces and attributes were added.
+ * <p>
+ * An instance reuses its buffers and it is not thread-safe.
+ */
+public final class EventCanonicalizer {
+
+    private final CanonicalWriter writer = new CanonicalWriter();
+    private int depth;
+    private boolean afterDocumentElement;
+
+    // Namespace declarations rendered on the ancestors of the current
+    // element, the default namespace has the empty prefix.
+    private String[] prefixes = new String[16];
+    private String[] uris = new String[16];
+    private int namespaces;
+    // Names of the open elements and the count of the rendered
+    // declarations before each of them.
+    private String[] openElements = new String[16];
+    private int[] renderedNamespaces = new int[16];
+
+    // The start tag not written yet.
+    private String qualifiedName;
+    private String[] declaredPrefixes = new String[16];
+    private String[] declaredUris = new String[16];
+    private int declarations;
+    private String[] attributeNames = new String[16];
+    private String[] attributeNamespaces = new String[16];
+    private String[] attributeLocalNames = new String[16];
+    private String[] attributeValues = new String[16];
+    private int attributes;
+
+    public void startDocument(Canonicalizer.Sink sink) {
+        writer.start(sink);
+        depth = 0;
+        afterDocumentElement = false;
+        namespaces = 0;
+        qualifiedName = null;
+    }
+
+    public void startElement(String qualifiedName) {
+        writeStartTag();
+        if (depth == openElements.length) {
+            openElements = Arrays.copyOf(openElements, depth * 2);
+            renderedNamespaces = Arrays.copyOf(renderedNamespaces, depth * 2);
+        }
+        openElements[depth] = qualifiedName;
+        renderedNamespaces[depth++] = namespaces;
+        this.qualifiedName = qualifiedName;
+        declarations = 0;
+        attributes = 0;
+    }
+
+    /**
+     * Adds a namespace declaration to the current start tag.
+     *
+     * @param prefix the prefix, empty for the default namespace.
+     * @param uri    the namespace, empty to undeclare the default namespace.
+     */
+    public void namespace(String prefix, String uri) {
+        // Canonical XML does not define the form of relative namespace URIs,
+        // the JSR 105 implementation refuses them.
+        if (!uri.isEmpty() && uri.indexOf(':') <= 0) {
+            throw new Canonicalizer.CanonicalizationException("Relative namespace " + uri + " of " + qualifiedName);
+        }
+        if (!isRendered(prefix, uri)) return;
+        if (declarations == declaredPrefixes.length) {
+            declaredPrefixes = Arrays.copyOf(declaredPrefixes, declarations * 2);
+            declaredUris = Arrays.copyOf(declaredUris, declarations * 2);
+        }
+        declaredPrefixes[declarations] = prefix;
+        declaredUris[declarations] = uri;
+        declarations++;
+    }
+
+    /**
+     * Adds an attribute to the current start tag.
+     *
+     * @param namespace the namespace, null or empty for none.
+     */
+    public void attribute(String qualifiedName, String namespace, String localName, String value) {
+        if (attributes == attributeNames.length) {
+            int length = attributes * 2;
+            attributeNames = Arrays.copyOf(attributeNames, length);
+            attributeNamespaces = Arrays.copyOf(attributeNamespaces, length);
+            attributeLocalNames = Arrays.copyOf(attributeLocalNames, length);
+            attributeValues = Arrays.copyOf(attributeValues, length);
+        }
+        attributeNames[attributes] = qualifiedName;
+        attributeNamespaces[attributes] = namespace == null ? "" : namespace;
+        attributeLocalNames[attributes] = localName;
+        attributeValues[attributes] = value;
+        attributes++;
+    }
+
+    public void endElement() {
+        writeStartTag();
+        depth--;
+        writer.write("</");
+        writer.write(openElements[depth]);
+        writer.write('>');
+        openElements[depth] = null;
+        namespaces = renderedNamespaces[depth];
+        if (depth == 0) afterDocumentElement = true;
+    }
+
+    /**
+     * Text, including CDATA sections. Text outside the document element is
+     * whitespace, it is not output.
+     */
+    public void characters(String text) {
+        writeStartTag();
+        if (depth > 0) writer.text(text);
+    }
+
+    public void processingInstruction(String target, String data) {
+        writeStartTag();
+        // Nodes around the document element are separated by line feeds.
+        if (depth == 0 && afterDocumentElement) writer.write('\n');
+        writer.processingInstruction(target, data);
+        if (depth == 0 && !afterDocumentElement) writer.write('\n');
+    }
+
+    public void endDocument() {
+        writer.flush();
+    }
+
+    private void writeStartTag() {
+        if (qualifiedName == null) return;
+        writer.write('<');
+        writer.write(qualifiedName);
+        sortNamespaceDeclarations();
+        sortAttributes();
+        for (int i = 0; i < declarations; i++) {
+            String prefix = declaredPrefixes[i];
+            render(prefix, declaredUris[i]);
+            writer.write(prefix.isEmpty() ? " xmlns" : " xmlns:");
+            writer.write(prefix);
+            writer.write("=\"");
+            writer.attributeValue(declaredUris[i]);
+            writer.write('"');
+        }
+        for (int i = 0; i < attributes; i++) {
+            writer.write(' ');
+            writer.write(attributeNames[i]);
+            writer.write("=\"");
+            writer.attributeValue(attributeValues[i]);
+            writer.write('"');
+        }
+        writer.write('>');
+        qualifiedName = null;
+    }
+
+    /**
+     * A declaration is rendered unless the ancestors rendered the same one.
+     * The empty default namespace only undeclares a rendered one.
+     */
+    private boolean isRendered(String prefix, String uri) {
+        // The xml prefix is bound implicitly.
+        if (prefix.equals("xml")) return false;
+        String rendered = null;
+        for (int i = namespaces - 1; i >= 0; i--) {
+            if (prefixes[i].equals(prefix)) {
+                rendered = uris[i];
+                break;
+            }
+        }
+        if (prefix.isEmpty()) {
+            return !uri.equals(rendered == null ? "" : rendered);
+        }
+        return !uri.isEmpty() && !uri.equals(rendered);
+    }
+
+    private void render(String prefix, String uri) {
+        if (namespaces == prefixes.length) {
+            prefixes = Arrays.copyOf(prefixes, namespaces * 2);
+            uris = Arrays.copyOf(uris, namespaces * 2);
+        }
+        prefixes[namespaces] = prefix;
+        uris[namespaces] = uri;
+        namespaces++;
+    }
+
+    // Elements have a few attributes, the insertion sort does not allocate.
+    private void sortNamespaceDeclarations() {
+        for (int i = 1; i < declarations; i++) {
+            String prefix = declaredPrefixes[i];
+            String uri = declaredUris[i];
+            int j = i - 1;
+            while (j >= 0 && declaredPrefixes[j].compareTo(prefix) > 0) {
+                declaredPrefixes[j + 1] = declaredPrefixes[j];
+                declaredUris[j + 1] = declaredUris[j];
+                j--;
+            }
+            declaredPrefixes[j + 1] = prefix;
+            declaredUris[j + 1] = uri;
+        }
+    }
+
+    /**
+     * Attributes are ordered by their namespace URI, attributes without
+     * namespace first, and then by their local name.
+     */
+    private void sortAttributes() {
+        for (int i = 1; i < attributes; i++) {
+            String name = attributeNames[i];
+            String namespace = attributeNamespaces[i];
+            String localName = attributeLocalNames[i];
+            String value = attributeValues[i];
+            int j = i - 1;
+            while (j >= 0 && compareAttributes(j, namespace, localName) > 0) {
+                attributeNames[j + 1] = attributeNames[j];
+                attributeNamespaces[j + 1] = attributeNamespaces[j];
+                attributeLocalNames[j + 1] = attributeLocalNames[j];
+                attributeValues[j + 1] = attributeValues[j];
+                j--;
+            }
+            attributeNames[j + 1] = name;
+            attributeNamespaces[j + 1] = namespace;
+            attributeLocalNames[j + 1] = localName;
+            attributeValues[j + 1] = value;
+        }
+    }
+
+    private int compareAttributes(int index, String namespace, String localName) {
+        int comparison = attributeNamespaces[index].compareTo(namespace);
+        if (comparison != 0) return comparison;
+        return attributeLocalNames[index].compareTo(localName);
+    }
+}
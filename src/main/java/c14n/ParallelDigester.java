@@ -0,0 +1,200 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Digests wide documents, whose document element has many children, on the
+ * threads of a {@link ForkJoinPool}. The children are split into ranges of
+ * siblings, each range is canonicalized by a task into a buffer, and the
+ * calling thread digests the buffers in the order of the document. The
+ * canonical form of a range depends only on the namespaces its ancestors
+ * rendered, so the ranges join into the canonical document.
+ * <p>
+ * A window of ranges is canonicalized ahead of the digest, so the buffers
+ * take a bounded part of the canonical document. The DOM is read by the
+ * tasks concurrently, which a Xerces DOM allows once its nodes are
+ * expanded. A deferred DOM, which Xerces parses by default, expands its
+ * nodes on the first read though, so the calling thread expands each range
+ * before its task is forked.
+ */
+public final class ParallelDigester {
+
+    private static final int DEFAULT_MINIMUM_CHILDREN = 1024;
+    // Ranges per thread of the pool, more of them balance children of
+    // different sizes.
+    private static final int RANGES_PER_THREAD = 8;
+    private static final int MINIMUM_RANGE = 16;
+    // Ranges per thread canonicalized ahead of the digest.
+    private static final int WINDOW_PER_THREAD = 2;
+
+    private final ForkJoinPool pool;
+    private final int minimumChildren;
+
+    /**
+     * Digests documents with at least 1024 children of the document element
+     * on the threads of the common pool.
+     */
+    public ParallelDigester() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MINIMUM_CHILDREN);
+    }
+
+    /**
+     * @param minimumChildren number of children of the document element from
+     *                        which the document is split, smaller documents
+     *                        do not pay off the tasks.
+     */
+    public ParallelDigester(ForkJoinPool pool, int minimumChildren) {
+        this.pool = pool;
+        this.minimumChildren = minimumChildren;
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Digests the whole document by each of the digest algorithms, like
+     * {@link Canonicalizer#canonicalize(Document, Node, Canonicalizer.Sink)} streamed into
+     * the digests would.
+     *
+     * @param excluded      subtree left out, e.g. the enveloped signature,
+     *                      or null.
+     * @param jcaAlgorithms JCA names of the digest algorithms.
+     * @return digests in the order of the algorithms, or null if the
+     * document is not wide enough to be split or the algorithm is the
+     * exclusive one.
+     */
+    public List<ReferenceDigester.Digest> digest(Document document, Node excluded, Algorithm algorithm, List<String> jcaAlgorithms) {
+        Element documentElement = document.getDocumentElement();
+        if (algorithm.isExclusive() || documentElement == null || documentElement == excluded) return null;
+        List<Node> children = new ArrayList<>();
+        for (Node child = documentElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+            children.add(child);
+        }
+        if (children.size() < Math.max(minimumChildren, 1)) return null;
+
+        MessageDigest[] messageDigests = new MessageDigest[jcaAlgorithms.size()];
+        for (int i = 0; i < messageDigests.length; i++) {
+            messageDigests[i] = messageDigest(jcaAlgorithms.get(i));
+        }
+        long[] bytes = new long[1];
+        Canonicalizer.Sink sink = (buffer, offset, length) -> {
+            for (MessageDigest messageDigest : messageDigests) {
+                messageDigest.update(buffer, offset, length);
+            }
+            bytes[0] += length;
+        };
+
+        boolean deferred = isDeferred(document);
+        if (deferred) expand(documentElement, false);
+        Canonicalizer canonicalizer = ReferenceDigester.canonicalizer(algorithm);
+        canonicalizer.canonicalizeHead(document, excluded, sink);
+
+        int parallelism = pool.getParallelism();
+        int rangeSize = Math.max(MINIMUM_RANGE, children.size() / (parallelism * RANGES_PER_THREAD));
+        int ranges = (children.size() + rangeSize - 1) / rangeSize;
+        int window = parallelism * WINDOW_PER_THREAD;
+        @SuppressWarnings("unchecked")
+        ForkJoinTask<Buffer>[] tasks = (ForkJoinTask<Buffer>[]) new ForkJoinTask<?>[ranges];
+        try {
+            for (int range = 0; range < ranges; range++) {
+                // Forks the ranges of the window ahead of the one digested.
+                for (int next = range; next < Math.min(range + window, ranges); next++) {
+                    if (tasks[next] == null) tasks[next] = fork(children, next, rangeSize, excluded, algorithm, deferred);
+                }
+                Buffer buffer = tasks[range].join();
+                tasks[range] = null;
+                buffer.drainTo(sink);
+            }
+        } finally {
+            for (ForkJoinTask<Buffer> task : tasks) {
+                if (task != null) task.cancel(false);
+            }
+        }
+
+        canonicalizer.canonicalizeTail(document, excluded, sink);
+        ReferenceDigester.Digest[] digests = new ReferenceDigester.Digest[messageDigests.length];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = new ReferenceDigester.Digest(messageDigests[i].digest(), bytes[0]);
+        }
+        return List.of(digests);
+    }
+
+    private ForkJoinTask<Buffer> fork(List<Node> children, int range, int rangeSize, Node excluded, Algorithm algorithm, boolean deferred) {
+        int from = range * rangeSize;
+        int to = Math.min(from + rangeSize, children.size());
+        Node first = children.get(from);
+        Node end = to < children.size() ? children.get(to) : null;
+        if (deferred) {
+            for (int i = from; i < to; i++) {
+                expand(children.get(i), true);
+            }
+        }
+        return pool.submit(() -> {
+            Buffer buffer = new Buffer();
+            ReferenceDigester.canonicalizer(algorithm).canonicalizeChildren(first, end, excluded, buffer::write);
+            return buffer;
+        });
+    }
+
+    /**
+     * Xerces names its deferred DOM classes so, the implementation classes
+     * are not accessible.
+     */
+    private static boolean isDeferred(Document document) {
+        return document.getClass().getSimpleName().startsWith("Deferred");
+    }
+
+    /**
+     * Reads what the canonicalizer reads of the node, and of its subtree,
+     * which makes a deferred DOM create the nodes and their data.
+     */
+    private static void expand(Node node, boolean subtree) {
+        node.getNodeValue();
+        if (node instanceof Element element) {
+            element.getTagName();
+            if (element.hasAttributes()) {
+                NamedNodeMap attributes = element.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Node attribute = attributes.item(i);
+                    attribute.getNamespaceURI();
+                    attribute.getNodeValue();
+                }
+            }
+        }
+        if (!subtree) return;
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            expand(child, true);
+        }
+    }
+
+    private static MessageDigest messageDigest(String jcaAlgorithm) {
+        try {
+            return MessageDigest.getInstance(jcaAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Canonical octets of a range, drained without a copy.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+
+        private void drainTo(Canonicalizer.Sink sink) {
+            sink.write(buf, 0, count);
+        }
+    }
+}
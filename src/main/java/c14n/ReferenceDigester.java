@@ -0,0 +1,349 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import org.w3c.dom.*;
+
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignatureException;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import javax.xml.crypto.dsig.spec.ExcC14NParameterSpec;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Digests same-document references by streaming their canonical form from
+ * the DOM through the small buffer of a {@link Canonicalizer} straight into
+ * the {@link MessageDigest}. The JSR 105 implementation buffers the
+ * canonical octets, so its memory grows with the size of the document.
+ * References of the same content, e.g. digested by SHA-256 and SHA-512
+ * during a migration of digest algorithms, share one canonicalization pass.
+ * <p>
+ * References to the document or to an element by its Id, optionally with the
+ * enveloped signature transform, followed by one canonicalization transform
+ * are supported. Other references, and those whose canonical form the
+ * {@link Canonicalizer} does not support, are left to JSR 105.
+ */
+public final class ReferenceDigester {
+
+    private static final String ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM = Transform.ENVELOPED;
+
+    /**
+     * Property of the validate context with {@link Digest}s of the document
+     * without the signature by digest algorithm URIs, computed while the
+     * document was parsed. They are the digests of references to the
+     * document with the enveloped signature transform and inclusive
+     * canonicalization, which are equal for the whole document.
+     */
+    public static final String DOCUMENT_DIGESTS_PROPERTY = "c14n.ReferenceDigester.documentDigests";
+
+    /**
+     * Property of the validate context with a {@link ParallelDigester}, which
+     * digests references to a wide document in parallel.
+     */
+    public static final String PARALLEL_DIGESTER_PROPERTY = "c14n.ReferenceDigester.parallelDigester";
+
+    private static final ThreadLocal<Canonicalizer[]> CANONICALIZERS =
+            ThreadLocal.withInitial(() -> new Canonicalizer[Algorithm.values().length]);
+
+    private ReferenceDigester() {
+    }
+
+    /**
+     * Digests the document, that is going to be signed by an enveloped
+     * signature, as the reference with empty URI and the enveloped signature
+     * and canonicalization transforms will see it once the signature is
+     * added. So the reference can be created with its digest value.
+     */
+    public static Digest digestEnveloped(Document document, String canonicalizationAlgorithm, String digestAlgorithm) {
+        return digestEnveloped(document, canonicalizationAlgorithm, List.of(digestAlgorithm)).get(0);
+    }
+
+    /**
+     * Digests the document by each of the digest algorithms in one
+     * canonicalization pass, see {@link #digestEnveloped(Document, String, String)}.
+     *
+     * @return digests in the order of the algorithms.
+     */
+    public static List<Digest> digestEnveloped(Document document, String canonicalizationAlgorithm, List<String> digestAlgorithms) {
+        return digestEnveloped(document, canonicalizationAlgorithm, digestAlgorithms, null);
+    }
+
+    /**
+     * Digests the document like {@link #digestEnveloped(Document, String, List)},
+     * a wide one in parallel. A document with a {@link CanonicalSegmentCache}
+     * attached is digested by the cache.
+     *
+     * @param parallelDigester digester of wide documents, or null to digest
+     *                         on the calling thread.
+     */
+    public static List<Digest> digestEnveloped(
+            Document document,
+            String canonicalizationAlgorithm,
+            List<String> digestAlgorithms,
+            ParallelDigester parallelDigester
+    ) {
+        Algorithm algorithm = Algorithm.of(canonicalizationAlgorithm);
+        String[] jcaAlgorithms = new String[digestAlgorithms.size()];
+        for (int i = 0; i < jcaAlgorithms.length; i++) {
+            jcaAlgorithms[i] = jcaDigestAlgorithm(digestAlgorithms.get(i));
+            if (jcaAlgorithms[i] == null) algorithm = null;
+        }
+        if (algorithm == null) {
+            throw new IllegalArgumentException("Unsupported algorithms " + canonicalizationAlgorithm + ", " + digestAlgorithms);
+        }
+        CanonicalSegmentCache cache = CanonicalSegmentCache.of(document);
+        if (cache != null && document.getDocumentElement() != null) {
+            return cache.digest(algorithm.withoutComments(), List.of(jcaAlgorithms));
+        }
+        return List.of(digest(document, null, algorithm.withoutComments(), jcaAlgorithms, parallelDigester));
+    }
+
+    /**
+     * Digests the reference of the signature being validated.
+     *
+     * @return the digest, or null if the reference is not supported and JSR
+     * 105 has to digest it.
+     */
+    public static Digest digest(Reference reference, DOMValidateContext context) {
+        return digest(List.of(reference), context).get(0);
+    }
+
+    /**
+     * Digests references of the signature being validated, those of the same
+     * content share one canonicalization pass. The pass is done when a digest
+     * of the content is first asked for.
+     */
+    public static Digests digest(List<?> references, DOMValidateContext context) {
+        return new Digests(references, context);
+    }
+
+    /**
+     * Validates the reference by its streamed digest if it is supported, by
+     * JSR 105 otherwise.
+     */
+    public static boolean validate(Reference reference, DOMValidateContext context) throws XMLSignatureException {
+        return digest(List.of(reference), context).validate(0);
+    }
+
+    private static Digest[] digest(Node target, Node excluded, Algorithm algorithm, String[] jcaAlgorithms, ParallelDigester parallelDigester) {
+        if (parallelDigester != null && target instanceof Document document) {
+            List<Digest> digests = parallelDigester.digest(document, excluded, algorithm, List.of(jcaAlgorithms));
+            if (digests != null) return digests.toArray(new Digest[0]);
+        }
+        MessageDigest[] messageDigests = new MessageDigest[jcaAlgorithms.length];
+        for (int i = 0; i < messageDigests.length; i++) {
+            messageDigests[i] = messageDigest(jcaAlgorithms[i]);
+        }
+        long[] bytes = new long[1];
+        Canonicalizer.Sink sink = (buffer, offset, length) -> {
+            for (MessageDigest messageDigest : messageDigests) {
+                messageDigest.update(buffer, offset, length);
+            }
+            bytes[0] += length;
+        };
+        Canonicalizer canonicalizer = canonicalizer(algorithm);
+        if (target instanceof Document document) {
+            canonicalizer.canonicalize(document, excluded, sink);
+        } else {
+            canonicalizer.canonicalize((Element) target, excluded, sink);
+        }
+        Digest[] digests = new Digest[messageDigests.length];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = new Digest(messageDigests[i].digest(), bytes[0]);
+        }
+        return digests;
+    }
+
+    /**
+     * The content a reference selects and its canonicalization, or null if
+     * the reference is not supported.
+     */
+    private static Content content(Reference reference, DOMValidateContext context) {
+        Algorithm algorithm = algorithm(reference.getTransforms());
+        if (algorithm == null || jcaDigestAlgorithm(reference.getDigestMethod().getAlgorithm()) == null) return null;
+
+        Node signature = context.getNode();
+        Node target = target(reference.getURI(), signature.getOwnerDocument(), context);
+        if (target == null) return null;
+        Node excluded = isEnveloped(reference.getTransforms()) ? signature : null;
+        // Same-document references select nodes without comments.
+        return new Content(target, excluded, algorithm.withoutComments());
+    }
+
+    /**
+     * The canonicalization of transforms, which are the enveloped signature
+     * transform optionally and the canonicalization one, or null.
+     */
+    private static Algorithm algorithm(List<?> transforms) {
+        int canonicalization = isEnveloped(transforms) ? 1 : 0;
+        if (transforms.size() != canonicalization + 1) return null;
+        Transform transform = (Transform) transforms.get(canonicalization);
+        Algorithm algorithm = Algorithm.of(transform.getAlgorithm());
+        if (algorithm == null) return null;
+        // Inclusive prefixes of the exclusive canonicalization are not
+        // implemented.
+        if (transform.getParameterSpec() instanceof ExcC14NParameterSpec parameters && !parameters.getPrefixList().isEmpty()) {
+            return null;
+        }
+        return algorithm;
+    }
+
+    private static boolean isEnveloped(List<?> transforms) {
+        return !transforms.isEmpty()
+                && ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM.equals(((Transform) transforms.get(0)).getAlgorithm());
+    }
+
+    /**
+     * The document, or the element of the Id, resolved like the JSR 105
+     * implementation does. An Id shared by more elements could be a
+     * signature wrapping attempt, its secure validation rejects them.
+     */
+    private static Node target(String uri, Document document, DOMValidateContext context) {
+        if (uri == null) return null;
+        if (uri.isEmpty()) return document;
+        if (!uri.startsWith("#") || uri.startsWith("#xpointer(")) return null;
+        String id = uri.substring(1);
+        Element element = context.getElementById(id);
+        if (element == null) element = document.getElementById(id);
+        if (element == null || countIds(document.getDocumentElement(), id) != 1) return null;
+        return element;
+    }
+
+    private static int countIds(Element element, String id) {
+        int count = 0;
+        if (element.hasAttributes()) {
+            NamedNodeMap attributes = element.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++) {
+                Attr attribute = (Attr) attributes.item(i);
+                if (attribute.isId() && id.equals(attribute.getValue())) count++;
+            }
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element childElement) count += countIds(childElement, id);
+        }
+        return count;
+    }
+
+    static Canonicalizer canonicalizer(Algorithm algorithm) {
+        Canonicalizer[] canonicalizers = CANONICALIZERS.get();
+        Canonicalizer canonicalizer = canonicalizers[algorithm.ordinal()];
+        if (canonicalizer == null) {
+            canonicalizer = new Canonicalizer(algorithm);
+            canonicalizers[algorithm.ordinal()] = canonicalizer;
+        }
+        return canonicalizer;
+    }
+
+    /**
+     * @return the JCA name of the digest algorithm URI, or null if it is not
+     * supported.
+     */
+    public static String jcaDigestAlgorithm(String digestAlgorithm) {
+        return switch (digestAlgorithm) {
+            case "http://www.w3.org/2001/04/xmldsig-more#sha224" -> "SHA-224";
+            case "http://www.w3.org/2001/04/xmlenc#sha256" -> "SHA-256";
+            case "http://www.w3.org/2001/04/xmldsig-more#sha384" -> "SHA-384";
+            case "http://www.w3.org/2001/04/xmlenc#sha512" -> "SHA-512";
+            default -> null;
+        };
+    }
+
+    private static MessageDigest messageDigest(String jcaAlgorithm) {
+        try {
+            return MessageDigest.getInstance(jcaAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param bytes number of the canonical octets digested.
+     */
+    public record Digest(byte[] value, long bytes) {
+    }
+
+    private record Content(Node target, Node excluded, Algorithm algorithm) {
+    }
+
+    /**
+     * Digests of references, in their order.
+     */
+    public static final class Digests {
+
+        private final List<?> references;
+        private final DOMValidateContext context;
+        private final Map<?, ?> documentDigests;
+        private final ParallelDigester parallelDigester;
+        private final Content[] contents;
+        private final Digest[] digests;
+        private final boolean[] resolved;
+
+        private Digests(List<?> references, DOMValidateContext context) {
+            this.references = references;
+            this.context = context;
+            this.documentDigests = (Map<?, ?>) context.getProperty(DOCUMENT_DIGESTS_PROPERTY);
+            this.parallelDigester = (ParallelDigester) context.getProperty(PARALLEL_DIGESTER_PROPERTY);
+            this.contents = new Content[references.size()];
+            this.digests = new Digest[references.size()];
+            this.resolved = new boolean[references.size()];
+            for (int i = 0; i < contents.length; i++) {
+                contents[i] = content((Reference) references.get(i), context);
+                resolved[i] = contents[i] == null;
+            }
+        }
+
+        /**
+         * @return the digest of the reference at the index, or null if the
+         * reference is not supported and JSR 105 has to digest it.
+         */
+        public Digest get(int index) {
+            if (resolved[index]) return digests[index];
+
+            Content content = contents[index];
+            if (documentDigests != null && content.target() instanceof Document
+                    && content.excluded() != null && !content.algorithm().isExclusive()) {
+                String digestAlgorithm = ((Reference) references.get(index)).getDigestMethod().getAlgorithm();
+                digests[index] = (Digest) documentDigests.get(digestAlgorithm);
+                resolved[index] = true;
+                return digests[index];
+            }
+
+            // Other references of the same content are digested in the pass.
+            int[] indexes = new int[references.size()];
+            int count = 0;
+            for (int i = index; i < references.size(); i++) {
+                if (!resolved[i] && contents[index].equals(contents[i])) indexes[count++] = i;
+            }
+            String[] jcaAlgorithms = new String[count];
+            for (int i = 0; i < count; i++) {
+                jcaAlgorithms[i] = jcaDigestAlgorithm(((Reference) references.get(indexes[i])).getDigestMethod().getAlgorithm());
+            }
+            try {
+                Digest[] contentDigests = digest(content.target(), content.excluded(), content.algorithm(), jcaAlgorithms, parallelDigester);
+                for (int i = 0; i < count; i++) {
+                    digests[indexes[i]] = contentDigests[i];
+                }
+            } catch (Canonicalizer.CanonicalizationException e) {
+                // Left to JSR 105.
+            }
+            for (int i = 0; i < count; i++) {
+                resolved[indexes[i]] = true;
+            }
+            return digests[index];
+        }
+
+        /**
+         * Validates the reference at the index by its digest if it is
+         * supported, by JSR 105 otherwise.
+         */
+        public boolean validate(int index) throws XMLSignatureException {
+            Digest digest = get(index);
+            Reference reference = (Reference) references.get(index);
+            if (digest == null) return reference.validate(context);
+            return MessageDigest.isEqual(digest.value(), reference.getDigestValue());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merkle tree of the canonical digests of the sections of a document, the
+ * element children of its document element. A signature carrying the tree
+ * tells on failure which sections changed: the trees of the signed and the
+ * current document are compared from the root down, into the subtrees that
+ * differ only, so a change is found in O(log n) digest comparisons.
+ * <p>
+ * A leaf is the digest of the canonical octets of a section, as they are
+ * part of the canonical document, a node is the digest of 0x01 and its two
+ * children, and the last node of an odd level moves up as it is. Changes of
+ * the document element and of text, comments and processing instructions
+ * between the sections do not change any leaf.
+ */
+public final class SectionDigests {
+
+    private static final byte NODE_PREFIX = 0x01;
+
+    private final Algorithm algorithm;
+    private final String jcaAlgorithm;
+    private final List<String> names;
+    // Levels of the tree, from the leaves to the root.
+    private final List<byte[][]> levels;
+
+    private SectionDigests(Algorithm algorithm, String jcaAlgorithm, List<String> names, byte[][] leaves) {
+        this.algorithm = algorithm;
+        this.jcaAlgorithm = jcaAlgorithm;
+        this.names = names;
+        this.levels = build(jcaAlgorithm, leaves);
+    }
+
+    /**
+     * Digests each section of the document.
+     *
+     * @param excluded     subtree left out, e.g. the enveloped signature,
+     *                     or null.
+     * @param jcaAlgorithm JCA name of the digest algorithm.
+     */
+    public static SectionDigests of(Document document, Node excluded, Algorithm algorithm, String jcaAlgorithm) {
+        Canonicalizer canonicalizer = ReferenceDigester.canonicalizer(algorithm);
+        MessageDigest messageDigest = messageDigest(jcaAlgorithm);
+        List<String> names = new ArrayList<>();
+        List<byte[]> leaves = new ArrayList<>();
+        Element documentElement = document.getDocumentElement();
+        for (Node child = documentElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (!(child instanceof Element section) || section == excluded) continue;
+            canonicalizer.canonicalizeChildren(section, section.getNextSibling(), excluded, messageDigest::update);
+            names.add(section.getTagName());
+            leaves.add(messageDigest.digest());
+        }
+        return new SectionDigests(algorithm, jcaAlgorithm, names, leaves.toArray(new byte[0][]));
+    }
+
+    /**
+     * Tree of digests of sections signed earlier, whose names are not known.
+     *
+     * @param leaves digests of the sections in the order of the document.
+     */
+    public static SectionDigests of(Algorithm algorithm, String jcaAlgorithm, List<byte[]> leaves) {
+        return new SectionDigests(algorithm, jcaAlgorithm, null, leaves.toArray(new byte[0][]));
+    }
+
+    public Algorithm algorithm() {
+        return algorithm;
+    }
+
+    public String jcaAlgorithm() {
+        return jcaAlgorithm;
+    }
+
+    public int sections() {
+        return levels.get(0).length;
+    }
+
+    /**
+     * @return digests of the sections in the order of the document.
+     */
+    public List<byte[]> leaves() {
+        return List.of(levels.get(0));
+    }
+
+    /**
+     * @return digest of all the sections, or an empty array if there are
+     * none.
+     */
+    public byte[] root() {
+        byte[][] root = levels.get(levels.size() - 1);
+        return root.length == 0 ? new byte[0] : root[0];
+    }
+
+    /**
+     * @return tag name of the section, or null if the tree was not digested
+     * from a document.
+     */
+    public String name(int section) {
+        return names == null ? null : names.get(section);
+    }
+
+    /**
+     * Finds the sections that differ between the trees, by descending into
+     * the subtrees of different digests.
+     *
+     * @return indexes of the changed sections in the order of the document.
+     * @throws IllegalArgumentException if the trees have different numbers
+     *                                  of sections, or algorithms, the
+     *                                  sections cannot be matched then.
+     */
+    public List<Integer> changed(SectionDigests other) {
+        if (algorithm != other.algorithm || !jcaAlgorithm.equals(other.jcaAlgorithm)) {
+            throw new IllegalArgumentException("Trees of different algorithms cannot be compared!");
+        }
+        if (sections() != other.sections()) {
+            throw new IllegalArgumentException("Trees of %d and %d sections cannot be compared!".formatted(sections(), other.sections()));
+        }
+        List<Integer> changed = new ArrayList<>();
+        if (sections() > 0) changed(other, levels.size() - 1, 0, changed);
+        return changed;
+    }
+
+    private void changed(SectionDigests other, int level, int index, List<Integer> changed) {
+        if (Arrays.equals(levels.get(level)[index], other.levels.get(level)[index])) return;
+        if (level == 0) {
+            changed.add(index);
+            return;
+        }
+        // The children are two below the node, or one moved up as it is.
+        byte[][] below = levels.get(level - 1);
+        changed(other, level - 1, 2 * index, changed);
+        if (2 * index + 1 < below.length) changed(other, level - 1, 2 * index + 1, changed);
+    }
+
+    private static List<byte[][]> build(String jcaAlgorithm, byte[][] leaves) {
+        MessageDigest messageDigest = messageDigest(jcaAlgorithm);
+        List<byte[][]> levels = new ArrayList<>();
+        levels.add(leaves);
+        byte[][] level = leaves;
+        while (level.length > 1) {
+            byte[][] up = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < up.length; i++) {
+                if (2 * i + 1 == level.length) {
+                    up[i] = level[2 * i];
+                    continue;
+                }
+                messageDigest.update(NODE_PREFIX);
+                messageDigest.update(level[2 * i]);
+                messageDigest.update(level[2 * i + 1]);
+                up[i] = messageDigest.digest();
+            }
+            levels.add(up);
+            level = up;
+        }
+        return levels;
+    }
+
+    private static MessageDigest messageDigest(String jcaAlgorithm) {
+        try {
+            return MessageDigest.getInstance(jcaAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
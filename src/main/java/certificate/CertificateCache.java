@@ -0,0 +1,202 @@
+package certificate;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of parsed signing certificates.
+ * <p>
+ * Most signed documents are produced by a small set of signers, so the same
+ * certificate arrives over and over again in the KeyInfo element. The cache
+ * is keyed by SHA-256 of the DER encoding, and keeps the parsed certificate,
+ * its public key and the last trust decision made for it.
+ */
+public class CertificateCache {
+
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CertificateCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CertificateCache(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity has to be positive!");
+        this.capacity = capacity;
+        // Access-ordered map, so the eldest entry is the least recently used one.
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                boolean evict = size() > CertificateCache.this.capacity;
+                if (evict) evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached entry for a DER encoded certificate, parsing the
+     * certificate only if it has not been seen yet.
+     */
+    public Entry get(byte[] der) throws CertificateException {
+        String fingerprint = fingerprint(der);
+        Entry entry = lookup(fingerprint, der);
+        if (entry != null) return entry;
+
+        // Parsing happens outside the lock. Two threads may parse the same
+        // certificate concurrently, but only the first one is stored.
+        X509Certificate certificate = parse(der);
+        Entry parsed = new Entry(fingerprint, der.clone(), certificate);
+        synchronized (entries) {
+            Entry existing = entries.putIfAbsent(fingerprint, parsed);
+            return existing != null ? existing : parsed;
+        }
+    }
+
+    /**
+     * Returns the cached entry for an already parsed certificate, e.g. one
+     * decoded by the JSR 105 KeyInfo unmarshaller.
+     */
+    public Entry get(X509Certificate certificate) throws CertificateException {
+        byte[] der = certificate.getEncoded();
+        String fingerprint = fingerprint(der);
+        Entry entry = lookup(fingerprint, der);
+        if (entry != null) return entry;
+
+        Entry parsed = new Entry(fingerprint, der, certificate);
+        synchronized (entries) {
+            Entry existing = entries.putIfAbsent(fingerprint, parsed);
+            return existing != null ? existing : parsed;
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size, capacity);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private Entry lookup(String fingerprint, byte[] der) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(fingerprint);
+        }
+        // Comparing the encodings is cheap compared to parsing and guards
+        // against returning a different certificate on a hash collision.
+        if (entry != null && Arrays.equals(entry.encoded, der)) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        return null;
+    }
+
+    static String fingerprint(byte[] der) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(der);
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static X509Certificate parse(byte[] der) throws CertificateException {
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        return (X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(der));
+    }
+
+    public static class Entry {
+
+        private final String fingerprint;
+        private final byte[] encoded;
+        private final X509Certificate certificate;
+        private final PublicKey publicKey;
+        private volatile TrustDecision trustDecision;
+
+        private Entry(String fingerprint, byte[] encoded, X509Certificate certificate) {
+            this.fingerprint = fingerprint;
+            this.encoded = encoded;
+            this.certificate = certificate;
+            this.publicKey = certificate.getPublicKey();
+        }
+
+        /**
+         * Hex encoded SHA-256 of the certificate DER encoding.
+         */
+        public String fingerprint() {
+            return fingerprint;
+        }
+
+        public X509Certificate certificate() {
+            return certificate;
+        }
+
+        public PublicKey publicKey() {
+            return publicKey;
+        }
+
+        public byte[] encoded() {
+            return encoded.clone();
+        }
+
+        /**
+         * Whether the given trust validator recorded a positive decision for
+         * the certificate, which is still valid at the given time.
+         * <p>
+         * Decisions are bound to the validator, so a cache can be shared by
+         * validators with different trust anchors.
+         */
+        public boolean isTrustedBy(TrustValidator trustValidator, Instant now) {
+            TrustDecision decision = trustDecision;
+            return decision != null && decision.trustValidator() == trustValidator && now.isBefore(decision.validUntil());
+        }
+
+        /**
+         * Records a positive trust decision, e.g. a successfully validated
+         * certification path, valid until the given time.
+         */
+        public void trustedBy(TrustValidator trustValidator, Instant validUntil) {
+            this.trustDecision = new TrustDecision(trustValidator, validUntil);
+        }
+
+        public void clearTrust() {
+            this.trustDecision = null;
+        }
+    }
+
+    private record TrustDecision(TrustValidator trustValidator, Instant validUntil) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, int capacity) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package certificate;
+
+import certificate.RevocationChecker.RevocationException;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Revoked serial numbers of a CRL in a compact sorted form.
+ * <p>
+ * {@link java.security.cert.X509CRL} keeps an object graph per entry, which
+ * is slow to build and heavy on memory for CRLs with millions of entries.
+ * Here the CRL is parsed directly from DER and the serial numbers are packed
+ * into fixed width records of one to three longs (enough for the 20 octets
+ * serials allowed by RFC 5280), sorted and binary searched. The records are
+ * held off-heap, either in a direct buffer or in a memory-mapped file, with
+ * a Bloom filter in front so that lookups of non-revoked serials, i.e. most
+ * of them, usually do not touch the records at all.
+ * <p>
+ * Serials which do not fit the records (negative or too long ones issued by
+ * non-conforming CAs) are kept aside in a sorted {@link BigInteger} array.
+ */
+public final class CrlIndex {
+
+    private static final int MAGIC = 0x43524c58; // CRLX
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int MAX_WIDTH = 3;
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int BLOOM_HASHES = 7;
+    private static final long NO_NEXT_UPDATE = Long.MIN_VALUE;
+
+    private final X500Principal issuer;
+    private final Instant thisUpdate;
+    private final Instant nextUpdate;
+    private final int width;
+    private final int count;
+    private final LongBuffer bloom;
+    private final LongBuffer records;
+    private final BigInteger[] oversized;
+
+    private CrlIndex(
+            X500Principal issuer,
+            Instant thisUpdate,
+            Instant nextUpdate,
+            int width,
+            int count,
+            LongBuffer bloom,
+            LongBuffer records,
+            BigInteger[] oversized
+    ) {
+        this.issuer = issuer;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.width = width;
+        this.count = count;
+        this.bloom = bloom;
+        this.records = records;
+        this.oversized = oversized;
+    }
+
+    /**
+     * Parses the CRL and verifies it is issued and signed by the issuer.
+     */
+    public static CrlIndex parse(byte[] encoded, X509Certificate issuer) throws RevocationException {
+        try {
+            // CertificateList { TBSCertList, signatureAlgorithm, signatureValue }
+            Der.Reader certificateList = new Der.Reader(encoded).next(Der.SEQUENCE).contents();
+            Der.Tlv tbsCertList = certificateList.next(Der.SEQUENCE);
+            Der.Tlv signatureAlgorithm = certificateList.next(Der.SEQUENCE);
+            byte[] signature = certificateList.next(Der.BIT_STRING).bits();
+
+            Der.Reader tbs = tbsCertList.contents();
+            tbs.nextIf(Der.INTEGER); // version
+            tbs.next(Der.SEQUENCE); // signature, the outer one is the one used
+            X500Principal issuerName = new X500Principal(tbs.next(Der.SEQUENCE).encoded());
+            if (!issuerName.equals(issuer.getSubjectX500Principal())) {
+                throw new RevocationException("CRL is issued by %s, not by %s!".formatted(issuerName, issuer.getSubjectX500Principal()));
+            }
+            if (!SignatureAlgorithms.verify(signatureAlgorithm, tbsCertList, signature, issuer.getPublicKey())) {
+                throw new RevocationException("CRL signature is not valid!");
+            }
+            Instant thisUpdate = tbs.next().time();
+            Instant nextUpdate = tbs.peekTag() == Der.UTC_TIME || tbs.peekTag() == Der.GENERALIZED_TIME ? tbs.next().time() : null;
+            Der.Tlv revokedCertificates = tbs.nextIf(Der.SEQUENCE);
+            return build(issuerName, thisUpdate, nextUpdate, revokedCertificates);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            throw new RevocationException(e);
+        }
+    }
+
+    /**
+     * Maps an index previously stored by {@link #write(Path)}. The file must
+     * not be modified while the index is in use.
+     */
+    public static CrlIndex map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("File " + path + " is not a CRL index!");
+            }
+            int width = buffer.getInt();
+            int count = buffer.getInt();
+            int bloomWords = buffer.getInt();
+            buffer.getInt(); // padding
+            Instant thisUpdate = Instant.ofEpochSecond(buffer.getLong());
+            long nextUpdate = buffer.getLong();
+
+            int recordsOffset = HEADER_SIZE + bloomWords * Long.BYTES;
+            int tailOffset = recordsOffset + count * width * Long.BYTES;
+            LongBuffer bloom = buffer.slice(HEADER_SIZE, bloomWords * Long.BYTES).asLongBuffer();
+            LongBuffer records = buffer.slice(recordsOffset, count * width * Long.BYTES).asLongBuffer();
+
+            ByteBuffer tail = buffer.slice(tailOffset, buffer.limit() - tailOffset);
+            X500Principal issuer = new X500Principal(bytes(tail));
+            BigInteger[] oversized = new BigInteger[tail.getInt()];
+            for (int i = 0; i < oversized.length; i++) oversized[i] = new BigInteger(bytes(tail));
+
+            return new CrlIndex(
+                    issuer,
+                    thisUpdate,
+                    nextUpdate != NO_NEXT_UPDATE ? Instant.ofEpochSecond(nextUpdate) : null,
+                    width,
+                    count,
+                    bloom,
+                    records,
+                    oversized
+            );
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e) {
+            throw new IOException("File " + path + " is not a valid CRL index!", e);
+        }
+    }
+
+    /**
+     * Stores the index so it can be memory-mapped by {@link #map(Path)},
+     * e.g. to share a large CRL between processes or to survive restarts.
+     */
+    public void write(Path path) throws IOException {
+        byte[] issuerName = issuer.getEncoded();
+        int tailSize = Integer.BYTES + issuerName.length + Integer.BYTES;
+        for (BigInteger serialNumber : oversized) tailSize += Integer.BYTES + serialNumber.toByteArray().length;
+        int bloomSize = bloom.capacity() * Long.BYTES;
+        int recordsSize = records.capacity() * Long.BYTES;
+
+        try (FileChannel channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + bloomSize + recordsSize + tailSize);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(count).putInt(bloom.capacity()).putInt(0);
+            buffer.putLong(thisUpdate.getEpochSecond());
+            buffer.putLong(nextUpdate != null ? nextUpdate.getEpochSecond() : NO_NEXT_UPDATE);
+            buffer.asLongBuffer().put(bloom.duplicate().rewind());
+            buffer.position(buffer.position() + bloomSize);
+            buffer.asLongBuffer().put(records.duplicate().rewind());
+            buffer.position(buffer.position() + recordsSize);
+            buffer.putInt(issuerName.length).put(issuerName);
+            buffer.putInt(oversized.length);
+            for (BigInteger serialNumber : oversized) {
+                byte[] encoded = serialNumber.toByteArray();
+                buffer.putInt(encoded.length).put(encoded);
+            }
+        }
+    }
+
+    public boolean isRevoked(BigInteger serialNumber) {
+        byte[] encoded = serialNumber.toByteArray();
+        long[] record = new long[width];
+        if (!pack(encoded, 0, encoded.length, record)) {
+            return Arrays.binarySearch(oversized, serialNumber) >= 0;
+        }
+        if (!mightContain(record)) return false;
+
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(records, middle, record);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public X500Principal issuer() {
+        return issuer;
+    }
+
+    public Instant thisUpdate() {
+        return thisUpdate;
+    }
+
+    /**
+     * @return null if the CRL does not have nextUpdate.
+     */
+    public Instant nextUpdate() {
+        return nextUpdate;
+    }
+
+    public int size() {
+        return count + oversized.length;
+    }
+
+    private static CrlIndex build(X500Principal issuer, Instant thisUpdate, Instant nextUpdate, Der.Tlv revokedCertificates) {
+        // First pass finds the record width, so the records are packed
+        // without an intermediate BigInteger per entry.
+        int entries = 0;
+        int maxBits = 1;
+        List<BigInteger> oversized = new ArrayList<>();
+        Der.Reader reader = revokedCertificates != null ? revokedCertificates.contents() : new Der.Reader(new byte[0]);
+        while (reader.hasNext()) {
+            Der.Tlv serialNumber = reader.next(Der.SEQUENCE).contents().next(Der.INTEGER);
+            int bits = bitLength(serialNumber.source(), serialNumber.valueOffset(), serialNumber.length());
+            if (bits < 0 || bits > MAX_WIDTH * Long.SIZE - 1) {
+                oversized.add(serialNumber.integer());
+            } else {
+                entries++;
+                maxBits = Math.max(maxBits, bits);
+            }
+        }
+
+        int width = (maxBits + Long.SIZE) / Long.SIZE;
+        long[] packed = new long[entries * width];
+        long[] record = new long[width];
+        int count = 0;
+        reader = revokedCertificates != null ? revokedCertificates.contents() : new Der.Reader(new byte[0]);
+        while (reader.hasNext()) {
+            Der.Tlv serialNumber = reader.next(Der.SEQUENCE).contents().next(Der.INTEGER);
+            if (pack(serialNumber.source(), serialNumber.valueOffset(), serialNumber.length(), record)) {
+                System.arraycopy(record, 0, packed, count++ * width, width);
+            }
+        }
+        sort(packed, width);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect((bloomWords(count) + packed.length) * Long.BYTES);
+        LongBuffer bloom = buffer.slice(0, bloomWords(count) * Long.BYTES).asLongBuffer();
+        LongBuffer records = buffer.slice(bloomWords(count) * Long.BYTES, packed.length * Long.BYTES).asLongBuffer();
+        records.put(packed);
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(packed, i * width, record, 0, width);
+            addToBloom(bloom, record);
+        }
+
+        BigInteger[] sortedOversized = oversized.toArray(new BigInteger[0]);
+        Arrays.sort(sortedOversized);
+        return new CrlIndex(issuer, thisUpdate, nextUpdate, width, count, bloom, records, sortedOversized);
+    }
+
+    /**
+     * @return bit length of a non-negative DER INTEGER, or -1 for negative.
+     */
+    private static int bitLength(byte[] source, int offset, int length) {
+        if (length == 0 || source[offset] < 0) return -1;
+        int start = offset;
+        while (start < offset + length - 1 && source[start] == 0) start++;
+        return (offset + length - start - 1) * Byte.SIZE + (Integer.SIZE - Integer.numberOfLeadingZeros(source[start] & 0xff));
+    }
+
+    /**
+     * Packs a non-negative big-endian integer into the record, the most
+     * significant long first, keeping its top bit clear.
+     *
+     * @return false if the integer does not fit the record.
+     */
+    private static boolean pack(byte[] source, int offset, int length, long[] record) {
+        int bits = bitLength(source, offset, length);
+        if (bits < 0 || bits > record.length * Long.SIZE - 1) return false;
+        Arrays.fill(record, 0);
+        for (int i = 0; i < length; i++) {
+            int position = length - 1 - i; // byte position from the least significant one
+            if (position >= record.length * Long.BYTES) continue; // leading zero
+            record[record.length - 1 - position / Long.BYTES] |= (source[offset + i] & 0xffL) << (position % Long.BYTES * Byte.SIZE);
+        }
+        return true;
+    }
+
+    private static int compare(LongBuffer records, int index, long[] record) {
+        int offset = index * record.length;
+        // The first long has its top bit clear, so signed and unsigned
+        // comparisons are the same.
+        for (int i = 0; i < record.length; i++) {
+            int comparison = Long.compareUnsigned(records.get(offset + i), record[i]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    }
+
+    private static int compare(long[] packed, int first, int second, int width) {
+        for (int i = 0; i < width; i++) {
+            int comparison = Long.compareUnsigned(packed[first * width + i], packed[second * width + i]);
+            if (comparison != 0) return comparison;
+        }
+        return 0;
+    }
+
+    private static void sort(long[] packed, int width) {
+        if (width == 1) {
+            Arrays.sort(packed);
+            return;
+        }
+        // Bottom-up merge sort of the records, there is no primitive sort of
+        // multi-long records in the JDK.
+        int count = packed.length / width;
+        long[] source = packed;
+        long[] target = new long[packed.length];
+        for (int run = 1; run < count; run *= 2) {
+            for (int low = 0; low < count; low += 2 * run) {
+                int middle = Math.min(low + run, count);
+                int high = Math.min(low + 2 * run, count);
+                int left = low;
+                int right = middle;
+                for (int i = low; i < high; i++) {
+                    int next = right >= high || (left < middle && compare(source, left, right, width) <= 0) ? left++ : right++;
+                    System.arraycopy(source, next * width, target, i * width, width);
+                }
+            }
+            long[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != packed) System.arraycopy(source, 0, packed, 0, packed.length);
+    }
+
+    private static int bloomWords(int count) {
+        return Math.max(1, (int) (((long) count * BLOOM_BITS_PER_ENTRY + Long.SIZE - 1) / Long.SIZE));
+    }
+
+    private static void addToBloom(LongBuffer bloom, long[] record) {
+        long bits = (long) bloom.capacity() * Long.SIZE;
+        long hash = hash(record);
+        long increment = mix(hash) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(hash + i * increment, bits);
+            int word = (int) (bit >>> 6);
+            bloom.put(word, bloom.get(word) | (1L << bit));
+        }
+    }
+
+    private boolean mightContain(long[] record) {
+        long bits = (long) bloom.capacity() * Long.SIZE;
+        long hash = hash(record);
+        long increment = mix(hash) | 1;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Long.remainderUnsigned(hash + i * increment, bits);
+            if ((bloom.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    private static long hash(long[] record) {
+        long hash = 0;
+        for (long value : record) hash = mix(hash ^ value);
+        return hash;
+    }
+
+    /**
+     * Finalization step of MurmurHash3, serial numbers of some CAs are
+     * sequential, so they have to be spread over the filter.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
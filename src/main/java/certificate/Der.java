@@ -0,0 +1,244 @@
+package certificate;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Minimal DER reader and writer for the few ASN.1 structures the JDK does not
+ * expose through its public certificate API, e.g. key identifier extensions
+ * or OCSP requests and responses.
+ */
+final class Der {
+
+    static final int INTEGER = 0x02;
+    static final int BIT_STRING = 0x03;
+    static final int OCTET_STRING = 0x04;
+    static final int NULL = 0x05;
+    static final int OBJECT_IDENTIFIER = 0x06;
+    static final int ENUMERATED = 0x0a;
+    static final int UTC_TIME = 0x17;
+    static final int GENERALIZED_TIME = 0x18;
+    static final int SEQUENCE = 0x30;
+    static final int CONTEXT_0 = 0x80;
+    static final int CONTEXT_1 = 0x81;
+    static final int CONTEXT_2 = 0x82;
+    static final int CONTEXT_6 = 0x86;
+    static final int CONTEXT_CONSTRUCTED_0 = 0xa0;
+    static final int CONTEXT_CONSTRUCTED_1 = 0xa1;
+
+    private static final DateTimeFormatter UTC_TIME_FORMAT = DateTimeFormatter.ofPattern("yyMMddHHmmss'Z'");
+    private static final DateTimeFormatter GENERALIZED_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss'Z'");
+
+    private Der() {
+    }
+
+    /**
+     * Tag-length-value element referencing a range of the source array.
+     *
+     * @param offset offset of the tag, i.e. start of the whole element.
+     */
+    record Tlv(int tag, byte[] source, int offset, int valueOffset, int length) {
+
+        byte[] value() {
+            return Arrays.copyOfRange(source, valueOffset, valueOffset + length);
+        }
+
+        /**
+         * The whole element including tag and length, e.g. for signature
+         * verification of a signed structure.
+         */
+        byte[] encoded() {
+            return Arrays.copyOfRange(source, offset, valueOffset + length);
+        }
+
+        Reader contents() {
+            return new Reader(source, valueOffset, valueOffset + length);
+        }
+
+        int end() {
+            return valueOffset + length;
+        }
+
+        BigInteger integer() {
+            return new BigInteger(value());
+        }
+
+        String oid() {
+            StringBuilder oid = new StringBuilder();
+            long component = 0;
+            for (int i = valueOffset; i < valueOffset + length; i++) {
+                component = (component << 7) | (source[i] & 0x7f);
+                if ((source[i] & 0x80) != 0) continue;
+                if (oid.isEmpty()) {
+                    int first = (int) Math.min(component / 40, 2);
+                    oid.append(first).append('.').append(component - first * 40L);
+                } else {
+                    oid.append('.').append(component);
+                }
+                component = 0;
+            }
+            return oid.toString();
+        }
+
+        /**
+         * Content of a BIT STRING without the leading unused-bits octet.
+         */
+        byte[] bits() {
+            return Arrays.copyOfRange(source, valueOffset + 1, valueOffset + length);
+        }
+
+        Instant time() {
+            String value = new String(source, valueOffset, length, US_ASCII);
+            if (tag == UTC_TIME) {
+                LocalDateTime time = LocalDateTime.parse(value, UTC_TIME_FORMAT);
+                // Two digit years are interpreted as 1950-2049 (RFC 5280).
+                if (time.getYear() >= 2050) time = time.minusYears(100);
+                return time.toInstant(ZoneOffset.UTC);
+            } else if (tag == GENERALIZED_TIME) {
+                // Fractions of seconds are dropped, they are irrelevant for
+                // revocation data freshness.
+                int fraction = value.indexOf('.');
+                if (fraction > 0) value = value.substring(0, fraction) + "Z";
+                return LocalDateTime.parse(value, GENERALIZED_TIME_FORMAT).toInstant(ZoneOffset.UTC);
+            }
+            throw new IllegalArgumentException("Tag %02x is not a time!".formatted(tag));
+        }
+    }
+
+    static class Reader {
+
+        private final byte[] source;
+        private final int end;
+        private int position;
+
+        Reader(byte[] source) {
+            this(source, 0, source.length);
+        }
+
+        Reader(byte[] source, int offset, int end) {
+            this.source = source;
+            this.position = offset;
+            this.end = end;
+        }
+
+        boolean hasNext() {
+            return position < end;
+        }
+
+        int peekTag() {
+            return hasNext() ? source[position] & 0xff : -1;
+        }
+
+        Tlv next() {
+            if (position + 2 > end) throw new IllegalArgumentException("Truncated DER element!");
+            int offset = position;
+            int tag = source[position++] & 0xff;
+            if ((tag & 0x1f) == 0x1f) throw new IllegalArgumentException("High tag numbers are not supported!");
+            int length = source[position++] & 0xff;
+            if (length > 0x7f) {
+                int lengthBytes = length & 0x7f;
+                if (lengthBytes == 0 || lengthBytes > 4) throw new IllegalArgumentException("Unsupported DER length!");
+                length = 0;
+                for (int i = 0; i < lengthBytes; i++) {
+                    if (position >= end) throw new IllegalArgumentException("Truncated DER length!");
+                    length = (length << 8) | (source[position++] & 0xff);
+                }
+            }
+            if (length < 0 || position + length > end) throw new IllegalArgumentException("Truncated DER element!");
+            Tlv tlv = new Tlv(tag, source, offset, position, length);
+            position += length;
+            return tlv;
+        }
+
+        Tlv next(int expectedTag) {
+            Tlv tlv = next();
+            if (tlv.tag() != expectedTag) {
+                throw new IllegalArgumentException("Expected DER tag %02x but got %02x!".formatted(expectedTag, tlv.tag()));
+            }
+            return tlv;
+        }
+
+        /**
+         * Reads the next element only if it has the given tag, e.g. for
+         * OPTIONAL or DEFAULT fields.
+         */
+        Tlv nextIf(int tag) {
+            return peekTag() == tag ? next() : null;
+        }
+    }
+
+    static byte[] encode(int tag, byte[]... contents) {
+        int length = 0;
+        for (byte[] content : contents) length += content.length;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 6);
+        out.write(tag);
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            int lengthBytes = (32 - Integer.numberOfLeadingZeros(length) + 7) / 8;
+            out.write(0x80 | lengthBytes);
+            for (int i = lengthBytes - 1; i >= 0; i--) out.write(length >>> (i * 8));
+        }
+        for (byte[] content : contents) out.writeBytes(content);
+        return out.toByteArray();
+    }
+
+    static byte[] sequence(byte[]... contents) {
+        return encode(SEQUENCE, contents);
+    }
+
+    static byte[] integer(BigInteger value) {
+        return encode(INTEGER, value.toByteArray());
+    }
+
+    static byte[] octetString(byte[] value) {
+        return encode(OCTET_STRING, value);
+    }
+
+    static byte[] bitString(byte[] value) {
+        return encode(BIT_STRING, new byte[]{0}, value);
+    }
+
+    static byte[] nul() {
+        return new byte[]{NULL, 0};
+    }
+
+    static byte[] oid(String oid) {
+        String[] components = oid.split("\\.");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeBase128(out, Long.parseLong(components[0]) * 40 + Long.parseLong(components[1]));
+        for (int i = 2; i < components.length; i++) writeBase128(out, Long.parseLong(components[i]));
+        return encode(OBJECT_IDENTIFIER, out.toByteArray());
+    }
+
+    /**
+     * UTCTime until 2049, GeneralizedTime afterwards (RFC 5280).
+     */
+    static byte[] time(Instant instant) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+        if (time.getYear() < 2050) {
+            return encode(UTC_TIME, UTC_TIME_FORMAT.format(time).getBytes(US_ASCII));
+        }
+        return generalizedTime(instant);
+    }
+
+    static byte[] generalizedTime(Instant instant) {
+        LocalDateTime time = LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+        return encode(GENERALIZED_TIME, GENERALIZED_TIME_FORMAT.format(time).getBytes(US_ASCII));
+    }
+
+    private static void writeBase128(ByteArrayOutputStream out, long value) {
+        int groups = Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+        for (int i = groups - 1; i >= 0; i--) {
+            int group = (int) ((value >>> (i * 7)) & 0x7f);
+            out.write(i > 0 ? group | 0x80 : group);
+        }
+    }
+}
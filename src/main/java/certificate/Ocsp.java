@@ -0,0 +1,198 @@
+package certificate;
+
+import certificate.RevocationChecker.RevocationException;
+import certificate.RevocationChecker.Status;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Encoding of OCSP requests and decoding of basic OCSP responses (RFC 6960).
+ * <p>
+ * Requests are sent without a nonce, so responders may serve pre-produced
+ * responses and the responses can be cached until their nextUpdate.
+ */
+final class Ocsp {
+
+    static final String BASIC_RESPONSE_TYPE = "1.3.6.1.5.5.7.48.1.1";
+    static final String OCSP_SIGNING_KEY_PURPOSE = "1.3.6.1.5.5.7.3.9";
+    private static final String SHA1_ALGORITHM = "1.3.14.3.2.26";
+    private static final int SUCCESSFUL = 0;
+
+    private Ocsp() {
+    }
+
+    /**
+     * Identifies a certificate by hashes of its issuer name and key, and by
+     * its serial number.
+     */
+    record CertId(byte[] issuerNameHash, byte[] issuerKeyHash, BigInteger serialNumber) {
+
+        static CertId of(X509Certificate certificate, X509Certificate issuer) {
+            return new CertId(
+                    sha1(issuer.getSubjectX500Principal().getEncoded()),
+                    keyHash(issuer),
+                    certificate.getSerialNumber()
+            );
+        }
+
+        static CertId parse(Der.Tlv certId) {
+            Der.Reader reader = certId.contents();
+            Der.Tlv hashAlgorithm = reader.next(Der.SEQUENCE);
+            String hashAlgorithmOid = hashAlgorithm.contents().next(Der.OBJECT_IDENTIFIER).oid();
+            if (!SHA1_ALGORITHM.equals(hashAlgorithmOid)) {
+                throw new IllegalArgumentException("Unsupported CertID hash algorithm " + hashAlgorithmOid);
+            }
+            byte[] issuerNameHash = reader.next(Der.OCTET_STRING).value();
+            byte[] issuerKeyHash = reader.next(Der.OCTET_STRING).value();
+            BigInteger serialNumber = reader.next(Der.INTEGER).integer();
+            return new CertId(issuerNameHash, issuerKeyHash, serialNumber);
+        }
+
+        byte[] encoded() {
+            return Der.sequence(
+                    Der.sequence(Der.oid(SHA1_ALGORITHM), Der.nul()),
+                    Der.octetString(issuerNameHash),
+                    Der.octetString(issuerKeyHash),
+                    Der.integer(serialNumber)
+            );
+        }
+
+        boolean matches(CertId other) {
+            return Arrays.equals(issuerNameHash, other.issuerNameHash)
+                    && Arrays.equals(issuerKeyHash, other.issuerKeyHash)
+                    && serialNumber.equals(other.serialNumber);
+        }
+    }
+
+    record Response(Status status, Instant thisUpdate, Instant nextUpdate) {
+    }
+
+    static byte[] request(CertId certId) {
+        // OCSPRequest { TBSRequest { requestList { Request { CertID } } } }
+        return Der.sequence(Der.sequence(Der.sequence(Der.sequence(certId.encoded()))));
+    }
+
+    static Response parse(byte[] encoded, CertId certId, X509Certificate issuer, Instant now) throws RevocationException {
+        try {
+            Der.Reader ocspResponse = new Der.Reader(encoded).next(Der.SEQUENCE).contents();
+            int responseStatus = ocspResponse.next(Der.ENUMERATED).integer().intValue();
+            if (responseStatus != SUCCESSFUL) throw new RevocationException("OCSP response status " + responseStatus);
+
+            Der.Reader responseBytes = ocspResponse.next(Der.CONTEXT_CONSTRUCTED_0).contents().next(Der.SEQUENCE).contents();
+            String responseType = responseBytes.next(Der.OBJECT_IDENTIFIER).oid();
+            if (!BASIC_RESPONSE_TYPE.equals(responseType)) throw new RevocationException("Unsupported OCSP response " + responseType);
+            byte[] basicResponse = responseBytes.next(Der.OCTET_STRING).value();
+
+            Der.Reader basic = new Der.Reader(basicResponse).next(Der.SEQUENCE).contents();
+            Der.Tlv responseData = basic.next(Der.SEQUENCE);
+            Der.Tlv signatureAlgorithm = basic.next(Der.SEQUENCE);
+            byte[] signature = basic.next(Der.BIT_STRING).bits();
+            Der.Tlv certs = basic.nextIf(Der.CONTEXT_CONSTRUCTED_0);
+
+            verifySignature(responseData.encoded(), signatureAlgorithm, signature, certs, issuer, now);
+
+            Der.Reader data = responseData.contents();
+            data.nextIf(Der.CONTEXT_CONSTRUCTED_0); // version
+            data.next(); // responderID, the signature is what matters
+            data.next(Der.GENERALIZED_TIME); // producedAt
+            Der.Reader responses = data.next(Der.SEQUENCE).contents();
+            while (responses.hasNext()) {
+                Response response = parseSingleResponse(responses.next(Der.SEQUENCE), certId);
+                if (response == null) continue;
+                if (response.thisUpdate().isAfter(now.plusSeconds(60))) {
+                    throw new RevocationException("OCSP response thisUpdate is in the future!");
+                }
+                if (response.nextUpdate() != null && !now.isBefore(response.nextUpdate())) {
+                    throw new RevocationException("OCSP response is outdated!");
+                }
+                return response;
+            }
+            throw new RevocationException("OCSP response does not contain status of " + certId.serialNumber());
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            throw new RevocationException(e);
+        }
+    }
+
+    private static Response parseSingleResponse(Der.Tlv singleResponse, CertId certId) {
+        Der.Reader reader = singleResponse.contents();
+        if (!certId.matches(CertId.parse(reader.next(Der.SEQUENCE)))) return null;
+
+        Der.Tlv certStatus = reader.next();
+        Status status = switch (certStatus.tag()) {
+            case Der.CONTEXT_0 -> Status.GOOD;
+            case Der.CONTEXT_CONSTRUCTED_1 -> Status.REVOKED;
+            case Der.CONTEXT_2 -> Status.UNKNOWN;
+            default -> throw new IllegalArgumentException("Unknown certificate status " + certStatus.tag());
+        };
+        Instant thisUpdate = reader.next(Der.GENERALIZED_TIME).time();
+        Der.Tlv nextUpdate = reader.nextIf(Der.CONTEXT_CONSTRUCTED_0);
+        return new Response(
+                status,
+                thisUpdate,
+                nextUpdate != null ? nextUpdate.contents().next(Der.GENERALIZED_TIME).time() : null
+        );
+    }
+
+    /**
+     * The response has to be signed either by the issuer itself, or by
+     * a responder certificate issued by the issuer for OCSP signing.
+     */
+    private static void verifySignature(
+            byte[] responseData,
+            Der.Tlv signatureAlgorithm,
+            byte[] signature,
+            Der.Tlv certs,
+            X509Certificate issuer,
+            Instant now
+    ) throws GeneralSecurityException, RevocationException {
+        if (SignatureAlgorithms.verify(signatureAlgorithm, responseData, signature, issuer.getPublicKey())) return;
+
+        for (X509Certificate responder : responderCertificates(certs)) {
+            if (!responder.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) continue;
+            List<String> keyPurposes = responder.getExtendedKeyUsage();
+            if (keyPurposes == null || !keyPurposes.contains(OCSP_SIGNING_KEY_PURPOSE)) continue;
+            responder.verify(issuer.getPublicKey());
+            responder.checkValidity(Date.from(now));
+            if (SignatureAlgorithms.verify(signatureAlgorithm, responseData, signature, responder.getPublicKey())) return;
+        }
+        throw new RevocationException("OCSP response signature is not valid!");
+    }
+
+    private static List<X509Certificate> responderCertificates(Der.Tlv certs) throws GeneralSecurityException {
+        List<X509Certificate> certificates = new ArrayList<>();
+        if (certs == null) return certificates;
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        Der.Reader reader = certs.contents().next(Der.SEQUENCE).contents();
+        while (reader.hasNext()) {
+            byte[] encoded = reader.next(Der.SEQUENCE).encoded();
+            certificates.add((X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(encoded)));
+        }
+        return certificates;
+    }
+
+    private static byte[] keyHash(X509Certificate issuer) {
+        // SubjectPublicKeyInfo { AlgorithmIdentifier, subjectPublicKey BIT STRING }
+        Der.Reader publicKeyInfo = new Der.Reader(issuer.getPublicKey().getEncoded()).next(Der.SEQUENCE).contents();
+        publicKeyInfo.next(Der.SEQUENCE);
+        return sha1(publicKeyInfo.next(Der.BIT_STRING).bits());
+    }
+
+    private static byte[] sha1(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
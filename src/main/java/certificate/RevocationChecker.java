@@ -0,0 +1,350 @@
+package certificate;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Checks revocation status of certificates via OCSP, falling back to CRLs.
+ * <p>
+ * Network round trips are too slow to be done for every validated document,
+ * so statuses are cached per issuer and serial number until the nextUpdate
+ * of the OCSP response or CRL they come from. Downloaded CRLs are cached as
+ * well, as a compact {@link CrlIndex}, so statuses of other certificates of
+ * the same issuer are resolved without a download. Entries which are in
+ * use are refreshed in background shortly before they expire, so hot
+ * certificates never hit the network on the validation path.
+ * <p>
+ * Statuses without nextUpdate are not cached, the responder says newer
+ * information is always available.
+ */
+public class RevocationChecker implements AutoCloseable {
+
+    public static final Duration DEFAULT_REFRESH_AHEAD = Duration.ofMinutes(5);
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    private static final String AUTHORITY_INFO_ACCESS_OID = "1.3.6.1.5.5.7.1.1";
+    private static final String CRL_DISTRIBUTION_POINTS_OID = "2.5.29.31";
+    private static final String OCSP_ACCESS_METHOD_OID = "1.3.6.1.5.5.7.48.1";
+
+    private final Clock clock;
+    private final Duration refreshAhead;
+    private final URI ocspResponder;
+    private final Map<X500Principal, URI> crlLocations;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService refresher;
+
+    private final Map<StatusKey, CachedStatus> statuses = new ConcurrentHashMap<>();
+    private final Map<URI, CachedCrl> crls = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    public RevocationChecker() {
+        this(Clock.systemUTC(), DEFAULT_REFRESH_AHEAD, null, Map.of());
+    }
+
+    /**
+     * @param refreshAhead  how long before nextUpdate are used entries
+     *                      refreshed in background.
+     * @param ocspResponder locally configured OCSP responder used instead of
+     *                      the one in certificates, or null.
+     * @param crlLocations  CRL locations by issuer, used instead of the CRL
+     *                      distribution points in certificates. E.g. local
+     *                      mirrors of CRLs.
+     */
+    public RevocationChecker(
+            Clock clock,
+            Duration refreshAhead,
+            URI ocspResponder,
+            Map<X500Principal, URI> crlLocations
+    ) {
+        this.clock = clock;
+        this.refreshAhead = refreshAhead;
+        this.ocspResponder = ocspResponder;
+        this.crlLocations = Map.copyOf(crlLocations);
+        this.httpClient = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "revocation-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Status check(X509Certificate certificate, X509Certificate issuer) throws RevocationException {
+        Instant now = clock.instant();
+        StatusKey key = new StatusKey(issuer.getPublicKey(), certificate.getSerialNumber());
+        CachedStatus cached = statuses.get(key);
+        if (cached != null && now.isBefore(cached.nextUpdate())) {
+            hits.increment();
+            savedNanos.add(cached.fetchNanos());
+            cached.used = true;
+            return cached.status();
+        }
+        if (cached != null) statuses.remove(key, cached);
+
+        misses.increment();
+        CachedStatus fetched = fetch(certificate, issuer, now);
+        store(key, fetched, certificate, issuer);
+        return fetched.status();
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), refreshes.sum(), failures.sum(), Duration.ofNanos(savedNanos.sum()), statuses.size(), crls.size());
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    private void store(StatusKey key, CachedStatus status, X509Certificate certificate, X509Certificate issuer) {
+        if (status.nextUpdate() == null) return;
+        statuses.put(key, status);
+
+        Duration delay = Duration.between(clock.instant(), status.nextUpdate().minus(refreshAhead));
+        // Too close to expiry, the status will be fetched on demand.
+        if (delay.isNegative()) {
+            expire(statuses, key, status, status.nextUpdate());
+            return;
+        }
+        refresher.schedule(() -> refresh(key, status, certificate, issuer), delay.toMillis(), MILLISECONDS);
+    }
+
+    private void refresh(StatusKey key, CachedStatus status, X509Certificate certificate, X509Certificate issuer) {
+        if (statuses.get(key) != status) return;
+        // Only statuses used since the last fetch are refreshed, the rest
+        // is dropped and fetched on demand if needed again.
+        if (!status.used) {
+            statuses.remove(key, status);
+            return;
+        }
+        try {
+            CachedStatus fetched = fetch(certificate, issuer, clock.instant());
+            refreshes.increment();
+            store(key, fetched, certificate, issuer);
+        } catch (RevocationException e) {
+            // The current status is still valid until its nextUpdate.
+            failures.increment();
+            expire(statuses, key, status, status.nextUpdate());
+        }
+    }
+
+    /**
+     * Removes the entry at its nextUpdate, unless it has been replaced.
+     */
+    private <K, V> void expire(Map<K, V> entries, K key, V value, Instant nextUpdate) {
+        long delay = Math.max(0, Duration.between(clock.instant(), nextUpdate).toMillis());
+        refresher.schedule(() -> entries.remove(key, value), delay, MILLISECONDS);
+    }
+
+    private CachedStatus fetch(X509Certificate certificate, X509Certificate issuer, Instant now) throws RevocationException {
+        long start = System.nanoTime();
+        RevocationException ocspFailure = null;
+
+        URI ocspLocation = ocspResponder != null ? ocspResponder : ocspLocation(certificate);
+        if (ocspLocation != null) {
+            try {
+                Ocsp.Response response = fetchOcsp(ocspLocation, certificate, issuer, now);
+                if (response.status() != Status.UNKNOWN) {
+                    return new CachedStatus(response.status(), response.nextUpdate(), System.nanoTime() - start);
+                }
+            } catch (RevocationException e) {
+                failures.increment();
+                ocspFailure = e;
+            }
+        }
+
+        URI crlLocation = crlLocations.getOrDefault(issuer.getSubjectX500Principal(), crlLocation(certificate));
+        if (crlLocation != null) {
+            CachedCrl crl = crl(crlLocation, issuer, now);
+            Status status = crl.index().isRevoked(certificate.getSerialNumber()) ? Status.REVOKED : Status.GOOD;
+            return new CachedStatus(status, crl.nextUpdate(), System.nanoTime() - start);
+        }
+
+        if (ocspFailure != null) throw ocspFailure;
+        if (ocspLocation != null) return new CachedStatus(Status.UNKNOWN, null, System.nanoTime() - start);
+        throw new RevocationException("No revocation source for " + certificate.getSubjectX500Principal());
+    }
+
+    private Ocsp.Response fetchOcsp(URI location, X509Certificate certificate, X509Certificate issuer, Instant now) throws RevocationException {
+        Ocsp.CertId certId = Ocsp.CertId.of(certificate, issuer);
+        HttpRequest request = HttpRequest.newBuilder(location)
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/ocsp-request")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(Ocsp.request(certId)))
+                .build();
+        return Ocsp.parse(send(request), certId, issuer, now);
+    }
+
+    private CachedCrl crl(URI location, X509Certificate issuer, Instant now) throws RevocationException {
+        CachedCrl cached = crls.get(location);
+        // CRLs are downloaded again shortly before their nextUpdate, so the
+        // background refresh gets a fresh one.
+        if (cached != null && now.isBefore(cached.nextUpdate().minus(refreshAhead))) return cached;
+
+        try {
+            HttpRequest request = HttpRequest.newBuilder(location).timeout(TIMEOUT).GET().build();
+            CrlIndex index = CrlIndex.parse(send(request), issuer);
+            if (index.nextUpdate() == null || !now.isBefore(index.nextUpdate())) {
+                throw new RevocationException("CRL " + location + " is outdated!");
+            }
+            CachedCrl downloaded = new CachedCrl(index, index.nextUpdate());
+            crls.put(location, downloaded);
+            expire(crls, location, downloaded, downloaded.nextUpdate());
+            return downloaded;
+        } catch (RevocationException e) {
+            return stillValid(cached, now, e);
+        }
+    }
+
+    /**
+     * A failed download is not fatal while the previous CRL is still valid.
+     */
+    private CachedCrl stillValid(CachedCrl cached, Instant now, RevocationException failure) throws RevocationException {
+        failures.increment();
+        if (cached != null && now.isBefore(cached.nextUpdate())) return cached;
+        throw failure;
+    }
+
+    private byte[] send(HttpRequest request) throws RevocationException {
+        try {
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) {
+                throw new RevocationException("%s returned HTTP %d".formatted(request.uri(), response.statusCode()));
+            }
+            return response.body();
+        } catch (IOException e) {
+            throw new RevocationException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RevocationException(e);
+        }
+    }
+
+    private static URI ocspLocation(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(AUTHORITY_INFO_ACCESS_OID);
+        if (extension == null) return null;
+        // SEQUENCE OF AccessDescription { accessMethod OID, accessLocation GeneralName }
+        byte[] value = new Der.Reader(extension).next(Der.OCTET_STRING).value();
+        Der.Reader accessDescriptions = new Der.Reader(value).next(Der.SEQUENCE).contents();
+        while (accessDescriptions.hasNext()) {
+            Der.Reader accessDescription = accessDescriptions.next(Der.SEQUENCE).contents();
+            String accessMethod = accessDescription.next(Der.OBJECT_IDENTIFIER).oid();
+            Der.Tlv accessLocation = accessDescription.next();
+            if (OCSP_ACCESS_METHOD_OID.equals(accessMethod)) {
+                URI uri = httpUri(accessLocation);
+                if (uri != null) return uri;
+            }
+        }
+        return null;
+    }
+
+    private static URI crlLocation(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(CRL_DISTRIBUTION_POINTS_OID);
+        if (extension == null) return null;
+        // SEQUENCE OF DistributionPoint { distributionPoint [0] { fullName [0] GeneralNames } }
+        byte[] value = new Der.Reader(extension).next(Der.OCTET_STRING).value();
+        Der.Reader distributionPoints = new Der.Reader(value).next(Der.SEQUENCE).contents();
+        while (distributionPoints.hasNext()) {
+            Der.Tlv distributionPointName = distributionPoints.next(Der.SEQUENCE).contents().nextIf(Der.CONTEXT_CONSTRUCTED_0);
+            if (distributionPointName == null) continue;
+            Der.Tlv fullName = distributionPointName.contents().nextIf(Der.CONTEXT_CONSTRUCTED_0);
+            if (fullName == null) continue;
+            Der.Reader generalNames = fullName.contents();
+            while (generalNames.hasNext()) {
+                URI uri = httpUri(generalNames.next());
+                if (uri != null) return uri;
+            }
+        }
+        return null;
+    }
+
+    private static URI httpUri(Der.Tlv generalName) {
+        if (generalName.tag() != Der.CONTEXT_6) return null;
+        URI uri = URI.create(new String(generalName.value(), US_ASCII));
+        return "http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()) ? uri : null;
+    }
+
+    public enum Status {
+        GOOD, REVOKED, UNKNOWN
+    }
+
+    /**
+     * @param savedLatency sum of fetch latencies of statuses served from
+     *                     the cache, i.e. the time which would be spent on
+     *                     the network without it.
+     * @param size         number of cached statuses.
+     * @param crls         number of cached CRLs.
+     */
+    public record Stats(long hits, long misses, long refreshes, long failures, Duration savedLatency, int size, int crls) {
+
+        public double hitRatio() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    private record StatusKey(PublicKey issuerKey, BigInteger serialNumber) {
+    }
+
+    private static final class CachedStatus {
+
+        private final Status status;
+        private final Instant nextUpdate;
+        private final long fetchNanos;
+        private volatile boolean used;
+
+        private CachedStatus(Status status, Instant nextUpdate, long fetchNanos) {
+            this.status = status;
+            this.nextUpdate = nextUpdate;
+            this.fetchNanos = fetchNanos;
+        }
+
+        Status status() {
+            return status;
+        }
+
+        Instant nextUpdate() {
+            return nextUpdate;
+        }
+
+        long fetchNanos() {
+            return fetchNanos;
+        }
+    }
+
+    private record CachedCrl(CrlIndex index, Instant nextUpdate) {
+    }
+
+    public static class RevocationException extends Exception {
+
+        public RevocationException(String message) {
+            super(message);
+        }
+
+        public RevocationException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
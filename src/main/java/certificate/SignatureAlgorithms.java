@@ -0,0 +1,70 @@
+package certificate;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Map;
+
+/**
+ * Maps signature algorithm identifiers of DER structures which are verified
+ * by hand (OCSP responses, CRLs) to JCA algorithm names.
+ */
+final class SignatureAlgorithms {
+
+    private static final Map<String, String> JCA_NAMES = Map.of(
+            "1.2.840.113549.1.1.5", "SHA1withRSA",
+            "1.2.840.113549.1.1.11", "SHA256withRSA",
+            "1.2.840.113549.1.1.12", "SHA384withRSA",
+            "1.2.840.113549.1.1.13", "SHA512withRSA",
+            "1.2.840.10045.4.3.2", "SHA256withECDSA",
+            "1.2.840.10045.4.3.3", "SHA384withECDSA",
+            "1.2.840.10045.4.3.4", "SHA512withECDSA"
+    );
+
+    private SignatureAlgorithms() {
+    }
+
+    static String jcaName(String oid) throws NoSuchAlgorithmException {
+        String name = JCA_NAMES.get(oid);
+        if (name == null) throw new NoSuchAlgorithmException("Unsupported signature algorithm " + oid);
+        return name;
+    }
+
+    /**
+     * @param algorithmIdentifier AlgorithmIdentifier SEQUENCE of the signed
+     *                            structure.
+     */
+    static boolean verify(
+            Der.Tlv algorithmIdentifier,
+            byte[] signed,
+            byte[] signatureValue,
+            PublicKey publicKey
+    ) throws GeneralSecurityException {
+        Signature signature = signature(algorithmIdentifier, publicKey);
+        signature.update(signed);
+        return signature.verify(signatureValue);
+    }
+
+    /**
+     * Verifies the signed element in place, without copying it out of the
+     * source, e.g. for large CRLs.
+     */
+    static boolean verify(
+            Der.Tlv algorithmIdentifier,
+            Der.Tlv signed,
+            byte[] signatureValue,
+            PublicKey publicKey
+    ) throws GeneralSecurityException {
+        Signature signature = signature(algorithmIdentifier, publicKey);
+        signature.update(signed.source(), signed.offset(), signed.end() - signed.offset());
+        return signature.verify(signatureValue);
+    }
+
+    private static Signature signature(Der.Tlv algorithmIdentifier, PublicKey publicKey) throws GeneralSecurityException {
+        String oid = algorithmIdentifier.contents().next(Der.OBJECT_IDENTIFIER).oid();
+        Signature signature = Signature.getInstance(jcaName(oid));
+        signature.initVerify(publicKey);
+        return signature;
+    }
+}
@@ -0,0 +1,309 @@
+package certificate;
+
+import certificate.RevocationChecker.RevocationException;
+import certificate.RevocationChecker.Status;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.GeneralSecurityException;
+import java.security.cert.*;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Validates certification paths of signing certificates against a fixed set
+ * of trust anchors.
+ * <p>
+ * A full {@link CertPathBuilder} run for every document is expensive, so the
+ * path is built by looking up issuers in indexes (by key identifier, then by
+ * subject) and only the final path is checked by the PKIX
+ * {@link CertPathValidator}. Validated paths are cached per end-entity
+ * certificate until the earliest expiry of any certificate in the chain.
+ * <p>
+ * Failed validations are not cached, so a certificate becoming valid (e.g.
+ * once its notBefore is reached) is picked up immediately.
+ * <p>
+ * If a {@link RevocationChecker} is provided, revocation status of every
+ * certificate in the path is checked on each validation. The statuses have
+ * their own life cycle, so they are cached by the checker, not with the path.
+ */
+public class TrustValidator {
+
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+    private static final String AUTHORITY_KEY_IDENTIFIER_OID = "2.5.29.35";
+    private static final int MAX_PATH_LENGTH = 8;
+
+    private final Map<String, X509Certificate> anchorsByFingerprint = new HashMap<>();
+    private final Map<String, List<X509Certificate>> anchorsByKeyIdentifier = new HashMap<>();
+    private final Map<X500Principal, List<X509Certificate>> anchorsBySubject = new HashMap<>();
+    private final Clock clock;
+    private final int capacity;
+    private final Map<String, TrustedPath> paths;
+    private final RevocationChecker revocationChecker;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public TrustValidator(Collection<X509Certificate> trustAnchors) {
+        this(trustAnchors, Clock.systemUTC(), DEFAULT_CAPACITY);
+    }
+
+    public TrustValidator(Collection<X509Certificate> trustAnchors, Clock clock, int capacity) {
+        this(trustAnchors, clock, capacity, null);
+    }
+
+    /**
+     * @param revocationChecker checker of revocation status of the path
+     *                          certificates, or null to skip the check.
+     */
+    public TrustValidator(
+            Collection<X509Certificate> trustAnchors,
+            Clock clock,
+            int capacity,
+            RevocationChecker revocationChecker
+    ) {
+        if (trustAnchors.isEmpty()) throw new IllegalArgumentException("At least one trust anchor is required!");
+        for (X509Certificate anchor : trustAnchors) {
+            anchorsByFingerprint.put(CertificateCache.fingerprint(encoded(anchor)), anchor);
+            byte[] keyIdentifier = subjectKeyIdentifier(anchor);
+            if (keyIdentifier != null) {
+                anchorsByKeyIdentifier.computeIfAbsent(HexFormat.of().formatHex(keyIdentifier), k -> new ArrayList<>()).add(anchor);
+            }
+            anchorsBySubject.computeIfAbsent(anchor.getSubjectX500Principal(), k -> new ArrayList<>()).add(anchor);
+        }
+        this.clock = clock;
+        this.capacity = capacity;
+        this.revocationChecker = revocationChecker;
+        this.paths = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TrustedPath> eldest) {
+                return size() > TrustValidator.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Validates the certificate and memoizes the result on the cache entry,
+     * so repeated validations of the same certificate are a time comparison.
+     * <p>
+     * With revocation checking, the path is looked up in the path cache
+     * instead, as its certificates have to be checked every time.
+     */
+    public void validate(CertificateCache.Entry entry, Collection<X509Certificate> intermediates) throws TrustValidationException {
+        Instant now = clock.instant();
+        if (revocationChecker == null && entry.isTrustedBy(this, now)) {
+            hits.increment();
+            return;
+        }
+        TrustedPath path = validate(entry.fingerprint(), entry.certificate(), intermediates, now);
+        entry.trustedBy(this, path.validUntil());
+    }
+
+    /**
+     * @param certificate   end-entity certificate to validate.
+     * @param intermediates certificates which may be used to build the path,
+     *                      e.g. the remaining certificates from KeyInfo.
+     */
+    public TrustedPath validate(X509Certificate certificate, Collection<X509Certificate> intermediates) throws TrustValidationException {
+        String fingerprint = CertificateCache.fingerprint(encoded(certificate));
+        return validate(fingerprint, certificate, intermediates, clock.instant());
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (paths) {
+            size = paths.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), size);
+    }
+
+    public void clear() {
+        synchronized (paths) {
+            paths.clear();
+        }
+    }
+
+    private TrustedPath validate(
+            String fingerprint,
+            X509Certificate certificate,
+            Collection<X509Certificate> intermediates,
+            Instant now
+    ) throws TrustValidationException {
+        TrustedPath cached;
+        synchronized (paths) {
+            cached = paths.get(fingerprint);
+        }
+        if (cached != null && now.isBefore(cached.validUntil())) {
+            hits.increment();
+            checkRevocation(cached);
+            return cached;
+        }
+        misses.increment();
+
+        TrustedPath path = buildAndValidate(certificate, intermediates, now);
+        checkRevocation(path);
+        synchronized (paths) {
+            paths.put(fingerprint, path);
+        }
+        return path;
+    }
+
+    private void checkRevocation(TrustedPath path) throws TrustValidationException {
+        if (revocationChecker == null) return;
+        List<? extends Certificate> certificates = path.path().getCertificates();
+        for (int i = 0; i < certificates.size(); i++) {
+            X509Certificate certificate = (X509Certificate) certificates.get(i);
+            X509Certificate issuer = i + 1 < certificates.size() ? (X509Certificate) certificates.get(i + 1) : path.anchor();
+            try {
+                Status status = revocationChecker.check(certificate, issuer);
+                if (status != Status.GOOD) {
+                    throw new TrustValidationException("Certificate %s revocation status is %s!".formatted(certificate.getSubjectX500Principal(), status));
+                }
+            } catch (RevocationException e) {
+                throw new TrustValidationException(e);
+            }
+        }
+    }
+
+    private TrustedPath buildAndValidate(
+            X509Certificate certificate,
+            Collection<X509Certificate> intermediates,
+            Instant now
+    ) throws TrustValidationException {
+        try {
+            // The certificate itself is a trust anchor, e.g. a self-signed
+            // certificate explicitly configured as trusted.
+            X509Certificate anchor = anchorsByFingerprint.get(CertificateCache.fingerprint(encoded(certificate)));
+            if (anchor != null) {
+                anchor.checkValidity(Date.from(now));
+                CertPath emptyPath = CertificateFactory.getInstance("X.509").generateCertPath(List.of());
+                return new TrustedPath(emptyPath, anchor, anchor.getNotAfter().toInstant());
+            }
+
+            List<X509Certificate> chain = new ArrayList<>();
+            chain.add(certificate);
+            X509Certificate current = certificate;
+            while ((anchor = findAnchor(current)) == null) {
+                if (chain.size() >= MAX_PATH_LENGTH) throw new TrustValidationException("Certification path is too long!");
+                X509Certificate issuer = findIssuer(current, intermediates, chain);
+                if (issuer == null) {
+                    throw new TrustValidationException("No trusted issuer found for " + current.getSubjectX500Principal());
+                }
+                chain.add(issuer);
+                current = issuer;
+            }
+
+            CertPath certPath = CertificateFactory.getInstance("X.509").generateCertPath(chain);
+            PKIXParameters parameters = new PKIXParameters(Set.of(new TrustAnchor(anchor, null)));
+            parameters.setDate(Date.from(now));
+            // Revocation is checked separately, status information has its
+            // own life cycle independent of the path.
+            parameters.setRevocationEnabled(false);
+            CertPathValidator.getInstance("PKIX").validate(certPath, parameters);
+
+            Instant validUntil = anchor.getNotAfter().toInstant();
+            for (X509Certificate chainCertificate : chain) {
+                Instant notAfter = chainCertificate.getNotAfter().toInstant();
+                if (notAfter.isBefore(validUntil)) validUntil = notAfter;
+            }
+            return new TrustedPath(certPath, anchor, validUntil);
+        } catch (GeneralSecurityException e) {
+            throw new TrustValidationException(e);
+        }
+    }
+
+    private X509Certificate findAnchor(X509Certificate certificate) {
+        byte[] keyIdentifier = authorityKeyIdentifier(certificate);
+        if (keyIdentifier != null) {
+            X509Certificate anchor = findAnchor(certificate, anchorsByKeyIdentifier.get(HexFormat.of().formatHex(keyIdentifier)));
+            // Anchors of the same key may differ by their subjects, and the
+            // issuer may be reissued without the key identifier.
+            if (anchor != null) return anchor;
+        }
+        return findAnchor(certificate, anchorsBySubject.get(certificate.getIssuerX500Principal()));
+    }
+
+    private static X509Certificate findAnchor(X509Certificate certificate, List<X509Certificate> candidates) {
+        if (candidates == null) return null;
+        for (X509Certificate candidate : candidates) {
+            if (candidate.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static X509Certificate findIssuer(
+            X509Certificate certificate,
+            Collection<X509Certificate> intermediates,
+            List<X509Certificate> chain
+    ) {
+        byte[] keyIdentifier = authorityKeyIdentifier(certificate);
+        for (X509Certificate candidate : intermediates) {
+            if (chain.contains(candidate)) continue;
+            if (!candidate.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) continue;
+            if (keyIdentifier != null && !Arrays.equals(keyIdentifier, subjectKeyIdentifier(candidate))) continue;
+            return candidate;
+        }
+        return null;
+    }
+
+    static byte[] subjectKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+        if (extension == null) return null;
+        // OCTET STRING { KeyIdentifier ::= OCTET STRING }
+        byte[] value = new Der.Reader(extension).next(Der.OCTET_STRING).value();
+        return new Der.Reader(value).next(Der.OCTET_STRING).value();
+    }
+
+    static byte[] authorityKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER_OID);
+        if (extension == null) return null;
+        // OCTET STRING { SEQUENCE { keyIdentifier [0] IMPLICIT OCTET STRING OPTIONAL, ... } }
+        byte[] value = new Der.Reader(extension).next(Der.OCTET_STRING).value();
+        Der.Reader sequence = new Der.Reader(value).next(Der.SEQUENCE).contents();
+        while (sequence.hasNext()) {
+            Der.Tlv item = sequence.next();
+            if (item.tag() == Der.CONTEXT_0) return item.value();
+        }
+        return null;
+    }
+
+    private static byte[] encoded(X509Certificate certificate) {
+        try {
+            return certificate.getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @param path       validated path, excluding the trust anchor. Empty if
+     *                   the certificate is a trust anchor itself.
+     * @param validUntil the earliest expiry of certificates in the path.
+     */
+    public record TrustedPath(CertPath path, X509Certificate anchor, Instant validUntil) {
+    }
+
+    public record Stats(long hits, long misses, int size) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+
+    public static class TrustValidationException extends Exception {
+
+        public TrustValidationException(String message) {
+            super(message);
+        }
+
+        public TrustValidationException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
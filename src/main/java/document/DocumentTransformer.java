@@ -1,14 +1,23 @@
 package document;
 
+import c14n.Canonicalizer;
 import https.github_com.vkuzel.xades_demo.SingableDocumentType;
+import jfr.ParseEvent;
+import jfr.SerializationEvent;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 
+import javax.xml.XMLConstants;
 import javax.xml.bind.*;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
@@ -16,10 +25,7 @@ import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static javax.xml.transform.OutputKeys.INDENT;
@@ -27,6 +33,34 @@ import static javax.xml.transform.OutputKeys.INDENT;
 @SuppressWarnings("unused")
 public class DocumentTransformer {
 
+    // Maximum nesting of elements in parsed untrusted documents. Signed
+    // documents are shallow, deeper ones are rather an attack on the parser.
+    private static final int MAX_ELEMENT_DEPTH = 256;
+
+    // Building a parser costs more than parsing a small document, so the
+    // secure parsers are reused, one per thread as they are not thread-safe.
+    private static final ThreadLocal<DocumentBuilder> SECURE_DOCUMENT_BUILDER =
+            ThreadLocal.withInitial(DocumentTransformer::createSecureDocumentBuilder);
+
+    // The factory is thread-safe once configured, readers are not.
+    private static final XMLInputFactory SECURE_INPUT_FACTORY = createSecureInputFactory();
+
+    private static final ErrorHandler THROWING_ERROR_HANDLER = new ErrorHandler() {
+        @Override
+        public void warning(SAXParseException exception) {
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+    };
+
     public static String toString(Node node) {
         return new String(toBytes(node), UTF_8);
     }
@@ -46,16 +80,46 @@ public class DocumentTransformer {
     }
 
     public static byte[] toBytes(Node node) {
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
         try {
             Transformer transformer = TransformerFactory.newDefaultInstance().newTransformer();
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             transformer.transform(new DOMSource(node), new StreamResult(outputStream));
-            return outputStream.toByteArray();
+            byte[] bytes = outputStream.toByteArray();
+            event.end();
+            if (event.shouldCommit()) {
+                event.bytes = bytes.length;
+                event.commit();
+            }
+            return bytes;
         } catch (TransformerException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Serializes the document in its canonical form (C14N 1.0, without
+     * comments), the octets the signers digest the document by. Stored so,
+     * the document digests of the enveloped signature are the digests of the
+     * stored bytes without the signature, see
+     * {@link xades.CanonicalStorageValidator}. The comments are dropped, the
+     * signatures do not cover them.
+     */
+    public static byte[] toCanonicalBytes(Document document) {
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new Canonicalizer().canonicalize(document, null, outputStream::write);
+        byte[] bytes = outputStream.toByteArray();
+        event.end();
+        if (event.shouldCommit()) {
+            event.bytes = bytes.length;
+            event.commit();
+        }
+        return bytes;
+    }
+
     public static Document toDocument(JAXBElement<?> jaxbElement) {
         try {
             Marshaller marshaller = createMarshaller();
@@ -98,6 +162,44 @@ public class DocumentTransformer {
         }
     }
 
+    /**
+     * Parses an untrusted document with secure processing: doctype
+     * declarations (thus external entities) and XInclude are rejected and
+     * the JDK parser limits apply.
+     */
+    public static Document parse(InputStream inputStream) throws IOException, SAXException {
+        DocumentBuilder documentBuilder = SECURE_DOCUMENT_BUILDER.get();
+        // The default handler prints errors to stderr, they are reported by
+        // the thrown exception anyway. Reset drops the handler, so it is set
+        // for every parse.
+        documentBuilder.setErrorHandler(THROWING_ERROR_HANDLER);
+        ParseEvent event = new ParseEvent();
+        // The stream is counted only for the recorded event.
+        CountingInputStream countingStream = event.isEnabled() ? new CountingInputStream(inputStream) : null;
+        event.begin();
+        try {
+            Document document = documentBuilder.parse(countingStream != null ? countingStream : inputStream);
+            event.end();
+            if (event.shouldCommit()) {
+                event.bytes = countingStream.count;
+                event.commit();
+            }
+            return document;
+        } finally {
+            documentBuilder.reset();
+        }
+    }
+
+    /**
+     * Streams an untrusted document with the protections of {@link #parse}:
+     * a doctype declaration is not processed, it is reported as a DTD event
+     * for the caller to reject, external entities are not resolved and the
+     * JDK parser limits apply.
+     */
+    public static XMLStreamReader streamReader(InputStream inputStream) throws XMLStreamException {
+        return SECURE_INPUT_FACTORY.createXMLStreamReader(inputStream);
+    }
+
     public static <T> JAXBElement<T> fromDocument(Node node, Class<T> type) {
         try {
             Unmarshaller unmarshaller = createUnmarshaller();
@@ -130,13 +232,81 @@ public class DocumentTransformer {
         }
     }
 
+    private static DocumentBuilder createSecureDocumentBuilder() {
+        try {
+            DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newDefaultNSInstance();
+            documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            documentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+            documentBuilderFactory.setAttribute(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+            documentBuilderFactory.setAttribute("jdk.xml.maxElementDepth", String.valueOf(MAX_ELEMENT_DEPTH));
+            documentBuilderFactory.setXIncludeAware(false);
+            documentBuilderFactory.setExpandEntityReferences(false);
+            return documentBuilderFactory.newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static XMLInputFactory createSecureInputFactory() {
+        XMLInputFactory inputFactory = XMLInputFactory.newDefaultFactory();
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        inputFactory.setProperty("jdk.xml.maxElementDepth", String.valueOf(MAX_ELEMENT_DEPTH));
+        return inputFactory;
+    }
+
     private static Marshaller createMarshaller() throws JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(SingableDocumentType.class);
-        return jaxbContext.createMarshaller();
+        return SingableDocumentContext.JAXB_CONTEXT.createMarshaller();
     }
 
     private static Unmarshaller createUnmarshaller() throws JAXBException {
-        JAXBContext jaxbContext = JAXBContext.newInstance(SingableDocumentType.class);
-        return jaxbContext.createUnmarshaller();
+        return SingableDocumentContext.JAXB_CONTEXT.createUnmarshaller();
+    }
+
+    // The context is expensive to create and thread-safe, it is created once
+    // on the first use. Marshallers are cheap, but not thread-safe.
+    private static class SingableDocumentContext {
+
+        private static final JAXBContext JAXB_CONTEXT = createJaxbContext();
+
+        private static JAXBContext createJaxbContext() {
+            try {
+                return JAXBContext.newInstance(SingableDocumentType.class);
+            } catch (JAXBException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        private CountingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) count += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
     }
 }
@@ -0,0 +1,13 @@
+package document;
+
+import java.time.Duration;
+
+/**
+ * Time spent on parsing and on verifying a signed document.
+ */
+public record ValidationTimes(Duration parse, Duration verify) {
+
+    public Duration total() {
+        return parse.plus(verify);
+    }
+}
@@ -0,0 +1,16 @@
+package jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Marking of Id attributes, so same-document references can be resolved.
+ */
+@Name("xades.demo.IdMarking")
+@Label("Id Marking")
+@Category({"XAdES Demo", "Signature"})
+@StackTrace(false)
+public class IdMarkingEvent extends Event {
+
+    @Label("Marked Elements")
+    public int elements;
+}
@@ -0,0 +1,17 @@
+package jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Secure parsing of a document to validate.
+ */
+@Name("xades.demo.Parse")
+@Label("Parse")
+@Category({"XAdES Demo", "Document"})
+@StackTrace(false)
+public class ParseEvent extends Event {
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
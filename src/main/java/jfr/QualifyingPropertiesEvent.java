@@ -0,0 +1,24 @@
+package jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Building of the XAdES QualifyingProperties, including their marshalling
+ * and import into the signed document.
+ */
+@Name("xades.demo.QualifyingProperties")
+@Label("Qualifying Properties")
+@Category({"XAdES Demo", "Signature"})
+@StackTrace(false)
+public class QualifyingPropertiesEvent extends Event {
+
+    @Label("Target")
+    public String target;
+
+    @Label("Certificate Digest Algorithm")
+    public String digestAlgorithm;
+
+    @Label("Certificate Bytes")
+    @DataAmount
+    public long certificateBytes;
+}
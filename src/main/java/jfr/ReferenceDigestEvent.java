@@ -0,0 +1,35 @@
+package jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Dereferencing, transformation (canonicalization) and digest of one
+ * reference. The canonical octets are streamed into the digest, so the two
+ * cannot be timed separately.
+ */
+@Name("xades.demo.ReferenceDigest")
+@Label("Reference Digest")
+@Category({"XAdES Demo", "Signature"})
+@StackTrace(false)
+public class ReferenceDigestEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("URI")
+    public String uri;
+
+    @Label("Transforms")
+    @Description("Space separated transform algorithm URIs")
+    public String transforms;
+
+    @Label("Digest Algorithm")
+    public String digestAlgorithm;
+
+    @Label("Digested Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Valid")
+    public boolean valid;
+}
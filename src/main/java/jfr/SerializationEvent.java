@@ -0,0 +1,17 @@
+package jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Serialization of a DOM node to bytes.
+ */
+@Name("xades.demo.Serialization")
+@Label("Serialization")
+@Category({"XAdES Demo", "Document"})
+@StackTrace(false)
+public class SerializationEvent extends Event {
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,23 @@
+package jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Private key operation over the canonical SignedInfo.
+ */
+@Name("xades.demo.Sign")
+@Label("Private Key Sign")
+@Category({"XAdES Demo", "Signature"})
+@StackTrace(false)
+public class SignEvent extends Event {
+
+    @Label("Signature Algorithm")
+    public String signatureAlgorithm;
+
+    @Label("JCA Algorithm")
+    public String jcaAlgorithm;
+
+    @Label("SignedInfo Bytes")
+    @DataAmount
+    public long bytes;
+}
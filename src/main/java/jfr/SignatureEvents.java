@@ -0,0 +1,320 @@
+package jfr;
+
+import c14n.ParallelDigester;
+import c14n.ReferenceDigester;
+import org.w3c.dom.Document;
+
+import javax.xml.crypto.*;
+import javax.xml.crypto.dsig.*;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.*;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Signs and validates XML signatures recording the {@link ReferenceDigestEvent},
+ * {@link SignEvent} and {@link VerifyEvent} events.
+ * <p>
+ * The JSR 105 implementation does not expose its phases, so they are observed
+ * through its extension points: references are dereferenced by a wrapped
+ * {@link URIDereferencer} and the private and public key operations are done
+ * by a {@link Signature} of a wrapping provider. When none of the events is
+ * enabled, signatures are signed as they are.
+ * <p>
+ * References digested by {@link ReferenceDigester} instead of JSR 105 are
+ * recorded directly.
+ */
+public final class SignatureEvents {
+
+    // Makes the implementation keep the digested octets of references, that
+    // is the only way to tell their size.
+    private static final String CACHE_REFERENCE_PROPERTY = "javax.xml.crypto.dsig.cacheReference";
+    // Provider of the Signature instances used by the JDK implementation.
+    private static final String SIGNATURE_PROVIDER_PROPERTY = "org.jcp.xml.dsig.internal.dom.SignatureProvider";
+    private static final URIDereferencer DEFAULT_DEREFERENCER = XMLSignatureFactory.getInstance("DOM").getURIDereferencer();
+
+    private final String operation;
+    private final String signatureAlgorithm;
+    private final boolean recordReferences;
+    private final List<Digest> digests = new ArrayList<>();
+    private Digest current;
+
+    private SignatureEvents(String operation, SignedInfo signedInfo, boolean recordReferences) {
+        this.operation = operation;
+        this.signatureAlgorithm = signedInfo.getSignatureMethod().getAlgorithm();
+        this.recordReferences = recordReferences;
+    }
+
+    public static void sign(XMLSignature signature, DOMSignContext context) throws MarshalException, XMLSignatureException {
+        boolean recordReferences = new ReferenceDigestEvent().isEnabled();
+        if (!recordReferences && !new SignEvent().isEnabled()) {
+            signature.sign(context);
+            return;
+        }
+
+        SignatureEvents events = new SignatureEvents("sign", signature.getSignedInfo(), recordReferences);
+        context.setProperty(SIGNATURE_PROVIDER_PROPERTY, events.new EventProvider());
+        if (recordReferences) {
+            context.setProperty(CACHE_REFERENCE_PROPERTY, Boolean.TRUE);
+            URIDereferencer dereferencer = context.getURIDereferencer() != null ? context.getURIDereferencer() : DEFAULT_DEREFERENCER;
+            // References are digested one after another, each of them is
+            // dereferenced first. The last digest ends when the SignedInfo
+            // is about to be signed.
+            context.setURIDereferencer((reference, dereferenceContext) -> {
+                events.startDigest((Reference) reference);
+                return dereferencer.dereference(reference, dereferenceContext);
+            });
+        }
+
+        signature.sign(context);
+        events.endDigest();
+        // The digests are known only now, events keep the times of the
+        // phases.
+        for (Digest digest : events.digests) {
+            digest.commit(events.operation, true, digestedBytes(digest.reference()));
+        }
+    }
+
+    /**
+     * Validates the signature value first and then its references. The
+     * references {@link ReferenceDigester} supports are digested by
+     * streaming from the DOM, the others by JSR 105.
+     */
+    public static boolean validate(XMLSignature signature, DOMValidateContext context) throws XMLSignatureException {
+        boolean recordReferences = new ReferenceDigestEvent().isEnabled();
+        SignatureEvents events = new SignatureEvents("validate", signature.getSignedInfo(), recordReferences);
+        if (recordReferences || new VerifyEvent().isEnabled()) {
+            context.setProperty(SIGNATURE_PROVIDER_PROPERTY, events.new EventProvider());
+        }
+        if (recordReferences) {
+            context.setProperty(CACHE_REFERENCE_PROPERTY, Boolean.TRUE);
+        }
+
+        if (!signature.getSignatureValue().validate(context)) return false;
+        boolean valid = true;
+        List<?> references = signature.getSignedInfo().getReferences();
+        ReferenceDigester.Digests referenceDigests = ReferenceDigester.digest(references, context);
+        for (int i = 0; i < references.size(); i++) {
+            Reference reference = (Reference) references.get(i);
+            events.startDigest(reference);
+            // References of the same content are digested together with the
+            // first of them.
+            boolean referenceValid = referenceDigests.validate(i);
+            events.endDigest();
+            if (recordReferences) {
+                ReferenceDigester.Digest digest = referenceDigests.get(i);
+                long bytes = digest != null ? digest.bytes() : digestedBytes(reference);
+                events.digests.get(events.digests.size() - 1).commit(events.operation, referenceValid, bytes);
+            }
+            valid &= referenceValid;
+        }
+        return valid;
+    }
+
+    /**
+     * Digests the document by {@link ReferenceDigester#digestEnveloped} for
+     * a reference of each digest algorithm, recording their
+     * {@link ReferenceDigestEvent}s. The first event takes the time of the
+     * shared canonicalization pass.
+     *
+     * @param transforms       algorithm URIs of the reference transforms.
+     * @param parallelDigester digester of wide documents, or null.
+     * @return digest values in the order of the algorithms.
+     */
+    public static List<byte[]> digestEnveloped(
+            Document document,
+            List<String> transforms,
+            List<String> digestAlgorithms,
+            ParallelDigester parallelDigester
+    ) {
+        ReferenceDigestEvent event = new ReferenceDigestEvent();
+        event.begin();
+        List<ReferenceDigester.Digest> digests = ReferenceDigester.digestEnveloped(document, transforms.get(transforms.size() - 1),
+                digestAlgorithms, parallelDigester);
+        event.end();
+        List<byte[]> digestValues = new ArrayList<>();
+        for (int i = 0; i < digests.size(); i++) {
+            ReferenceDigestEvent referenceEvent = event;
+            if (i > 0) {
+                referenceEvent = new ReferenceDigestEvent();
+                referenceEvent.begin();
+                referenceEvent.end();
+            }
+            if (referenceEvent.shouldCommit()) {
+                referenceEvent.operation = "sign";
+                referenceEvent.uri = "";
+                referenceEvent.digestAlgorithm = digestAlgorithms.get(i);
+                referenceEvent.transforms = String.join(" ", transforms);
+                referenceEvent.bytes = digests.get(i).bytes();
+                referenceEvent.valid = true;
+                referenceEvent.commit();
+            }
+            digestValues.add(digests.get(i).value());
+        }
+        return digestValues;
+    }
+
+    private void startDigest(Reference reference) {
+        endDigest();
+        if (!recordReferences) return;
+        current = new Digest(reference, new ReferenceDigestEvent());
+        current.event.begin();
+        digests.add(current);
+    }
+
+    private void endDigest() {
+        if (current != null) {
+            current.event.end();
+            current = null;
+        }
+    }
+
+    private static long digestedBytes(Reference reference) {
+        // The cached octets are held in memory.
+        try (InputStream digestInputStream = reference.getDigestInputStream()) {
+            return digestInputStream != null ? digestInputStream.available() : -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private record Digest(Reference reference, ReferenceDigestEvent event) {
+
+        private void commit(String operation, boolean valid, long bytes) {
+            if (!event.shouldCommit()) return;
+            event.operation = operation;
+            event.uri = reference.getURI();
+            event.digestAlgorithm = reference.getDigestMethod().getAlgorithm();
+            event.transforms = reference.getTransforms().stream()
+                    .map(Transform::getAlgorithm)
+                    .collect(Collectors.joining(" "));
+            event.bytes = bytes;
+            event.valid = valid;
+            event.commit();
+        }
+    }
+
+    /**
+     * Provides signatures of the default providers, wrapped to record their
+     * key operations.
+     */
+    private class EventProvider extends Provider {
+
+        private EventProvider() {
+            super("XAdESDemoEvents", "1.0", "Records JFR events of signature operations");
+        }
+
+        @Override
+        public Service getService(String type, String algorithm) {
+            if (!"Signature".equals(type)) return null;
+            return new Service(this, type, algorithm, EventSignature.class.getName(), null, null) {
+                @Override
+                public Object newInstance(Object constructorParameter) throws NoSuchAlgorithmException {
+                    return new EventSignature(Signature.getInstance(algorithm));
+                }
+            };
+        }
+    }
+
+    private class EventSignature extends SignatureSpi {
+
+        private final Signature delegate;
+        private long bytes;
+
+        private EventSignature(Signature delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+            delegate.initVerify(publicKey);
+            bytes = 0;
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+            endDigest();
+            delegate.initSign(privateKey);
+            bytes = 0;
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey, SecureRandom random) throws InvalidKeyException {
+            endDigest();
+            delegate.initSign(privateKey, random);
+            bytes = 0;
+        }
+
+        @Override
+        protected void engineUpdate(byte b) throws SignatureException {
+            delegate.update(b);
+            bytes++;
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) throws SignatureException {
+            delegate.update(b, off, len);
+            bytes += len;
+        }
+
+        @Override
+        protected byte[] engineSign() throws SignatureException {
+            SignEvent event = new SignEvent();
+            event.begin();
+            byte[] signatureValue = delegate.sign();
+            event.end();
+            if (event.shouldCommit()) {
+                event.signatureAlgorithm = signatureAlgorithm;
+                event.jcaAlgorithm = delegate.getAlgorithm();
+                event.bytes = bytes;
+                event.commit();
+            }
+            return signatureValue;
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] signatureValue) throws SignatureException {
+            VerifyEvent event = new VerifyEvent();
+            event.begin();
+            boolean valid = delegate.verify(signatureValue);
+            event.end();
+            if (event.shouldCommit()) {
+                event.signatureAlgorithm = signatureAlgorithm;
+                event.jcaAlgorithm = delegate.getAlgorithm();
+                event.bytes = bytes;
+                event.valid = valid;
+                event.commit();
+            }
+            return valid;
+        }
+
+        @Override
+        protected void engineSetParameter(AlgorithmParameterSpec params) throws InvalidAlgorithmParameterException {
+            delegate.setParameter(params);
+        }
+
+        @Override
+        protected AlgorithmParameters engineGetParameters() {
+            return delegate.getParameters();
+        }
+
+        @Override
+        @Deprecated
+        @SuppressWarnings("deprecation")
+        protected void engineSetParameter(String param, Object value) {
+            delegate.setParameter(param, value);
+        }
+
+        @Override
+        @Deprecated
+        @SuppressWarnings("deprecation")
+        protected Object engineGetParameter(String param) {
+            return delegate.getParameter(param);
+        }
+    }
+}
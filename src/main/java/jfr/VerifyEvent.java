@@ -0,0 +1,27 @@
+package jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Public key operation verifying the SignatureValue over the canonical
+ * SignedInfo.
+ */
+@Name("xades.demo.Verify")
+@Label("Public Key Verify")
+@Category({"XAdES Demo", "Signature"})
+@StackTrace(false)
+public class VerifyEvent extends Event {
+
+    @Label("Signature Algorithm")
+    public String signatureAlgorithm;
+
+    @Label("JCA Algorithm")
+    public String jcaAlgorithm;
+
+    @Label("SignedInfo Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Valid")
+    public boolean valid;
+}
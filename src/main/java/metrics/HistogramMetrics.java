@@ -0,0 +1,116 @@
+package metrics;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Counts operations and their errors and keeps histograms of latencies of
+ * the succeeded ones. One instance may be shared by all signers and
+ * validators.
+ */
+public class HistogramMetrics implements SignatureMetrics {
+
+    static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<Operation, OperationMetrics> operations = new EnumMap<>(Operation.class);
+    private final long start = System.nanoTime();
+
+    public HistogramMetrics() {
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationMetrics());
+        }
+    }
+
+    @Override
+    public void succeeded(Operation operation, long durationNanos) {
+        operations.get(operation).latency.record(Math.max(0, durationNanos));
+    }
+
+    @Override
+    public void failed(Operation operation, long durationNanos, Exception exception) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.errors.increment();
+        metrics.errorTypes.computeIfAbsent(exception.getClass().getName(), type -> new LongAdder()).increment();
+    }
+
+    public Snapshot snapshot() {
+        Duration interval = Duration.ofNanos(System.nanoTime() - start);
+        Map<Operation, OperationSnapshot> snapshots = new EnumMap<>(Operation.class);
+        operations.forEach((operation, metrics) -> snapshots.put(operation, metrics.snapshot(interval)));
+        return new Snapshot(snapshots, interval);
+    }
+
+    private static class OperationMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final Map<String, LongAdder> errorTypes = new ConcurrentHashMap<>();
+
+        private OperationSnapshot snapshot(Duration interval) {
+            Map<String, Long> types = new TreeMap<>();
+            errorTypes.forEach((type, count) -> types.put(type, count.sum()));
+            return new OperationSnapshot(latency.snapshot(), errors.sum(), Map.copyOf(types), interval);
+        }
+    }
+
+    /**
+     * @param interval time since the metrics were created.
+     */
+    public record Snapshot(Map<Operation, OperationSnapshot> operations, Duration interval) {
+
+        public OperationSnapshot get(Operation operation) {
+            return operations.get(operation);
+        }
+
+        /**
+         * Exports the metrics as named numbers, e.g. {@code xades_sign.count}
+         * or {@code xmldsig_validate.latency.p99} in nanoseconds.
+         */
+        public void export(BiConsumer<String, Number> exporter) {
+            operations.forEach((operation, snapshot) -> snapshot.export(operation.name().toLowerCase(Locale.ROOT), exporter));
+        }
+    }
+
+    /**
+     * @param latency    latencies of the succeeded operations in nanoseconds.
+     * @param errorTypes errors by the exception class name.
+     */
+    public record OperationSnapshot(
+            LatencyHistogram.Snapshot latency,
+            long errors,
+            Map<String, Long> errorTypes,
+            Duration interval
+    ) {
+
+        public long count() {
+            return latency.count() + errors;
+        }
+
+        /**
+         * @return operations per second, both succeeded and failed.
+         */
+        public double throughput() {
+            return interval.isZero() ? 0 : count() / (interval.toNanos() / 1e9);
+        }
+
+        private void export(String prefix, BiConsumer<String, Number> exporter) {
+            exporter.accept(prefix + ".count", count());
+            exporter.accept(prefix + ".errors", errors);
+            exporter.accept(prefix + ".throughput", throughput());
+            exporter.accept(prefix + ".latency.mean", latency.mean());
+            exporter.accept(prefix + ".latency.max", latency.max());
+            for (double percentile : PERCENTILES) {
+                String name = percentile == Math.rint(percentile)
+                        ? String.valueOf((long) percentile)
+                        : String.valueOf(percentile).replace(".", "");
+                exporter.accept(prefix + ".latency.p" + name, latency.valueAtPercentile(percentile));
+            }
+        }
+    }
+}
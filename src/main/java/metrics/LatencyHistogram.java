@@ -0,0 +1,158 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values, e.g. latencies in nanoseconds.
+ * <p>
+ * Values are counted in log-linear buckets the way HdrHistogram does: every
+ * power of two range is split into {@value #SUB_BUCKETS} buckets, so a value
+ * is reported with a relative error below 1/{@value #SUB_BUCKETS}. Values up
+ * to {@value #SUB_BUCKETS} are exact. Counters are {@link LongAdder}s, which
+ * stripe contended updates, and they are created on the first use of their
+ * bucket only.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Exact buckets followed by the sub-buckets of every remaining power of
+    // two.
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<LongAdder> counts = new AtomicReferenceArray<>(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    public void record(long value) {
+        if (value < 0) throw new IllegalArgumentException("Value " + value + " is negative!");
+        int index = bucket(value);
+        LongAdder count = counts.get(index);
+        if (count == null) {
+            counts.compareAndSet(index, null, new LongAdder());
+            count = counts.get(index);
+        }
+        count.increment();
+        sum.add(value);
+        min.accumulate(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Concurrent records may be seen partially, e.g. counted in a bucket but
+     * not in the sum yet.
+     */
+    public Snapshot snapshot() {
+        long[] snapshotCounts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            LongAdder count = counts.get(i);
+            if (count != null) {
+                snapshotCounts[i] = count.sum();
+                total += snapshotCounts[i];
+            }
+        }
+        return new Snapshot(snapshotCounts, total, sum.sum(), min.get(), max.get());
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The highest value counted in the bucket.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        long next = (subBucket + 1) << shift;
+        // The last bucket ends at the largest long.
+        return next < 0 ? Long.MAX_VALUE : next - 1;
+    }
+
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = count > 0 ? min : 0;
+            this.max = count > 0 ? max : 0;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long sum() {
+            return sum;
+        }
+
+        public long min() {
+            return min;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public double mean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        /**
+         * @param percentile from 0 to 100.
+         * @return the highest value of the bucket holding the percentile,
+         * thus an upper bound of it.
+         */
+        public long valueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile " + percentile + " is out of range!");
+            }
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.max(min, Math.min(max, highestValue(i)));
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Passes the non-empty buckets to the consumer, e.g. to export them
+         * as a cumulative histogram.
+         */
+        public void forEachBucket(BucketConsumer consumer) {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) consumer.accept(highestValue(i), counts[i]);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot[count=%d, min=%d, p50=%d, p99=%d, max=%d]".formatted(
+                    count, min, valueAtPercentile(50), valueAtPercentile(99), max
+            );
+        }
+    }
+
+    public interface BucketConsumer {
+        void accept(long highestValue, long count);
+    }
+}
@@ -0,0 +1,36 @@
+package metrics;
+
+/**
+ * Listener of signing and validation operations, e.g. to bridge them to
+ * a monitoring system. {@link HistogramMetrics} is the built-in one.
+ * <p>
+ * Listeners are called on the thread of the operation, so they have to be
+ * thread-safe and fast.
+ */
+public interface SignatureMetrics {
+
+    SignatureMetrics NONE = new SignatureMetrics() {
+        @Override
+        public void succeeded(Operation operation, long durationNanos) {
+        }
+
+        @Override
+        public void failed(Operation operation, long durationNanos, Exception exception) {
+        }
+    };
+
+    void succeeded(Operation operation, long durationNanos);
+
+    /**
+     * @param exception the validation exception of an invalid signature, or
+     *                  any exception that broke the operation.
+     */
+    void failed(Operation operation, long durationNanos, Exception exception);
+
+    enum Operation {
+        XADES_SIGN,
+        XADES_VALIDATE,
+        XMLDSIG_SIGN,
+        XMLDSIG_VALIDATE
+    }
+}
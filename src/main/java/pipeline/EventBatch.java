@@ -0,0 +1,105 @@
+package pipeline;
+
+import javax.xml.stream.XMLStreamReader;
+import java.util.Arrays;
+
+/**
+ * Parse events handed from the parsing stage to the canonicalization stage
+ * in one ring slot. Events are stored in arrays, which are reused once the
+ * batch comes back to the parser, so only the strings are allocated.
+ * <p>
+ * A start element takes its qualified name, namespace and local name,
+ * followed by the prefix and URI of each namespace declaration and by the
+ * qualified name, namespace, local name and value of each attribute. Text
+ * and comments take their text, processing instructions their target and
+ * data.
+ */
+final class EventBatch {
+
+    static final byte START_ELEMENT = 1;
+    static final byte END_ELEMENT = 2;
+    static final byte CHARACTERS = 3;
+    static final byte COMMENT = 4;
+    static final byte PROCESSING_INSTRUCTION = 5;
+
+    final byte[] types;
+    final int[] declarations;
+    final int[] attributes;
+    String[] strings = new String[1024];
+    int events;
+    int size;
+    // The last batch of the document.
+    boolean last;
+
+    EventBatch(int capacity) {
+        this.types = new byte[capacity];
+        this.declarations = new int[capacity];
+        this.attributes = new int[capacity];
+    }
+
+    boolean isFull() {
+        return events == types.length;
+    }
+
+    void clear() {
+        Arrays.fill(strings, 0, size, null);
+        events = 0;
+        size = 0;
+        last = false;
+    }
+
+    void startElement(XMLStreamReader reader) {
+        int declarationCount = reader.getNamespaceCount();
+        int attributeCount = reader.getAttributeCount();
+        ensureCapacity(3 + 2 * declarationCount + 4 * attributeCount);
+        declarations[events] = declarationCount;
+        attributes[events] = attributeCount;
+        types[events++] = START_ELEMENT;
+        add(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        add(reader.getNamespaceURI());
+        add(reader.getLocalName());
+        for (int i = 0; i < declarationCount; i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String uri = reader.getNamespaceURI(i);
+            add(prefix == null ? "" : prefix);
+            add(uri == null ? "" : uri);
+        }
+        for (int i = 0; i < attributeCount; i++) {
+            add(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)));
+            add(reader.getAttributeNamespace(i));
+            add(reader.getAttributeLocalName(i));
+            add(reader.getAttributeValue(i));
+        }
+    }
+
+    void endElement() {
+        types[events++] = END_ELEMENT;
+    }
+
+    void text(byte type, String text) {
+        ensureCapacity(1);
+        types[events++] = type;
+        add(text);
+    }
+
+    void processingInstruction(String target, String data) {
+        ensureCapacity(2);
+        types[events++] = PROCESSING_INSTRUCTION;
+        add(target);
+        add(data);
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private void ensureCapacity(int count) {
+        if (size + count > strings.length) {
+            strings = Arrays.copyOf(strings, Math.max(strings.length * 2, size + count));
+        }
+    }
+
+    private void add(String string) {
+        strings[size++] = string;
+    }
+}
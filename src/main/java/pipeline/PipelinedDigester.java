@@ -0,0 +1,520 @@
+package pipeline;
+
+import c14n.Canonicalizer;
+import c14n.EventCanonicalizer;
+import c14n.ReferenceDigester;
+import document.DocumentTransformer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+
+/**
+ * Digests a document for the reference of its enveloped signature with empty
+ * URI and inclusive canonicalization while the document is parsed, without
+ * building its DOM.
+ * <p>
+ * Parsing, canonicalization and digesting are stages on three threads,
+ * connected by {@link SpscRing}s of parse event batches and of canonical
+ * octet chunks, so the stages of a large document overlap on different
+ * cores. The parsing and digesting stages run on the executor, the
+ * canonicalization one on the calling thread. Batches and chunks return to
+ * their producer by rings in the opposite direction, so a document of any
+ * size takes the memory of the rings only.
+ * <p>
+ * The canonicalization stage leaves out the signature and builds its DOM
+ * together with its ancestors, without their other content. So the
+ * signature can be validated with the document digests in place of the
+ * document.
+ */
+public final class PipelinedDigester {
+
+    private static final int BATCH_EVENTS = 256;
+    private static final int BATCHES = 16;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int CHUNKS = 16;
+
+    private final ExecutorService executor;
+
+    /**
+     * @param executor runs the parsing and digesting stages, two threads for
+     *                 each document being digested, so it should not be
+     *                 bounded.
+     */
+    public PipelinedDigester(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param digestAlgorithms digest algorithm URIs the document is digested
+     *                         by, e.g. those the references are expected to
+     *                         use.
+     * @return the digests and the signature, or null if the document does
+     * not have exactly one signature enveloped in the document element, or it
+     * cannot be parsed or canonicalized by the stages. The document has to
+     * be validated from its DOM then, which reports the reason.
+     */
+    public Result digest(InputStream inputStream, List<String> digestAlgorithms) {
+        MessageDigest[] messageDigests = new MessageDigest[digestAlgorithms.size()];
+        for (int i = 0; i < messageDigests.length; i++) {
+            messageDigests[i] = messageDigest(digestAlgorithms.get(i));
+        }
+
+        Pipeline pipeline = new Pipeline();
+        Future<Void> parsing = executor.submit(() -> {
+            pipeline.parse(inputStream);
+            return null;
+        });
+        Future<Long> digesting = executor.submit(() -> pipeline.digest(messageDigests));
+        Element signature;
+        try {
+            signature = pipeline.canonicalize();
+        } catch (RuntimeException e) {
+            pipeline.close();
+            Throwable parseFailure = failure(parsing);
+            Throwable digestFailure = failure(digesting);
+            // A failure of another stage closes the rings.
+            Throwable failure = e instanceof SpscRing.ClosedException
+                    ? (parseFailure != null ? parseFailure : digestFailure != null ? digestFailure : e)
+                    : e;
+            if (failure instanceof XMLStreamException || failure instanceof UnsupportedDocumentException
+                    || failure instanceof Canonicalizer.CanonicalizationException) {
+                return null;
+            }
+            if (failure instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException(failure);
+        }
+
+        long bytes = result(digesting);
+        result(parsing);
+        Map<String, ReferenceDigester.Digest> digests = new LinkedHashMap<>();
+        for (int i = 0; i < messageDigests.length; i++) {
+            digests.put(digestAlgorithms.get(i), new ReferenceDigester.Digest(messageDigests[i].digest(), bytes));
+        }
+        return new Result(signature, digests, pipeline.signatureBuilder.ids());
+    }
+
+    private static MessageDigest messageDigest(String digestAlgorithm) {
+        String jcaAlgorithm = ReferenceDigester.jcaDigestAlgorithm(digestAlgorithm);
+        if (jcaAlgorithm == null) throw new IllegalArgumentException("Unsupported digest algorithm " + digestAlgorithm);
+        try {
+            return MessageDigest.getInstance(jcaAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static <T> T result(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Waits for the stage to end, so it does not read the stream any more.
+     *
+     * @return its failure, or null.
+     */
+    private static Throwable failure(Future<?> future) {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e;
+        }
+    }
+
+    /**
+     * @param signature the signature, owned by a document of just the
+     *                  signature and its ancestors.
+     * @param digests   digests of the canonical document without the
+     *                  signature, by the digest algorithm URIs.
+     * @param ids       values of the Id attributes outside the signature, a
+     *                  reference to one of them could be ambiguous.
+     */
+    public record Result(Element signature, Map<String, ReferenceDigester.Digest> digests, Set<String> ids) {
+    }
+
+    /**
+     * Rings and buffers of one document.
+     */
+    private static final class Pipeline {
+
+        private final SpscRing<EventBatch> events = new SpscRing<>(BATCHES);
+        private final SpscRing<EventBatch> freeBatches = new SpscRing<>(BATCHES);
+        private final SpscRing<Chunk> chunks = new SpscRing<>(CHUNKS);
+        private final SpscRing<Chunk> freeChunks = new SpscRing<>(CHUNKS);
+        private final SignatureBuilder signatureBuilder = new SignatureBuilder();
+
+        private Pipeline() {
+            for (int i = 0; i < freeBatches.capacity(); i++) {
+                freeBatches.offer(new EventBatch(BATCH_EVENTS));
+            }
+            for (int i = 0; i < freeChunks.capacity(); i++) {
+                freeChunks.offer(new Chunk());
+            }
+        }
+
+        private void close() {
+            events.close();
+            freeBatches.close();
+            chunks.close();
+            freeChunks.close();
+        }
+
+        /**
+         * The parsing stage.
+         */
+        private void parse(InputStream inputStream) throws XMLStreamException {
+            try {
+                XMLStreamReader reader = DocumentTransformer.streamReader(inputStream);
+                try {
+                    EventBatch batch = freeBatches.take();
+                    while (reader.hasNext()) {
+                        switch (reader.next()) {
+                            case XMLStreamConstants.START_ELEMENT -> batch.startElement(reader);
+                            case XMLStreamConstants.END_ELEMENT -> batch.endElement();
+                            case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                                    batch.text(EventBatch.CHARACTERS, reader.getText());
+                            case XMLStreamConstants.COMMENT -> batch.text(EventBatch.COMMENT, reader.getText());
+                            case XMLStreamConstants.PROCESSING_INSTRUCTION ->
+                                    batch.processingInstruction(reader.getPITarget(), reader.getPIData());
+                            case XMLStreamConstants.DTD, XMLStreamConstants.ENTITY_REFERENCE ->
+                                    throw new UnsupportedDocumentException("Doctype declarations are not supported");
+                            default -> {
+                                // The document start and end have no content.
+                            }
+                        }
+                        if (batch.isFull()) {
+                            events.put(batch);
+                            batch = freeBatches.take();
+                        }
+                    }
+                    batch.last = true;
+                    events.put(batch);
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * The digesting stage.
+         *
+         * @return number of the canonical octets digested.
+         */
+        private long digest(MessageDigest[] messageDigests) {
+            try {
+                long bytes = 0;
+                for (Chunk chunk = chunks.take(); chunk.length >= 0; chunk = chunks.take()) {
+                    for (MessageDigest messageDigest : messageDigests) {
+                        messageDigest.update(chunk.bytes, 0, chunk.length);
+                    }
+                    bytes += chunk.length;
+                    chunk.length = 0;
+                    freeChunks.put(chunk);
+                }
+                return bytes;
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * The canonicalization stage.
+         *
+         * @return the signature.
+         */
+        private Element canonicalize() {
+            ChunkSink sink = new ChunkSink();
+            EventCanonicalizer canonicalizer = new EventCanonicalizer();
+            canonicalizer.startDocument(sink);
+            boolean last = false;
+            while (!last) {
+                EventBatch batch = events.take();
+                String[] strings = batch.strings;
+                int position = 0;
+                for (int i = 0; i < batch.events; i++) {
+                    switch (batch.types[i]) {
+                        case EventBatch.START_ELEMENT -> {
+                            int declarations = batch.declarations[i];
+                            int attributes = batch.attributes[i];
+                            if (signatureBuilder.startElement(strings, position, declarations, attributes)) {
+                                canonicalizer.startElement(strings[position]);
+                                int declaration = position + 3;
+                                for (int j = 0; j < declarations; j++, declaration += 2) {
+                                    canonicalizer.namespace(strings[declaration], strings[declaration + 1]);
+                                }
+                                int attribute = position + 3 + 2 * declarations;
+                                for (int j = 0; j < attributes; j++, attribute += 4) {
+                                    canonicalizer.attribute(strings[attribute], strings[attribute + 1], strings[attribute + 2], strings[attribute + 3]);
+                                }
+                            }
+                            position += 3 + 2 * declarations + 4 * attributes;
+                        }
+                        case EventBatch.END_ELEMENT -> {
+                            if (signatureBuilder.endElement()) canonicalizer.endElement();
+                        }
+                        case EventBatch.CHARACTERS -> {
+                            if (signatureBuilder.characters(strings[position])) canonicalizer.characters(strings[position]);
+                            position++;
+                        }
+                        case EventBatch.COMMENT -> {
+                            // Comments are not canonicalized for the empty URI.
+                            signatureBuilder.comment(strings[position]);
+                            position++;
+                        }
+                        case EventBatch.PROCESSING_INSTRUCTION -> {
+                            if (signatureBuilder.processingInstruction(strings[position], strings[position + 1])) {
+                                canonicalizer.processingInstruction(strings[position], strings[position + 1]);
+                            }
+                            position += 2;
+                        }
+                        default -> throw new IllegalStateException("Unknown event " + batch.types[i]);
+                    }
+                }
+                last = batch.last;
+                batch.clear();
+                freeBatches.put(batch);
+            }
+            canonicalizer.endDocument();
+            sink.end();
+            return signatureBuilder.signature();
+        }
+
+        /**
+         * Copies canonical octets into chunks for the digesting stage.
+         */
+        private final class ChunkSink implements Canonicalizer.Sink {
+
+            private Chunk chunk;
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                while (length > 0) {
+                    if (chunk == null) chunk = freeChunks.take();
+                    int copied = Math.min(length, CHUNK_SIZE - chunk.length);
+                    System.arraycopy(bytes, offset, chunk.bytes, chunk.length, copied);
+                    chunk.length += copied;
+                    offset += copied;
+                    length -= copied;
+                    if (chunk.length == CHUNK_SIZE) {
+                        chunks.put(chunk);
+                        chunk = null;
+                    }
+                }
+            }
+
+            private void end() {
+                if (chunk != null) chunks.put(chunk);
+                chunks.put(Chunk.END);
+            }
+        }
+    }
+
+    private static final class Chunk {
+
+        // Marks the end of the document.
+        private static final Chunk END = new Chunk(-1);
+
+        private final byte[] bytes;
+        private int length;
+
+        private Chunk() {
+            this.bytes = new byte[CHUNK_SIZE];
+        }
+
+        private Chunk(int length) {
+            this.bytes = new byte[0];
+            this.length = length;
+        }
+    }
+
+    /**
+     * Tracks the open elements, so when the signature starts, its ancestors
+     * are built as a DOM, and the events of the signature are built into
+     * the DOM instead of being canonicalized.
+     */
+    private static final class SignatureBuilder {
+
+        private static final String XMLNS_NAMESPACE = XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+
+        // Copies of the start element events of the open elements.
+        private String[][] openElements = new String[16][];
+        private int[] openDeclarations = new int[16];
+        private int[] openAttributes = new int[16];
+        private int depth;
+        private final Set<String> ids = new HashSet<>();
+
+        private Document document;
+        private Element signature;
+        // The element the signature events are built into, while inside the
+        // signature.
+        private Node current;
+
+        /**
+         * @return true if the element is canonicalized.
+         */
+        private boolean startElement(String[] strings, int position, int declarations, int attributes) {
+            if (current != null) {
+                Element element = element(strings, position, declarations, attributes);
+                current.appendChild(element);
+                current = element;
+                if (isSignature(strings, position)) {
+                    throw new UnsupportedDocumentException("Signature inside the signature");
+                }
+                return false;
+            }
+            if (isSignature(strings, position)) {
+                if (depth == 0) throw new UnsupportedDocumentException("Signature is the document element");
+                if (signature != null) throw new UnsupportedDocumentException("More signatures");
+                startSignature(strings, position, declarations, attributes);
+                return false;
+            }
+            open(strings, position, declarations, attributes);
+            return true;
+        }
+
+        /**
+         * @return true if the element is canonicalized.
+         */
+        private boolean endElement() {
+            if (current == null) {
+                depth--;
+                return true;
+            }
+            current = current == signature ? null : current.getParentNode();
+            return false;
+        }
+
+        private boolean characters(String text) {
+            if (current == null) return true;
+            current.appendChild(document.createTextNode(text));
+            return false;
+        }
+
+        private void comment(String text) {
+            if (current != null) current.appendChild(document.createComment(text));
+        }
+
+        private boolean processingInstruction(String target, String data) {
+            if (current == null) return true;
+            current.appendChild(document.createProcessingInstruction(target, data));
+            return false;
+        }
+
+        private Element signature() {
+            if (signature == null) throw new UnsupportedDocumentException("No signature");
+            return signature;
+        }
+
+        private void open(String[] strings, int position, int declarations, int attributes) {
+            if (depth == openElements.length) {
+                openElements = Arrays.copyOf(openElements, depth * 2);
+                openDeclarations = Arrays.copyOf(openDeclarations, depth * 2);
+                openAttributes = Arrays.copyOf(openAttributes, depth * 2);
+            }
+            int length = 3 + 2 * declarations + 4 * attributes;
+            String[] copy = openElements[depth];
+            if (copy == null || copy.length < length) {
+                copy = new String[Math.max(length, 16)];
+                openElements[depth] = copy;
+            }
+            System.arraycopy(strings, position, copy, 0, length);
+            openDeclarations[depth] = declarations;
+            openAttributes[depth] = attributes;
+            depth++;
+            int attribute = position + 3 + 2 * declarations;
+            for (int i = 0; i < attributes; i++, attribute += 4) {
+                if ("Id".equals(strings[attribute + 2])) ids.add(strings[attribute + 3]);
+            }
+        }
+
+        private Set<String> ids() {
+            return ids;
+        }
+
+        private void startSignature(String[] strings, int position, int declarations, int attributes) {
+            document = newDocument();
+            Node parent = document;
+            for (int i = 0; i < depth; i++) {
+                Element ancestor = element(openElements[i], 0, openDeclarations[i], openAttributes[i]);
+                parent.appendChild(ancestor);
+                parent = ancestor;
+            }
+            signature = element(strings, position, declarations, attributes);
+            parent.appendChild(signature);
+            current = signature;
+        }
+
+        private Element element(String[] strings, int position, int declarations, int attributes) {
+            Element element = document.createElementNS(strings[position + 1], strings[position]);
+            int declaration = position + 3;
+            for (int i = 0; i < declarations; i++, declaration += 2) {
+                String prefix = strings[declaration];
+                element.setAttributeNS(XMLNS_NAMESPACE, prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix, strings[declaration + 1]);
+            }
+            int attribute = position + 3 + 2 * declarations;
+            for (int i = 0; i < attributes; i++, attribute += 4) {
+                String namespace = strings[attribute + 1];
+                element.setAttributeNS(namespace == null || namespace.isEmpty() ? null : namespace, strings[attribute], strings[attribute + 3]);
+            }
+            return element;
+        }
+
+        private static boolean isSignature(String[] strings, int position) {
+            return XMLNS.equals(strings[position + 1]) && "Signature".equals(strings[position + 2]);
+        }
+
+        private static Document newDocument() {
+            try {
+                return DocumentBuilderFactory.newDefaultNSInstance().newDocumentBuilder().newDocument();
+            } catch (ParserConfigurationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * The document cannot be digested by the stages.
+     */
+    private static class UnsupportedDocumentException extends RuntimeException {
+
+        private UnsupportedDocumentException(String message) {
+            super(message);
+        }
+    }
+}
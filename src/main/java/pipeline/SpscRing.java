@@ -0,0 +1,135 @@
+package pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free ring buffer of one producer thread and one consumer
+ * thread, connecting two stages of a pipeline.
+ * <p>
+ * Each side owns its counter and publishes it by an ordered write, the other
+ * side reads it only when its cached copy says the ring is full or empty. A
+ * side waiting for the other spins first, as stages hand over elements
+ * frequently, then it yields and parks briefly.
+ * <p>
+ * When a stage fails the ring is closed, so the stage on the other side
+ * does not wait forever.
+ */
+public final class SpscRing<E> {
+
+    // Spinning on a single core only delays the other side.
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 1000 : 0;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 20_000;
+
+    private final Object[] elements;
+    private final int mask;
+    // The next index to poll, written by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    // The next index to offer, written by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    // The head as the producer last read it.
+    private long producerHead;
+    // The tail as the consumer last read it.
+    private long consumerTail;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    public SpscRing(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity has to be positive!");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.elements = new Object[size];
+        this.mask = size - 1;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * Called by the producer.
+     *
+     * @return false if the ring is full.
+     */
+    public boolean offer(E element) {
+        long index = tail.get();
+        if (index - producerHead == elements.length) {
+            producerHead = head.get();
+            if (index - producerHead == elements.length) return false;
+        }
+        elements[(int) index & mask] = element;
+        tail.lazySet(index + 1);
+        return true;
+    }
+
+    /**
+     * Called by the consumer.
+     *
+     * @return the oldest element, or null if the ring is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long index = head.get();
+        if (index == consumerTail) {
+            consumerTail = tail.get();
+            if (index == consumerTail) return null;
+        }
+        int slot = (int) index & mask;
+        E element = (E) elements[slot];
+        elements[slot] = null;
+        head.lazySet(index + 1);
+        return element;
+    }
+
+    /**
+     * Offers the element, waiting while the ring is full.
+     *
+     * @throws ClosedException if the ring was closed.
+     */
+    public void put(E element) {
+        for (int attempt = 0; !offer(element); attempt++) {
+            await(attempt);
+        }
+    }
+
+    /**
+     * Polls an element, waiting while the ring is empty.
+     *
+     * @throws ClosedException if the ring was closed.
+     */
+    public E take() {
+        E element;
+        for (int attempt = 0; (element = poll()) == null; attempt++) {
+            await(attempt);
+        }
+        return element;
+    }
+
+    /**
+     * Makes the waiting sides fail, called when either of them fails.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    private void await(int attempt) {
+        if (closed) throw new ClosedException();
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    public static class ClosedException extends RuntimeException {
+
+        public ClosedException() {
+            super("Ring is closed!");
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package xades;
+
+import c14n.ReferenceDigester;
+import document.DocumentTransformer;
+import document.ValidationTimes;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import pipeline.PipelinedDigester;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static xades.DocumentReferences.child;
+import static xades.DocumentReferences.isSignatureElement;
+
+/**
+ * Validates documents stored in their canonical form, see
+ * {@link DocumentTransformer#toCanonicalBytes(Document)}, without building
+ * their DOM. The enveloped signature is the last child of the document
+ * element, so the canonical octets the document references digest are the
+ * stored bytes without the byte range of the signature. The bytes around
+ * the range are streamed into the digests, and only the signature is
+ * parsed, within the start tag of the document element, whose namespaces
+ * and xml attributes it inherits.
+ * <p>
+ * The stored bytes are the canonical form if their digests equal the signed
+ * ones. Otherwise, and for documents whose signature cannot be found by the
+ * bytes, the document is validated by the {@link XAdESValidator} from its
+ * DOM, which reports failures the same way.
+ */
+public class CanonicalStorageValidator {
+
+    private static final byte[] SIGNATURE_END = "Signature>".getBytes(US_ASCII);
+
+    private final XAdESValidator validator;
+
+    public CanonicalStorageValidator(XAdESValidator validator) {
+        this.validator = validator;
+    }
+
+    /**
+     * @return time spent on digesting the document, and on validation of
+     * the signature.
+     */
+    public ValidationTimes validate(byte[] content) throws XAdESValidationException {
+        ValidationTimes times = validateCanonical(ByteBuffer.wrap(content));
+        return times != null ? times : validator.validate(content);
+    }
+
+    /**
+     * The file is mapped into memory, so the bytes are digested without
+     * being copied into the heap.
+     */
+    public ValidationTimes validate(Path path) throws XAdESValidationException {
+        ValidationTimes times;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // A buffer maps up to 2 GB.
+            times = channel.size() <= Integer.MAX_VALUE
+                    ? validateCanonical(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+                    : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return times != null ? times : validator.validate(path);
+    }
+
+    /**
+     * @return null if the document has to be validated from its DOM.
+     */
+    ValidationTimes validateCanonical(ByteBuffer content) throws XAdESValidationException {
+        long start = System.nanoTime();
+        SignatureRange range = SignatureRange.find(content);
+        if (range == null) return null;
+        Element signature = parseSignature(content, range);
+        if (signature == null) return null;
+
+        List<Element> references = DocumentReferences.of(signature, Set.of());
+        if (references == null || references.isEmpty()) return null;
+        Map<String, ReferenceDigester.Digest> digests = digest(content, range, references);
+        for (Element reference : references) {
+            Element digestMethod = child(reference, "DigestMethod");
+            Element digestValue = child(reference, "DigestValue");
+            ReferenceDigester.Digest digest = digests.get(digestMethod.getAttribute("Algorithm"));
+            byte[] signedDigest;
+            try {
+                signedDigest = Base64.getMimeDecoder().decode(digestValue.getTextContent().trim());
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            // The stored bytes are not the signed canonical form.
+            if (!MessageDigest.isEqual(signedDigest, digest.value())) return null;
+        }
+        // The document around the signature is the signed octets, no element
+        // with an id can hide there.
+        return validator.validateDigested(new PipelinedDigester.Result(signature, digests, Set.of()), start);
+    }
+
+    /**
+     * Parses the signature within the start and end tags of the document
+     * element.
+     *
+     * @return the signature, or null if the range does not hold one.
+     */
+    private static Element parseSignature(ByteBuffer content, SignatureRange range) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(range.signatureEnd() - range.signatureStart() + 256);
+        write(bytes, content, 0, range.rootStartTagEnd());
+        write(bytes, content, range.signatureStart(), range.signatureEnd());
+        bytes.writeBytes(("</" + range.rootName() + ">").getBytes(UTF_8));
+        Document document;
+        try {
+            document = DocumentTransformer.parse(new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (SAXException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Node signature = document.getDocumentElement().getFirstChild();
+        if (!(signature instanceof Element element) || !isSignatureElement(element, "Signature")
+                || signature.getNextSibling() != null) {
+            return null;
+        }
+        return element;
+    }
+
+    /**
+     * Digests the bytes around the signature once by each digest algorithm
+     * of the references.
+     */
+    private static Map<String, ReferenceDigester.Digest> digest(ByteBuffer content, SignatureRange range, List<Element> references) {
+        Map<String, MessageDigest> messageDigests = new HashMap<>();
+        for (Element reference : references) {
+            String algorithm = child(reference, "DigestMethod").getAttribute("Algorithm");
+            messageDigests.computeIfAbsent(algorithm, key -> messageDigest(ReferenceDigester.jcaDigestAlgorithm(key)));
+        }
+        long bytes = range.signatureStart() + (long) content.limit() - range.signatureEnd();
+        Map<String, ReferenceDigester.Digest> digests = new HashMap<>();
+        for (Map.Entry<String, MessageDigest> entry : messageDigests.entrySet()) {
+            MessageDigest messageDigest = entry.getValue();
+            messageDigest.update(content.duplicate().position(0).limit(range.signatureStart()));
+            messageDigest.update(content.duplicate().position(range.signatureEnd()));
+            digests.put(entry.getKey(), new ReferenceDigester.Digest(messageDigest.digest(), bytes));
+        }
+        return digests;
+    }
+
+    private static void write(ByteArrayOutputStream out, ByteBuffer content, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        content.get(from, bytes);
+        out.writeBytes(bytes);
+    }
+
+    private static MessageDigest messageDigest(String jcaAlgorithm) {
+        try {
+            return MessageDigest.getInstance(jcaAlgorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Byte ranges of a canonical document: the start tag of the document
+     * element, and the signature, which ends right before the end tag of
+     * the document element.
+     *
+     * @param rootStartTagEnd end of the start tag of the document element,
+     *                        with the prolog before it.
+     * @param signatureEnd    start of the end tag of the document element.
+     */
+    record SignatureRange(String rootName, int rootStartTagEnd, int signatureStart, int signatureEnd) {
+
+        /**
+         * @return the ranges, or null if the bytes are not a canonical
+         * document with the signature at the end of the document element.
+         */
+        static SignatureRange find(ByteBuffer content) {
+            // The canonical prolog is processing instructions and comments,
+            // each followed by a line feed.
+            int position = 0;
+            int limit = content.limit();
+            while (position + 1 < limit && content.get(position) == '<'
+                    && (content.get(position + 1) == '?' || content.get(position + 1) == '!')) {
+                byte[] end = content.get(position + 1) == '?' ? new byte[]{'?', '>'} : new byte[]{'-', '-', '>'};
+                int found = indexOf(content, end, position + 2);
+                if (found < 0 || found + end.length >= limit || content.get(found + end.length) != '\n') return null;
+                position = found + end.length + 1;
+            }
+            if (position >= limit || content.get(position) != '<') return null;
+
+            int nameEnd = position + 1;
+            while (nameEnd < limit && content.get(nameEnd) != ' ' && content.get(nameEnd) != '>') nameEnd++;
+            // Attribute values are in quotes, which escape no '>'.
+            int startTagEnd = nameEnd;
+            boolean quoted = false;
+            while (startTagEnd < limit && (quoted || content.get(startTagEnd) != '>')) {
+                if (content.get(startTagEnd) == '"') quoted = !quoted;
+                startTagEnd++;
+            }
+            if (nameEnd == position + 1 || startTagEnd >= limit) return null;
+            String rootName = string(content, position + 1, nameEnd);
+
+            int rootEnd = lastIndexOf(content, ("</" + rootName + ">").getBytes(UTF_8), limit);
+            if (rootEnd <= startTagEnd) return null;
+            // The signature end tag, with a prefix or without.
+            int signatureEndTag = rootEnd - 1;
+            while (signatureEndTag > startTagEnd && content.get(signatureEndTag) != '<') signatureEndTag--;
+            if (content.get(signatureEndTag + 1) != '/' || !endsWith(content, rootEnd, SIGNATURE_END)) return null;
+            String signatureName = string(content, signatureEndTag + 2, rootEnd - 1);
+            if (!signatureName.equals("Signature") && !signatureName.endsWith(":Signature")) return null;
+
+            byte[] signatureStartTag = ("<" + signatureName).getBytes(UTF_8);
+            int signatureStart = signatureEndTag;
+            do {
+                signatureStart = lastIndexOf(content, signatureStartTag, signatureStart);
+            } while (signatureStart > startTagEnd && content.get(signatureStart + signatureStartTag.length) != ' '
+                    && content.get(signatureStart + signatureStartTag.length) != '>');
+            if (signatureStart <= startTagEnd) return null;
+            return new SignatureRange(rootName, startTagEnd + 1, signatureStart, rootEnd);
+        }
+
+        private static int indexOf(ByteBuffer content, byte[] pattern, int from) {
+            for (int i = from; i + pattern.length <= content.limit(); i++) {
+                if (matches(content, i, pattern)) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * @return the last occurrence ending before the index, or -1.
+         */
+        private static int lastIndexOf(ByteBuffer content, byte[] pattern, int before) {
+            for (int i = before - pattern.length; i >= 0; i--) {
+                if (matches(content, i, pattern)) return i;
+            }
+            return -1;
+        }
+
+        private static boolean endsWith(ByteBuffer content, int end, byte[] suffix) {
+            return end >= suffix.length && matches(content, end - suffix.length, suffix);
+        }
+
+        private static boolean matches(ByteBuffer content, int index, byte[] pattern) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (content.get(index + j) != pattern[j]) return false;
+            }
+            return true;
+        }
+
+        private static String string(ByteBuffer content, int from, int to) {
+            byte[] bytes = new byte[to - from];
+            content.get(from, bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package xades;
+
+import c14n.Canonicalizer;
+import c14n.ReferenceDigester;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.crypto.dsig.Transform;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+
+/**
+ * References of an enveloped signature validated without the DOM of the
+ * document, by the {@link PipelinedValidator} and the
+ * {@link CanonicalStorageValidator}. The document references have to digest
+ * the document by the enveloped signature and an inclusive canonicalization
+ * transform, whose octets the validators digest themselves. Other references
+ * have to point into the signature, the rest of the document is not parsed.
+ */
+final class DocumentReferences {
+
+    private DocumentReferences() {
+    }
+
+    /**
+     * @param idsOutside values of the Id attributes outside the signature,
+     *                   the references pointing to them are ambiguous.
+     * @return references to the whole document, or null if the signature
+     * has another reference.
+     */
+    static List<Element> of(Element signature, Set<String> idsOutside) {
+        Element signedInfo = child(signature, "SignedInfo");
+        if (signedInfo == null) return null;
+        List<Element> references = new ArrayList<>();
+        for (Node node = signedInfo.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!(node instanceof Element reference) || !isSignatureElement(reference, "Reference")) continue;
+            if (!reference.hasAttribute("URI")) return null;
+            String uri = reference.getAttribute("URI");
+            if (!uri.isEmpty()) {
+                if (!uri.startsWith("#") || uri.startsWith("#xpointer(")) return null;
+                String id = uri.substring(1);
+                if (idsOutside.contains(id) || !hasId(signature, id)) return null;
+                continue;
+            }
+            Element digestMethod = child(reference, "DigestMethod");
+            if (digestMethod == null || child(reference, "DigestValue") == null
+                    || ReferenceDigester.jcaDigestAlgorithm(digestMethod.getAttribute("Algorithm")) == null) {
+                return null;
+            }
+            if (!isEnvelopedInclusive(transformAlgorithms(reference))) return null;
+            references.add(reference);
+        }
+        return references;
+    }
+
+    static Element child(Element element, String localName) {
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element child && isSignatureElement(child, localName)) return child;
+        }
+        return null;
+    }
+
+    static boolean isSignatureElement(Element element, String localName) {
+        return XMLNS.equals(element.getNamespaceURI()) && localName.equals(element.getLocalName());
+    }
+
+    private static boolean isEnvelopedInclusive(List<String> transforms) {
+        if (transforms.size() != 2 || !Transform.ENVELOPED.equals(transforms.get(0))) return false;
+        Canonicalizer.Algorithm algorithm = Canonicalizer.Algorithm.of(transforms.get(1));
+        return algorithm != null && !algorithm.isExclusive();
+    }
+
+    private static List<String> transformAlgorithms(Element reference) {
+        List<String> algorithms = new ArrayList<>();
+        Element transforms = child(reference, "Transforms");
+        for (Node node = transforms != null ? transforms.getFirstChild() : null; node != null; node = node.getNextSibling()) {
+            if (node instanceof Element transform && isSignatureElement(transform, "Transform")) {
+                // The enveloped and inclusive canonicalization transforms
+                // have no parameters, whitespace aside.
+                if (hasChildElement(transform)) return List.of();
+                algorithms.add(transform.getAttribute("Algorithm"));
+            }
+        }
+        return algorithms;
+    }
+
+    private static boolean hasChildElement(Element element) {
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element) return true;
+        }
+        return false;
+    }
+
+    private static boolean hasId(Element element, String id) {
+        if (id.equals(element.getAttribute("Id"))) return true;
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element child && hasId(child, id)) return true;
+        }
+        return false;
+    }
+}
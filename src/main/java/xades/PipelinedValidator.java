@@ -0,0 +1,122 @@
+package xades;
+
+import document.ValidationTimes;
+import org.w3c.dom.Element;
+import pipeline.PipelinedDigester;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static xades.DocumentReferences.child;
+
+/**
+ * Validates large documents without building their DOM: the document is
+ * parsed, canonicalized and digested by the stages of a
+ * {@link PipelinedDigester} on separate threads, so a single validation is
+ * not bound to one core. Then the {@link XAdESValidator} validates the
+ * signature with the document digests.
+ * <p>
+ * Smaller documents do not pay off the hand-over between threads, they are
+ * validated by the {@link XAdESValidator} right away. So are documents the
+ * stages do not support, e.g. with a reference the stages did not digest,
+ * it reports their failures the same way.
+ */
+public class PipelinedValidator {
+
+    private static final long DEFAULT_MINIMUM_SIZE = 1024 * 1024;
+
+    // Stages of all validators share the threads, two of them for each
+    // document being validated.
+    private static final ExecutorService STAGES = Executors.newCachedThreadPool(new StageThreadFactory());
+
+    private final XAdESValidator validator;
+    private final long minimumSize;
+    private final List<String> documentDigestAlgorithms;
+    private final PipelinedDigester digester = new PipelinedDigester(STAGES);
+
+    public PipelinedValidator(XAdESValidator validator) {
+        this(validator, DEFAULT_MINIMUM_SIZE, List.of(XAdESSigner.SHA256_DIGEST_ALGORITHM));
+    }
+
+    /**
+     * @param minimumSize              size in bytes from which documents are
+     *                                 validated by the stages.
+     * @param documentDigestAlgorithms digest algorithm URIs the stages digest
+     *                                 the document by, those of the
+     *                                 document references of the signer.
+     */
+    public PipelinedValidator(XAdESValidator validator, long minimumSize, List<String> documentDigestAlgorithms) {
+        this.validator = validator;
+        this.minimumSize = minimumSize;
+        this.documentDigestAlgorithms = List.copyOf(documentDigestAlgorithms);
+    }
+
+    /**
+     * @return time spent on parsing together with digesting the document,
+     * and on validation of the signature.
+     */
+    public ValidationTimes validate(byte[] content) throws XAdESValidationException {
+        if (content.length < minimumSize) return validator.validate(content);
+        ValidationTimes times = validate(new ByteArrayInputStream(content));
+        return times != null ? times : validator.validate(content);
+    }
+
+    public ValidationTimes validate(Path path) throws XAdESValidationException {
+        try {
+            if (Files.size(path) < minimumSize) return validator.validate(path);
+            ValidationTimes times;
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                times = validate(inputStream);
+            }
+            return times != null ? times : validator.validate(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return null if the document has to be validated from its DOM.
+     */
+    private ValidationTimes validate(InputStream inputStream) throws XAdESValidationException {
+        long start = System.nanoTime();
+        PipelinedDigester.Result result = digester.digest(inputStream, documentDigestAlgorithms);
+        if (result == null || !isDigested(result)) return null;
+        return validator.validateDigested(result, start);
+    }
+
+    /**
+     * Whether the document references have digests of the stages, and the
+     * other references point into the signature unambiguously.
+     */
+    private static boolean isDigested(PipelinedDigester.Result result) {
+        List<Element> references = DocumentReferences.of(result.signature(), result.ids());
+        if (references == null) return false;
+        for (Element reference : references) {
+            Element digestMethod = child(reference, "DigestMethod");
+            if (!result.digests().containsKey(digestMethod.getAttribute("Algorithm"))) return false;
+        }
+        return true;
+    }
+
+    private static class StageThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threads = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pipelined-validator-stage-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
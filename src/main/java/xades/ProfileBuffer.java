@@ -0,0 +1,32 @@
+package xades;
+
+import java.io.ByteArrayOutputStream;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Base64;
+
+/**
+ * Canonical SignedInfo of the profile signer and verifier, handed to the
+ * signature without copying.
+ */
+class ProfileBuffer extends ByteArrayOutputStream {
+
+    ProfileBuffer() {
+        super(2048);
+    }
+
+    void writeAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            write(string.charAt(i));
+        }
+    }
+
+    void writeBase64(byte[] digest, byte[] encoded) {
+        int length = Base64.getEncoder().encode(digest, encoded);
+        write(encoded, 0, length);
+    }
+
+    void update(Signature signature) throws SignatureException {
+        signature.update(buf, 0, count);
+    }
+}
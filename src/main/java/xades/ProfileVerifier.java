@@ -0,0 +1,344 @@
+package xades;
+
+import c14n.Canonicalizer;
+import c14n.ParallelDigester;
+import c14n.ReferenceDigester;
+import certificate.CertificateCache;
+import jfr.ReferenceDigestEvent;
+import jfr.VerifyEvent;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.security.*;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+
+/**
+ * Verifies signatures of the profile {@link XAdESSigner} and
+ * {@link XAdESProfileSigner} create, without unmarshalling the JSR 105
+ * signature object model.
+ * <p>
+ * The profile is detected structurally: exactly the SignedInfo of a C14N
+ * 1.0 canonicalization, an RSA-SHA256 or RSA-SHA512 signature method, an
+ * enveloped reference to the whole document and a reference to the signed
+ * properties in the signature's own object, both SHA-256 digested, and a
+ * KeyInfo of X.509 certificates. The references and SignedInfo are then
+ * canonicalized by the {@link Canonicalizer} and the signature is verified
+ * by a {@link Signature} reused per thread.
+ * <p>
+ * The verifier only confirms valid signatures. A signature of any other
+ * structure, an invalid one or one the JSR 105 secure validation would
+ * reject is left to the generic path, which decides and reports why. So
+ * both paths accept the same documents, and invalid ones pay for both.
+ */
+final class ProfileVerifier {
+
+    private static final String XADES_NAMESPACE = QualifyingPropertiesCodec.XADES_NAMESPACE;
+    private static final String ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM = "http://www.w3.org/2000/09/xmldsig#enveloped-signature";
+    private static final String SIGNED_PROPERTIES_REFERENCE_TYPE = "http://uri.etsi.org/01903#SignedProperties";
+    private static final String SHA256_DIGEST_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#sha256";
+    private static final Map<String, String> JCA_ALGORITHMS = Map.of(
+            XAdESSigner.RSA_SHA256_SIGN_ALGORITHM, "SHA256withRSA",
+            XAdESSigner.RSA_SHA512_SIGN_ALGORITHM, "SHA512withRSA"
+    );
+    // Smallest RSA key the JSR 105 secure validation accepts.
+    private static final int MIN_RSA_KEY_SIZE = 1024;
+    private static final String DOCUMENT_TRANSFORMS = ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM + " " + Canonicalizer.ALGORITHM;
+
+    private static final ThreadLocal<Engine> ENGINES = ThreadLocal.withInitial(Engine::new);
+
+    private ProfileVerifier() {
+    }
+
+    /**
+     * @param signature the only signature of its document, whose signed
+     *                  properties are the only ones marked as an id.
+     * @param parallelDigester digester of a wide document, or null.
+     * @return the signing certificate of a valid signature of the profile,
+     * or null if the generic path has to decide.
+     */
+    static Result verify(Element signature, CertificateCache certificateCache, ParallelDigester parallelDigester) {
+        Profile profile = Profile.detect(signature);
+        if (profile == null) return null;
+        try {
+            List<byte[]> certificates = new ArrayList<>();
+            for (Element certificate : profile.certificates()) {
+                certificates.add(decode(certificate));
+            }
+            CertificateCache.Entry signingCertificate = certificateCache.get(certificates.get(0));
+            if (!(signingCertificate.publicKey() instanceof RSAPublicKey publicKey)
+                    || publicKey.getModulus().bitLength() < MIN_RSA_KEY_SIZE) {
+                return null;
+            }
+
+            Engine engine = ENGINES.get();
+            if (!engine.verifySignature(profile, publicKey)) return null;
+            if (!engine.verifyDigest(profile.documentDigestValue(), "", DOCUMENT_TRANSFORMS, signature.getOwnerDocument(), signature, parallelDigester)) {
+                return null;
+            }
+            if (!engine.verifyDigest(profile.signedPropertiesDigestValue(), profile.signedPropertiesUri(), Canonicalizer.ALGORITHM, profile.signedProperties(), null, null)) {
+                return null;
+            }
+            return new Result(signingCertificate, intermediates(certificates));
+        } catch (CertificateException | InvalidKeyException | SignatureException | IllegalArgumentException
+                 | Canonicalizer.CanonicalizationException e) {
+            // The generic path reports the failure.
+            return null;
+        }
+    }
+
+    private static List<X509Certificate> intermediates(List<byte[]> certificates) throws CertificateException {
+        if (certificates.size() == 1) return List.of();
+        CertificateFactory certificateFactory = CertificateFactory.getInstance("X.509");
+        List<X509Certificate> intermediates = new ArrayList<>();
+        for (byte[] der : certificates.subList(1, certificates.size())) {
+            intermediates.add((X509Certificate) certificateFactory.generateCertificate(new ByteArrayInputStream(der)));
+        }
+        return intermediates;
+    }
+
+    /**
+     * @param intermediates the other KeyInfo certificates, to build the
+     *                      certification path.
+     */
+    record Result(CertificateCache.Entry certificate, List<X509Certificate> intermediates) {
+    }
+
+    private record Profile(
+            Element signedInfo,
+            String signatureAlgorithm,
+            String jcaAlgorithm,
+            Element signatureValue,
+            Element documentDigestValue,
+            Element signedPropertiesDigestValue,
+            String signedPropertiesUri,
+            Element signedProperties,
+            List<Element> certificates
+    ) {
+
+        private static Profile detect(Element signature) {
+            Element signedInfo = firstChild(signature);
+            Element signatureValue = next(signedInfo);
+            Element keyInfo = next(signatureValue);
+            Element object = next(keyInfo);
+            if (!is(signedInfo, XMLNS, "SignedInfo") || !is(signatureValue, XMLNS, "SignatureValue")
+                    || !is(keyInfo, XMLNS, "KeyInfo") || !is(object, XMLNS, "Object") || next(object) != null) {
+                return null;
+            }
+
+            Element canonicalizationMethod = firstChild(signedInfo);
+            Element signatureMethod = next(canonicalizationMethod);
+            Element documentReference = next(signatureMethod);
+            Element signedPropertiesReference = next(documentReference);
+            if (!isMethod(canonicalizationMethod, "CanonicalizationMethod", Canonicalizer.ALGORITHM)
+                    || !is(signatureMethod, XMLNS, "SignatureMethod") || firstChild(signatureMethod) != null
+                    || next(signedPropertiesReference) != null) {
+                return null;
+            }
+            String signatureAlgorithm = signatureMethod.getAttribute("Algorithm");
+            String jcaAlgorithm = JCA_ALGORITHMS.get(signatureAlgorithm);
+            if (jcaAlgorithm == null) return null;
+
+            if (!isReference(documentReference, ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM, Canonicalizer.ALGORITHM)
+                    || !documentReference.hasAttribute("URI") || !documentReference.getAttribute("URI").isEmpty()) {
+                return null;
+            }
+            if (!isReference(signedPropertiesReference, Canonicalizer.ALGORITHM)
+                    || !SIGNED_PROPERTIES_REFERENCE_TYPE.equals(signedPropertiesReference.getAttribute("Type"))) {
+                return null;
+            }
+
+            // The reference has to point to the signed properties of this
+            // signature, and the JSR 105 dereferencer has to find them by the
+            // id too.
+            Element qualifyingProperties = firstChild(object);
+            Element signedProperties = firstChild(qualifyingProperties);
+            if (!is(qualifyingProperties, XADES_NAMESPACE, "QualifyingProperties") || next(qualifyingProperties) != null
+                    || !is(signedProperties, XADES_NAMESPACE, "SignedProperties")) {
+                return null;
+            }
+            String id = signedProperties.getAttribute("Id");
+            String uri = signedPropertiesReference.getAttribute("URI");
+            if (id.isEmpty() || !uri.equals("#" + id) || signature.getOwnerDocument().getElementById(id) != signedProperties) {
+                return null;
+            }
+
+            Element x509Data = firstChild(keyInfo);
+            if (!is(x509Data, XMLNS, "X509Data") || next(x509Data) != null) return null;
+            List<Element> certificates = new ArrayList<>();
+            for (Element certificate = firstChild(x509Data); certificate != null; certificate = next(certificate)) {
+                if (!is(certificate, XMLNS, "X509Certificate")) return null;
+                certificates.add(certificate);
+            }
+            if (certificates.isEmpty()) return null;
+
+            return new Profile(signedInfo, signatureAlgorithm, jcaAlgorithm, signatureValue, digestValue(documentReference),
+                    digestValue(signedPropertiesReference), uri, signedProperties, certificates);
+        }
+
+        /**
+         * The reference has exactly the transforms and a SHA-256 digest.
+         */
+        private static boolean isReference(Element reference, String... transformAlgorithms) {
+            if (!is(reference, XMLNS, "Reference")) return false;
+            Element transforms = firstChild(reference);
+            Element digestMethod = next(transforms);
+            Element digestValue = next(digestMethod);
+            if (!is(transforms, XMLNS, "Transforms") || !isMethod(digestMethod, "DigestMethod", SHA256_DIGEST_ALGORITHM)
+                    || !is(digestValue, XMLNS, "DigestValue") || next(digestValue) != null) {
+                return false;
+            }
+            Element transform = firstChild(transforms);
+            for (String transformAlgorithm : transformAlgorithms) {
+                if (!isMethod(transform, "Transform", transformAlgorithm)) return false;
+                transform = next(transform);
+            }
+            return transform == null;
+        }
+
+        private static Element digestValue(Element reference) {
+            return next(next(firstChild(reference)));
+        }
+
+        private static boolean isMethod(Element element, String localName, String algorithm) {
+            return is(element, XMLNS, localName)
+                    && algorithm.equals(element.getAttribute("Algorithm"))
+                    && firstChild(element) == null;
+        }
+    }
+
+    private static boolean is(Element element, String namespace, String localName) {
+        return element != null && namespace.equals(element.getNamespaceURI()) && localName.equals(element.getLocalName());
+    }
+
+    private static Element firstChild(Node parent) {
+        return parent == null ? null : element(parent.getFirstChild());
+    }
+
+    private static Element next(Element element) {
+        return element == null ? null : element(element.getNextSibling());
+    }
+
+    private static Element element(Node node) {
+        while (node != null && !(node instanceof Element)) {
+            node = node.getNextSibling();
+        }
+        return (Element) node;
+    }
+
+    private static byte[] decode(Element base64) {
+        return Base64.getMimeDecoder().decode(base64.getTextContent());
+    }
+
+    /**
+     * Per thread instances reused by verifications.
+     */
+    private static class Engine {
+
+        private final Canonicalizer canonicalizer = new Canonicalizer();
+        private final MessageDigest messageDigest;
+        private final Canonicalizer.Sink digestSink;
+        private final byte[] digest = new byte[32];
+        private final ProfileBuffer signedInfo = new ProfileBuffer();
+        private final Canonicalizer.Sink signedInfoSink = signedInfo::write;
+        private final Map<String, Signature> signatures = new HashMap<>();
+        private long digested;
+
+        private Engine() {
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            digestSink = (bytes, offset, length) -> {
+                messageDigest.update(bytes, offset, length);
+                digested += length;
+            };
+        }
+
+        private boolean verifySignature(Profile profile, PublicKey publicKey) throws InvalidKeyException, SignatureException {
+            VerifyEvent event = new VerifyEvent();
+            event.begin();
+            signedInfo.reset();
+            canonicalizer.canonicalize(profile.signedInfo(), signedInfoSink);
+            Signature signature = signatures.computeIfAbsent(profile.jcaAlgorithm(), Engine::newSignature);
+            signature.initVerify(publicKey);
+            signedInfo.update(signature);
+            boolean valid = signature.verify(decode(profile.signatureValue()));
+            event.end();
+            if (event.shouldCommit()) {
+                event.signatureAlgorithm = profile.signatureAlgorithm();
+                event.jcaAlgorithm = profile.jcaAlgorithm();
+                event.bytes = signedInfo.size();
+                event.valid = valid;
+                event.commit();
+            }
+            return valid;
+        }
+
+        /**
+         * @param target           the document or the signed properties
+         *                         element.
+         * @param excluded         the enveloped signature left out of the
+         *                         document.
+         * @param parallelDigester digester of a wide document, or null.
+         */
+        private boolean verifyDigest(Element digestValue, String uri, String transforms, Node target, Node excluded, ParallelDigester parallelDigester) {
+            ReferenceDigestEvent event = new ReferenceDigestEvent();
+            event.begin();
+            digested = 0;
+            List<ReferenceDigester.Digest> parallelDigests = parallelDigester != null && target instanceof Document document
+                    ? parallelDigester.digest(document, excluded, Canonicalizer.Algorithm.C14N_10, List.of("SHA-256"))
+                    : null;
+            if (parallelDigests != null) {
+                System.arraycopy(parallelDigests.get(0).value(), 0, digest, 0, digest.length);
+                digested = parallelDigests.get(0).bytes();
+            } else {
+                // A verification which failed while digesting left the digest
+                // partly fed.
+                messageDigest.reset();
+                if (target instanceof Document document) {
+                    canonicalizer.canonicalize(document, excluded, digestSink);
+                } else {
+                    canonicalizer.canonicalize((Element) target, digestSink);
+                }
+                try {
+                    messageDigest.digest(digest, 0, digest.length);
+                } catch (DigestException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            boolean valid = MessageDigest.isEqual(digest, decode(digestValue));
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = "validate";
+                event.uri = uri;
+                event.transforms = transforms;
+                event.digestAlgorithm = SHA256_DIGEST_ALGORITHM;
+                event.bytes = digested;
+                event.valid = valid;
+                event.commit();
+            }
+            return valid;
+        }
+
+        private static Signature newSignature(String jcaAlgorithm) {
+            try {
+                return Signature.getInstance(jcaAlgorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package xades;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.math.BigInteger;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import static java.time.temporal.ChronoUnit.MILLIS;
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+
+/**
+ * Writes and reads the QualifyingProperties of {@link SigningProperties}
+ * directly as DOM, without the JAXB binding of the whole XAdES schema.
+ * <p>
+ * The elements are the ones JAXB marshals from the generated classes, so
+ * both produce equivalent signatures.
+ */
+public final class QualifyingPropertiesCodec {
+
+    public static final String XADES_NAMESPACE = "http://uri.etsi.org/01903/v1.3.2#";
+
+    // Milliseconds and the offset, the way JAXB writes xs:dateTime of
+    // a calendar.
+    private static final DateTimeFormatter SIGNING_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    private static final String DSIG_PREFIX = "ds";
+
+    private QualifyingPropertiesCodec() {
+    }
+
+    /**
+     * Creates the QualifyingProperties element in the owner document, with
+     * the Id attribute of SignedProperties marked as an id.
+     */
+    public static Element encode(Document ownerDocument, SigningProperties properties) {
+        Element qualifyingProperties = ownerDocument.createElementNS(XADES_NAMESPACE, "QualifyingProperties");
+        qualifyingProperties.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns", XADES_NAMESPACE);
+        qualifyingProperties.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:" + DSIG_PREFIX, XMLNS);
+        qualifyingProperties.setAttribute("Target", properties.target());
+
+        Element signedProperties = append(qualifyingProperties, "SignedProperties");
+        signedProperties.setAttribute("Id", properties.signedPropertiesId());
+        signedProperties.setIdAttribute("Id", true);
+
+        Element signedSignatureProperties = append(signedProperties, "SignedSignatureProperties");
+        append(signedSignatureProperties, "SigningTime")
+                .setTextContent(SIGNING_TIME_FORMAT.format(properties.signingTime().truncatedTo(MILLIS)));
+
+        Element cert = append(append(signedSignatureProperties, "SigningCertificate"), "Cert");
+        Element certDigest = append(cert, "CertDigest");
+        appendDsig(certDigest, "DigestMethod").setAttribute("Algorithm", properties.certificateDigestAlgorithm());
+        appendDsig(certDigest, "DigestValue").setTextContent(Base64.getEncoder().encodeToString(properties.certificateDigest()));
+        Element issuerSerial = append(cert, "IssuerSerial");
+        appendDsig(issuerSerial, "X509IssuerName").setTextContent(properties.issuerName());
+        appendDsig(issuerSerial, "X509SerialNumber").setTextContent(properties.serialNumber().toString());
+
+        // Usually the signature policy identifier points to a particular
+        // policy. Alternatively, the empty "implied element" can be used to
+        // state policy can be derived from semantics of the document.
+        append(append(signedSignatureProperties, "SignaturePolicyIdentifier"), "SignaturePolicyImplied");
+        return qualifyingProperties;
+    }
+
+    public static SigningProperties decode(Element qualifyingProperties) throws QualifyingPropertiesException {
+        requireName(qualifyingProperties, XADES_NAMESPACE, "QualifyingProperties");
+        Element signedProperties = child(qualifyingProperties, XADES_NAMESPACE, "SignedProperties");
+        Element signedSignatureProperties = child(signedProperties, XADES_NAMESPACE, "SignedSignatureProperties");
+        Element cert = child(child(signedSignatureProperties, XADES_NAMESPACE, "SigningCertificate"), XADES_NAMESPACE, "Cert");
+        Element certDigest = child(cert, XADES_NAMESPACE, "CertDigest");
+        Element issuerSerial = child(cert, XADES_NAMESPACE, "IssuerSerial");
+        try {
+            return new SigningProperties(
+                    signedProperties.getAttribute("Id"),
+                    qualifyingProperties.getAttribute("Target"),
+                    OffsetDateTime.parse(text(child(signedSignatureProperties, XADES_NAMESPACE, "SigningTime"))),
+                    child(certDigest, XMLNS, "DigestMethod").getAttribute("Algorithm"),
+                    Base64.getMimeDecoder().decode(text(child(certDigest, XMLNS, "DigestValue"))),
+                    text(child(issuerSerial, XMLNS, "X509IssuerName")),
+                    new BigInteger(text(child(issuerSerial, XMLNS, "X509SerialNumber")))
+            );
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new QualifyingPropertiesException(e.getMessage());
+        }
+    }
+
+    private static Element append(Element parent, String localName) {
+        Element element = parent.getOwnerDocument().createElementNS(XADES_NAMESPACE, localName);
+        parent.appendChild(element);
+        return element;
+    }
+
+    private static Element appendDsig(Element parent, String localName) {
+        Element element = parent.getOwnerDocument().createElementNS(XMLNS, DSIG_PREFIX + ":" + localName);
+        parent.appendChild(element);
+        return element;
+    }
+
+    private static Element child(Element parent, String namespace, String localName) throws QualifyingPropertiesException {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element && namespace.equals(element.getNamespaceURI()) && localName.equals(element.getLocalName())) {
+                return element;
+            }
+        }
+        throw new QualifyingPropertiesException("Element %s has no %s child!".formatted(parent.getLocalName(), localName));
+    }
+
+    private static void requireName(Element element, String namespace, String localName) throws QualifyingPropertiesException {
+        if (!namespace.equals(element.getNamespaceURI()) || !localName.equals(element.getLocalName())) {
+            throw new QualifyingPropertiesException("Element %s is not %s!".formatted(element.getLocalName(), localName));
+        }
+    }
+
+    private static String text(Element element) {
+        return element.getTextContent().trim();
+    }
+
+    public static class QualifyingPropertiesException extends Exception {
+
+        public QualifyingPropertiesException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package xades;
+
+import c14n.Canonicalizer;
+import c14n.ReferenceDigester;
+import c14n.SectionDigests;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Writes and reads the {@link SectionDigests} the {@link XAdESSigner} puts
+ * into a signed Object of the signature. The leaves are one Base64 value,
+ * the nodes above them are computed again when the tree is read, and the
+ * root has to match.
+ */
+public final class SectionDigestsCodec {
+
+    public static final String SECTION_DIGESTS_NAMESPACE = "https://github.com/vkuzel/XAdES-Demo/section-digests";
+
+    private SectionDigestsCodec() {
+    }
+
+    /**
+     * Creates the SectionDigests element in the owner document.
+     *
+     * @param digestAlgorithm digest algorithm URI of the tree.
+     */
+    public static Element encode(Document ownerDocument, SectionDigests sectionDigests, String digestAlgorithm) {
+        Element element = ownerDocument.createElementNS(SECTION_DIGESTS_NAMESPACE, "SectionDigests");
+        element.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns", SECTION_DIGESTS_NAMESPACE);
+        element.setAttribute("Canonicalization", sectionDigests.algorithm().uri());
+        element.setAttribute("Algorithm", digestAlgorithm);
+        element.setAttribute("Sections", Integer.toString(sectionDigests.sections()));
+
+        Base64.Encoder encoder = Base64.getEncoder();
+        append(element, "Root").setTextContent(encoder.encodeToString(sectionDigests.root()));
+        byte[] leaves = new byte[sectionDigests.leaves().stream().mapToInt(leaf -> leaf.length).sum()];
+        int offset = 0;
+        for (byte[] leaf : sectionDigests.leaves()) {
+            System.arraycopy(leaf, 0, leaves, offset, leaf.length);
+            offset += leaf.length;
+        }
+        append(element, "Leaves").setTextContent(encoder.encodeToString(leaves));
+        return element;
+    }
+
+    /**
+     * @return whether the element is a SectionDigests element.
+     */
+    public static boolean is(Node node) {
+        return node instanceof Element element && SECTION_DIGESTS_NAMESPACE.equals(element.getNamespaceURI())
+                && "SectionDigests".equals(element.getLocalName());
+    }
+
+    public static SectionDigests decode(Element sectionDigests) throws SectionDigestsException {
+        if (!is(sectionDigests)) {
+            throw new SectionDigestsException("Element %s is not SectionDigests!".formatted(sectionDigests.getLocalName()));
+        }
+        Canonicalizer.Algorithm algorithm = Canonicalizer.Algorithm.of(sectionDigests.getAttribute("Canonicalization"));
+        if (algorithm == null) throw new SectionDigestsException("Unsupported canonicalization algorithm!");
+        String jcaAlgorithm = ReferenceDigester.jcaDigestAlgorithm(sectionDigests.getAttribute("Algorithm"));
+        if (jcaAlgorithm == null) throw new SectionDigestsException("Unsupported digest algorithm!");
+        int digestLength;
+        try {
+            digestLength = MessageDigest.getInstance(jcaAlgorithm).getDigestLength();
+        } catch (NoSuchAlgorithmException e) {
+            throw new SectionDigestsException("Unsupported digest algorithm!");
+        }
+        // Providers may not tell the length of their digests.
+        if (digestLength == 0) throw new SectionDigestsException("Unsupported digest algorithm!");
+        try {
+            int sections = Integer.parseInt(sectionDigests.getAttribute("Sections"));
+            byte[] root = Base64.getMimeDecoder().decode(text(child(sectionDigests, "Root")));
+            byte[] leaves = Base64.getMimeDecoder().decode(text(child(sectionDigests, "Leaves")));
+            // The count is checked against the leaves before anything is
+            // allocated for it.
+            if (leaves.length % digestLength != 0 || sections != leaves.length / digestLength) {
+                throw new SectionDigestsException("Leaves do not match %d sections!".formatted(sections));
+            }
+            List<byte[]> digests = new ArrayList<>(sections);
+            for (int i = 0; i < sections; i++) {
+                digests.add(Arrays.copyOfRange(leaves, i * digestLength, (i + 1) * digestLength));
+            }
+            SectionDigests decoded = SectionDigests.of(algorithm, jcaAlgorithm, digests);
+            if (!Arrays.equals(root, decoded.root())) throw new SectionDigestsException("Root does not match the leaves!");
+            return decoded;
+        } catch (IllegalArgumentException e) {
+            throw new SectionDigestsException(e.getMessage());
+        }
+    }
+
+    private static Element append(Element parent, String localName) {
+        Element element = parent.getOwnerDocument().createElementNS(SECTION_DIGESTS_NAMESPACE, localName);
+        parent.appendChild(element);
+        return element;
+    }
+
+    private static Element child(Element parent, String localName) throws SectionDigestsException {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element && SECTION_DIGESTS_NAMESPACE.equals(element.getNamespaceURI())
+                    && localName.equals(element.getLocalName())) {
+                return element;
+            }
+        }
+        throw new SectionDigestsException("Element %s has no %s child!".formatted(parent.getLocalName(), localName));
+    }
+
+    private static String text(Element element) {
+        return element.getTextContent().trim();
+    }
+
+    public static class SectionDigestsException extends Exception {
+
+        public SectionDigestsException(String message) {
+            super(message);
+        }
+    }
+}
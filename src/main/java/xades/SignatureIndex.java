@@ -0,0 +1,485 @@
+package xades;
+
+import document.DocumentTransformer;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+import static xades.QualifyingPropertiesCodec.XADES_NAMESPACE;
+
+/**
+ * Byte offsets of the signature of a stored document and of its parts, so
+ * a part, e.g. the KeyInfo with the signing certificate, is parsed without
+ * parsing the document. The offsets are found by a scanner of the bytes,
+ * which follows just the tags, comments, CDATA sections and namespace
+ * declarations, and are kept in a sidecar file next to the document.
+ * <p>
+ * A part is parsed from the mapped range of the file, within an element
+ * declaring the namespaces the part inherits. The index is of the first
+ * signature of the document, stored in UTF-8. Documents with a doctype
+ * declaration are not indexed, their entities could not be resolved in a
+ * range.
+ */
+public final class SignatureIndex {
+
+    private static final String SIDECAR_SUFFIX = ".sigidx";
+    private static final int MAGIC = 0x53494458;
+    private static final int VERSION = 1;
+
+    private final long size;
+    private final long lastModified;
+    private final Map<Part, Range> ranges;
+
+    private SignatureIndex(long size, long lastModified, Map<Part, Range> ranges) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.ranges = Collections.unmodifiableMap(ranges);
+    }
+
+    /**
+     * Reads the sidecar index of the document, or scans the document and
+     * writes the sidecar if there is none or the document changed since.
+     */
+    public static SignatureIndex of(Path document) throws IOException, SignatureIndexException {
+        Path sidecar = sidecar(document);
+        if (Files.exists(sidecar)) {
+            SignatureIndex index = read(sidecar);
+            if (index != null && index.isOf(document)) return index;
+        }
+        SignatureIndex index = scan(document);
+        index.write(sidecar);
+        return index;
+    }
+
+    public static Path sidecar(Path document) {
+        return document.resolveSibling(document.getFileName() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Scans the mapped document for the signature.
+     *
+     * @throws SignatureIndexException if the document has no signature, or
+     *                                 cannot be scanned.
+     */
+    public static SignatureIndex scan(Path document) throws IOException, SignatureIndexException {
+        try (FileChannel channel = FileChannel.open(document, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new SignatureIndexException("Document of %d bytes is too large!".formatted(size));
+            Map<Part, Range> ranges = new Scanner(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)).scan();
+            return new SignatureIndex(size, Files.getLastModifiedTime(document).toMillis(), ranges);
+        }
+    }
+
+    /**
+     * @return the index, or null if the file is not a sidecar index of this
+     * version.
+     */
+    public static SignatureIndex read(Path sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            Map<Part, Range> ranges = new EnumMap<>(Part.class);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Part part = Part.valueOf(in.readUTF());
+                long start = in.readLong();
+                long end = in.readLong();
+                Map<String, String> namespaces = new LinkedHashMap<>();
+                int declarations = in.readInt();
+                for (int j = 0; j < declarations; j++) {
+                    namespaces.put(in.readUTF(), in.readUTF());
+                }
+                ranges.put(part, new Range(start, end, namespaces));
+            }
+            return new SignatureIndex(size, lastModified, ranges);
+        } catch (EOFException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public void write(Path sidecar) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecar)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeInt(ranges.size());
+            for (Map.Entry<Part, Range> entry : ranges.entrySet()) {
+                Range range = entry.getValue();
+                out.writeUTF(entry.getKey().name());
+                out.writeLong(range.start());
+                out.writeLong(range.end());
+                out.writeInt(range.namespaces().size());
+                for (Map.Entry<String, String> namespace : range.namespaces().entrySet()) {
+                    out.writeUTF(namespace.getKey());
+                    out.writeUTF(namespace.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the document has the size and modification time it
+     * had when it was scanned.
+     */
+    public boolean isOf(Path document) throws IOException {
+        return Files.size(document) == size && Files.getLastModifiedTime(document).toMillis() == lastModified;
+    }
+
+    /**
+     * @return byte range of the part, or null if the signature has none.
+     */
+    public Range range(Part part) {
+        return ranges.get(part);
+    }
+
+    /**
+     * Parses the part from its mapped range of the document.
+     *
+     * @return the part, or null if the signature has none.
+     * @throws SignatureIndexException if the range does not hold the part,
+     *                                 e.g. the document changed.
+     */
+    public Element parse(Path document, Part part) throws IOException, SignatureIndexException {
+        Range range = ranges.get(part);
+        if (range == null) return null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) (range.end() - range.start()) + 256);
+        bytes.writeBytes(range.wrapperStartTag().getBytes(UTF_8));
+        try (FileChannel channel = FileChannel.open(document, StandardOpenOption.READ)) {
+            if (range.end() > channel.size()) throw new SignatureIndexException("Range of %s is out of the document!".formatted(part));
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, range.start(), range.end() - range.start());
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            bytes.writeBytes(content);
+        }
+        bytes.writeBytes("</wrapper>".getBytes(UTF_8));
+
+        Document parsed;
+        try {
+            parsed = DocumentTransformer.parse(new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (SAXException e) {
+            throw new SignatureIndexException("Range of %s is not an element: %s".formatted(part, e.getMessage()));
+        }
+        Node element = parsed.getDocumentElement().getFirstChild();
+        if (!(element instanceof Element parsedPart) || !part.is(parsedPart) || element.getNextSibling() != null) {
+            throw new SignatureIndexException("Range of %s holds another element!".formatted(part));
+        }
+        return parsedPart;
+    }
+
+    /**
+     * Indexed parts of the signature.
+     */
+    public enum Part {
+        SIGNATURE(XMLNS, "Signature"),
+        SIGNED_INFO(XMLNS, "SignedInfo"),
+        KEY_INFO(XMLNS, "KeyInfo"),
+        QUALIFYING_PROPERTIES(XADES_NAMESPACE, "QualifyingProperties");
+
+        private final String namespace;
+        private final String localName;
+
+        Part(String namespace, String localName) {
+            this.namespace = namespace;
+            this.localName = localName;
+        }
+
+        private boolean is(Element element) {
+            return namespace.equals(element.getNamespaceURI()) && localName.equals(element.getLocalName());
+        }
+    }
+
+    /**
+     * @param start      offset of the start tag.
+     * @param end        offset after the end tag.
+     * @param namespaces namespace declarations in scope of the parent, by
+     *                   prefix, the default namespace by an empty prefix.
+     */
+    public record Range(long start, long end, Map<String, String> namespaces) {
+
+        private String wrapperStartTag() {
+            StringBuilder tag = new StringBuilder("<wrapper");
+            namespaces.forEach((prefix, uri) -> tag.append(prefix.isEmpty() ? " xmlns" : " xmlns:" + prefix)
+                    .append("=\"").append(escape(uri)).append('"'));
+            return tag.append('>').toString();
+        }
+
+        private static String escape(String value) {
+            return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+        }
+    }
+
+    /**
+     * Follows the tags of the document up to the end of the first signature.
+     */
+    private static class Scanner {
+
+        private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        private static final byte[] COMMENT_START = "<!--".getBytes(UTF_8);
+        private static final byte[] COMMENT_END = "-->".getBytes(UTF_8);
+        private static final byte[] CDATA_START = "<![CDATA[".getBytes(UTF_8);
+        private static final byte[] CDATA_END = "]]>".getBytes(UTF_8);
+        private static final byte[] XML_DECLARATION_START = "<?xml ".getBytes(UTF_8);
+        private static final byte[] PROCESSING_INSTRUCTION_END = "?>".getBytes(UTF_8);
+        private static final byte[] TAG_END = ">".getBytes(UTF_8);
+        private static final byte[] EMPTY_TAG_END = "/>".getBytes(UTF_8);
+
+        private final ByteBuffer bytes;
+        private final int limit;
+        private final Map<Part, Range> ranges = new EnumMap<>(Part.class);
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private int position;
+
+        private Scanner(ByteBuffer bytes) {
+            this.bytes = bytes;
+            this.limit = bytes.limit();
+        }
+
+        private Map<Part, Range> scan() throws SignatureIndexException {
+            // UTF-8 byte order mark.
+            if (startsWith(position, UTF_8_BOM)) position = UTF_8_BOM.length;
+            while (position < limit) {
+                byte next = position + 1 < limit ? bytes.get(position + 1) : 0;
+                if (bytes.get(position) != '<') {
+                    // Text, the most of a document.
+                    position++;
+                    while (position < limit && bytes.get(position) != '<') position++;
+                } else if (startsWith(position, COMMENT_START)) {
+                    position = after(position + COMMENT_START.length, COMMENT_END);
+                } else if (startsWith(position, CDATA_START)) {
+                    position = after(position + CDATA_START.length, CDATA_END);
+                } else if (next == '?') {
+                    if (startsWith(position, XML_DECLARATION_START)) requireUtf8(position, after(position + 2, PROCESSING_INSTRUCTION_END));
+                    position = after(position + 2, PROCESSING_INSTRUCTION_END);
+                } else if (next == '!') {
+                    throw new SignatureIndexException("Document with a doctype declaration cannot be indexed!");
+                } else if (next == '/') {
+                    int end = after(position + 2, TAG_END);
+                    if (frames.isEmpty()) throw new SignatureIndexException("End tag at %d has no start tag!".formatted(position));
+                    Frame frame = frames.pop();
+                    if (frame.part() != null) {
+                        ranges.put(frame.part(), new Range(frame.start(), end, frame.namespaces()));
+                        if (frame.part() == Part.SIGNATURE) return ranges;
+                    }
+                    position = end;
+                } else if (startTag()) {
+                    return ranges;
+                }
+            }
+            throw new SignatureIndexException("Document has no signature!");
+        }
+
+        /**
+         * @return whether the tag is an empty signature, which ends the scan.
+         */
+        private boolean startTag() throws SignatureIndexException {
+            int start = position;
+            int nameEnd = nameEnd(position + 1);
+            String name = string(position + 1, nameEnd);
+            Map<String, String> parentNamespaces = frames.isEmpty() ? Map.of() : frames.peek().childNamespaces();
+            Map<String, String> namespaces = parentNamespaces;
+            position = nameEnd;
+            boolean empty;
+            while (true) {
+                skipWhitespace();
+                if (position >= limit) throw new SignatureIndexException("Start tag %s is not closed!".formatted(name));
+                if (bytes.get(position) == '>') {
+                    empty = false;
+                    position++;
+                    break;
+                }
+                if (startsWith(position, EMPTY_TAG_END)) {
+                    empty = true;
+                    position += 2;
+                    break;
+                }
+                int attributeEnd = nameEnd(position);
+                String attribute = string(position, attributeEnd);
+                position = attributeEnd;
+                skipWhitespace();
+                if (position >= limit || bytes.get(position) != '=') {
+                    throw new SignatureIndexException("Attribute %s has no value!".formatted(attribute));
+                }
+                position++;
+                skipWhitespace();
+                byte quote = position < limit ? bytes.get(position) : 0;
+                if (quote != '"' && quote != '\'') throw new SignatureIndexException("Attribute %s is not quoted!".formatted(attribute));
+                int valueEnd = position + 1;
+                while (valueEnd < limit && bytes.get(valueEnd) != quote) valueEnd++;
+                if (valueEnd >= limit) throw new SignatureIndexException("Attribute %s is not closed!".formatted(attribute));
+                if (attribute.equals("xmlns") || attribute.startsWith("xmlns:")) {
+                    if (namespaces == parentNamespaces) namespaces = new HashMap<>(parentNamespaces);
+                    namespaces.put(attribute.equals("xmlns") ? "" : attribute.substring(6), unescape(string(position + 1, valueEnd)));
+                }
+                position = valueEnd + 1;
+            }
+
+            int colon = name.indexOf(':');
+            String namespace = namespaces.get(colon < 0 ? "" : name.substring(0, colon));
+            String localName = name.substring(colon + 1);
+            Part part = part(namespace == null ? "" : namespace, localName);
+            if (empty) {
+                if (part != null) ranges.put(part, new Range(start, position, parentNamespaces));
+                return part == Part.SIGNATURE;
+            }
+            frames.push(new Frame(part, start, parentNamespaces, namespaces));
+            return false;
+        }
+
+        /**
+         * @return the part the element is, if it is in the first signature
+         * or is the first signature.
+         */
+        private Part part(String namespace, String localName) {
+            Frame signature = null;
+            for (Frame frame : frames) {
+                if (frame.part() == Part.SIGNATURE) signature = frame;
+            }
+            if (signature == null) {
+                return !ranges.containsKey(Part.SIGNATURE) && XMLNS.equals(namespace) && localName.equals("Signature") ? Part.SIGNATURE : null;
+            }
+            // SignedInfo and KeyInfo are children of the signature.
+            if (frames.peek() == signature && XMLNS.equals(namespace)) {
+                if (localName.equals("SignedInfo")) return Part.SIGNED_INFO;
+                if (localName.equals("KeyInfo")) return Part.KEY_INFO;
+            }
+            if (XADES_NAMESPACE.equals(namespace) && localName.equals("QualifyingProperties")
+                    && !ranges.containsKey(Part.QUALIFYING_PROPERTIES) && !isOpen(Part.QUALIFYING_PROPERTIES)) {
+                return Part.QUALIFYING_PROPERTIES;
+            }
+            return null;
+        }
+
+        private boolean isOpen(Part part) {
+            for (Frame frame : frames) {
+                if (frame.part() == part) return true;
+            }
+            return false;
+        }
+
+        private void requireUtf8(int from, int to) throws SignatureIndexException {
+            String declaration = string(from, to);
+            int encoding = declaration.indexOf("encoding");
+            if (encoding < 0) return;
+            String value = declaration.substring(encoding + "encoding".length()).replaceAll("^\\s*=\\s*['\"]([^'\"]*)['\"][\\s\\S]*", "$1");
+            if (!value.equalsIgnoreCase("UTF-8") && !value.equalsIgnoreCase("US-ASCII")) {
+                throw new SignatureIndexException("Document in %s cannot be indexed!".formatted(value));
+            }
+        }
+
+        private int nameEnd(int from) {
+            int end = from;
+            while (end < limit) {
+                byte b = bytes.get(end);
+                if (b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '=' || b == '>' || b == '/') break;
+                end++;
+            }
+            return end;
+        }
+
+        private void skipWhitespace() {
+            while (position < limit) {
+                byte b = bytes.get(position);
+                if (b != ' ' && b != '\t' && b != '\n' && b != '\r') return;
+                position++;
+            }
+        }
+
+        /**
+         * @return offset after the first occurrence of the pattern.
+         */
+        private int after(int from, byte[] pattern) throws SignatureIndexException {
+            for (int i = from; i + pattern.length <= limit; i++) {
+                if (bytes.get(i) == pattern[0] && startsWith(i, pattern)) return i + pattern.length;
+            }
+            throw new SignatureIndexException("Document ends before %s!".formatted(new String(pattern, UTF_8)));
+        }
+
+        private boolean startsWith(int index, byte[] pattern) {
+            if (index + pattern.length > limit) return false;
+            for (int i = 0; i < pattern.length; i++) {
+                if (bytes.get(index + i) != pattern[i]) return false;
+            }
+            return true;
+        }
+
+        private String string(int from, int to) {
+            byte[] content = new byte[to - from];
+            bytes.get(from, content);
+            return new String(content, UTF_8);
+        }
+
+        private static String unescape(String value) throws SignatureIndexException {
+            if (value.indexOf('&') < 0) return value;
+            StringBuilder unescaped = new StringBuilder(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                int end = c == '&' ? value.indexOf(';', i) : -1;
+                if (end < 0) {
+                    unescaped.append(c);
+                    continue;
+                }
+                String entity = value.substring(i + 1, end);
+                switch (entity) {
+                    case "amp" -> unescaped.append('&');
+                    case "lt" -> unescaped.append('<');
+                    case "gt" -> unescaped.append('>');
+                    case "quot" -> unescaped.append('"');
+                    case "apos" -> unescaped.append('\'');
+                    default -> unescaped.appendCodePoint(codePoint(entity));
+                }
+                i = end;
+            }
+            return unescaped.toString();
+        }
+
+        private static int codePoint(String entity) throws SignatureIndexException {
+            try {
+                if (entity.startsWith("#x")) return Integer.parseInt(entity.substring(2), 16);
+                if (entity.startsWith("#")) return Integer.parseInt(entity.substring(1));
+            } catch (NumberFormatException e) {
+                // Reported below.
+            }
+            throw new SignatureIndexException("Entity &%s; cannot be resolved!".formatted(entity));
+        }
+
+        /**
+         * @param namespaces      declarations in scope of the parent.
+         * @param childNamespaces declarations in scope of the children.
+         */
+        private record Frame(Part part, int start, Map<String, String> namespaces, Map<String, String> childNamespaces) {
+        }
+    }
+
+    public static class SignatureIndexException extends Exception {
+
+        public SignatureIndexException(String message) {
+            super(message);
+        }
+    }
+}
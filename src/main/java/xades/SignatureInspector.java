@@ -0,0 +1,296 @@
+package xades;
+
+import certificate.CertificateCache;
+import document.DocumentTransformer;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+import static xades.QualifyingPropertiesCodec.XADES_NAMESPACE;
+
+/**
+ * Reads metadata of the first signature of a document, e.g. for triage or
+ * listing, without validating anything. The document is streamed by a StAX
+ * reader until the end of the signature, nothing is kept of the rest of
+ * the document.
+ * <p>
+ * The signer is the first certificate of the KeyInfo. Certificates are
+ * parsed through a {@link CertificateCache}, as most documents come from a
+ * few signers. Without a certificate, the issuer and serial number are
+ * those of the XAdES signing certificate, and the subject the one of
+ * X509SubjectName, if any.
+ * <p>
+ * The metadata is not trusted, the signature has to be validated for that.
+ */
+public class SignatureInspector {
+
+    private final CertificateCache certificateCache;
+
+    public SignatureInspector() {
+        this(new CertificateCache());
+    }
+
+    /**
+     * @param certificateCache cache of signing certificates, which may be
+     *                         shared with validators.
+     */
+    public SignatureInspector(CertificateCache certificateCache) {
+        this.certificateCache = certificateCache;
+    }
+
+    public Metadata inspect(byte[] content) throws SignatureInspectionException {
+        return inspect(new ByteArrayInputStream(content));
+    }
+
+    public Metadata inspect(Path path) throws SignatureInspectionException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return inspect(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the stream up to the end of the first signature, the caller
+     * closes it.
+     */
+    public Metadata inspect(InputStream inputStream) throws SignatureInspectionException {
+        try {
+            XMLStreamReader reader = DocumentTransformer.streamReader(inputStream);
+            try {
+                return inspect(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new SignatureInspectionException(e.getMessage());
+        }
+    }
+
+    private Metadata inspect(XMLStreamReader reader) throws XMLStreamException, SignatureInspectionException {
+        MetadataBuilder builder = null;
+        // Depth of the elements within the signature.
+        int depth = 0;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    String namespace = reader.getNamespaceURI();
+                    String localName = reader.getLocalName();
+                    if (builder == null) {
+                        if (XMLNS.equals(namespace) && localName.equals("Signature")) {
+                            builder = new MetadataBuilder(reader.getAttributeValue(null, "Id"));
+                        }
+                    } else if (builder.startElement(reader, namespace, localName)) {
+                        // The reader is at the end of the element.
+                        continue;
+                    } else {
+                        depth++;
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> {
+                    if (builder == null) continue;
+                    // The signature ends, the rest of the document is not read.
+                    if (depth == 0) return builder.build(certificateCache);
+                    builder.endElement(reader.getNamespaceURI(), reader.getLocalName());
+                    depth--;
+                }
+                case XMLStreamConstants.DTD, XMLStreamConstants.ENTITY_REFERENCE ->
+                        throw new SignatureInspectionException("Doctype declarations are not supported!");
+                default -> {
+                    // Text between the elements is not needed.
+                }
+            }
+        }
+        throw new SignatureInspectionException("Document has no signature!");
+    }
+
+    /**
+     * @param signatureId               Id of the signature, or null.
+     * @param canonicalizationAlgorithm canonicalization algorithm URI of the
+     *                                  SignedInfo.
+     * @param signatureAlgorithm        signature algorithm URI.
+     * @param certificate               the first certificate of the KeyInfo,
+     *                                  or null.
+     * @param signerSubject             subject of the signing certificate,
+     *                                  or null.
+     * @param issuerName                issuer of the signing certificate, or
+     *                                  null.
+     * @param serialNumber              serial number of the signing
+     *                                  certificate, or null.
+     * @param signingTime               XAdES signing time, or null.
+     */
+    public record Metadata(
+            String signatureId,
+            String canonicalizationAlgorithm,
+            String signatureAlgorithm,
+            List<Reference> references,
+            X509Certificate certificate,
+            String signerSubject,
+            String issuerName,
+            BigInteger serialNumber,
+            OffsetDateTime signingTime
+    ) {
+
+        /**
+         * @param uri             URI of the reference, or null if it has none.
+         * @param type            Type of the reference, or null.
+         * @param digestAlgorithm digest algorithm URI.
+         */
+        public record Reference(String uri, String type, String digestAlgorithm) {
+        }
+    }
+
+    /**
+     * Collects the metadata from the elements of the signature.
+     */
+    private static class MetadataBuilder {
+
+        private final String signatureId;
+        private final List<Metadata.Reference> references = new ArrayList<>();
+        private String canonicalizationAlgorithm;
+        private String signatureAlgorithm;
+        private String certificate;
+        private String subjectName;
+        private String issuerName;
+        private String serialNumber;
+        private String signingTime;
+        // Elements the children of which are read.
+        private boolean inSignedInfo;
+        private boolean inReference;
+        private boolean inKeyInfo;
+        private boolean inSigningCertificate;
+        private String referenceUri;
+        private String referenceType;
+
+        private MetadataBuilder(String signatureId) {
+            this.signatureId = signatureId;
+        }
+
+        /**
+         * @return whether the text of the element was read, which moves the
+         * reader to the end of the element.
+         */
+        private boolean startElement(XMLStreamReader reader, String namespace, String localName) throws XMLStreamException {
+            if (XADES_NAMESPACE.equals(namespace)) {
+                switch (localName) {
+                    case "SigningTime" -> {
+                        if (signingTime == null) {
+                            signingTime = reader.getElementText().trim();
+                            return true;
+                        }
+                    }
+                    case "SigningCertificate", "SigningCertificateV2" -> inSigningCertificate = true;
+                    default -> {
+                    }
+                }
+                return false;
+            }
+            if (!XMLNS.equals(namespace)) return false;
+            switch (localName) {
+                case "SignedInfo" -> inSignedInfo = true;
+                case "CanonicalizationMethod" -> {
+                    if (inSignedInfo) canonicalizationAlgorithm = reader.getAttributeValue(null, "Algorithm");
+                }
+                case "SignatureMethod" -> {
+                    if (inSignedInfo) signatureAlgorithm = reader.getAttributeValue(null, "Algorithm");
+                }
+                case "Reference" -> {
+                    inReference = inSignedInfo;
+                    referenceUri = reader.getAttributeValue(null, "URI");
+                    referenceType = reader.getAttributeValue(null, "Type");
+                }
+                case "DigestMethod" -> {
+                    if (inReference) {
+                        references.add(new Metadata.Reference(referenceUri, referenceType, reader.getAttributeValue(null, "Algorithm")));
+                    }
+                }
+                case "KeyInfo" -> inKeyInfo = true;
+                case "X509Certificate" -> {
+                    if (inKeyInfo && certificate == null) {
+                        certificate = reader.getElementText();
+                        return true;
+                    }
+                }
+                case "X509SubjectName" -> {
+                    if (inKeyInfo && subjectName == null) {
+                        subjectName = reader.getElementText().trim();
+                        return true;
+                    }
+                }
+                case "X509IssuerName" -> {
+                    if (inSigningCertificate && issuerName == null) {
+                        issuerName = reader.getElementText().trim();
+                        return true;
+                    }
+                }
+                case "X509SerialNumber" -> {
+                    if (inSigningCertificate && serialNumber == null) {
+                        serialNumber = reader.getElementText().trim();
+                        return true;
+                    }
+                }
+                default -> {
+                }
+            }
+            return false;
+        }
+
+        private void endElement(String namespace, String localName) {
+            if (XADES_NAMESPACE.equals(namespace) && (localName.equals("SigningCertificate") || localName.equals("SigningCertificateV2"))) {
+                inSigningCertificate = false;
+            } else if (XMLNS.equals(namespace)) {
+                switch (localName) {
+                    case "SignedInfo" -> inSignedInfo = false;
+                    case "Reference" -> inReference = false;
+                    case "KeyInfo" -> inKeyInfo = false;
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        private Metadata build(CertificateCache certificateCache) throws SignatureInspectionException {
+            X509Certificate x509Certificate = null;
+            String subject = subjectName;
+            String issuer = issuerName;
+            BigInteger serial = null;
+            try {
+                if (certificate != null) {
+                    x509Certificate = certificateCache.get(Base64.getMimeDecoder().decode(certificate.trim())).certificate();
+                    subject = x509Certificate.getSubjectX500Principal().getName();
+                    issuer = x509Certificate.getIssuerX500Principal().getName();
+                    serial = x509Certificate.getSerialNumber();
+                } else if (serialNumber != null) {
+                    serial = new BigInteger(serialNumber);
+                }
+                return new Metadata(signatureId, canonicalizationAlgorithm, signatureAlgorithm, List.copyOf(references),
+                        x509Certificate, subject, issuer, serial, signingTime != null ? OffsetDateTime.parse(signingTime) : null);
+            } catch (CertificateException | IllegalArgumentException | DateTimeParseException e) {
+                throw new SignatureInspectionException(e.getMessage());
+            }
+        }
+    }
+
+    public static class SignatureInspectionException extends Exception {
+
+        public SignatureInspectionException(String message) {
+            super(message);
+        }
+    }
+}
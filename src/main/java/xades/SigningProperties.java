@@ -0,0 +1,28 @@
+package xades;
+
+import java.math.BigInteger;
+import java.time.OffsetDateTime;
+
+/**
+ * The subset of XAdES signed properties the signer produces: signing time,
+ * signing certificate and the implied signature policy.
+ *
+ * @param signedPropertiesId         Id of the SignedProperties element,
+ *                                   referenced by the signature.
+ * @param target                     reference to the signature, e.g.
+ *                                   {@code #signature-...}.
+ * @param certificateDigestAlgorithm digest algorithm URI of the signing
+ *                                   certificate digest.
+ * @param certificateDigest          digest of the DER encoded signing
+ *                                   certificate.
+ */
+public record SigningProperties(
+        String signedPropertiesId,
+        String target,
+        OffsetDateTime signingTime,
+        String certificateDigestAlgorithm,
+        byte[] certificateDigest,
+        String issuerName,
+        BigInteger serialNumber
+) {
+}
@@ -0,0 +1,204 @@
+package xades;
+
+import certificate.TrustValidator.TrustValidationException;
+import document.ValidationTimes;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Bounded LRU cache of validation results of documents validated over and
+ * over again, e.g. the same document forwarded to several consumers.
+ * <p>
+ * Results are keyed by SHA-256 of the validator configuration and of the
+ * raw document bytes, so a repeated validation of the same bytes is a
+ * lookup. The hash has to be collision resistant: a document crafted to
+ * collide with a valid one would get its cached result. Both the valid
+ * results and the rejected signatures are cached. Failures of the trust
+ * check, e.g. of a revocation lookup, and other failures, e.g. I/O errors,
+ * are not.
+ * <p>
+ * The trust and revocation state of the signing certificate may change
+ * after the validation, so results expire after a time to live, which
+ * should not exceed the freshness of revocation statuses the consumers
+ * accept.
+ */
+public class ValidationResultCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    // Validation of a cached result took no parsing nor verification.
+    private static final ValidationTimes CACHED = new ValidationTimes(Duration.ZERO, Duration.ZERO);
+
+    private final XAdESValidator validator;
+    private final Supplier<String> configuration;
+    private final int capacity;
+    private final Duration timeToLive;
+    private final Clock clock;
+    private final Map<String, Result> results;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param configuration version of the validator configuration, e.g. of
+     *                      the trust store and of the revocation policy,
+     *                      read on each validation. Results of another
+     *                      configuration are not used.
+     */
+    public ValidationResultCache(XAdESValidator validator, Supplier<String> configuration) {
+        this(validator, configuration, DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE, Clock.systemUTC());
+    }
+
+    public ValidationResultCache(
+            XAdESValidator validator,
+            Supplier<String> configuration,
+            int capacity,
+            Duration timeToLive,
+            Clock clock
+    ) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity has to be positive!");
+        if (timeToLive.isNegative() || timeToLive.isZero()) throw new IllegalArgumentException("Time to live has to be positive!");
+        this.validator = validator;
+        this.configuration = configuration;
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        // Access-ordered map, so the eldest entry is the least recently used one.
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                boolean evict = size() > ValidationResultCache.this.capacity;
+                if (evict) evictions.increment();
+                return evict;
+            }
+        };
+    }
+
+    /**
+     * Validates the document unless a result of the same bytes and
+     * configuration is cached.
+     *
+     * @return time spent on parsing and on validation of the document, zero
+     * for a cached result.
+     */
+    public ValidationTimes validate(byte[] content) throws XAdESValidationException {
+        String key = key(configuration.get(), content);
+        Result cached = lookup(key);
+        if (cached != null) {
+            if (cached.failure() != null) throw new XAdESValidationException(cached.failure());
+            return CACHED;
+        }
+
+        // Validation happens outside the lock. Two threads may validate the
+        // same document concurrently, the latter result is stored.
+        Instant expiresAt = clock.instant().plus(timeToLive);
+        try {
+            ValidationTimes times = validator.validate(content);
+            store(key, new Result(null, expiresAt));
+            return times;
+        } catch (XAdESValidationException e) {
+            // The trust check depends on revocation sources, which may be
+            // unavailable just for a while.
+            if (!(e.getCause() instanceof TrustValidationException)) {
+                store(key, new Result(e.getMessage(), expiresAt));
+            }
+            throw e;
+        }
+    }
+
+    public ValidationTimes validate(Path path) throws XAdESValidationException {
+        try {
+            return validate(Files.readAllBytes(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (results) {
+            size = results.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), size, capacity);
+    }
+
+    public void clear() {
+        synchronized (results) {
+            results.clear();
+        }
+    }
+
+    private Result lookup(String key) {
+        Instant now = clock.instant();
+        synchronized (results) {
+            Result result = results.get(key);
+            if (result != null && now.isBefore(result.expiresAt())) {
+                hits.increment();
+                return result;
+            }
+            if (result != null) {
+                results.remove(key);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    private void store(String key, Result result) {
+        synchronized (results) {
+            results.put(key, result);
+        }
+    }
+
+    static String key(String configuration, byte[] content) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            // The length separates the configuration from the content.
+            byte[] encodedConfiguration = configuration.getBytes(UTF_8);
+            sha256.update(new byte[]{
+                    (byte) (encodedConfiguration.length >>> 24),
+                    (byte) (encodedConfiguration.length >>> 16),
+                    (byte) (encodedConfiguration.length >>> 8),
+                    (byte) encodedConfiguration.length});
+            sha256.update(encodedConfiguration);
+            return HexFormat.of().formatHex(sha256.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param failure message of the validation exception, or null if the
+     *                signature is valid.
+     */
+    private record Result(String failure, Instant expiresAt) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, long expirations, int size, int capacity) {
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package xades;
+
+import c14n.CanonicalSegmentCache;
+import c14n.Canonicalizer;
+import c14n.ParallelDigester;
+import c14n.ReferenceDigester;
+import metrics.SignatureMetrics;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static java.time.ZonedDateTime.now;
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+
+/**
+ * Signs documents with the same XAdES signature the {@link XAdESSigner}
+ * creates by default, without the JSR 105 object model.
+ * <p>
+ * The profile is fixed: C14N 1.0, SHA-256 digests of the enveloped document
+ * and of the signed properties, and RSA-SHA512. So the canonical SignedInfo
+ * is known up to the in-scope namespaces of its start tag, the digests and
+ * the signed properties Id; it is written from a byte template with those
+ * spliced in. References are canonicalized straight into the message
+ * digest. The canonicalizer, digest, signature and buffers are reused per
+ * thread, so signing allocates little beyond the signature elements
+ * themselves.
+ * <p>
+ * Unlike {@link XAdESSigner}, it does not record the JFR events of signature
+ * phases.
+ */
+public class XAdESProfileSigner {
+
+    private static final String ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM = "http://www.w3.org/2000/09/xmldsig#enveloped-signature";
+    private static final String SIGNED_PROPERTIES_REFERENCE_TYPE = "http://uri.etsi.org/01903#SignedProperties";
+    private static final String SHA256_DIGEST_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#sha256";
+    private static final String RSA_SHA512_SIGN_ALGORITHM = XAdESSigner.RSA_SHA512_SIGN_ALGORITHM;
+    private static final String PREFIX = "ns2";
+
+    // Canonical SignedInfo following its start tag, split where the digests
+    // and the signed properties Id go.
+    private static final byte[] SIGNED_INFO_BEFORE_DOCUMENT_DIGEST = ascii(""
+            + "<ns2:CanonicalizationMethod Algorithm=\"" + Canonicalizer.ALGORITHM + "\"></ns2:CanonicalizationMethod>"
+            + "<ns2:SignatureMethod Algorithm=\"" + RSA_SHA512_SIGN_ALGORITHM + "\"></ns2:SignatureMethod>"
+            + "<ns2:Reference URI=\"\">"
+            + "<ns2:Transforms>"
+            + "<ns2:Transform Algorithm=\"" + ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM + "\"></ns2:Transform>"
+            + "<ns2:Transform Algorithm=\"" + Canonicalizer.ALGORITHM + "\"></ns2:Transform>"
+            + "</ns2:Transforms>"
+            + "<ns2:DigestMethod Algorithm=\"" + SHA256_DIGEST_ALGORITHM + "\"></ns2:DigestMethod>"
+            + "<ns2:DigestValue>");
+    private static final byte[] SIGNED_INFO_BEFORE_SIGNED_PROPERTIES_ID = ascii(""
+            + "</ns2:DigestValue>"
+            + "</ns2:Reference>"
+            + "<ns2:Reference Type=\"" + SIGNED_PROPERTIES_REFERENCE_TYPE + "\" URI=\"#");
+    private static final byte[] SIGNED_INFO_BEFORE_SIGNED_PROPERTIES_DIGEST = ascii(""
+            + "\">"
+            + "<ns2:Transforms>"
+            + "<ns2:Transform Algorithm=\"" + Canonicalizer.ALGORITHM + "\"></ns2:Transform>"
+            + "</ns2:Transforms>"
+            + "<ns2:DigestMethod Algorithm=\"" + SHA256_DIGEST_ALGORITHM + "\"></ns2:DigestMethod>"
+            + "<ns2:DigestValue>");
+    private static final byte[] SIGNED_INFO_END = ascii(""
+            + "</ns2:DigestValue>"
+            + "</ns2:Reference>"
+            + "</ns2:SignedInfo>");
+
+    private static final ThreadLocal<Engine> ENGINES = ThreadLocal.withInitial(Engine::new);
+
+    private final PrivateKey privateKey;
+    private final SignatureMetrics metrics;
+    private final ParallelDigester parallelDigester;
+    private final String encodedCertificate;
+    private final byte[] certificateDigest;
+    private final String issuerName;
+    private final BigInteger serialNumber;
+
+    public XAdESProfileSigner(X509Certificate certificate, PrivateKey privateKey) {
+        this(certificate, privateKey, Options.defaults());
+    }
+
+    public XAdESProfileSigner(X509Certificate certificate, PrivateKey privateKey, Options options) {
+        this.privateKey = privateKey;
+        this.metrics = options.metrics();
+        this.parallelDigester = options.parallelDigester();
+        try {
+            byte[] der = certificate.getEncoded();
+            this.encodedCertificate = Base64.getEncoder().encodeToString(der);
+            this.certificateDigest = MessageDigest.getInstance("SHA-256").digest(der);
+        } catch (CertificateEncodingException | NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        this.issuerName = certificate.getIssuerX500Principal().getName();
+        this.serialNumber = certificate.getSerialNumber();
+    }
+
+    public Document signEnveloped(Document document) {
+        long start = System.nanoTime();
+        try {
+            Document signedDocument = sign(document);
+            metrics.succeeded(SignatureMetrics.Operation.XADES_SIGN, System.nanoTime() - start);
+            return signedDocument;
+        } catch (RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XADES_SIGN, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private Document sign(Document document) {
+        Engine engine = ENGINES.get();
+        // A signature which failed while digesting left the digest partly fed.
+        engine.messageDigest.reset();
+        String signatureId = "signature-" + UUID.randomUUID();
+        String signedPropertiesId = "signed-properties-" + UUID.randomUUID();
+
+        // The document is digested before the signature is appended, which
+        // is what the enveloped signature transform removes again. A
+        // document re-signed after edits has its canonical segments cached.
+        CanonicalSegmentCache cache = CanonicalSegmentCache.of(document);
+        List<ReferenceDigester.Digest> documentDigests = null;
+        if (cache != null) {
+            documentDigests = cache.digest(Canonicalizer.Algorithm.C14N_10, List.of("SHA-256"));
+        } else if (parallelDigester != null) {
+            documentDigests = parallelDigester.digest(document, null, Canonicalizer.Algorithm.C14N_10, List.of("SHA-256"));
+        }
+        if (documentDigests != null) {
+            System.arraycopy(documentDigests.get(0).value(), 0, engine.documentDigest, 0, engine.documentDigest.length);
+        } else {
+            engine.canonicalizer.canonicalize(document, null, engine.digestSink);
+            engine.digest(engine.documentDigest);
+        }
+
+        Element root = document.getDocumentElement();
+        Element signature = createElement(document, "Signature");
+        // The prefix is declared on the signature unless it is bound by the
+        // root element already.
+        if (!XMLNS.equals(root.lookupNamespaceURI(PREFIX))) {
+            signature.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:" + PREFIX, XMLNS);
+        }
+        signature.setAttribute("Id", signatureId);
+        signature.setIdAttribute("Id", true);
+
+        Element signedInfo = append(signature, "SignedInfo");
+        append(signedInfo, "CanonicalizationMethod").setAttribute("Algorithm", Canonicalizer.ALGORITHM);
+        append(signedInfo, "SignatureMethod").setAttribute("Algorithm", RSA_SHA512_SIGN_ALGORITHM);
+        Element documentReference = append(signedInfo, "Reference");
+        documentReference.setAttribute("URI", "");
+        Element documentTransforms = append(documentReference, "Transforms");
+        append(documentTransforms, "Transform").setAttribute("Algorithm", ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM);
+        append(documentTransforms, "Transform").setAttribute("Algorithm", Canonicalizer.ALGORITHM);
+        append(documentReference, "DigestMethod").setAttribute("Algorithm", SHA256_DIGEST_ALGORITHM);
+        append(documentReference, "DigestValue").setTextContent(engine.encodedDigest(engine.documentDigest));
+        Element signedPropertiesReference = append(signedInfo, "Reference");
+        signedPropertiesReference.setAttribute("Type", SIGNED_PROPERTIES_REFERENCE_TYPE);
+        signedPropertiesReference.setAttribute("URI", "#" + signedPropertiesId);
+        append(append(signedPropertiesReference, "Transforms"), "Transform").setAttribute("Algorithm", Canonicalizer.ALGORITHM);
+        append(signedPropertiesReference, "DigestMethod").setAttribute("Algorithm", SHA256_DIGEST_ALGORITHM);
+        Element signedPropertiesDigestValue = append(signedPropertiesReference, "DigestValue");
+
+        Element signatureValue = append(signature, "SignatureValue");
+        append(append(append(signature, "KeyInfo"), "X509Data"), "X509Certificate").setTextContent(encodedCertificate);
+        Element qualifyingProperties = QualifyingPropertiesCodec.encode(document, new SigningProperties(
+                signedPropertiesId,
+                "#" + signatureId,
+                now().toOffsetDateTime(),
+                SHA256_DIGEST_ALGORITHM,
+                certificateDigest,
+                issuerName,
+                serialNumber
+        ));
+        append(signature, "Object").appendChild(qualifyingProperties);
+        root.appendChild(signature);
+
+        // Signed properties inherit namespaces of the signature, so they are
+        // digested in place.
+        Element signedProperties = (Element) qualifyingProperties.getFirstChild();
+        engine.canonicalizer.canonicalize(signedProperties, engine.digestSink);
+        engine.digest(engine.signedPropertiesDigest);
+        signedPropertiesDigestValue.setTextContent(engine.encodedDigest(engine.signedPropertiesDigest));
+
+        ProfileBuffer canonicalSignedInfo = engine.signedInfo;
+        canonicalSignedInfo.reset();
+        engine.canonicalizer.canonicalizeStartTag(signedInfo, engine.signedInfoSink);
+        canonicalSignedInfo.writeBytes(SIGNED_INFO_BEFORE_DOCUMENT_DIGEST);
+        canonicalSignedInfo.writeBase64(engine.documentDigest, engine.encoded);
+        canonicalSignedInfo.writeBytes(SIGNED_INFO_BEFORE_SIGNED_PROPERTIES_ID);
+        canonicalSignedInfo.writeAscii(signedPropertiesId);
+        canonicalSignedInfo.writeBytes(SIGNED_INFO_BEFORE_SIGNED_PROPERTIES_DIGEST);
+        canonicalSignedInfo.writeBase64(engine.signedPropertiesDigest, engine.encoded);
+        canonicalSignedInfo.writeBytes(SIGNED_INFO_END);
+
+        try {
+            engine.signature.initSign(privateKey);
+            canonicalSignedInfo.update(engine.signature);
+            signatureValue.setTextContent(Base64.getEncoder().encodeToString(engine.signature.sign()));
+        } catch (InvalidKeyException | SignatureException e) {
+            throw new RuntimeException(e);
+        }
+        return document;
+    }
+
+    private static Element createElement(Document document, String localName) {
+        return document.createElementNS(XMLNS, PREFIX + ":" + localName);
+    }
+
+    private static Element append(Element parent, String localName) {
+        Element element = createElement(parent.getOwnerDocument(), localName);
+        parent.appendChild(element);
+        return element;
+    }
+
+    private static byte[] ascii(String template) {
+        return template.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Per thread instances reused by signatures.
+     */
+    /**
+     * Options of the signer, the {@link #defaults()} changed by the
+     * {@code with} methods. The algorithms are the ones of the profile.
+     *
+     * @param metrics          listener of signing durations and failures,
+     *                         recorded as
+     *                         {@link SignatureMetrics.Operation#XADES_SIGN}.
+     * @param parallelDigester digester of wide documents, or null to
+     *                         canonicalize the document on the signing
+     *                         thread.
+     */
+    public record Options(SignatureMetrics metrics, ParallelDigester parallelDigester) {
+
+        public static Options defaults() {
+            return new Options(SignatureMetrics.NONE, null);
+        }
+
+        public Options withMetrics(SignatureMetrics metrics) {
+            return new Options(metrics, parallelDigester);
+        }
+
+        public Options withParallelDigester(ParallelDigester parallelDigester) {
+            return new Options(metrics, parallelDigester);
+        }
+    }
+
+    private static class Engine {
+
+        private final Canonicalizer canonicalizer = new Canonicalizer();
+        private final MessageDigest messageDigest;
+        private final Canonicalizer.Sink digestSink;
+        private final Signature signature;
+        private final byte[] documentDigest = new byte[32];
+        private final byte[] signedPropertiesDigest = new byte[32];
+        private final byte[] encoded = new byte[44];
+        private final ProfileBuffer signedInfo = new ProfileBuffer();
+        private final Canonicalizer.Sink signedInfoSink = signedInfo::write;
+
+        private Engine() {
+            try {
+                messageDigest = MessageDigest.getInstance("SHA-256");
+                signature = Signature.getInstance("SHA512withRSA");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+            digestSink = messageDigest::update;
+        }
+
+        private void digest(byte[] digest) {
+            try {
+                messageDigest.digest(digest, 0, digest.length);
+            } catch (DigestException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private String encodedDigest(byte[] digest) {
+            int length = Base64.getEncoder().encode(digest, encoded);
+            return new String(encoded, 0, length, StandardCharsets.US_ASCII);
+        }
+    }
+}
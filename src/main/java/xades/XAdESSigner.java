@@ -1,5 +1,13 @@
 package xades;
 
+import c14n.Canonicalizer;
+import c14n.ParallelDigester;
+import c14n.SectionDigests;
+import document.DocumentTransformer;
+import jfr.IdMarkingEvent;
+import jfr.QualifyingPropertiesEvent;
+import jfr.SignatureEvents;
+import metrics.SignatureMetrics;
 import org.etsi.uri._01903.v1_3.*;
 import org.w3._2000._09.xmldsig_.X509IssuerSerialType;
 import org.w3c.dom.Document;
@@ -29,6 +37,7 @@ import javax.xml.transform.dom.DOMResult;
 import java.security.*;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Set;
@@ -44,37 +53,91 @@ public class XAdESSigner {
     // Canonicals (normalizes) a document. Preserves comments. E.g. removes line feeds, normalizes attributes, CDATA, etc.
     private static final String C14N_CANONICALIZATION_ALGORITHM = "http://www.w3.org/TR/2001/REC-xml-c14n-20010315";
     private static final String SIGNED_PROPERTIES_REFERENCE_TYPE = "http://uri.etsi.org/01903#SignedProperties";
-    private static final String SHA256_DIGEST_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#sha256";
-    private static final String RSA_SHA512_SIGN_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512";
+    public static final String SHA256_DIGEST_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#sha256";
+    public static final String SHA512_DIGEST_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#sha512";
+    public static final String RSA_SHA256_SIGN_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+    public static final String RSA_SHA512_SIGN_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512";
 
     private static final C14NMethodParameterSpec EMPTY_C14N_PARAMS = null;
     private static final DigestMethodParameterSpec EMPTY_DIGEST_PARAMS = null;
     private static final SignatureMethodParameterSpec EMPTY_SIGN_PARAMS = null;
     private static final TransformParameterSpec EMPTY_TRANSFORM_PARAMS = null;
 
+    private static final String WARM_UP_DOCUMENT = "<warmUp xmlns=\"https://github.com/vkuzel/XAdES-Demo/warm-up\">warm-up</warmUp>";
+
     private final X509Certificate certificate;
     private final PrivateKey privateKey;
+    private final String signatureAlgorithm;
+    private final SignatureMetrics metrics;
+    private final PropertiesBinding propertiesBinding;
+    private final List<String> documentDigestAlgorithms;
+    private final ParallelDigester parallelDigester;
+    private final boolean sectionDigests;
     private final XMLSignatureFactory xmlSignatureFactory;
 
     public XAdESSigner(X509Certificate certificate, PrivateKey privateKey) {
+        this(certificate, privateKey, Options.defaults());
+    }
+
+    public XAdESSigner(X509Certificate certificate, PrivateKey privateKey, Options options) {
         this.certificate = certificate;
         this.privateKey = privateKey;
+        this.signatureAlgorithm = options.signatureAlgorithm();
+        this.metrics = options.metrics();
+        this.propertiesBinding = options.propertiesBinding();
+        this.documentDigestAlgorithms = options.documentDigestAlgorithms();
+        this.parallelDigester = options.parallelDigester();
+        this.sectionDigests = options.sectionDigests();
         this.xmlSignatureFactory = signatureFactory();
     }
 
+    /**
+     * Signs and validates a small document, so the first signed document
+     * does not pay for loading and initialization of JAXB contexts, the XML
+     * signature provider, parsers, transformers and the secure random
+     * generator of signature ids.
+     */
+    public void warmUp() {
+        Document document = DocumentTransformer.fromString(WARM_UP_DOCUMENT);
+        byte[] signedDocument = DocumentTransformer.toBytes(sign(document));
+        try {
+            new XAdESValidator().validate(signedDocument);
+        } catch (XAdESValidator.XAdESValidationException e) {
+            throw new IllegalStateException("Warm-up signature is invalid!", e);
+        }
+    }
+
     public Document signEnveloped(Document document) {
+        long start = System.nanoTime();
+        try {
+            Document signedDocument = sign(document);
+            metrics.succeeded(SignatureMetrics.Operation.XADES_SIGN, System.nanoTime() - start);
+            return signedDocument;
+        } catch (RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XADES_SIGN, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private Document sign(Document document) {
         try {
             String signatureId = "signature-" + UUID.randomUUID();
             String signedPropertiesId = "signed-properties-" + UUID.randomUUID();
 
-            SignedInfo signedInfo = createSignedInfo(signedPropertiesId);
+            String sectionDigestsId = sectionDigests ? "section-digests-" + UUID.randomUUID() : null;
+
+            SignedInfo signedInfo = createSignedInfo(document, signedPropertiesId, sectionDigestsId);
             KeyInfo keyInfo = createKeyInfo();
-            XMLObject qualifyingProperties = createQualifyingProperties(document, signedPropertiesId, signatureId);
+            List<XMLObject> objects = new ArrayList<>();
+            objects.add(createQualifyingProperties(document, signedPropertiesId, signatureId));
+            if (sectionDigestsId != null) {
+                objects.add(createSectionDigests(document, sectionDigestsId));
+            }
 
-            XMLSignature xmlSignature = xmlSignatureFactory.newXMLSignature(signedInfo, keyInfo, List.of(qualifyingProperties), signatureId, null);
+            XMLSignature xmlSignature = xmlSignatureFactory.newXMLSignature(signedInfo, keyInfo, objects, signatureId, null);
 
             DOMSignContext domSignContext = createDomSignContext(document);
-            xmlSignature.sign(domSignContext);
+            SignatureEvents.sign(xmlSignature, domSignContext);
 
             return document;
         } catch (MarshalException | InvalidAlgorithmParameterException | NoSuchAlgorithmException |
@@ -83,26 +146,30 @@ public class XAdESSigner {
         }
     }
 
-    private SignedInfo createSignedInfo(String signedPropertiesId) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+    private SignedInfo createSignedInfo(Document document, String signedPropertiesId, String sectionDigestsId) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
         CanonicalizationMethod c14nMethod = xmlSignatureFactory.newCanonicalizationMethod(C14N_CANONICALIZATION_ALGORITHM, EMPTY_C14N_PARAMS);
-        SignatureMethod signMethod = xmlSignatureFactory.newSignatureMethod(RSA_SHA512_SIGN_ALGORITHM, EMPTY_SIGN_PARAMS);
+        SignatureMethod signMethod = xmlSignatureFactory.newSignatureMethod(signatureAlgorithm, EMPTY_SIGN_PARAMS);
 
-        List<Reference> references = List.of(
-                createSignedDocumentReference(),
-                createSignedPropertiesReference(signedPropertiesId)
-        );
+        List<Reference> references = new ArrayList<>(createSignedDocumentReferences(document));
+        references.add(createSignedPropertiesReference(signedPropertiesId));
+        if (sectionDigestsId != null) {
+            references.add(createSectionDigestsReference(sectionDigestsId));
+        }
 
         return xmlSignatureFactory.newSignedInfo(c14nMethod, signMethod, references);
     }
 
     /**
-     * This reference points to the document / element we are signing.
+     * These references point to the document / element we are signing, one
+     * for each digest algorithm.
      * <p>
      * Because signature is _enveloped_, the signed element is the root element
      * of the document.
+     * <p>
+     * The document is digested before the signature is added, by streaming
+     * its canonical form into the digests, JSR 105 would buffer all of it.
      */
-    private Reference createSignedDocumentReference() throws InvalidAlgorithmParameterException, NoSuchAlgorithmException {
-        DigestMethod digestMethod = xmlSignatureFactory.newDigestMethod(SHA256_DIGEST_ALGORITHM, EMPTY_DIGEST_PARAMS);
+    private List<Reference> createSignedDocumentReferences(Document document) throws InvalidAlgorithmParameterException, NoSuchAlgorithmException {
         // Because the signature is enveloped (included) in the signed document
         // it has to be removed before calculating digest. E.g. for signature
         // verification. This transformation does exactly that.
@@ -113,9 +180,16 @@ public class XAdESSigner {
         Transform c14nWithCommentsTransform = xmlSignatureFactory.newTransform(C14N_CANONICALIZATION_ALGORITHM, EMPTY_TRANSFORM_PARAMS);
 
         List<Transform> transforms = List.of(envelopedSignatureTransform, c14nWithCommentsTransform);
-
-        // Empty URI points to the root element. Otherwise, the URI would have to point to a signed element.
-        return xmlSignatureFactory.newReference("", digestMethod, transforms, null, null);
+        List<byte[]> digestValues = SignatureEvents.digestEnveloped(document, List.of(ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM, C14N_CANONICALIZATION_ALGORITHM),
+                documentDigestAlgorithms, parallelDigester);
+
+        List<Reference> references = new ArrayList<>();
+        for (int i = 0; i < documentDigestAlgorithms.size(); i++) {
+            DigestMethod digestMethod = xmlSignatureFactory.newDigestMethod(documentDigestAlgorithms.get(i), EMPTY_DIGEST_PARAMS);
+            // Empty URI points to the root element. Otherwise, the URI would have to point to a signed element.
+            references.add(xmlSignatureFactory.newReference("", digestMethod, transforms, null, null, digestValues.get(i)));
+        }
+        return references;
     }
 
     /**
@@ -134,21 +208,73 @@ public class XAdESSigner {
         return xmlSignatureFactory.newReference(uri, digestMethod, transforms, SIGNED_PROPERTIES_REFERENCE_TYPE, null);
     }
 
+    /**
+     * This reference points to the section digests, which are signed so the
+     * validator can trust them when it looks for the changed sections.
+     */
+    private Reference createSectionDigestsReference(String sectionDigestsId) throws InvalidAlgorithmParameterException, NoSuchAlgorithmException {
+        DigestMethod digestMethod = xmlSignatureFactory.newDigestMethod(SHA256_DIGEST_ALGORITHM, EMPTY_DIGEST_PARAMS);
+        Transform c14nWithCommentsTransform = xmlSignatureFactory.newTransform(C14N_CANONICALIZATION_ALGORITHM, EMPTY_TRANSFORM_PARAMS);
+
+        return xmlSignatureFactory.newReference("#" + sectionDigestsId, digestMethod, List.of(c14nWithCommentsTransform), null, null);
+    }
+
+    /**
+     * Digests the sections of the document as the document reference
+     * canonicalizes them.
+     */
+    private XMLObject createSectionDigests(Document document, String sectionDigestsId) {
+        SectionDigests digests = SectionDigests.of(document, null, Canonicalizer.Algorithm.of(C14N_CANONICALIZATION_ALGORITHM), "SHA-256");
+        Element element = SectionDigestsCodec.encode(document, digests, SHA256_DIGEST_ALGORITHM);
+        return xmlSignatureFactory.newXMLObject(singletonList(new DOMStructure(element)), sectionDigestsId, null, null);
+    }
+
     private KeyInfo createKeyInfo() {
         KeyInfoFactory keyInfoFactory = xmlSignatureFactory.getKeyInfoFactory();
         X509Data x509Data = keyInfoFactory.newX509Data(List.of(certificate));
         return keyInfoFactory.newKeyInfo(List.of(x509Data));
     }
 
+    private XMLObject createQualifyingProperties(Document ownerDocument, String signedPropertiesId, String signatureId) {
+        QualifyingPropertiesEvent event = new QualifyingPropertiesEvent();
+        event.begin();
+        Node qualifyingProperties = switch (propertiesBinding) {
+            case JAXB -> marshallQualifyingProperties(ownerDocument, signedPropertiesId, signatureId);
+            case DOM -> QualifyingPropertiesCodec.encode(ownerDocument, new SigningProperties(
+                    signedPropertiesId,
+                    "#" + signatureId,
+                    now().toOffsetDateTime(),
+                    SHA256_DIGEST_ALGORITHM,
+                    calculateCertificateSha256Digest(),
+                    certificate.getIssuerX500Principal().getName(),
+                    certificate.getSerialNumber()
+            ));
+        };
+
+        // If the owner document of the DOMStructure is different than the target document of an XMLSignature,
+        // the XMLSignature.sign(XMLSignContext) method imports the node into the target document before
+        // generating the signature.
+        DOMStructure qualifyingPropertiesObject = new DOMStructure(qualifyingProperties);
+        XMLObject xmlObject = xmlSignatureFactory.newXMLObject(singletonList(qualifyingPropertiesObject), null, null, null);
+        event.end();
+        if (event.shouldCommit()) {
+            event.target = "#" + signatureId;
+            event.digestAlgorithm = SHA256_DIGEST_ALGORITHM;
+            event.certificateBytes = encodedCertificateLength();
+            event.commit();
+        }
+        return xmlObject;
+    }
+
     /**
      * The method creates type safely qualifying properties using DTOs
      * generated from XAdES schema. Structure then has to be marshalled and
      * adopted into the signing document.
      * <p>
-     * Alternative approach would be to create properties structure
-     * manually via `document.createElement()` methods.
+     * Alternative approach is to create properties structure manually via
+     * `document.createElement()` methods, see {@link QualifyingPropertiesCodec}.
      */
-    private XMLObject createQualifyingProperties(Document ownerDocument, String signedPropertiesId, String signatureId) {
+    private Node marshallQualifyingProperties(Document ownerDocument, String signedPropertiesId, String signatureId) {
         ObjectFactory xadesFactory = new ObjectFactory();
         org.w3._2000._09.xmldsig_.ObjectFactory xmldSigFactory = new org.w3._2000._09.xmldsig_.ObjectFactory();
 
@@ -208,13 +334,16 @@ public class XAdESSigner {
 
         // Re-set id flag lost during element import to all xs:id attributes
         // by setting the `Element.setIdAttribute("Id", true)`.
-        markIdsRecursively(importedQualifyingProperties.getChildNodes());
+        markIds(importedQualifyingProperties.getChildNodes());
+        return importedQualifyingProperties;
+    }
 
-        // If the owner document of the DOMStructure is different than the target document of an XMLSignature,
-        // the XMLSignature.sign(XMLSignContext) method imports the node into the target document before
-        // generating the signature.
-        DOMStructure qualifyingPropertiesObject = new DOMStructure(importedQualifyingProperties);
-        return xmlSignatureFactory.newXMLObject(singletonList(qualifyingPropertiesObject), null, null, null);
+    private long encodedCertificateLength() {
+        try {
+            return certificate.getEncoded().length;
+        } catch (CertificateEncodingException e) {
+            return -1;
+        }
     }
 
     private byte[] calculateCertificateSha256Digest() {
@@ -268,8 +397,7 @@ public class XAdESSigner {
 
     private static Element marshall(JAXBElement<QualifyingPropertiesType> qualifyingProperties) {
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(QualifyingPropertiesType.class);
-            Marshaller marshaller = jaxbContext.createMarshaller();
+            Marshaller marshaller = QualifyingPropertiesContext.JAXB_CONTEXT.createMarshaller();
 
             DOMResult domResult = new DOMResult();
             marshaller.marshal(qualifyingProperties, domResult);
@@ -284,17 +412,138 @@ public class XAdESSigner {
         }
     }
 
-    private static void markIdsRecursively(NodeList nodeList) {
+    private static void markIds(NodeList nodeList) {
+        IdMarkingEvent event = new IdMarkingEvent();
+        event.begin();
+        int marked = markIdsRecursively(nodeList);
+        event.end();
+        if (event.shouldCommit()) {
+            event.elements = marked;
+            event.commit();
+        }
+    }
+
+    private static int markIdsRecursively(NodeList nodeList) {
+        int marked = 0;
         for (int i = 0; i < nodeList.getLength(); i++) {
             Node item = nodeList.item(i);
             if (item instanceof Element element) {
                 for (String idAttributeName : Set.of("id", "Id", "ID")) {
                     if (element.hasAttribute(idAttributeName)) {
                         element.setIdAttribute(idAttributeName, true);
+                        marked++;
                     }
                 }
             }
-            markIdsRecursively(item.getChildNodes());
+            marked += markIdsRecursively(item.getChildNodes());
+        }
+        return marked;
+    }
+
+    /**
+     * Creating a JAXB context introspects all the classes reachable from the
+     * bound one, that takes hundreds of milliseconds. The context is
+     * thread-safe, so it is created once, on the first use.
+     */
+    private static class QualifyingPropertiesContext {
+
+        private static final JAXBContext JAXB_CONTEXT = createJaxbContext();
+
+        private static JAXBContext createJaxbContext() {
+            try {
+                return JAXBContext.newInstance(QualifyingPropertiesType.class);
+            } catch (JAXBException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
+
+    /**
+     * Options of the signer, the {@link #defaults()} changed by the
+     * {@code with} methods.
+     *
+     * @param signatureAlgorithm       XML signature algorithm URI, e.g.
+     *                                 {@link #RSA_SHA256_SIGN_ALGORITHM}.
+     * @param metrics                  listener of signing durations and
+     *                                 failures.
+     * @param propertiesBinding        how the qualifying properties are
+     *                                 created, {@link PropertiesBinding#DOM}
+     *                                 avoids loading JAXB.
+     * @param documentDigestAlgorithms digest algorithm URIs of the document
+     *                                 references, one reference is created
+     *                                 for each. E.g. {@link #SHA256_DIGEST_ALGORITHM}
+     *                                 and {@link #SHA512_DIGEST_ALGORITHM}
+     *                                 while validators migrate from the
+     *                                 former to the latter. The document is
+     *                                 canonicalized once for all of them.
+     * @param parallelDigester         digester of wide documents, which
+     *                                 canonicalizes ranges of children of the
+     *                                 document element in parallel, or null
+     *                                 to canonicalize the document on the
+     *                                 signing thread.
+     * @param sectionDigests           whether the signature carries the
+     *                                 {@link SectionDigests} of the document,
+     *                                 in an Object covered by a reference. If
+     *                                 the document changes, the
+     *                                 {@link XAdESValidator} tells which of
+     *                                 its sections did, at the cost of
+     *                                 canonicalizing the document once more
+     *                                 when signing.
+     */
+    public record Options(
+            String signatureAlgorithm,
+            SignatureMetrics metrics,
+            PropertiesBinding propertiesBinding,
+            List<String> documentDigestAlgorithms,
+            ParallelDigester parallelDigester,
+            boolean sectionDigests
+    ) {
+
+        public Options {
+            if (documentDigestAlgorithms.isEmpty()) {
+                throw new IllegalArgumentException("No document digest algorithm!");
+            }
+            documentDigestAlgorithms = List.copyOf(documentDigestAlgorithms);
+        }
+
+        public static Options defaults() {
+            return new Options(RSA_SHA512_SIGN_ALGORITHM, SignatureMetrics.NONE, PropertiesBinding.JAXB,
+                    List.of(SHA256_DIGEST_ALGORITHM), null, false);
+        }
+
+        public Options withSignatureAlgorithm(String signatureAlgorithm) {
+            return new Options(signatureAlgorithm, metrics, propertiesBinding, documentDigestAlgorithms, parallelDigester, sectionDigests);
+        }
+
+        public Options withMetrics(SignatureMetrics metrics) {
+            return new Options(signatureAlgorithm, metrics, propertiesBinding, documentDigestAlgorithms, parallelDigester, sectionDigests);
+        }
+
+        public Options withPropertiesBinding(PropertiesBinding propertiesBinding) {
+            return new Options(signatureAlgorithm, metrics, propertiesBinding, documentDigestAlgorithms, parallelDigester, sectionDigests);
+        }
+
+        public Options withDocumentDigestAlgorithms(List<String> documentDigestAlgorithms) {
+            return new Options(signatureAlgorithm, metrics, propertiesBinding, documentDigestAlgorithms, parallelDigester, sectionDigests);
+        }
+
+        public Options withParallelDigester(ParallelDigester parallelDigester) {
+            return new Options(signatureAlgorithm, metrics, propertiesBinding, documentDigestAlgorithms, parallelDigester, sectionDigests);
+        }
+
+        public Options withSectionDigests(boolean sectionDigests) {
+            return new Options(signatureAlgorithm, metrics, propertiesBinding, documentDigestAlgorithms, parallelDigester, sectionDigests);
+        }
+    }
+
+    public enum PropertiesBinding {
+        /**
+         * Marshals the classes generated from the XAdES schema.
+         */
+        JAXB,
+        /**
+         * Writes the elements by {@link QualifyingPropertiesCodec}.
+         */
+        DOM
+    }
 }
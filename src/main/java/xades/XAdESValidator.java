@@ -1,9 +1,22 @@
 package xades;
 
+import c14n.ParallelDigester;
+import c14n.ReferenceDigester;
+import c14n.SectionDigests;
+import certificate.CertificateCache;
+import certificate.TrustValidator;
+import certificate.TrustValidator.TrustValidationException;
+import document.DocumentTransformer;
+import document.ValidationTimes;
+import jfr.IdMarkingEvent;
+import jfr.SignatureEvents;
+import metrics.SignatureMetrics;
+import pipeline.PipelinedDigester;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
 import javax.xml.crypto.*;
 import javax.xml.crypto.dsig.Reference;
@@ -13,7 +26,17 @@ import javax.xml.crypto.dsig.XMLSignatureFactory;
 import javax.xml.crypto.dsig.dom.DOMValidateContext;
 import javax.xml.crypto.dsig.keyinfo.KeyInfo;
 import javax.xml.crypto.dsig.keyinfo.X509Data;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Key;
+import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,26 +49,152 @@ import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
  * Be aware, this validator checks signature of a document against certificate
  * in the signature itself.
  * <p>
- * It does not check whether provided certificate is trusted, expired, revoked,
- * etc. This check has to be implemented in yet, or done separately.
+ * Whether the certificate is trusted, not expired and not revoked is checked
+ * only if a {@link TrustValidator} is provided. Revocation is checked if the
+ * trust validator has a {@link certificate.RevocationChecker}.
+ * <p>
+ * Signatures of the profile {@link XAdESSigner} creates are verified by a
+ * fast path, see {@link VerificationPath}.
  */
 public class XAdESValidator {
 
+    private final CertificateCache certificateCache;
+    private final TrustValidator trustValidator;
+    private final SignatureMetrics metrics;
+    private final VerificationPath verificationPath;
+    private final ParallelDigester parallelDigester;
+
+    public XAdESValidator() {
+        this(Options.defaults());
+    }
+
+    public XAdESValidator(Options options) {
+        this.certificateCache = options.certificateCache();
+        this.trustValidator = options.trustValidator();
+        this.metrics = options.metrics();
+        this.verificationPath = options.verificationPath();
+        this.parallelDigester = options.parallelDigester();
+    }
+
+    /**
+     * Parses the document securely and validates it.
+     *
+     * @return time spent on parsing and on validation of the document.
+     */
+    public ValidationTimes validate(InputStream inputStream) throws XAdESValidationException {
+        long start = System.nanoTime();
+        try {
+            Document document;
+            try {
+                document = DocumentTransformer.parse(inputStream);
+            } catch (SAXException e) {
+                throw new XAdESValidationException(e);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            long parsed = System.nanoTime();
+            verify(document);
+            long verified = System.nanoTime();
+            metrics.succeeded(SignatureMetrics.Operation.XADES_VALIDATE, verified - start);
+            return new ValidationTimes(Duration.ofNanos(parsed - start), Duration.ofNanos(verified - parsed));
+        } catch (XAdESValidationException | RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XADES_VALIDATE, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    public ValidationTimes validate(byte[] content) throws XAdESValidationException {
+        return validate(new ByteArrayInputStream(content));
+    }
+
+    public ValidationTimes validate(Path path) throws XAdESValidationException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return validate(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void validate(Document document) throws XAdESValidationException {
+        long start = System.nanoTime();
+        try {
+            verify(document);
+            metrics.succeeded(SignatureMetrics.Operation.XADES_VALIDATE, System.nanoTime() - start);
+        } catch (XAdESValidationException | RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XADES_VALIDATE, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private void verify(Document document) throws XAdESValidationException {
         try {
             // When document is deserialized from an XML file, the SignerProperties
             // element ID attribute is not properly marked, which means reference
             // URL to the signed properties does not work. Manual marking it, fixes
             // the issue.
-            markSignerPropertiesId(document);
+            int signedProperties = markSignerPropertiesId(document);
 
             NodeList signatureNodes = document.getElementsByTagNameNS(XMLNS, "Signature");
             if (signatureNodes.getLength() != 1) throw new XAdESValidationException("Cannot retrieve signature!");
             Node signatureNode = signatureNodes.item(0);
 
+            // More signed properties could be a signature wrapping attempt,
+            // which the secure validation of the generic path rejects.
+            if (verificationPath == VerificationPath.PROFILE && signedProperties == 1) {
+                ProfileVerifier.Result result = ProfileVerifier.verify((Element) signatureNode, certificateCache, parallelDigester);
+                if (result != null) {
+                    if (trustValidator != null) {
+                        trustValidator.validate(result.certificate(), result.intermediates());
+                    }
+                    return;
+                }
+            }
+
+            verifySignature(signatureNode, null);
+        } catch (TrustValidationException e) {
+            throw new XAdESValidationException(e);
+        }
+    }
+
+    /**
+     * Validates the signature of a document digested while it was parsed,
+     * see {@link PipelinedValidator}. The signature is owned by a document of
+     * just the signature and its ancestors.
+     *
+     * @param start when the parsing started.
+     * @return time spent on parsing and digesting the document, and on
+     * validation of the signature.
+     */
+    ValidationTimes validateDigested(PipelinedDigester.Result result, long start) throws XAdESValidationException {
+        long digested = System.nanoTime();
+        try {
+            markSignerPropertiesId(result.signature().getOwnerDocument());
+            verifySignature(result.signature(), result.digests());
+            long verified = System.nanoTime();
+            metrics.succeeded(SignatureMetrics.Operation.XADES_VALIDATE, verified - start);
+            return new ValidationTimes(Duration.ofNanos(digested - start), Duration.ofNanos(verified - digested));
+        } catch (XAdESValidationException | RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XADES_VALIDATE, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * @param documentDigests digests of the document computed elsewhere,
+     *                        see {@link ReferenceDigester#DOCUMENT_DIGESTS_PROPERTY},
+     *                        or null.
+     */
+    private void verifySignature(Node signatureNode, Map<String, ReferenceDigester.Digest> documentDigests) throws XAdESValidationException {
+        try {
             // Create a DOMValidateContext and specify a KeyValue KeySelector
             // and document context
-            DOMValidateContext validateContext = new DOMValidateContext(new KeyValueKeySelector(), signatureNode);
+            DOMValidateContext validateContext = new DOMValidateContext(new KeyValueKeySelector(certificateCache), signatureNode);
+            if (documentDigests != null) {
+                validateContext.setProperty(ReferenceDigester.DOCUMENT_DIGESTS_PROPERTY, documentDigests);
+            }
+            if (parallelDigester != null) {
+                validateContext.setProperty(ReferenceDigester.PARALLEL_DIGESTER_PROPERTY, parallelDigester);
+            }
 
             // Create a DOM XMLSignatureFactory that will be used to unmarshal the
             // document containing the XMLSignature
@@ -54,49 +203,120 @@ public class XAdESValidator {
             XMLSignature signature = xmlSignatureFactory.unmarshalXMLSignature(validateContext);
 
             // Validate XMLSignature
-            if (!signature.validate(validateContext)) {
-                String msg = createXMLDSigValidationErrorMessage(validateContext, signature);
+            if (!SignatureEvents.validate(signature, validateContext)) {
+                String msg = createXMLDSigValidationErrorMessage(validateContext, signature, documentDigests == null ? signatureNode : null);
                 throw new XAdESValidationException(msg);
             }
-        } catch (MarshalException | XMLSignatureException e) {
+
+            if (trustValidator != null) {
+                SigningKey signingKey = (SigningKey) signature.getKeySelectorResult();
+                trustValidator.validate(signingKey.certificate(), signingKey.intermediates());
+            }
+        } catch (MarshalException | XMLSignatureException | TrustValidationException e) {
             throw new XAdESValidationException(e);
         }
     }
 
-    private void markSignerPropertiesId(Document document) {
+    private int markSignerPropertiesId(Document document) {
+        IdMarkingEvent event = new IdMarkingEvent();
+        event.begin();
         NodeList signedPropertiesNodeList = document.getElementsByTagName("SignedProperties");
         requireNonNull(signedPropertiesNodeList);
+        int marked = 0;
         for (int i = 0; i < signedPropertiesNodeList.getLength(); i++) {
             Node node = signedPropertiesNodeList.item(i);
             if (node instanceof Element element) {
                 element.setIdAttribute("Id", true);
+                marked++;
             }
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.elements = marked;
+            event.commit();
+        }
+        return marked;
     }
 
+    /**
+     * @param signatureNode the signature enveloped in the document, or null
+     *                      if the document was not kept.
+     */
     private String createXMLDSigValidationErrorMessage(
             DOMValidateContext validateContext,
-            XMLSignature signature
+            XMLSignature signature,
+            Node signatureNode
     ) throws XMLSignatureException {
         Map<String, Boolean> components = new LinkedHashMap<>();
 
         boolean signatureValidity = signature.getSignatureValue().validate(validateContext);
         components.put("signature", signatureValidity);
 
-        for (Reference reference : signature.getSignedInfo().getReferences()) {
+        List<?> references = signature.getSignedInfo().getReferences();
+        ReferenceDigester.Digests digests = ReferenceDigester.digest(references, validateContext);
+        Map<String, Boolean> referenceValidities = new HashMap<>();
+        for (int i = 0; i < references.size(); i++) {
+            Reference reference = (Reference) references.get(i);
             String referenceUri = reference.getURI();
-            boolean referenceValidity = reference.validate(validateContext);
-            String name = "reference[uri=%s]".formatted(referenceUri);
+            boolean referenceValidity = digests.validate(i);
+            // References of the same URI differ by their digest algorithm.
+            String name = "reference[uri=%s, digest=%s]".formatted(referenceUri, reference.getDigestMethod().getAlgorithm());
             components.put(name, referenceValidity);
+            referenceValidities.merge(referenceUri == null ? "" : referenceUri, referenceValidity, Boolean::logicalAnd);
         }
 
-        return components.entrySet().stream()
+        String msg = components.entrySet().stream()
                 .map(e -> "%s validity: %b".formatted(e.getKey(), e.getValue()))
                 .collect(Collectors.joining("\n"));
+        // Digests of a signature whose value does not match are not signed,
+        // even if the references match them.
+        String changedSections = signatureValidity && signatureNode != null && !referenceValidities.getOrDefault("", true)
+                ? createChangedSectionsMessage(signatureNode, referenceValidities) : null;
+        return changedSections == null ? msg : msg + "\n" + changedSections;
+    }
+
+    /**
+     * Compares the section digests the signature carries with the ones of
+     * the document, see {@link SectionDigests}.
+     *
+     * @return the changed sections, or null if the signature has no valid
+     * section digests.
+     */
+    private static String createChangedSectionsMessage(Node signatureNode, Map<String, Boolean> referenceValidities) {
+        for (Node node = signatureNode.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!(node instanceof Element object) || !XMLNS.equals(object.getNamespaceURI()) || !"Object".equals(object.getLocalName())) continue;
+            // Unsigned or changed digests would point to sections at will.
+            if (!referenceValidities.getOrDefault("#" + object.getAttribute("Id"), false)) continue;
+            for (Node content = object.getFirstChild(); content != null; content = content.getNextSibling()) {
+                if (!SectionDigestsCodec.is(content)) continue;
+                SectionDigests signed;
+                try {
+                    signed = SectionDigestsCodec.decode((Element) content);
+                } catch (SectionDigestsCodec.SectionDigestsException e) {
+                    return "sections: " + e.getMessage();
+                }
+                SectionDigests current = SectionDigests.of(signatureNode.getOwnerDocument(), signatureNode, signed.algorithm(), signed.jcaAlgorithm());
+                if (signed.sections() != current.sections()) {
+                    return "sections: %d signed, %d found".formatted(signed.sections(), current.sections());
+                }
+                List<Integer> changed = signed.changed(current);
+                if (changed.isEmpty()) return "changed sections: none, the document changed outside of them";
+                return changed.stream()
+                        .map(section -> "%d (%s)".formatted(section, current.name(section)))
+                        .collect(Collectors.joining(", ", "changed sections: ", ""));
+            }
+        }
+        return null;
     }
 
     private static class KeyValueKeySelector extends KeySelector {
 
+        private final CertificateCache certificateCache;
+
+        private KeyValueKeySelector(CertificateCache certificateCache) {
+            this.certificateCache = certificateCache;
+        }
+
         public KeySelectorResult select(
                 KeyInfo keyInfo,
                 Purpose purpose,
@@ -114,19 +334,120 @@ public class XAdESValidator {
             // The XAdES-X_L form introduces CertificateValues element holding
             // certificates. In tha case, the certificate may be obtained from
             // the CertificateValues element.
+            //
+            // The first certificate is the signing one, any other certificates
+            // are used to build the certification path.
+            CertificateCache.Entry signingCertificate = null;
+            List<X509Certificate> intermediates = new ArrayList<>();
             for (XMLStructure keyInfoItem : keyInfo.getContent()) {
                 if (keyInfoItem instanceof X509Data x509Data) {
                     List<?> x509DataContent = x509Data.getContent();
                     for (Object x509Item : x509DataContent) {
                         if (x509Item instanceof X509Certificate certificate) {
-                            return certificate::getPublicKey;
+                            if (signingCertificate == null) {
+                                // The same few signing certificates are seen
+                                // over and over again, so the cached entry
+                                // (and its public key) is reused instead of
+                                // this instance.
+                                signingCertificate = cachedCertificate(certificate);
+                            } else {
+                                intermediates.add(certificate);
+                            }
                         }
                     }
                 }
             }
 
-            throw new KeySelectorException("No PublicKey found in key info " + keyInfo);
+            if (signingCertificate == null) {
+                throw new KeySelectorException("No PublicKey found in key info " + keyInfo);
+            }
+            return new SigningKey(signingCertificate, intermediates);
+        }
+
+        private CertificateCache.Entry cachedCertificate(X509Certificate certificate) throws KeySelectorException {
+            try {
+                return certificateCache.get(certificate);
+            } catch (CertificateException e) {
+                throw new KeySelectorException(e);
+            }
+        }
+    }
+
+    private record SigningKey(
+            CertificateCache.Entry certificate,
+            List<X509Certificate> intermediates
+    ) implements KeySelectorResult {
+
+        @Override
+        public Key getKey() {
+            return certificate.publicKey();
+        }
+    }
+
+    /**
+     * Options of the validator, the {@link #defaults()} changed by the
+     * {@code with} methods.
+     *
+     * @param certificateCache cache of signing certificates, which may be
+     *                         shared between validator instances.
+     * @param trustValidator   validator of the signing certificate path, or
+     *                         null to skip the trust check.
+     * @param metrics          listener of validation durations and failures.
+     * @param verificationPath whether signatures of the known profile are
+     *                         verified by the fast path.
+     * @param parallelDigester digester of wide documents, which
+     *                         canonicalizes ranges of children of the
+     *                         document element in parallel, or null to
+     *                         canonicalize the document on the validating
+     *                         thread.
+     */
+    public record Options(
+            CertificateCache certificateCache,
+            TrustValidator trustValidator,
+            SignatureMetrics metrics,
+            VerificationPath verificationPath,
+            ParallelDigester parallelDigester
+    ) {
+
+        /**
+         * @return options with a new certificate cache, without the trust
+         * check.
+         */
+        public static Options defaults() {
+            return new Options(new CertificateCache(), null, SignatureMetrics.NONE, VerificationPath.PROFILE, null);
+        }
+
+        public Options withCertificateCache(CertificateCache certificateCache) {
+            return new Options(certificateCache, trustValidator, metrics, verificationPath, parallelDigester);
+        }
+
+        public Options withTrustValidator(TrustValidator trustValidator) {
+            return new Options(certificateCache, trustValidator, metrics, verificationPath, parallelDigester);
+        }
+
+        public Options withMetrics(SignatureMetrics metrics) {
+            return new Options(certificateCache, trustValidator, metrics, verificationPath, parallelDigester);
+        }
+
+        public Options withVerificationPath(VerificationPath verificationPath) {
+            return new Options(certificateCache, trustValidator, metrics, verificationPath, parallelDigester);
         }
+
+        public Options withParallelDigester(ParallelDigester parallelDigester) {
+            return new Options(certificateCache, trustValidator, metrics, verificationPath, parallelDigester);
+        }
+    }
+
+    public enum VerificationPath {
+        /**
+         * Every signature is unmarshalled and validated by JSR 105.
+         */
+        GENERIC,
+        /**
+         * Valid signatures of the profile are confirmed by
+         * {@link ProfileVerifier}, other signatures take the generic path.
+         */
+        PROFILE
     }
 
     public static class XAdESValidationException extends Exception {
@@ -1,5 +1,9 @@
 package xmldsig;
 
+import c14n.ParallelDigester;
+import document.DocumentTransformer;
+import jfr.SignatureEvents;
+import metrics.SignatureMetrics;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -27,19 +31,47 @@ public class XMLDSigSigner {
     // Canonicals (normalizes) a document. Preserves comments. E.g. removes line feeds, normalizes attributes, CDATA, etc.
     private static final String C14N_CANONICALIZATION_ALGORITHM = "http://www.w3.org/2006/12/xml-c14n11#WithComments";
     private static final String SHA256_DIGEST_ALGORITHM = "http://www.w3.org/2001/04/xmlenc#sha256";
-    private static final String RSA_SHA512_SIGN_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512";
+    public static final String RSA_SHA256_SIGN_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256";
+    public static final String RSA_SHA512_SIGN_ALGORITHM = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512";
 
     private static final C14NMethodParameterSpec EMPTY_C14N_PARAMS = null;
     private static final DigestMethodParameterSpec EMPTY_DIGEST_PARAMS = null;
     private static final SignatureMethodParameterSpec EMPTY_SIGN_PARAMS = null;
     private static final TransformParameterSpec EMPTY_TRANSFORM_PARAMS = null;
 
+    private static final String WARM_UP_DOCUMENT = "<warmUp xmlns=\"https://github.com/vkuzel/XAdES-Demo/warm-up\">warm-up</warmUp>";
+
     private final Certificate certificate;
     private final PrivateKey privateKey;
+    private final String signatureAlgorithm;
+    private final SignatureMetrics metrics;
+    private final ParallelDigester parallelDigester;
 
     public XMLDSigSigner(Certificate certificate, PrivateKey privateKey) {
+        this(certificate, privateKey, Options.defaults());
+    }
+
+    public XMLDSigSigner(Certificate certificate, PrivateKey privateKey, Options options) {
         this.certificate = certificate;
         this.privateKey = privateKey;
+        this.signatureAlgorithm = options.signatureAlgorithm();
+        this.metrics = options.metrics();
+        this.parallelDigester = options.parallelDigester();
+    }
+
+    /**
+     * Signs and validates a small document, so the first signed document
+     * does not pay for loading and initialization of the XML signature
+     * provider, parsers and transformers.
+     */
+    public void warmUp() {
+        Document document = DocumentTransformer.fromString(WARM_UP_DOCUMENT);
+        byte[] signedDocument = DocumentTransformer.toBytes(sign(document));
+        try {
+            new XMLDSigValidator().validate(signedDocument);
+        } catch (XMLDSigValidator.XMLDSigValidationException e) {
+            throw new IllegalStateException("Warm-up signature is invalid!", e);
+        }
     }
 
     /**
@@ -62,15 +94,27 @@ public class XMLDSigSigner {
      * </pre>
      */
     public Document signEnveloped(Document document) {
+        long start = System.nanoTime();
+        try {
+            Document signedDocument = sign(document);
+            metrics.succeeded(SignatureMetrics.Operation.XMLDSIG_SIGN, System.nanoTime() - start);
+            return signedDocument;
+        } catch (RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XMLDSIG_SIGN, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private Document sign(Document document) {
         try {
             XMLSignatureFactory xmlSignatureFactory = XMLSignatureFactory.getInstance("DOM", "XMLDSig");
 
-            SignedInfo signedInfo = createSignedInfo(xmlSignatureFactory);
+            SignedInfo signedInfo = createSignedInfo(xmlSignatureFactory, document);
             KeyInfo keyInfo = createKeyInfo(xmlSignatureFactory);
             XMLSignature xmlSignature = xmlSignatureFactory.newXMLSignature(signedInfo, keyInfo, null, null, null);
 
             DOMSignContext domSignContext = createDomSignContext(document);
-            xmlSignature.sign(domSignContext);
+            SignatureEvents.sign(xmlSignature, domSignContext);
 
             return document;
         } catch (MarshalException | InvalidAlgorithmParameterException | NoSuchAlgorithmException |
@@ -79,10 +123,10 @@ public class XMLDSigSigner {
         }
     }
 
-    private static SignedInfo createSignedInfo(XMLSignatureFactory xmlSignatureFactory) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
+    private SignedInfo createSignedInfo(XMLSignatureFactory xmlSignatureFactory, Document document) throws NoSuchAlgorithmException, InvalidAlgorithmParameterException {
         CanonicalizationMethod c14nMethod = xmlSignatureFactory.newCanonicalizationMethod(C14N_CANONICALIZATION_ALGORITHM, EMPTY_C14N_PARAMS);
         DigestMethod digestMethod = xmlSignatureFactory.newDigestMethod(SHA256_DIGEST_ALGORITHM, EMPTY_DIGEST_PARAMS);
-        SignatureMethod signMethod = xmlSignatureFactory.newSignatureMethod(RSA_SHA512_SIGN_ALGORITHM, EMPTY_SIGN_PARAMS);
+        SignatureMethod signMethod = xmlSignatureFactory.newSignatureMethod(signatureAlgorithm, EMPTY_SIGN_PARAMS);
 
         // Before calculating digest (hash) the document is transformed into
         // its canonical (normalized) form so the digest is consistent even
@@ -92,8 +136,14 @@ public class XMLDSigSigner {
                 xmlSignatureFactory.newTransform(C14N_CANONICALIZATION_ALGORITHM, EMPTY_TRANSFORM_PARAMS)
         );
 
+        // The document is digested before the signature is added, by
+        // streaming its canonical form into the digest, JSR 105 would buffer
+        // all of it.
+        byte[] digestValue = SignatureEvents.digestEnveloped(document, List.of(ENVELOPED_SIGNATURE_TRANSFORM_ALGORITHM, C14N_CANONICALIZATION_ALGORITHM),
+                List.of(SHA256_DIGEST_ALGORITHM), parallelDigester).get(0);
+
         // Empty URI points to the root element. Otherwise, the URI would have to point to a signed element.
-        Reference referenceDoc = xmlSignatureFactory.newReference("", digestMethod, transforms, null, null);
+        Reference referenceDoc = xmlSignatureFactory.newReference("", digestMethod, transforms, null, null, digestValue);
         List<Reference> references = List.of(referenceDoc);
 
         return xmlSignatureFactory.newSignedInfo(c14nMethod, signMethod, references);
@@ -125,4 +175,38 @@ public class XMLDSigSigner {
         domSignContext.setDefaultNamespacePrefix("ns2");
         return domSignContext;
     }
+
+    /**
+     * Options of the signer, the {@link #defaults()} changed by the
+     * {@code with} methods.
+     *
+     * @param signatureAlgorithm XML signature algorithm URI, e.g.
+     *                           {@link #RSA_SHA256_SIGN_ALGORITHM}.
+     * @param metrics            listener of signing durations and failures.
+     * @param parallelDigester   digester of wide documents, or null to
+     *                           canonicalize the document on the signing
+     *                           thread.
+     */
+    public record Options(
+            String signatureAlgorithm,
+            SignatureMetrics metrics,
+            ParallelDigester parallelDigester
+    ) {
+
+        public static Options defaults() {
+            return new Options(RSA_SHA512_SIGN_ALGORITHM, SignatureMetrics.NONE, null);
+        }
+
+        public Options withSignatureAlgorithm(String signatureAlgorithm) {
+            return new Options(signatureAlgorithm, metrics, parallelDigester);
+        }
+
+        public Options withMetrics(SignatureMetrics metrics) {
+            return new Options(signatureAlgorithm, metrics, parallelDigester);
+        }
+
+        public Options withParallelDigester(ParallelDigester parallelDigester) {
+            return new Options(signatureAlgorithm, metrics, parallelDigester);
+        }
+    }
 }
@@ -1,8 +1,15 @@
 package xmldsig;
 
+import c14n.ParallelDigester;
+import c14n.ReferenceDigester;
+import document.DocumentTransformer;
+import document.ValidationTimes;
+import jfr.SignatureEvents;
+import metrics.SignatureMetrics;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
 import javax.xml.crypto.*;
 import javax.xml.crypto.dsig.Reference;
@@ -13,9 +20,15 @@ import javax.xml.crypto.dsig.dom.DOMValidateContext;
 import javax.xml.crypto.dsig.keyinfo.KeyInfo;
 import javax.xml.crypto.dsig.keyinfo.KeyValue;
 import javax.xml.crypto.dsig.keyinfo.X509Data;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.KeyException;
 import java.security.PublicKey;
 import java.security.cert.Certificate;
+import java.time.Duration;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -32,7 +45,69 @@ import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
  */
 public class XMLDSigValidator {
 
+    private final SignatureMetrics metrics;
+    private final ParallelDigester parallelDigester;
+
+    public XMLDSigValidator() {
+        this(Options.defaults());
+    }
+
+    public XMLDSigValidator(Options options) {
+        this.metrics = options.metrics();
+        this.parallelDigester = options.parallelDigester();
+    }
+
+    /**
+     * Parses the document securely and validates it.
+     *
+     * @return time spent on parsing and on validation of the document.
+     */
+    public ValidationTimes validate(InputStream inputStream) throws XMLDSigValidationException {
+        long start = System.nanoTime();
+        try {
+            Document document;
+            try {
+                document = DocumentTransformer.parse(inputStream);
+            } catch (SAXException e) {
+                throw new XMLDSigValidationException(e);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            long parsed = System.nanoTime();
+            verify(document);
+            long verified = System.nanoTime();
+            metrics.succeeded(SignatureMetrics.Operation.XMLDSIG_VALIDATE, verified - start);
+            return new ValidationTimes(Duration.ofNanos(parsed - start), Duration.ofNanos(verified - parsed));
+        } catch (XMLDSigValidationException | RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XMLDSIG_VALIDATE, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    public ValidationTimes validate(byte[] content) throws XMLDSigValidationException {
+        return validate(new ByteArrayInputStream(content));
+    }
+
+    public ValidationTimes validate(Path path) throws XMLDSigValidationException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return validate(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public void validate(Document document) throws XMLDSigValidationException {
+        long start = System.nanoTime();
+        try {
+            verify(document);
+            metrics.succeeded(SignatureMetrics.Operation.XMLDSIG_VALIDATE, System.nanoTime() - start);
+        } catch (XMLDSigValidationException | RuntimeException e) {
+            metrics.failed(SignatureMetrics.Operation.XMLDSIG_VALIDATE, System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private void verify(Document document) throws XMLDSigValidationException {
         try {
             // Find Signature element
             NodeList signatureNodes = document.getElementsByTagNameNS(XMLNS, "Signature");
@@ -42,6 +117,9 @@ public class XMLDSigValidator {
             // Create a DOMValidateContext and specify a KeyValue KeySelector
             // and document context
             DOMValidateContext validateContext = new DOMValidateContext(new KeyValueKeySelector(), signatureNode);
+            if (parallelDigester != null) {
+                validateContext.setProperty(ReferenceDigester.PARALLEL_DIGESTER_PROPERTY, parallelDigester);
+            }
 
             // Create a DOM XMLSignatureFactory that will be used to unmarshal the
             // document containing the XMLSignature
@@ -50,7 +128,7 @@ public class XMLDSigValidator {
             XMLSignature signature = xmlSignatureFactory.unmarshalXMLSignature(validateContext);
 
             // Validate XMLSignature
-            if (!signature.validate(validateContext)) {
+            if (!SignatureEvents.validate(signature, validateContext)) {
                 String msg = createXMLDSigValidationErrorMessage(validateContext, signature);
                 throw new XMLDSigValidationException(msg);
             }
@@ -68,10 +146,14 @@ public class XMLDSigValidator {
         boolean signatureValidity = signature.getSignatureValue().validate(validateContext);
         components.put("signature", signatureValidity);
 
-        for (Reference reference : signature.getSignedInfo().getReferences()) {
+        List<?> references = signature.getSignedInfo().getReferences();
+        ReferenceDigester.Digests digests = ReferenceDigester.digest(references, validateContext);
+        for (int i = 0; i < references.size(); i++) {
+            Reference reference = (Reference) references.get(i);
             String referenceUri = reference.getURI();
-            boolean referenceValidity = reference.validate(validateContext);
-            String name = "reference[uri=%s]".formatted(referenceUri);
+            boolean referenceValidity = digests.validate(i);
+            // References of the same URI differ by their digest algorithm.
+            String name = "reference[uri=%s, digest=%s]".formatted(referenceUri, reference.getDigestMethod().getAlgorithm());
             components.put(name, referenceValidity);
         }
 
@@ -135,6 +217,30 @@ public class XMLDSigValidator {
         }
     }
 
+    /**
+     * Options of the validator, the {@link #defaults()} changed by the
+     * {@code with} methods.
+     *
+     * @param metrics          listener of validation durations and failures.
+     * @param parallelDigester digester of wide documents, or null to
+     *                         canonicalize the document on the validating
+     *                         thread.
+     */
+    public record Options(SignatureMetrics metrics, ParallelDigester parallelDigester) {
+
+        public static Options defaults() {
+            return new Options(SignatureMetrics.NONE, null);
+        }
+
+        public Options withMetrics(SignatureMetrics metrics) {
+            return new Options(metrics, parallelDigester);
+        }
+
+        public Options withParallelDigester(ParallelDigester parallelDigester) {
+            return new Options(metrics, parallelDigester);
+        }
+    }
+
     public static class XMLDSigValidationException extends Exception {
 
         public XMLDSigValidationException(String message) {
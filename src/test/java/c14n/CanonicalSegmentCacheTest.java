@@ -0,0 +1,211 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import document.DocumentTransformer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import utils.LargeDocumentGenerator;
+
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CanonicalSegmentCacheTest {
+
+    private static final List<String> DIGEST_ALGORITHMS = List.of("SHA-256", "SHA-512");
+
+    private static final String DOCUMENT_HEAD = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <?before data?>
+            <root xmlns="urn:default" xmlns:a="urn:a" a:attr="1">
+            """;
+    private static final String DOCUMENT_CHILD = """
+              <a:child xmlns:c="urn:c" c:attr="2">text &amp; more<inner>inner text</inner></a:child>
+              <empty/>
+            """;
+    private static final String DOCUMENT_TAIL = """
+            </root>
+            <?after?>
+            """;
+
+    @Test
+    void attachReturnsAttachedCache() {
+        Document document = document(10);
+
+        assertNull(CanonicalSegmentCache.of(document));
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+
+        assertSame(cache, CanonicalSegmentCache.of(document));
+        assertSame(cache, CanonicalSegmentCache.attach(document));
+    }
+
+    @Test
+    void digestEqualsDigestOfCanonicalDocument() throws Exception {
+        Document document = document(100);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (algorithm.isExclusive()) continue;
+            assertDigests(document, algorithm, cache.digest(algorithm, DIGEST_ALGORITHMS));
+            assertDigests(document, algorithm, cache.digest(algorithm, DIGEST_ALGORITHMS));
+        }
+    }
+
+    @Test
+    void digestAgainReusesAllSegments() throws Exception {
+        Document document = document(100);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        long documentBytes = cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS).get(0).bytes();
+        assertTrue(cache.canonicalizedBytes() >= documentBytes);
+
+        List<ReferenceDigester.Digest> digests = cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+
+        assertDigests(document, Algorithm.C14N_10, digests);
+        assertTrue(cache.canonicalizedBytes() < 100, "tail only " + cache.canonicalizedBytes());
+    }
+
+    @Test
+    void editedChildIsCanonicalizedAgain() throws Exception {
+        Document document = document(100);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        long documentBytes = cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS).get(0).bytes();
+
+        Element inner = (Element) document.getElementsByTagNameNS("urn:default", "inner").item(42);
+        inner.setTextContent("edited text");
+        List<ReferenceDigester.Digest> digests = cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+
+        assertDigests(document, Algorithm.C14N_10, digests);
+        assertTrue(cache.canonicalizedBytes() < documentBytes / 20, cache.canonicalizedBytes() + " of " + documentBytes);
+    }
+
+    @Test
+    void editsOfAttributesAndTextAreDetected() throws Exception {
+        Document document = document(20);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+        Element child = (Element) document.getElementsByTagNameNS("urn:a", "child").item(3);
+
+        child.setAttributeNS("urn:c", "c:attr", "changed");
+        assertDigests(document, Algorithm.C14N_10, cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS));
+
+        child.getAttributeNodeNS("urn:c", "attr").setValue("changed again");
+        assertDigests(document, Algorithm.C14N_10, cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS));
+
+        ((Text) child.getFirstChild()).setData("changed text");
+        assertDigests(document, Algorithm.C14N_10, cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS));
+    }
+
+    @Test
+    void insertedAndRemovedChildrenAreDetected() throws Exception {
+        Document document = document(20);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+        Element documentElement = document.getDocumentElement();
+
+        Element inserted = document.createElementNS("urn:default", "inserted");
+        inserted.setTextContent("new");
+        documentElement.insertBefore(inserted, documentElement.getFirstChild().getNextSibling());
+        assertDigests(document, Algorithm.C14N_10, cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS));
+
+        documentElement.removeChild(documentElement.getLastChild().getPreviousSibling());
+        assertDigests(document, Algorithm.C14N_10, cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS));
+
+        // A child moved elsewhere.
+        documentElement.appendChild(inserted);
+        assertDigests(document, Algorithm.C14N_10, cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS));
+    }
+
+    @Test
+    void editsOfDocumentElementAndAroundItInvalidateAll() throws Exception {
+        Document document = document(20);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+
+        // Children inherit the namespace, they render it no more.
+        document.getDocumentElement().setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns:c", "urn:c");
+        List<ReferenceDigester.Digest> digests = cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+        assertDigests(document, Algorithm.C14N_10, digests);
+        assertEquals(digests.get(0).bytes(), cache.canonicalizedBytes());
+
+        document.insertBefore(document.createProcessingInstruction("inserted", "data"), document.getDocumentElement());
+        digests = cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+        assertDigests(document, Algorithm.C14N_10, digests);
+        assertEquals(digests.get(0).bytes(), cache.canonicalizedBytes());
+    }
+
+    @Test
+    void renamedNodeNeedsInvalidation() throws Exception {
+        Document document = document(20);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+
+        Node child = document.getElementsByTagNameNS("urn:a", "child").item(5);
+        document.renameNode(child, "urn:a", "a:renamed");
+        cache.invalidate();
+
+        assertDigests(document, Algorithm.C14N_10, cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS));
+    }
+
+    @Test
+    void digestOfLargeDocumentResumesBeforeEdit() throws Exception {
+        Document document = LargeDocumentGenerator.ofSize(2 * 1024 * 1024).toDocument();
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        long documentBytes = cache.digest(Algorithm.C14N_11, DIGEST_ALGORITHMS).get(0).bytes();
+
+        Node lastSection = document.getDocumentElement().getLastChild();
+        ((Element) lastSection).setAttribute("name", "edited");
+        List<ReferenceDigester.Digest> digests = cache.digest(Algorithm.C14N_11, DIGEST_ALGORITHMS);
+        assertDigests(document, Algorithm.C14N_11, digests);
+
+        // The edit near the start makes the digest resume from the head.
+        Node firstSection = document.getDocumentElement().getFirstChild().getNextSibling();
+        ((Element) firstSection).setAttribute("name", "edited");
+        assertDigests(document, Algorithm.C14N_11, cache.digest(Algorithm.C14N_11, DIGEST_ALGORITHMS));
+        assertTrue(cache.canonicalizedBytes() < documentBytes / 100, cache.canonicalizedBytes() + " of " + documentBytes);
+    }
+
+    @Test
+    void documentWithoutMutationEventsIsNotSupported() {
+        Document document = (Document) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Document.class},
+                (proxy, method, arguments) -> null);
+
+        assertThrows(IllegalArgumentException.class, () -> CanonicalSegmentCache.attach(document));
+    }
+
+    @Test
+    void editBetweenDigestsOfOtherAlgorithmsIsNotMissed() throws Exception {
+        Document document = document(10000);
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+
+        Element inner = (Element) document.getElementsByTagNameNS("urn:default", "inner").item(9000);
+        inner.setTextContent("edited text");
+        cache.digest(Algorithm.C14N_10, List.of("SHA-512"));
+        List<ReferenceDigester.Digest> digests = cache.digest(Algorithm.C14N_10, DIGEST_ALGORITHMS);
+
+        assertDigests(document, Algorithm.C14N_10, digests);
+    }
+
+    private static void assertDigests(Document document, Algorithm algorithm, List<ReferenceDigester.Digest> digests) throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        MessageDigest sha512 = MessageDigest.getInstance("SHA-512");
+        long[] bytes = new long[1];
+        new Canonicalizer(algorithm).canonicalize(document, null, (buffer, offset, length) -> {
+            sha256.update(buffer, offset, length);
+            sha512.update(buffer, offset, length);
+            bytes[0] += length;
+        });
+        assertArrayEquals(sha256.digest(), digests.get(0).value(), algorithm.uri());
+        assertArrayEquals(sha512.digest(), digests.get(1).value(), algorithm.uri());
+        assertEquals(bytes[0], digests.get(0).bytes());
+    }
+
+    private static Document document(int children) {
+        return DocumentTransformer.fromString(DOCUMENT_HEAD + DOCUMENT_CHILD.repeat(children) + DOCUMENT_TAIL);
+    }
+}
@@ -0,0 +1,282 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import document.DocumentTransformer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.crypto.dsig.*;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
+import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
+import javax.xml.crypto.dsig.spec.TransformParameterSpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Compares the canonical form with the octets JSR 105 digests for the same
+ * references.
+ */
+class CanonicalizerTest {
+
+    private static final String DOCUMENT = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <?before data?>
+            <!-- comment before -->
+            <root xmlns="urn:default" xmlns:b="urn:b" xmlns:a="urn:a" b:attr="1" a:attr="2" z="3" y="&quot;&lt;&gt;&#9;&#10;&#13;">
+              <a:child xmlns:a="urn:a" xmlns:c="urn:c">text &amp; &lt; &gt; &#13; \u00fcnicode \ud83d\ude00</a:child>
+              <empty/>
+              <![CDATA[<cdata> & ]]>
+              <!-- comment inside -->
+              <inner xmlns="">no <deeper xmlns="">default</deeper></inner>
+              <?inner some data?>
+            </root>
+            <?after?>
+            """;
+
+    private final Canonicalizer canonicalizer = new Canonicalizer();
+
+    @Test
+    void canonicalizeDocumentWithoutEnvelopedSignature() throws Exception {
+        Document document = DocumentTransformer.fromString(DOCUMENT);
+
+        byte[] expected = digestedOctets(document, "", true);
+
+        Node signature = document.getDocumentElement().getLastChild();
+        assertEquals(XMLSignature.XMLNS, signature.getNamespaceURI());
+        assertEquals(new String(expected, UTF_8), new String(canonicalize(document, signature), UTF_8));
+    }
+
+    @Test
+    void canonicalizeSubtreeWithInheritedNamespacesAndXmlAttributes() throws Exception {
+        Document document = DocumentTransformer.fromString("""
+                <root xmlns="urn:default" xmlns:p="urn:p" xmlns:q="urn:outer" xml:lang="en" xml:space="default">
+                  <p:wrapper xmlns:q="urn:inner" attr="not inherited" xml:space="preserve">
+                    <target Id="target" b="2" a="1"><p:x/><q:y/></target>
+                  </p:wrapper>
+                </root>""");
+
+        assertSubtree(document, "target");
+    }
+
+    @Test
+    void canonicalizeSubtreeUndeclaringDefaultNamespace() throws Exception {
+        Document document = DocumentTransformer.fromString("""
+                <root xmlns="urn:default"><target xmlns="" Id="target"><a/></target></root>""");
+
+        assertSubtree(document, "target");
+        assertEquals("<target Id=\"target\"><a></a></target>", new String(canonicalize(target(document, "target")), UTF_8));
+    }
+
+    @Test
+    void canonicalizeDocumentByEachAlgorithm() throws Exception {
+        for (Algorithm algorithm : Algorithm.values()) {
+            Document document = DocumentTransformer.fromString(DOCUMENT);
+
+            // The empty URI selects the document without comments.
+            byte[] expected = digestedOctets(document, "", true, algorithm);
+
+            Node signature = document.getDocumentElement().getLastChild();
+            assertEquals(new String(expected, UTF_8), new String(canonicalize(algorithm.withoutComments(), document, signature), UTF_8), algorithm.uri());
+        }
+    }
+
+    @Test
+    void canonicalizeSubtreeByEachAlgorithm() throws Exception {
+        for (Algorithm algorithm : Algorithm.values()) {
+            Document document = DocumentTransformer.fromString("""
+                    <root xmlns="urn:default" xmlns:p="urn:p" xmlns:q="urn:outer" xmlns:unused="urn:unused" xml:lang="en" xml:id="root">
+                      <p:wrapper xmlns:q="urn:inner" attr="not inherited" xml:space="preserve">
+                        <target Id="target" b="2" q:a="1"><!-- comment --><p:x xmlns:p="urn:p"/><q:y/><z xmlns=""><p:w/></z></target>
+                      </p:wrapper>
+                    </root>""");
+            Element target = target(document, "target");
+            target.setIdAttribute("Id", true);
+
+            // The XPointer selects comments, the bare Id does not.
+            byte[] expected = digestedOctets(document, "#xpointer(id('target'))", false, algorithm);
+
+            assertEquals(new String(expected, UTF_8), new String(canonicalize(algorithm, target), UTF_8), algorithm.uri());
+            assertEquals(new String(digestedOctets(document, "#target", false, algorithm), UTF_8),
+                    new String(canonicalize(algorithm.withoutComments(), target), UTF_8), algorithm.uri());
+        }
+    }
+
+    @Test
+    void canonicalizeSubtreeOfBuiltDocument() throws Exception {
+        for (Algorithm algorithm : Algorithm.values()) {
+            // Ancestors bind namespaces just by their names.
+            Document document = DocumentTransformer.fromString("<p:root xmlns:p=\"urn:p\"/>");
+            document.getDocumentElement().removeAttribute("xmlns:p");
+            Element wrapper = (Element) document.getDocumentElement().appendChild(document.createElementNS("urn:q", "q:wrapper"));
+            Element target = (Element) wrapper.appendChild(document.createElementNS("urn:q", "q:target"));
+            target.setAttributeNS(null, "Id", "target");
+            target.setIdAttribute("Id", true);
+            target.appendChild(document.createElementNS("urn:p", "p:child"));
+
+            byte[] expected = digestedOctets(document, "#target", false, algorithm);
+
+            assertEquals(new String(expected, UTF_8), new String(canonicalize(algorithm.withoutComments(), target), UTF_8), algorithm.uri());
+        }
+    }
+
+    @Test
+    void canonicalizeSubtreeWithEnvelopedSignature() throws Exception {
+        Document document = DocumentTransformer.fromString("""
+                <root xmlns="urn:default"><target Id="target"><a/></target></root>""");
+        Element target = target(document, "target");
+        target.setIdAttribute("Id", true);
+
+        byte[] expected = digestedOctets(document, "#target", true, Algorithm.C14N_11, target);
+
+        Node signature = target.getLastChild();
+        assertEquals(XMLSignature.XMLNS, signature.getNamespaceURI());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Canonicalizer(Algorithm.C14N_11).canonicalize(target, signature, out::write);
+        assertEquals(new String(expected, UTF_8), out.toString(UTF_8));
+    }
+
+    @Test
+    void inheritedXmlBaseOfCanonicalXml11IsNotSupported() {
+        Document document = DocumentTransformer.fromString("""
+                <root xml:base="http://example.com/a/"><target/></root>""");
+        Element target = (Element) document.getDocumentElement().getFirstChild();
+
+        assertThrows(Canonicalizer.CanonicalizationException.class,
+                () -> new Canonicalizer(Algorithm.C14N_11).canonicalize(target, (bytes, offset, length) -> {
+                }));
+    }
+
+    @Test
+    void canonicalizeStartTagOfApex() {
+        Document document = DocumentTransformer.fromString("""
+                <root xmlns="urn:default" xmlns:p="urn:p"><p:target b="2" a="1"><p:x/></p:target></root>""");
+        Element target = (Element) document.getDocumentElement().getFirstChild();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        canonicalizer.canonicalizeStartTag(target, out::write);
+
+        assertEquals("<p:target xmlns=\"urn:default\" xmlns:p=\"urn:p\" a=\"1\" b=\"2\">", out.toString(UTF_8));
+    }
+
+    @Test
+    void canonicalPartsJoinIntoCanonicalDocument() {
+        Document document = DocumentTransformer.fromString(DOCUMENT);
+        Element documentElement = document.getDocumentElement();
+        // Splits the children at the one redeclaring a namespace.
+        Node split = documentElement.getFirstChild().getNextSibling();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        canonicalizer.canonicalizeHead(document, null, out::write);
+        canonicalizer.canonicalizeChildren(documentElement.getFirstChild(), split, null, out::write);
+        canonicalizer.canonicalizeChildren(split, null, null, out::write);
+        canonicalizer.canonicalizeTail(document, null, out::write);
+
+        assertEquals(new String(canonicalize(document, null), UTF_8), out.toString(UTF_8));
+    }
+
+    @Test
+    void canonicalizeChildrenOfExclusiveCanonicalizationIsNotSupported() {
+        Document document = DocumentTransformer.fromString(DOCUMENT);
+        Node first = document.getDocumentElement().getFirstChild();
+
+        assertThrows(Canonicalizer.CanonicalizationException.class,
+                () -> new Canonicalizer(Algorithm.EXCLUSIVE).canonicalizeChildren(first, null, null, (bytes, offset, length) -> {
+                }));
+    }
+
+    @Test
+    void canonicalizeDocumentLargerThanBuffer() throws Exception {
+        Document document = DocumentTransformer.fromString("<root>" + "<e a=\"\u00e9\">\u20ac&amp;</e>".repeat(5000) + "</root>");
+
+        byte[] expected = digestedOctets(document, "", true);
+
+        assertEquals(new String(expected, UTF_8), new String(canonicalize(document, document.getDocumentElement().getLastChild()), UTF_8));
+    }
+
+    private void assertSubtree(Document document, String id) throws Exception {
+        Element target = target(document, id);
+        target.setIdAttribute("Id", true);
+
+        byte[] expected = digestedOctets(document, "#" + id, false);
+
+        assertEquals(new String(expected, UTF_8), new String(canonicalize(target), UTF_8));
+    }
+
+    private static Element target(Document document, String id) {
+        List<Element> elements = new ArrayList<>();
+        collect(document.getDocumentElement(), elements);
+        return elements.stream().filter(element -> id.equals(element.getAttribute("Id"))).findFirst().orElseThrow();
+    }
+
+    private static void collect(Element element, List<Element> elements) {
+        elements.add(element);
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element childElement) collect(childElement, elements);
+        }
+    }
+
+    private byte[] canonicalize(Document document, Node excluded) {
+        return canonicalize(Algorithm.C14N_10, document, excluded);
+    }
+
+    private static byte[] canonicalize(Algorithm algorithm, Document document, Node excluded) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Canonicalizer(algorithm).canonicalize(document, excluded, out::write);
+        return out.toByteArray();
+    }
+
+    private byte[] canonicalize(Element element) {
+        return canonicalize(Algorithm.C14N_10, element);
+    }
+
+    private static byte[] canonicalize(Algorithm algorithm, Element element) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Canonicalizer(algorithm).canonicalize(element, out::write);
+        return out.toByteArray();
+    }
+
+    private static byte[] digestedOctets(Document document, String uri, boolean enveloped) throws Exception {
+        return digestedOctets(document, uri, enveloped, Algorithm.C14N_10);
+    }
+
+    private static byte[] digestedOctets(Document document, String uri, boolean enveloped, Algorithm algorithm) throws Exception {
+        return digestedOctets(document, uri, enveloped, algorithm, document.getDocumentElement());
+    }
+
+    /**
+     * Signs the reference by JSR 105 and returns the octets it digested. The
+     * signature is appended to the parent element.
+     */
+    private static byte[] digestedOctets(Document document, String uri, boolean enveloped, Algorithm algorithm, Element parent) throws Exception {
+        XMLSignatureFactory factory = XMLSignatureFactory.getInstance("DOM");
+        List<Transform> transforms = new ArrayList<>();
+        if (enveloped) {
+            transforms.add(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null));
+        }
+        transforms.add(factory.newTransform(algorithm.uri(), (TransformParameterSpec) null));
+        Reference reference = factory.newReference(uri, factory.newDigestMethod(DigestMethod.SHA256, null), transforms, null, null);
+        SignedInfo signedInfo = factory.newSignedInfo(
+                factory.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
+                factory.newSignatureMethod("http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", null),
+                List.of(reference)
+        );
+        DOMSignContext context = new DOMSignContext(getPrivateKey(), parent);
+        context.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        factory.newXMLSignature(signedInfo, null).sign(context);
+        try (InputStream digested = reference.getDigestInputStream()) {
+            return digested.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package c14n;
+
+import document.DocumentTransformer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Compares the canonical form of parse events with the canonical form of the
+ * parsed DOM.
+ */
+class EventCanonicalizerTest {
+
+    private final EventCanonicalizer eventCanonicalizer = new EventCanonicalizer();
+    private final Canonicalizer canonicalizer = new Canonicalizer();
+
+    @Test
+    void canonicalizeDocument() throws Exception {
+        assertCanonicalFormOfDom("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <?before  data ?>
+                <!-- comment before -->
+                <root xmlns="urn:default" xmlns:b="urn:b" xmlns:a="urn:a" b:attr="1" a:attr="2" z="3" y="&quot;&lt;&gt;&#9;&#10;&#13;">
+                  <a:child xmlns:a="urn:a" xmlns:c="urn:c">text &amp; &lt; &gt; &#13; \u00fcnicode \ud83d\ude00</a:child>
+                  <empty/>
+                  <![CDATA[<cdata> & ]]>
+                  <!-- comment inside -->
+                  <inner xmlns="">no <deeper xmlns="">default</deeper><x:again xmlns:x="urn:default" xmlns="urn:default"/></inner>
+                  <?inner some data?>
+                  <lang xml:lang="en" xml:space="preserve" a:b="1" b:a="2"/>
+                </root>
+                <?after?>
+                <!-- comment after -->
+                """);
+    }
+
+    @Test
+    void canonicalizeGeneratedDocument() throws Exception {
+        LargeDocumentGenerator generator = LargeDocumentGenerator.ofSize(64 * 1024)
+                .withShape(32, 8, 4)
+                .withMix(0.5, 0.3);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        generator.write(outputStream);
+
+        assertCanonicalFormOfDom(outputStream.toString(UTF_8));
+    }
+
+    @Test
+    void relativeNamespaceIsNotSupported() {
+        assertThrows(Canonicalizer.CanonicalizationException.class,
+                () -> canonicalizeEvents("<root xmlns=\"relative\"/>"));
+    }
+
+    private void assertCanonicalFormOfDom(String content) throws XMLStreamException {
+        Document document = DocumentTransformer.fromString(content);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        canonicalizer.canonicalize(document, null, expected::write);
+
+        assertEquals(expected.toString(UTF_8), new String(canonicalizeEvents(content), UTF_8));
+    }
+
+    private byte[] canonicalizeEvents(String content) throws XMLStreamException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        XMLStreamReader reader = DocumentTransformer.streamReader(new ByteArrayInputStream(content.getBytes(UTF_8)));
+        eventCanonicalizer.startDocument(outputStream::write);
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    String prefix = reader.getPrefix();
+                    eventCanonicalizer.startElement(qualifiedName(prefix, reader.getLocalName()));
+                    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                        String namespacePrefix = reader.getNamespacePrefix(i);
+                        String namespace = reader.getNamespaceURI(i);
+                        eventCanonicalizer.namespace(namespacePrefix == null ? "" : namespacePrefix, namespace == null ? "" : namespace);
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        eventCanonicalizer.attribute(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                                reader.getAttributeNamespace(i), reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                    }
+                }
+                case XMLStreamConstants.END_ELEMENT -> eventCanonicalizer.endElement();
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE ->
+                        eventCanonicalizer.characters(reader.getText());
+                case XMLStreamConstants.PROCESSING_INSTRUCTION ->
+                        eventCanonicalizer.processingInstruction(reader.getPITarget(), reader.getPIData());
+                default -> {
+                    // Comments are not output.
+                }
+            }
+        }
+        eventCanonicalizer.endDocument();
+        return outputStream.toByteArray();
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+}
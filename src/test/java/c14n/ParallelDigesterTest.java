@@ -0,0 +1,137 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import document.DocumentTransformer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import utils.LargeDocumentGenerator;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelDigesterTest {
+
+    private static final String WIDE_DOCUMENT_HEAD = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <?before data?>
+            <!-- comment before -->
+            <root xmlns="urn:default" xmlns:a="urn:a" xmlns:b="urn:b" a:attr="1" xml:lang="en">
+            """;
+    // Children redeclaring, undeclaring and declaring namespaces, with text,
+    // comments and processing instructions between them.
+    private static final String WIDE_DOCUMENT_CHILD = """
+              <a:child xmlns:a="urn:a" xmlns:c="urn:c" c:attr="2">text &amp; \u00fcnicode</a:child>
+              <!-- comment inside -->
+              <empty xmlns="urn:default"/>
+              <inner xmlns="">no <deeper xmlns="urn:other">default</deeper></inner>
+              <?inner some data?>
+            """;
+    private static final String WIDE_DOCUMENT_TAIL = """
+            </root>
+            <!-- comment after -->
+            <?after?>
+            """;
+
+    private final ForkJoinPool pool = new ForkJoinPool(3);
+    private final ParallelDigester digester = new ParallelDigester(pool, 1);
+
+    @AfterEach
+    void shutDownPool() {
+        pool.shutdown();
+    }
+
+    @Test
+    void digestEqualsSequentialDigestByEachAlgorithm() throws Exception {
+        Document document = DocumentTransformer.fromString(wideDocument(200));
+
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (algorithm.isExclusive()) continue;
+            List<ReferenceDigester.Digest> digests = digester.digest(document, null, algorithm, List.of("SHA-256", "SHA-512"));
+
+            assertNotNull(digests, algorithm.uri());
+            assertDigests(document, null, algorithm, digests);
+        }
+    }
+
+    @Test
+    void digestLeavesOutExcludedChild() throws Exception {
+        Document document = DocumentTransformer.fromString(wideDocument(100));
+        Node excluded = document.getDocumentElement().getElementsByTagNameNS("urn:a", "child").item(42);
+
+        List<ReferenceDigester.Digest> digests = digester.digest(document, excluded, Algorithm.C14N_10, List.of("SHA-256"));
+
+        assertDigests(document, excluded, Algorithm.C14N_10, digests);
+    }
+
+    @Test
+    void digestOfLargeDocumentEqualsSequentialDigest() throws Exception {
+        Document document = LargeDocumentGenerator.ofSize(512 * 1024).toDocument();
+
+        List<ReferenceDigester.Digest> digests = digester.digest(document, null, Algorithm.C14N_11, List.of("SHA-256"));
+
+        assertDigests(document, null, Algorithm.C14N_11, digests);
+    }
+
+    @Test
+    void digestOfExpandedDocumentEqualsSequentialDigest() throws Exception {
+        // A document built by the DOM API is not deferred.
+        Document parsed = DocumentTransformer.fromString(wideDocument(100));
+        Document document = DocumentBuilderFactory.newDefaultNSInstance().newDocumentBuilder().newDocument();
+        document.appendChild(document.importNode(parsed.getDocumentElement(), true));
+
+        List<ReferenceDigester.Digest> digests = digester.digest(document, null, Algorithm.C14N_10, List.of("SHA-256"));
+
+        assertDigests(document, null, Algorithm.C14N_10, digests);
+    }
+
+    @Test
+    void narrowDocumentIsNotSplit() {
+        Document document = DocumentTransformer.fromString(wideDocument(2));
+        ParallelDigester wideOnly = new ParallelDigester(pool, 1024);
+
+        assertNull(wideOnly.digest(document, null, Algorithm.C14N_10, List.of("SHA-256")));
+    }
+
+    @Test
+    void exclusiveCanonicalizationIsNotSplit() {
+        Document document = DocumentTransformer.fromString(wideDocument(100));
+
+        assertNull(digester.digest(document, null, Algorithm.EXCLUSIVE, List.of("SHA-256")));
+    }
+
+    @Test
+    void excludedDocumentElementIsNotSplit() {
+        Document document = DocumentTransformer.fromString(wideDocument(100));
+        Element documentElement = document.getDocumentElement();
+
+        assertNull(digester.digest(document, documentElement, Algorithm.C14N_10, List.of("SHA-256")));
+    }
+
+    private static void assertDigests(Document document, Node excluded, Algorithm algorithm, List<ReferenceDigester.Digest> digests) throws Exception {
+        MessageDigest[] messageDigests = new MessageDigest[digests.size()];
+        messageDigests[0] = MessageDigest.getInstance("SHA-256");
+        if (messageDigests.length > 1) messageDigests[1] = MessageDigest.getInstance("SHA-512");
+        long[] bytes = new long[1];
+        new Canonicalizer(algorithm).canonicalize(document, excluded, (buffer, offset, length) -> {
+            for (MessageDigest messageDigest : messageDigests) {
+                messageDigest.update(buffer, offset, length);
+            }
+            bytes[0] += length;
+        });
+        for (int i = 0; i < messageDigests.length; i++) {
+            assertArrayEquals(messageDigests[i].digest(), digests.get(i).value(), algorithm.uri());
+            assertEquals(bytes[0], digests.get(i).bytes());
+        }
+    }
+
+    private static String wideDocument(int children) {
+        return WIDE_DOCUMENT_HEAD + WIDE_DOCUMENT_CHILD.repeat(children) + WIDE_DOCUMENT_TAIL;
+    }
+}
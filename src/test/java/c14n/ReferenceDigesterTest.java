@@ -0,0 +1,161 @@
+package c14n;
+
+import document.DocumentTransformer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner;
+import xades.XAdESSigner.PropertiesBinding;
+import xmldsig.XMLDSigSigner;
+
+import javax.xml.crypto.KeySelector;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.XMLSignature;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMValidateContext;
+import java.util.List;
+
+import static document.DocumentTransformer.fromBytes;
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class ReferenceDigesterTest {
+
+    private static final String SHA256 = XAdESSigner.SHA256_DIGEST_ALGORITHM;
+    private static final String SHA512 = XAdESSigner.SHA512_DIGEST_ALGORITHM;
+
+    @Test
+    void digestEqualsDigestValueOfSignedReferences() throws Exception {
+        for (String resource : new String[]{"/xmldsig/signed-document.xml", "/xades/signed-document.xml"}) {
+            ValidatedSignature signature = unmarshal(fromBytes(loadBytesFromResource(resource)));
+
+            for (Reference reference : signature.references()) {
+                ReferenceDigester.Digest digest = ReferenceDigester.digest(reference, signature.context());
+
+                assertNotNull(digest, resource + " " + reference.getURI());
+                assertArrayEquals(reference.getDigestValue(), digest.value(), resource + " " + reference.getURI());
+                assertTrue(digest.bytes() > 0);
+            }
+        }
+    }
+
+    @Test
+    void digestOfChangedDocumentDiffers() throws Exception {
+        ValidatedSignature signature = unmarshal(fromBytes(loadBytesFromResource("/xmldsig/signed-changed-document.xml")));
+        Reference reference = signature.references().get(0);
+
+        assertFalse(ReferenceDigester.validate(reference, signature.context()));
+        assertFalse(reference.validate(signature.context()));
+    }
+
+    @Test
+    void unsupportedReferencesAreLeftToJsr105() throws Exception {
+        Document document = fromBytes(loadBytesFromResource("/xades/signed-document.xml"));
+        Element signedProperties = (Element) document.getElementsByTagNameNS("*", "SignedProperties").item(0);
+        Element copy = (Element) document.getDocumentElement().appendChild(signedProperties.cloneNode(true));
+        copy.setIdAttribute("Id", true);
+
+        ValidatedSignature signature = unmarshal(document);
+
+        // The Id of the signed properties is duplicated.
+        Reference signedPropertiesReference = signature.references().get(1);
+        assertNull(ReferenceDigester.digest(signedPropertiesReference, signature.context()));
+    }
+
+    @Test
+    void signedDocumentsAreValidatedByJsr105() throws Exception {
+        XAdESSigner xadesSigner = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        XMLDSigSigner xmldsigSigner = new XMLDSigSigner(getCertificate(), getPrivateKey());
+
+        Document xadesDocument = xadesSigner.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+        Document xmldsigDocument = xmldsigSigner.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+
+        for (Document document : new Document[]{xadesDocument, xmldsigDocument}) {
+            ValidatedSignature signature = unmarshal(fromBytes(DocumentTransformer.toBytes(document)));
+            assertTrue(signature.signature().validate(signature.context()));
+        }
+    }
+
+    @Test
+    void digestsOfOnePassEqualSingleDigests() {
+        String c14n = Canonicalizer.Algorithm.C14N_10.uri();
+        Document document = LargeDocumentGenerator.ofSize(16 * 1024).toDocument();
+
+        List<ReferenceDigester.Digest> digests = ReferenceDigester.digestEnveloped(document, c14n, List.of(SHA256, SHA512));
+
+        assertEquals(2, digests.size());
+        assertArrayEquals(ReferenceDigester.digestEnveloped(document, c14n, SHA256).value(), digests.get(0).value());
+        assertArrayEquals(ReferenceDigester.digestEnveloped(document, c14n, SHA512).value(), digests.get(1).value());
+        assertEquals(digests.get(0).bytes(), digests.get(1).bytes());
+        assertThrows(IllegalArgumentException.class,
+                () -> ReferenceDigester.digestEnveloped(document, c14n, List.of(SHA256, "urn:unknown")));
+    }
+
+    @Test
+    void referencesOfSameContentWithDifferentDigestsAreValid() throws Exception {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM)
+                .withDocumentDigestAlgorithms(List.of(SHA256, SHA512)));
+        Document signed = signer.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+
+        ValidatedSignature signature = unmarshal(fromBytes(DocumentTransformer.toBytes(signed)));
+        List<Reference> references = signature.references();
+        ReferenceDigester.Digests digests = ReferenceDigester.digest(references, signature.context());
+
+        assertEquals(3, references.size());
+        assertEquals(SHA256, references.get(0).getDigestMethod().getAlgorithm());
+        assertEquals(SHA512, references.get(1).getDigestMethod().getAlgorithm());
+        for (int i = 0; i < references.size(); i++) {
+            assertArrayEquals(references.get(i).getDigestValue(), digests.get(i).value());
+            assertTrue(digests.validate(i));
+        }
+        assertEquals(digests.get(0).bytes(), digests.get(1).bytes());
+        assertTrue(signature.signature().validate(signature.context()));
+    }
+
+    @Test
+    void changedReferenceOfSameContentIsInvalid() throws Exception {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM)
+                .withDocumentDigestAlgorithms(List.of(SHA256, SHA512)));
+        Document signed = signer.signEnveloped(LargeDocumentGenerator.ofSize(1024).toDocument());
+        signed.getDocumentElement().setAttribute("changed", "true");
+
+        ValidatedSignature signature = unmarshal(fromBytes(DocumentTransformer.toBytes(signed)));
+        ReferenceDigester.Digests digests = ReferenceDigester.digest(signature.references(), signature.context());
+
+        assertFalse(digests.validate(0));
+        assertFalse(digests.validate(1));
+        assertTrue(digests.validate(2));
+    }
+
+    private static ValidatedSignature unmarshal(Document document) throws Exception {
+        NodeList signedProperties = document.getElementsByTagNameNS("*", "SignedProperties");
+        for (int i = 0; i < signedProperties.getLength(); i++) {
+            ((Element) signedProperties.item(i)).setIdAttribute("Id", true);
+        }
+        DOMValidateContext context = new DOMValidateContext(
+                KeySelector.singletonKeySelector(getCertificate().getPublicKey()),
+                document.getElementsByTagNameNS(XMLNS, "Signature").item(0)
+        );
+        XMLSignature signature = XMLSignatureFactory.getInstance("DOM").unmarshalXMLSignature(context);
+        return new ValidatedSignature(signature, context);
+    }
+
+    private record ValidatedSignature(XMLSignature signature, DOMValidateContext context) {
+
+        @SuppressWarnings("unchecked")
+        private List<Reference> references() {
+            return signature.getSignedInfo().getReferences();
+        }
+    }
+}
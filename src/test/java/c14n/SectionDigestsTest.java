@@ -0,0 +1,128 @@
+package c14n;
+
+import c14n.Canonicalizer.Algorithm;
+import document.DocumentTransformer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.security.MessageDigest;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SectionDigestsTest {
+
+    private static final String DOCUMENT_HEAD = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <root xmlns="urn:default" xmlns:a="urn:a">
+            """;
+    private static final String DOCUMENT_SECTION = """
+              <a:section xmlns:c="urn:c" c:attr="2">text<inner>inner text</inner></a:section>
+              <!-- comment between -->
+            """;
+    private static final String DOCUMENT_TAIL = """
+            </root>
+            """;
+
+    @Test
+    void leafIsDigestOfCanonicalSection() throws Exception {
+        Document document = document(3);
+        Element section = (Element) document.getElementsByTagNameNS("urn:a", "section").item(1);
+
+        SectionDigests digests = SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256");
+
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        new Canonicalizer(Algorithm.C14N_10).canonicalizeChildren(section, section.getNextSibling(), null, sha256::update);
+        assertEquals(3, digests.sections());
+        assertArrayEquals(sha256.digest(), digests.leaves().get(1));
+        assertEquals("a:section", digests.name(1));
+    }
+
+    @Test
+    void rootDigestsNodesUpToTheRoot() throws Exception {
+        Document document = document(3);
+
+        SectionDigests digests = SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256");
+
+        // The third leaf moves up as it is.
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        sha256.update((byte) 0x01);
+        sha256.update(digests.leaves().get(0));
+        sha256.update(digests.leaves().get(1));
+        byte[] node = sha256.digest();
+        sha256.update((byte) 0x01);
+        sha256.update(node);
+        sha256.update(digests.leaves().get(2));
+        assertArrayEquals(sha256.digest(), digests.root());
+    }
+
+    @Test
+    void changedFindsChangedSections() {
+        Document document = document(37);
+        SectionDigests signed = SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256");
+
+        for (int section : new int[]{0, 5, 36}) {
+            document.getElementsByTagNameNS("urn:default", "inner").item(section).setTextContent("changed");
+        }
+        SectionDigests current = SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256");
+
+        assertEquals(List.of(0, 5, 36), signed.changed(current));
+        assertEquals(List.of(), signed.changed(signed));
+    }
+
+    @Test
+    void changesOutsideOfSectionsAreNotFound() {
+        Document document = document(4);
+        SectionDigests signed = SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256");
+
+        Node comment = document.getElementsByTagNameNS("urn:a", "section").item(2).getNextSibling().getNextSibling();
+        comment.setNodeValue("changed comment");
+        SectionDigests current = SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256");
+
+        assertEquals(List.of(), signed.changed(current));
+    }
+
+    @Test
+    void excludedSectionIsLeftOut() {
+        Document document = document(4);
+        Node excluded = document.getElementsByTagNameNS("urn:a", "section").item(3);
+
+        SectionDigests digests = SectionDigests.of(document, excluded, Algorithm.C14N_10, "SHA-256");
+
+        assertEquals(3, digests.sections());
+    }
+
+    @Test
+    void decodedTreeEqualsDigestedTree() {
+        SectionDigests digests = SectionDigests.of(document(5), null, Algorithm.C14N_11, "SHA-512");
+
+        SectionDigests decoded = SectionDigests.of(Algorithm.C14N_11, "SHA-512", digests.leaves());
+
+        assertArrayEquals(digests.root(), decoded.root());
+        assertNull(decoded.name(0));
+        assertEquals(List.of(), decoded.changed(digests));
+    }
+
+    @Test
+    void treesOfDifferentSectionsCannotBeCompared() {
+        SectionDigests digests = SectionDigests.of(document(5), null, Algorithm.C14N_10, "SHA-256");
+
+        assertThrows(IllegalArgumentException.class, () -> digests.changed(SectionDigests.of(document(6), null, Algorithm.C14N_10, "SHA-256")));
+        assertThrows(IllegalArgumentException.class, () -> digests.changed(SectionDigests.of(document(5), null, Algorithm.C14N_11, "SHA-256")));
+    }
+
+    @Test
+    void documentWithoutSectionsHasEmptyRoot() {
+        SectionDigests digests = SectionDigests.of(document(0), null, Algorithm.C14N_10, "SHA-256");
+
+        assertEquals(0, digests.sections());
+        assertEquals(0, digests.root().length);
+        assertEquals(List.of(), digests.changed(digests));
+    }
+
+    private static Document document(int sections) {
+        return DocumentTransformer.fromString(DOCUMENT_HEAD + DOCUMENT_SECTION.repeat(sections) + DOCUMENT_TAIL);
+    }
+}
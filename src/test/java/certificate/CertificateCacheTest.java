@@ -0,0 +1,85 @@
+package certificate;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.*;
+
+class CertificateCacheTest {
+
+    private final X509Certificate certificate = getCertificate();
+
+    @Test
+    void getReusesParsedCertificate() throws CertificateException {
+        CertificateCache cache = new CertificateCache();
+
+        CertificateCache.Entry first = cache.get(certificate.getEncoded());
+        CertificateCache.Entry second = cache.get(certificate.getEncoded());
+        CertificateCache.Entry third = cache.get(certificate);
+
+        assertSame(first, second);
+        assertSame(first, third);
+        assertEquals(certificate, first.certificate());
+        assertEquals(certificate.getPublicKey(), first.publicKey());
+        CertificateCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.size());
+        assertEquals(2.0 / 3, stats.hitRate(), 0.0001);
+    }
+
+    @Test
+    void leastRecentlyUsedCertificateIsEvicted() throws CertificateException {
+        CertificateCache cache = new CertificateCache(2);
+        X509Certificate rootCa = getChainCertificate(ROOT_CA_ALIAS);
+        X509Certificate intermediateCa = getChainCertificate(INTERMEDIATE_CA_ALIAS);
+
+        CertificateCache.Entry first = cache.get(certificate);
+        cache.get(rootCa);
+        // The certificate is used again, so the root CA is the eldest one.
+        assertSame(first, cache.get(certificate));
+        cache.get(intermediateCa);
+
+        assertSame(first, cache.get(certificate));
+        CertificateCache.Stats stats = cache.stats();
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.size());
+        assertEquals(2, stats.capacity());
+        assertEquals(2, stats.hits());
+        assertEquals(3, stats.misses());
+        assertEquals(0.4, stats.hitRate(), 0.0001);
+
+        cache.get(rootCa);
+        assertEquals(4, cache.stats().misses());
+        assertEquals(2, cache.stats().evictions());
+    }
+
+    @Test
+    void trustDecisionExpires() throws CertificateException {
+        CertificateCache cache = new CertificateCache();
+        CertificateCache.Entry entry = cache.get(certificate);
+        TrustValidator trustValidator = new TrustValidator(List.of(certificate));
+        Instant now = Instant.now();
+
+        assertFalse(entry.isTrustedBy(trustValidator, now));
+
+        entry.trustedBy(trustValidator, now.plusSeconds(60));
+        assertTrue(entry.isTrustedBy(trustValidator, now));
+        assertFalse(entry.isTrustedBy(trustValidator, now.plusSeconds(61)));
+        assertTrue(cache.get(certificate).isTrustedBy(trustValidator, now));
+        assertFalse(entry.isTrustedBy(new TrustValidator(List.of(certificate)), now));
+    }
+
+    @Test
+    void invalidEncodingIsRejected() {
+        CertificateCache cache = new CertificateCache();
+
+        assertThrows(CertificateException.class, () -> cache.get(new byte[]{0x30, 0x03, 0x02, 0x01, 0x01}));
+        assertEquals(0, cache.stats().size());
+    }
+}
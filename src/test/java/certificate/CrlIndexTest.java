@@ -0,0 +1,113 @@
+package certificate;
+
+import certificate.RevocationChecker.RevocationException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.*;
+
+class CrlIndexTest {
+
+    private final X509Certificate rootCa = getChainCertificate(ROOT_CA_ALIAS);
+    private final X509Certificate intermediateCa = getChainCertificate(INTERMEDIATE_CA_ALIAS);
+    private final PrivateKey intermediateCaKey = getChainPrivateKey(INTERMEDIATE_CA_ALIAS);
+    private final Instant thisUpdate = Instant.now().truncatedTo(SECONDS);
+    private final Instant nextUpdate = thisUpdate.plus(Duration.ofDays(1));
+
+    @Test
+    void isRevokedFindsSerialNumbersOfAllSizes() throws GeneralSecurityException, RevocationException {
+        List<BigInteger> serialNumbers = List.of(
+                BigInteger.ONE,
+                BigInteger.valueOf(Long.MAX_VALUE),
+                BigInteger.TWO.pow(64).add(BigInteger.TEN),
+                BigInteger.TWO.pow(158).add(BigInteger.ONE), // 20 octets
+                BigInteger.TWO.pow(200), // too long
+                BigInteger.valueOf(-42) // negative
+        );
+
+        CrlIndex index = CrlIndex.parse(crl(serialNumbers), intermediateCa);
+
+        for (BigInteger serialNumber : serialNumbers) assertTrue(index.isRevoked(serialNumber), serialNumber.toString());
+        assertFalse(index.isRevoked(BigInteger.TWO));
+        assertFalse(index.isRevoked(BigInteger.TWO.pow(64)));
+        assertFalse(index.isRevoked(BigInteger.TWO.pow(201)));
+        assertEquals(serialNumbers.size(), index.size());
+        assertEquals(intermediateCa.getSubjectX500Principal(), index.issuer());
+        assertEquals(thisUpdate, index.thisUpdate());
+        assertEquals(nextUpdate, index.nextUpdate());
+    }
+
+    @Test
+    void isRevokedFindsRandomSerialNumbers() throws GeneralSecurityException, RevocationException {
+        Random random = new Random(42);
+        List<BigInteger> serialNumbers = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) serialNumbers.add(new BigInteger(128, random));
+
+        CrlIndex index = CrlIndex.parse(crl(serialNumbers), intermediateCa);
+
+        for (BigInteger serialNumber : serialNumbers) assertTrue(index.isRevoked(serialNumber));
+        // Bloom filter false positives are resolved by the binary search.
+        for (int i = 0; i < 20_000; i++) assertFalse(index.isRevoked(new BigInteger(128, random)));
+    }
+
+    @Test
+    void emptyCrlRevokesNothing() throws GeneralSecurityException, RevocationException {
+        CrlIndex index = CrlIndex.parse(crl(List.of()), intermediateCa);
+
+        assertFalse(index.isRevoked(BigInteger.ONE));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void mappedIndexMatchesParsedOne() throws GeneralSecurityException, RevocationException, IOException {
+        List<BigInteger> serialNumbers = List.of(BigInteger.valueOf(7), BigInteger.TWO.pow(100), BigInteger.valueOf(-1));
+        CrlIndex index = CrlIndex.parse(crl(serialNumbers), intermediateCa);
+        Path path = Files.createTempFile("crl", ".idx");
+        try {
+            index.write(path);
+            CrlIndex mapped = CrlIndex.map(path);
+
+            for (BigInteger serialNumber : serialNumbers) assertTrue(mapped.isRevoked(serialNumber));
+            assertFalse(mapped.isRevoked(BigInteger.valueOf(8)));
+            assertEquals(index.size(), mapped.size());
+            assertEquals(index.issuer(), mapped.issuer());
+            assertEquals(index.thisUpdate(), mapped.thisUpdate());
+            assertEquals(index.nextUpdate(), mapped.nextUpdate());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void parseThrowsExceptionForOtherIssuer() throws GeneralSecurityException {
+        byte[] crl = crl(List.of(BigInteger.ONE));
+
+        assertThrows(RevocationException.class, () -> CrlIndex.parse(crl, rootCa));
+    }
+
+    @Test
+    void parseThrowsExceptionForInvalidSignature() throws GeneralSecurityException {
+        byte[] crl = crl(List.of(BigInteger.ONE));
+        crl[crl.length - 1] ^= 1;
+
+        assertThrows(RevocationException.class, () -> CrlIndex.parse(crl, intermediateCa));
+    }
+
+    private byte[] crl(List<BigInteger> serialNumbers) throws GeneralSecurityException {
+        return RevocationResponder.crl(intermediateCa, intermediateCaKey, serialNumbers, thisUpdate, nextUpdate);
+    }
+}
@@ -0,0 +1,184 @@
+package certificate;
+
+import certificate.RevocationChecker.RevocationException;
+import certificate.RevocationChecker.Status;
+import certificate.TrustValidator.TrustValidationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import utils.MutableClock;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.IOException;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.*;
+
+class RevocationCheckerTest {
+
+    private final X509Certificate rootCa = getChainCertificate(ROOT_CA_ALIAS);
+    private final X509Certificate intermediateCa = getChainCertificate(INTERMEDIATE_CA_ALIAS);
+    private final X509Certificate signer = getChainCertificate(SIGNER_ALIAS);
+    private final MutableClock clock = new MutableClock(Instant.now());
+
+    private RevocationResponder responder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        responder = new RevocationResponder(clock);
+        responder.addIssuer(rootCa, getChainPrivateKey(ROOT_CA_ALIAS));
+        responder.addIssuer(intermediateCa, getChainPrivateKey(INTERMEDIATE_CA_ALIAS));
+    }
+
+    @AfterEach
+    void tearDown() {
+        responder.close();
+    }
+
+    @Test
+    void statusIsCachedUntilNextUpdate() throws RevocationException {
+        try (RevocationChecker checker = ocspChecker(clock)) {
+            assertEquals(Status.GOOD, checker.check(signer, intermediateCa));
+            assertEquals(Status.GOOD, checker.check(signer, intermediateCa));
+
+            assertEquals(1, responder.ocspRequests());
+            RevocationChecker.Stats stats = checker.stats();
+            assertEquals(1, stats.hits());
+            assertEquals(1, stats.misses());
+            assertFalse(stats.savedLatency().isZero());
+
+            clock.instant = clock.instant.plus(responder.validity).plusSeconds(1);
+            assertEquals(Status.GOOD, checker.check(signer, intermediateCa));
+            assertEquals(2, responder.ocspRequests());
+        }
+    }
+
+    @Test
+    void checkReportsRevokedCertificate() throws RevocationException {
+        responder.revoke(signer);
+        try (RevocationChecker checker = ocspChecker(clock)) {
+            assertEquals(Status.REVOKED, checker.check(signer, intermediateCa));
+            assertEquals(Status.GOOD, checker.check(intermediateCa, rootCa));
+        }
+    }
+
+    @Test
+    void checkFallsBackToCrl() throws RevocationException {
+        responder.ocspEnabled = false;
+        responder.revoke(signer);
+        Map<X500Principal, URI> crlLocations = Map.of(
+                intermediateCa.getSubjectX500Principal(), responder.crlUri(intermediateCa)
+        );
+        try (RevocationChecker checker = new RevocationChecker(clock, RevocationChecker.DEFAULT_REFRESH_AHEAD, responder.ocspUri(), crlLocations)) {
+            assertEquals(Status.REVOKED, checker.check(signer, intermediateCa));
+            assertEquals(Status.REVOKED, checker.check(signer, intermediateCa));
+
+            assertEquals(1, responder.crlRequests());
+            assertEquals(1, checker.stats().failures());
+        }
+    }
+
+    @Test
+    void checkThrowsExceptionWithoutRevocationSource() {
+        try (RevocationChecker checker = new RevocationChecker()) {
+            assertThrows(RevocationException.class, () -> checker.check(signer, intermediateCa));
+        }
+    }
+
+    @Test
+    void usedStatusIsRefreshedInBackground() throws RevocationException, InterruptedException {
+        Clock systemClock = Clock.systemUTC();
+        // The responder truncates thisUpdate to seconds, the status is valid
+        // for more than the refresh ahead then.
+        responder.validity = Duration.ofSeconds(4);
+        clock.instant = systemClock.instant();
+        // The responder is driven by the mutable clock, it is kept in sync
+        // with the system clock the checker schedules refreshes by.
+        try (RevocationChecker checker = new RevocationChecker(systemClock, Duration.ofSeconds(2), responder.ocspUri(), Map.of())) {
+            checker.check(signer, intermediateCa);
+            checker.check(signer, intermediateCa);
+
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (checker.stats().refreshes() == 0 && System.nanoTime() < deadline) {
+                clock.instant = systemClock.instant();
+                Thread.sleep(50);
+            }
+
+            assertTrue(checker.stats().refreshes() >= 1);
+            assertTrue(responder.ocspRequests() >= 2);
+            assertEquals(1, checker.stats().misses());
+        }
+    }
+
+    @Test
+    void expiredEntriesLeaveCache() throws RevocationException, InterruptedException {
+        Clock systemClock = Clock.systemUTC();
+        responder.validity = Duration.ofSeconds(2);
+        clock.instant = systemClock.instant();
+        Map<X500Principal, URI> crlLocations = Map.of(
+                rootCa.getSubjectX500Principal(), responder.crlUri(rootCa)
+        );
+        // Unused statuses are dropped by their refresh, CRLs on their
+        // nextUpdate.
+        try (RevocationChecker checker = new RevocationChecker(systemClock, Duration.ofSeconds(1), responder.ocspUri(), crlLocations)) {
+            checker.check(signer, intermediateCa);
+            responder.ocspEnabled = false;
+            checker.check(intermediateCa, rootCa);
+            assertEquals(2, checker.stats().size());
+            assertEquals(1, checker.stats().crls());
+
+            awaitEmpty(checker, systemClock);
+            assertEquals(0, checker.stats().refreshes());
+        }
+
+        // Statuses too close to expiry to be refreshed are dropped on their
+        // nextUpdate.
+        responder.ocspEnabled = true;
+        try (RevocationChecker checker = new RevocationChecker(systemClock, Duration.ofMinutes(1), responder.ocspUri(), Map.of())) {
+            checker.check(signer, intermediateCa);
+            checker.check(signer, intermediateCa);
+            assertEquals(1, checker.stats().size());
+
+            awaitEmpty(checker, systemClock);
+        }
+    }
+
+    @Test
+    void trustValidatorRejectsRevokedCertificate() throws TrustValidationException {
+        try (RevocationChecker checker = ocspChecker(clock)) {
+            TrustValidator trustValidator = new TrustValidator(List.of(rootCa), clock, TrustValidator.DEFAULT_CAPACITY, checker);
+
+            trustValidator.validate(signer, List.of(intermediateCa));
+            // Both the signer and the intermediate CA are checked.
+            assertEquals(2, responder.ocspRequests());
+        }
+
+        responder.revoke(signer);
+        try (RevocationChecker checker = ocspChecker(clock)) {
+            TrustValidator trustValidator = new TrustValidator(List.of(rootCa), clock, TrustValidator.DEFAULT_CAPACITY, checker);
+
+            assertThrows(TrustValidationException.class, () -> trustValidator.validate(signer, List.of(intermediateCa)));
+        }
+    }
+
+    private void awaitEmpty(RevocationChecker checker, Clock systemClock) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while ((checker.stats().size() > 0 || checker.stats().crls() > 0) && System.nanoTime() < deadline) {
+            clock.instant = systemClock.instant();
+            Thread.sleep(50);
+        }
+        assertEquals(0, checker.stats().size());
+        assertEquals(0, checker.stats().crls());
+    }
+
+    private RevocationChecker ocspChecker(Clock clock) {
+        return new RevocationChecker(clock, RevocationChecker.DEFAULT_REFRESH_AHEAD, responder.ocspUri(), Map.of());
+    }
+}
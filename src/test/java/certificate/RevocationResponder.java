@@ -0,0 +1,220 @@
+package certificate;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+
+/**
+ * Local OCSP responder and CRL server standing in for the certification
+ * authority in tests. Responses are signed by the CA keys directly.
+ */
+class RevocationResponder implements AutoCloseable {
+
+    private static final String SHA256_WITH_RSA = "1.2.840.113549.1.1.11";
+
+    private final Clock clock;
+    private final HttpServer server;
+    private final List<Issuer> issuers = new CopyOnWriteArrayList<>();
+    private final Map<X500Principal, Set<BigInteger>> revoked = new ConcurrentHashMap<>();
+    private final AtomicInteger ocspRequests = new AtomicInteger();
+    private final AtomicInteger crlRequests = new AtomicInteger();
+
+    volatile boolean ocspEnabled = true;
+    volatile Duration validity = Duration.ofHours(1);
+
+    RevocationResponder(Clock clock) throws IOException {
+        this.clock = clock;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ocsp", this::handleOcsp);
+        server.createContext("/crl/", this::handleCrl);
+        server.start();
+    }
+
+    void addIssuer(X509Certificate certificate, PrivateKey privateKey) {
+        issuers.add(new Issuer(certificate, privateKey));
+    }
+
+    void revoke(X509Certificate certificate) {
+        revoked.computeIfAbsent(certificate.getIssuerX500Principal(), issuer -> ConcurrentHashMap.newKeySet())
+                .add(certificate.getSerialNumber());
+    }
+
+    URI ocspUri() {
+        return uri("/ocsp");
+    }
+
+    URI crlUri(X509Certificate issuer) {
+        for (int i = 0; i < issuers.size(); i++) {
+            if (issuers.get(i).certificate().equals(issuer)) return uri("/crl/" + i);
+        }
+        throw new IllegalArgumentException("Unknown issuer " + issuer.getSubjectX500Principal());
+    }
+
+    int ocspRequests() {
+        return ocspRequests.get();
+    }
+
+    int crlRequests() {
+        return crlRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://%s:%d%s".formatted(
+                server.getAddress().getHostString(),
+                server.getAddress().getPort(),
+                path
+        ));
+    }
+
+    private void handleOcsp(HttpExchange exchange) throws IOException {
+        ocspRequests.incrementAndGet();
+        byte[] request = exchange.getRequestBody().readAllBytes();
+        if (!ocspEnabled) {
+            respond(exchange, 503, new byte[0]);
+            return;
+        }
+        try {
+            // OCSPRequest { TBSRequest { requestList { Request { CertID } } } }
+            Der.Tlv certIdTlv = new Der.Reader(request).next(Der.SEQUENCE).contents()
+                    .next(Der.SEQUENCE).contents()
+                    .next(Der.SEQUENCE).contents()
+                    .next(Der.SEQUENCE).contents()
+                    .next(Der.SEQUENCE);
+            Ocsp.CertId certId = Ocsp.CertId.parse(certIdTlv);
+            Issuer issuer = issuer(certId);
+            respond(exchange, 200, ocspResponse(certId, certIdTlv.encoded(), issuer));
+        } catch (RuntimeException | GeneralSecurityException e) {
+            respond(exchange, 500, new byte[0]);
+        }
+    }
+
+    private void handleCrl(HttpExchange exchange) throws IOException {
+        crlRequests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        Issuer issuer = issuers.get(Integer.parseInt(path.substring(path.lastIndexOf('/') + 1)));
+        try {
+            respond(exchange, 200, crl(issuer));
+        } catch (GeneralSecurityException e) {
+            respond(exchange, 500, new byte[0]);
+        }
+    }
+
+    private Issuer issuer(Ocsp.CertId certId) {
+        for (Issuer issuer : issuers) {
+            Ocsp.CertId issuerId = Ocsp.CertId.of(issuer.certificate(), issuer.certificate());
+            if (Arrays.equals(issuerId.issuerNameHash(), certId.issuerNameHash())
+                    && Arrays.equals(issuerId.issuerKeyHash(), certId.issuerKeyHash())) {
+                return issuer;
+            }
+        }
+        throw new IllegalArgumentException("Unknown issuer");
+    }
+
+    private byte[] ocspResponse(Ocsp.CertId certId, byte[] encodedCertId, Issuer issuer) throws GeneralSecurityException {
+        Instant now = clock.instant().truncatedTo(SECONDS);
+        boolean isRevoked = revoked.getOrDefault(issuer.certificate().getSubjectX500Principal(), Set.of())
+                .contains(certId.serialNumber());
+        byte[] certStatus = isRevoked
+                ? Der.encode(Der.CONTEXT_CONSTRUCTED_1, Der.generalizedTime(now))
+                : new byte[]{(byte) Der.CONTEXT_0, 0};
+        byte[] singleResponse = Der.sequence(
+                encodedCertId,
+                certStatus,
+                Der.generalizedTime(now),
+                Der.encode(Der.CONTEXT_CONSTRUCTED_0, Der.generalizedTime(now.plus(validity)))
+        );
+        byte[] responseData = Der.sequence(
+                // responderID byKey [2] KeyHash
+                Der.encode(0xa2, Der.octetString(certId.issuerKeyHash())),
+                Der.generalizedTime(now),
+                Der.sequence(singleResponse)
+        );
+        byte[] basicResponse = signed(responseData, issuer.privateKey());
+        return Der.sequence(
+                Der.encode(Der.ENUMERATED, new byte[]{0}),
+                Der.encode(Der.CONTEXT_CONSTRUCTED_0, Der.sequence(
+                        Der.oid(Ocsp.BASIC_RESPONSE_TYPE),
+                        Der.octetString(basicResponse)
+                ))
+        );
+    }
+
+    private byte[] crl(Issuer issuer) throws GeneralSecurityException {
+        Instant now = clock.instant().truncatedTo(SECONDS);
+        Set<BigInteger> serialNumbers = revoked.getOrDefault(issuer.certificate().getSubjectX500Principal(), Set.of());
+        return crl(issuer.certificate(), issuer.privateKey(), serialNumbers, now, now.plus(validity));
+    }
+
+    /**
+     * Builds a v2 CRL without extensions, revoking the serial numbers at
+     * thisUpdate.
+     */
+    static byte[] crl(
+            X509Certificate issuer,
+            PrivateKey privateKey,
+            Collection<BigInteger> serialNumbers,
+            Instant thisUpdate,
+            Instant nextUpdate
+    ) throws GeneralSecurityException {
+        ByteArrayOutputStream revokedCertificates = new ByteArrayOutputStream();
+        for (BigInteger serialNumber : serialNumbers) {
+            revokedCertificates.writeBytes(Der.sequence(Der.integer(serialNumber), Der.time(thisUpdate)));
+        }
+        byte[] tbsCertList = Der.sequence(
+                Der.integer(BigInteger.ONE), // v2
+                Der.sequence(Der.oid(SHA256_WITH_RSA), Der.nul()),
+                issuer.getSubjectX500Principal().getEncoded(),
+                Der.time(thisUpdate),
+                Der.time(nextUpdate),
+                revokedCertificates.size() > 0 ? Der.sequence(revokedCertificates.toByteArray()) : new byte[0]
+        );
+        return signed(tbsCertList, privateKey);
+    }
+
+    private static byte[] signed(byte[] tbs, PrivateKey privateKey) throws GeneralSecurityException {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(privateKey);
+        signature.update(tbs);
+        return Der.sequence(
+                tbs,
+                Der.sequence(Der.oid(SHA256_WITH_RSA), Der.nul()),
+                Der.bitString(signature.sign())
+        );
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private record Issuer(X509Certificate certificate, PrivateKey privateKey) {
+    }
+}
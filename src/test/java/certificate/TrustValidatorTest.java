@@ -0,0 +1,101 @@
+package certificate;
+
+import certificate.TrustValidator.TrustValidationException;
+import certificate.TrustValidator.TrustedPath;
+import org.junit.jupiter.api.Test;
+import utils.MutableClock;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.*;
+
+class TrustValidatorTest {
+
+    private final X509Certificate rootCa = getChainCertificate(ROOT_CA_ALIAS);
+    private final X509Certificate intermediateCa = getChainCertificate(INTERMEDIATE_CA_ALIAS);
+    private final X509Certificate signer = getChainCertificate(SIGNER_ALIAS);
+
+    @Test
+    void validatesPathToTrustAnchor() throws TrustValidationException {
+        TrustValidator trustValidator = new TrustValidator(List.of(rootCa));
+
+        TrustedPath path = trustValidator.validate(signer, List.of(intermediateCa));
+
+        assertEquals(List.of(signer, intermediateCa), path.path().getCertificates());
+        assertEquals(rootCa, path.anchor());
+        assertEquals(signer.getNotAfter().toInstant(), path.validUntil());
+    }
+
+    @Test
+    void trustAnchorIsTrustedItself() throws TrustValidationException {
+        X509Certificate certificate = getCertificate();
+        TrustValidator trustValidator = new TrustValidator(List.of(certificate));
+
+        TrustedPath path = trustValidator.validate(certificate, List.of());
+
+        assertTrue(path.path().getCertificates().isEmpty());
+        assertEquals(certificate, path.anchor());
+    }
+
+    @Test
+    void anchorOfAnotherSubjectSharingKeyIdentifierIsSkipped() throws TrustValidationException {
+        // The renamed root CA has the key, and so the key identifier, of the
+        // root CA.
+        X509Certificate renamedRootCa = getChainCertificate("renamed-root-ca");
+        TrustValidator trustValidator = new TrustValidator(List.of(renamedRootCa, rootCa));
+
+        TrustedPath path = trustValidator.validate(signer, List.of(intermediateCa));
+
+        assertEquals(rootCa, path.anchor());
+    }
+
+    @Test
+    void anchorIsFoundBySubjectIfNoneSharingKeyIdentifierIsIssuer() throws TrustValidationException {
+        // The reissued root CA has the key and subject of the root CA, but no
+        // key identifier.
+        X509Certificate renamedRootCa = getChainCertificate("renamed-root-ca");
+        X509Certificate reissuedRootCa = getChainCertificate("reissued-root-ca");
+        TrustValidator trustValidator = new TrustValidator(List.of(renamedRootCa, reissuedRootCa));
+
+        TrustedPath path = trustValidator.validate(signer, List.of(intermediateCa));
+
+        assertEquals(reissuedRootCa, path.anchor());
+    }
+
+    @Test
+    void validateThrowsExceptionForMissingIntermediate() {
+        TrustValidator trustValidator = new TrustValidator(List.of(rootCa));
+
+        assertThrows(TrustValidationException.class, () -> trustValidator.validate(signer, List.of()));
+    }
+
+    @Test
+    void validateThrowsExceptionForUntrustedAnchor() {
+        TrustValidator trustValidator = new TrustValidator(List.of(getCertificate()));
+
+        assertThrows(TrustValidationException.class, () -> trustValidator.validate(signer, List.of(intermediateCa)));
+    }
+
+    @Test
+    void pathIsCachedUntilEarliestExpiry() throws TrustValidationException, CertificateException {
+        MutableClock clock = new MutableClock(Instant.now());
+        TrustValidator trustValidator = new TrustValidator(List.of(rootCa), clock, TrustValidator.DEFAULT_CAPACITY);
+        CertificateCache.Entry entry = new CertificateCache().get(signer);
+
+        trustValidator.validate(entry, List.of(intermediateCa));
+        trustValidator.validate(entry, List.of(intermediateCa));
+        trustValidator.validate(signer, List.of(intermediateCa));
+
+        assertEquals(2, trustValidator.stats().hits());
+        assertEquals(1, trustValidator.stats().misses());
+
+        // The signer certificate expires before both CA certificates.
+        clock.instant = signer.getNotAfter().toInstant().plusSeconds(1);
+        assertThrows(TrustValidationException.class, () -> trustValidator.validate(entry, List.of(intermediateCa)));
+        assertEquals(2, trustValidator.stats().misses());
+    }
+}
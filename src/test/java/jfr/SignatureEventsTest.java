@@ -0,0 +1,118 @@
+package jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import xades.XAdESValidator;
+import xades.XAdESValidator.XAdESValidationException;
+import xmldsig.XMLDSigSigner;
+import xmldsig.XMLDSigValidator;
+import xmldsig.XMLDSigValidator.XMLDSigValidationException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static document.DocumentTransformer.toBytes;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class SignatureEventsTest {
+
+    private static final String RSA_SHA512 = "http://www.w3.org/2001/04/xmldsig-more#rsa-sha512";
+    private static final String SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+
+    @Test
+    void signAndValidateRecordEvents() throws IOException, XMLDSigValidationException {
+        Document document = LargeDocumentGenerator.ofSize(16 * 1024).toDocument();
+
+        List<RecordedEvent> events = record(() -> {
+            Document signed = new XMLDSigSigner(getCertificate(), getPrivateKey()).signEnveloped(document);
+            new XMLDSigValidator().validate(toBytes(signed));
+        });
+
+        RecordedEvent sign = single(events, "xades.demo.Sign");
+        assertEquals(RSA_SHA512, sign.getString("signatureAlgorithm"));
+        assertEquals("SHA512withRSA", sign.getString("jcaAlgorithm"));
+        assertTrue(sign.getLong("bytes") > 0);
+
+        RecordedEvent verify = single(events, "xades.demo.Verify");
+        assertTrue(verify.getBoolean("valid"));
+        assertEquals(sign.getLong("bytes"), verify.getLong("bytes"));
+
+        List<RecordedEvent> digests = named(events, "xades.demo.ReferenceDigest");
+        assertEquals(List.of("sign", "validate"), digests.stream().map(event -> event.getString("operation")).toList());
+        for (RecordedEvent digest : digests) {
+            assertEquals("", digest.getString("uri"));
+            assertEquals(SHA256, digest.getString("digestAlgorithm"));
+            assertTrue(digest.getString("transforms").contains("enveloped-signature"));
+            assertTrue(digest.getLong("bytes") > 16 * 1024);
+        }
+        assertTrue(digests.get(1).getBoolean("valid"));
+
+        long serialized = single(events, "xades.demo.Serialization").getLong("bytes");
+        assertEquals(serialized, single(events, "xades.demo.Parse").getLong("bytes"));
+    }
+
+    @Test
+    void xadesValidationRecordsSignedPropertiesReference() throws IOException, XAdESValidationException {
+        byte[] content = loadBytesFromResource("/xades/signed-document.xml");
+
+        List<RecordedEvent> events = record(() -> new XAdESValidator().validate(content));
+
+        assertEquals(1, single(events, "xades.demo.IdMarking").getInt("elements"));
+        List<RecordedEvent> digests = named(events, "xades.demo.ReferenceDigest");
+        assertEquals(2, digests.size());
+        assertTrue(digests.get(1).getString("uri").startsWith("#signed-properties-"));
+        assertTrue(digests.stream().allMatch(digest -> digest.getBoolean("valid")));
+    }
+
+    @Test
+    void signingWithoutRecordingDoesNotChangeSignature() throws XMLDSigValidationException {
+        Document document = LargeDocumentGenerator.ofSize(1024).toDocument();
+
+        Document signed = new XMLDSigSigner(getCertificate(), getPrivateKey()).signEnveloped(document);
+
+        new XMLDSigValidator().validate(toBytes(signed));
+    }
+
+    private static <E extends Exception> List<RecordedEvent> record(Action<E> action) throws IOException, E {
+        Path path = Files.createTempFile("events", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (Class<?> eventClass : List.of(ParseEvent.class, SerializationEvent.class, IdMarkingEvent.class,
+                    QualifyingPropertiesEvent.class, ReferenceDigestEvent.class, SignEvent.class, VerifyEvent.class)) {
+                recording.enable(eventClass.getAnnotation(jdk.jfr.Name.class).value()).withoutThreshold();
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(path);
+            return RecordingFile.readAllEvents(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .toList();
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> named = named(events, name);
+        assertEquals(1, named.size(), name);
+        return named.get(0);
+    }
+
+    private interface Action<E extends Exception> {
+        void run() throws E;
+    }
+}
@@ -0,0 +1,338 @@
+package loadtest;
+
+import metrics.LatencyHistogram;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner;
+import xades.XAdESValidator;
+import xmldsig.XMLDSigSigner;
+import xmldsig.XMLDSigValidator;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static document.DocumentTransformer.fromBytes;
+import static document.DocumentTransformer.toBytes;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Load generator of signing and validation with the test keystore, e.g.:
+ * <pre>
+ * ./gradlew loadTest -PloadTest.args="--format=xades --operation=validate --threads=8 --rate=500 --duration=60s"
+ * </pre>
+ * Options:
+ * <ul>
+ *     <li>{@code --format} xades or xmldsig, xades by default.</li>
+ *     <li>{@code --operation} sign, validate or round-trip, i.e. sign
+ *     and validate the signed bytes, validate by default.</li>
+ *     <li>{@code --threads} number of worker threads, the processor count by
+ *     default.</li>
+ *     <li>{@code --rate} operations per second started regardless of the
+ *     completed ones (open loop), or 0 for every thread to start the next
+ *     operation when the previous one completes (closed loop), 0 by
+ *     default.</li>
+ *     <li>{@code --duration} and {@code --warmup} e.g. 60s or 2m, operations
+ *     started during the warmup are not measured, 30s and 10s by default.</li>
+ *     <li>{@code --mix} document sizes and their weights, 1k:70,64k:25,1m:5 by
+ *     default.</li>
+ * </ul>
+ * In the open loop every operation has its intended start time. Response
+ * times are measured from it, so the time operations wait behind slow ones
+ * is counted and percentiles are not hidden by the coordinated omission.
+ * Service times are measured from the actual start.
+ */
+public class LoadTest {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final Options options;
+    private final List<Payload> payloads;
+    private final LatencyHistogram responseTimes = new LatencyHistogram();
+    private final LatencyHistogram serviceTimes = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLong tickets = new AtomicLong();
+
+    LoadTest(Options options) {
+        this.options = options;
+        this.payloads = payloads(options);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Options options = Options.parse(args);
+        System.out.println("Load test " + options);
+        new LoadTest(options).run();
+    }
+
+    Result run() throws InterruptedException {
+        long start = System.nanoTime();
+        long measureStart = start + options.warmup().toNanos();
+        long end = measureStart + options.duration().toNanos();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < options.threads(); i++) {
+            Thread worker = new Thread(() -> work(start, measureStart, end), "load-test-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+
+        sleepUntil(measureStart);
+        GcStats gcStart = GcStats.now();
+        for (Thread worker : workers) worker.join();
+        GcStats gc = GcStats.now().minus(gcStart);
+
+        Result result = new Result(responseTimes.snapshot(), serviceTimes.snapshot(), errors.sum(), options.duration(), gc);
+        result.print(System.out);
+        return result;
+    }
+
+    private void work(long start, long measureStart, long end) {
+        Operation operation = options.operation().create(options.format());
+        long interval = options.rate() > 0 ? Math.round(1e9 / options.rate()) : 0;
+        while (true) {
+            long intended;
+            if (interval > 0) {
+                intended = start + tickets.getAndIncrement() * interval;
+                if (intended >= end) return;
+                sleepUntil(intended);
+            } else {
+                intended = System.nanoTime();
+                if (intended >= end) return;
+            }
+
+            Payload payload = nextPayload();
+            long begin = System.nanoTime();
+            boolean failed = false;
+            try {
+                operation.run(payload);
+            } catch (Exception e) {
+                failed = true;
+            }
+            long done = System.nanoTime();
+
+            if (intended >= measureStart) {
+                if (failed) {
+                    errors.increment();
+                } else {
+                    serviceTimes.record(done - begin);
+                    responseTimes.record(done - intended);
+                }
+            }
+        }
+    }
+
+    private Payload nextPayload() {
+        int weight = ThreadLocalRandom.current().nextInt(payloads.get(payloads.size() - 1).cumulativeWeight());
+        for (Payload payload : payloads) {
+            if (weight < payload.cumulativeWeight()) return payload;
+        }
+        throw new IllegalStateException("Weight " + weight + " out of the mix!");
+    }
+
+    private static List<Payload> payloads(Options options) {
+        Signer signer = signer(options.format());
+        List<Payload> payloads = new ArrayList<>();
+        int cumulativeWeight = 0;
+        for (Map.Entry<Long, Integer> size : options.mix().entrySet()) {
+            cumulativeWeight += size.getValue();
+            byte[] unsigned = toBytes(LargeDocumentGenerator.ofSize(size.getKey()).toDocument());
+            byte[] signed = toBytes(signer.sign(fromBytes(unsigned)));
+            payloads.add(new Payload(unsigned, signed, cumulativeWeight));
+        }
+        return payloads;
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    enum Format {XADES, XMLDSIG}
+
+    record Payload(byte[] unsigned, byte[] signed, int cumulativeWeight) {
+    }
+
+    /**
+     * One operation of a worker thread, signers and validators are not shared
+     * between threads.
+     */
+    interface Operation {
+
+        void run(Payload payload) throws Exception;
+
+        enum Type {
+            SIGN, VALIDATE, ROUND_TRIP;
+
+            Operation create(Format format) {
+                Signer signer = signer(format);
+                Validator validator = validator(format);
+                return switch (this) {
+                    case SIGN -> payload -> toBytes(signer.sign(fromBytes(payload.unsigned())));
+                    case VALIDATE -> payload -> validator.validate(payload.signed());
+                    case ROUND_TRIP -> payload -> validator.validate(toBytes(signer.sign(fromBytes(payload.unsigned()))));
+                };
+            }
+        }
+    }
+
+    interface Signer {
+        Document sign(Document document);
+    }
+
+    interface Validator {
+        void validate(byte[] content) throws Exception;
+    }
+
+    static Signer signer(Format format) {
+        return switch (format) {
+            case XADES -> new XAdESSigner(getCertificate(), getPrivateKey())::signEnveloped;
+            case XMLDSIG -> new XMLDSigSigner(getCertificate(), getPrivateKey())::signEnveloped;
+        };
+    }
+
+    static Validator validator(Format format) {
+        return switch (format) {
+            case XADES -> new XAdESValidator()::validate;
+            case XMLDSIG -> new XMLDSigValidator()::validate;
+        };
+    }
+
+    record Options(
+            Format format,
+            Operation.Type operation,
+            int threads,
+            double rate,
+            Duration duration,
+            Duration warmup,
+            SortedMap<Long, Integer> mix
+    ) {
+
+        static Options parse(String... args) {
+            Map<String, String> values = new HashMap<>(Map.of(
+                    "format", "xades",
+                    "operation", "validate",
+                    "threads", String.valueOf(Runtime.getRuntime().availableProcessors()),
+                    "rate", "0",
+                    "duration", "30s",
+                    "warmup", "10s",
+                    "mix", "1k:70,64k:25,1m:5"
+            ));
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Argument " + arg + " is not --name=value!");
+                }
+                String name = arg.substring(2, arg.indexOf('='));
+                if (!values.containsKey(name)) throw new IllegalArgumentException("Unknown option " + name + "!");
+                values.put(name, arg.substring(arg.indexOf('=') + 1));
+            }
+
+            SortedMap<Long, Integer> mix = new TreeMap<>();
+            for (String entry : values.get("mix").split(",")) {
+                String[] sizeAndWeight = entry.split(":");
+                int weight = sizeAndWeight.length > 1 ? Integer.parseInt(sizeAndWeight[1]) : 1;
+                if (weight <= 0) throw new IllegalArgumentException("Weight of " + entry + " has to be positive!");
+                mix.merge(size(sizeAndWeight[0]), weight, Integer::sum);
+            }
+            Options options = new Options(
+                    Format.valueOf(values.get("format").toUpperCase(Locale.ROOT)),
+                    Operation.Type.valueOf(values.get("operation").toUpperCase(Locale.ROOT).replace('-', '_')),
+                    Integer.parseInt(values.get("threads")),
+                    Double.parseDouble(values.get("rate")),
+                    duration(values.get("duration")),
+                    duration(values.get("warmup")),
+                    mix
+            );
+            if (options.threads() <= 0 || options.rate() < 0) {
+                throw new IllegalArgumentException("Threads have to be positive and rate not negative!");
+            }
+            return options;
+        }
+
+        private static long size(String size) {
+            String lower = size.trim().toLowerCase(Locale.ROOT);
+            return switch (lower.charAt(lower.length() - 1)) {
+                case 'k' -> Long.parseLong(lower.substring(0, lower.length() - 1)) * 1024;
+                case 'm' -> Long.parseLong(lower.substring(0, lower.length() - 1)) * 1024 * 1024;
+                default -> Long.parseLong(lower);
+            };
+        }
+
+        private static Duration duration(String duration) {
+            String lower = duration.trim().toLowerCase(Locale.ROOT);
+            if (lower.endsWith("ms")) return Duration.ofMillis(Long.parseLong(lower.substring(0, lower.length() - 2)));
+            return switch (lower.charAt(lower.length() - 1)) {
+                case 's' -> Duration.ofSeconds(Long.parseLong(lower.substring(0, lower.length() - 1)));
+                case 'm' -> Duration.ofMinutes(Long.parseLong(lower.substring(0, lower.length() - 1)));
+                default -> Duration.parse(duration);
+            };
+        }
+    }
+
+    record GcStats(Map<String, Long> counts, Map<String, Long> millis) {
+
+        static GcStats now() {
+            Map<String, Long> counts = new TreeMap<>();
+            Map<String, Long> millis = new TreeMap<>();
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                counts.put(collector.getName(), collector.getCollectionCount());
+                millis.put(collector.getName(), collector.getCollectionTime());
+            }
+            return new GcStats(counts, millis);
+        }
+
+        GcStats minus(GcStats other) {
+            Map<String, Long> counts = new TreeMap<>();
+            Map<String, Long> millis = new TreeMap<>();
+            this.counts.forEach((name, count) -> counts.put(name, count - other.counts.getOrDefault(name, 0L)));
+            this.millis.forEach((name, time) -> millis.put(name, time - other.millis.getOrDefault(name, 0L)));
+            return new GcStats(counts, millis);
+        }
+
+        long totalMillis() {
+            return millis.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+
+    record Result(
+            LatencyHistogram.Snapshot responseTimes,
+            LatencyHistogram.Snapshot serviceTimes,
+            long errors,
+            Duration duration,
+            GcStats gc
+    ) {
+
+        double throughput() {
+            return (responseTimes.count() + errors) / (duration.toNanos() / 1e9);
+        }
+
+        void print(PrintStream out) {
+            out.printf("Operations: %d, errors: %d, throughput: %.1f ops/s%n",
+                    responseTimes.count() + errors, errors, throughput());
+            out.printf("%-10s %14s %14s%n", "", "response ms", "service ms");
+            for (double percentile : PERCENTILES) {
+                String name = percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+                out.printf("%-10s %14.3f %14.3f%n", "p" + name,
+                        millis(responseTimes.valueAtPercentile(percentile)),
+                        millis(serviceTimes.valueAtPercentile(percentile)));
+            }
+            out.printf("%-10s %14.3f %14.3f%n", "max", millis(responseTimes.max()), millis(serviceTimes.max()));
+            out.printf("%-10s %14.3f %14.3f%n", "mean", responseTimes.mean() / 1e6, serviceTimes.mean() / 1e6);
+            gc.counts().forEach((name, count) ->
+                    out.printf("GC %s: %d collections, %d ms%n", name, count, gc.millis().get(name)));
+            out.printf("GC time: %.1f %% of the run%n", 100.0 * gc.totalMillis() / duration.toMillis());
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+}
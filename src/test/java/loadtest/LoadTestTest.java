@@ -0,0 +1,42 @@
+package loadtest;
+
+import loadtest.LoadTest.Options;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadTestTest {
+
+    @Test
+    void parseReadsOptions() {
+        Options options = Options.parse("--format=xmldsig", "--operation=round-trip", "--threads=3", "--rate=12.5",
+                "--duration=2m", "--warmup=500ms", "--mix=1k:2,1m,1024:3");
+
+        assertEquals(LoadTest.Format.XMLDSIG, options.format());
+        assertEquals(LoadTest.Operation.Type.ROUND_TRIP, options.operation());
+        assertEquals(3, options.threads());
+        assertEquals(12.5, options.rate());
+        assertEquals(Duration.ofMinutes(2), options.duration());
+        assertEquals(Duration.ofMillis(500), options.warmup());
+        assertEquals(Map.of(1024L, 5, 1024L * 1024, 1), options.mix());
+    }
+
+    @Test
+    void parseThrowsExceptionForUnknownOption() {
+        assertThrows(IllegalArgumentException.class, () -> Options.parse("--size=1k"));
+    }
+
+    @Test
+    void runMeasuresOperations() throws InterruptedException {
+        Options options = Options.parse("--format=xmldsig", "--threads=2", "--rate=20", "--duration=1s", "--warmup=0s", "--mix=1k");
+
+        LoadTest.Result result = new LoadTest(options).run();
+
+        assertEquals(0, result.errors());
+        assertEquals(20, result.responseTimes().count());
+        assertTrue(result.responseTimes().valueAtPercentile(50) >= result.serviceTimes().valueAtPercentile(50));
+    }
+}
@@ -0,0 +1,71 @@
+package metrics;
+
+import metrics.SignatureMetrics.Operation;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import xmldsig.XMLDSigSigner;
+import xmldsig.XMLDSigValidator;
+import xmldsig.XMLDSigValidator.XMLDSigValidationException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static document.DocumentTransformer.toBytes;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class HistogramMetricsTest {
+
+    private final HistogramMetrics metrics = new HistogramMetrics();
+    private final XMLDSigSigner signer = new XMLDSigSigner(getCertificate(), getPrivateKey(), XMLDSigSigner.Options.defaults()
+            .withSignatureAlgorithm(XMLDSigSigner.RSA_SHA256_SIGN_ALGORITHM)
+            .withMetrics(metrics));
+    private final XMLDSigValidator validator = new XMLDSigValidator(XMLDSigValidator.Options.defaults().withMetrics(metrics));
+
+    @Test
+    void signAndValidateAreMeasured() throws XMLDSigValidationException {
+        for (int i = 0; i < 3; i++) {
+            Document document = LargeDocumentGenerator.ofSize(1024).toDocument();
+            validator.validate(toBytes(signer.signEnveloped(document)));
+        }
+
+        HistogramMetrics.Snapshot snapshot = metrics.snapshot();
+
+        HistogramMetrics.OperationSnapshot sign = snapshot.get(Operation.XMLDSIG_SIGN);
+        assertEquals(3, sign.count());
+        assertEquals(0, sign.errors());
+        assertTrue(sign.latency().valueAtPercentile(50) > 0);
+        assertTrue(sign.throughput() > 0);
+        assertEquals(3, snapshot.get(Operation.XMLDSIG_VALIDATE).latency().count());
+        assertEquals(0, snapshot.get(Operation.XADES_SIGN).count());
+    }
+
+    @Test
+    void failuresAreCountedByType() {
+        byte[] changed = loadBytesFromResource("/xmldsig/signed-changed-document.xml");
+
+        assertThrows(XMLDSigValidationException.class, () -> validator.validate(changed));
+        assertThrows(XMLDSigValidationException.class, () -> validator.validate("<not-closed>".getBytes()));
+
+        HistogramMetrics.OperationSnapshot validate = metrics.snapshot().get(Operation.XMLDSIG_VALIDATE);
+        assertEquals(2, validate.errors());
+        assertEquals(0, validate.latency().count());
+        assertEquals(Map.of(XMLDSigValidationException.class.getName(), 2L), validate.errorTypes());
+    }
+
+    @Test
+    void exportNamesMetricsByOperation() throws XMLDSigValidationException {
+        validator.validate(loadBytesFromResource("/xmldsig/signed-document.xml"));
+        Map<String, Number> exported = new HashMap<>();
+
+        metrics.snapshot().export(exported::put);
+
+        assertEquals(1L, exported.get("xmldsig_validate.count"));
+        assertEquals(0L, exported.get("xades_sign.count"));
+        assertTrue(exported.containsKey("xmldsig_validate.latency.p99"));
+        assertTrue(exported.containsKey("xmldsig_validate.latency.p999"));
+    }
+}
@@ -0,0 +1,85 @@
+package metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsCoverAllValues() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 1_000_000_007L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucket(value);
+
+            assertTrue(bucket < LatencyHistogram.BUCKETS, String.valueOf(value));
+            assertTrue(LatencyHistogram.highestValue(bucket) >= value, String.valueOf(value));
+            if (bucket > 0) assertTrue(LatencyHistogram.highestValue(bucket - 1) < value, String.valueOf(value));
+        }
+    }
+
+    @Test
+    void percentilesAreWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) histogram.record(value * 1000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100_000, snapshot.count());
+        assertEquals(1000, snapshot.min());
+        assertEquals(100_000_000, snapshot.max());
+        assertEquals(50_000_500, snapshot.mean(), 0.001);
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            double expected = percentile * 1_000_000;
+            double actual = snapshot.valueAtPercentile(percentile);
+            assertTrue(actual >= expected && actual <= expected * (1 + 1.0 / LatencyHistogram.SUB_BUCKETS),
+                    percentile + ": " + actual);
+        }
+        assertEquals(snapshot.max(), snapshot.valueAtPercentile(100));
+    }
+
+    @Test
+    void emptySnapshotHasZeros() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.count());
+        assertEquals(0, snapshot.max());
+        assertEquals(0, snapshot.valueAtPercentile(99));
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int seed = thread;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 100_000; i++) histogram.record(random.nextInt(1_000_000));
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        long[] bucketCounts = new long[1];
+        histogram.snapshot().forEachBucket((highestValue, count) -> bucketCounts[0] += count);
+
+        assertEquals(800_000, histogram.snapshot().count());
+        assertEquals(800_000, bucketCounts[0]);
+    }
+
+    @Test
+    void recordThrowsExceptionForNegativeValue() {
+        assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram().record(-1));
+    }
+}
@@ -0,0 +1,103 @@
+package pipeline;
+
+import c14n.Canonicalizer;
+import c14n.ReferenceDigester;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner;
+import xades.XAdESSigner.PropertiesBinding;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static document.DocumentTransformer.fromBytes;
+import static document.DocumentTransformer.toBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class PipelinedDigesterTest {
+
+    private static final String SHA256 = XAdESSigner.SHA256_DIGEST_ALGORITHM;
+    private static final String SHA512 = XAdESSigner.SHA512_DIGEST_ALGORITHM;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final PipelinedDigester digester = new PipelinedDigester(executor);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void digestEqualsDigestOfDom() {
+        Document document = LargeDocumentGenerator.ofSize(1024 * 1024).withMix(0.5, 0.3).toDocument();
+        byte[] signed = toBytes(signer().signEnveloped(document));
+
+        PipelinedDigester.Result result = digester.digest(new ByteArrayInputStream(signed), List.of(SHA256, SHA512));
+
+        assertNotNull(result);
+        Document signedDocument = fromBytes(signed);
+        Element signature = (Element) signedDocument.getElementsByTagNameNS(XMLNS, "Signature").item(0);
+        signature.getParentNode().removeChild(signature);
+        String c14n = Canonicalizer.Algorithm.C14N_10.uri();
+        for (String digestAlgorithm : List.of(SHA256, SHA512)) {
+            ReferenceDigester.Digest expected = ReferenceDigester.digestEnveloped(signedDocument, c14n, digestAlgorithm);
+            ReferenceDigester.Digest digest = result.digests().get(digestAlgorithm);
+            assertArrayEquals(expected.value(), digest.value(), digestAlgorithm);
+            assertEquals(expected.bytes(), digest.bytes());
+        }
+    }
+
+    @Test
+    void signatureIsBuiltWithItsAncestors() {
+        byte[] signed = toBytes(signer().signEnveloped(fromBytes("""
+                <root xmlns="urn:root" xmlns:p="urn:p" xml:lang="en" Id="root"><p:a Id="a">text</p:a></root>""".getBytes(UTF_8))));
+
+        PipelinedDigester.Result result = digester.digest(new ByteArrayInputStream(signed), List.of(SHA256));
+
+        Element signature = result.signature();
+        assertEquals(XMLNS, signature.getNamespaceURI());
+        Element root = (Element) signature.getParentNode();
+        assertEquals("urn:root", root.getNamespaceURI());
+        assertEquals("urn:p", root.getAttribute("xmlns:p"));
+        assertEquals("en", root.getAttribute("xml:lang"));
+        assertEquals(1, root.getChildNodes().getLength());
+        assertNotNull(signature.getElementsByTagNameNS(XMLNS, "SignatureValue").item(0));
+        assertEquals(Set.of("root", "a"), result.ids());
+    }
+
+    @Test
+    void unsupportedDocumentsAreNotDigested() {
+        byte[] signed = toBytes(signer().signEnveloped(LargeDocumentGenerator.ofSize(4 * 1024).toDocument()));
+        String content = new String(signed, UTF_8);
+        int signatureStart = content.lastIndexOf('<', content.indexOf(":Signature "));
+        int signatureEnd = content.indexOf(":Signature>", signatureStart) + ":Signature>".length();
+        String signature = content.substring(signatureStart, signatureEnd);
+
+        assertNull(digest("<root>no signature</root>"));
+        assertNull(digest(content.substring(0, signatureEnd) + signature + content.substring(signatureEnd)));
+        assertNull(digest("<!DOCTYPE root>" + content.substring(content.indexOf("<largeDocument"))));
+        assertNull(digest(content.substring(0, content.length() / 2)));
+        assertNull(digest(signature));
+        assertThrows(IllegalArgumentException.class, () -> digester.digest(new ByteArrayInputStream(signed), List.of("urn:unknown")));
+    }
+
+    private PipelinedDigester.Result digest(String content) {
+        return digester.digest(new ByteArrayInputStream(content.getBytes(UTF_8)), List.of(SHA256));
+    }
+
+    private static XAdESSigner signer() {
+        return new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+    }
+}
@@ -0,0 +1,71 @@
+package pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpscRingTest {
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new SpscRing<>(1).capacity());
+        assertEquals(8, new SpscRing<>(5).capacity());
+        assertEquals(16, new SpscRing<>(16).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new SpscRing<>(0));
+    }
+
+    @Test
+    void offerFailsWhenFullAndPollWhenEmpty() {
+        SpscRing<Integer> ring = new SpscRing<>(2);
+
+        assertNull(ring.poll());
+        assertTrue(ring.offer(1));
+        assertTrue(ring.offer(2));
+        assertFalse(ring.offer(3));
+        assertEquals(1, (int) ring.poll());
+        assertTrue(ring.offer(3));
+        assertEquals(2, (int) ring.poll());
+        assertEquals(3, (int) ring.poll());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void elementsPassBetweenThreadsInOrder() throws Exception {
+        SpscRing<Integer> ring = new SpscRing<>(4);
+        int count = 100_000;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = executor.submit(() -> {
+                for (int i = 0; i < count; i++) {
+                    ring.put(i);
+                }
+            });
+            for (int i = 0; i < count; i++) {
+                assertEquals(i, (int) ring.take());
+            }
+            producer.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void closeStopsWaitingSide() throws Exception {
+        SpscRing<Integer> ring = new SpscRing<>(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> consumer = executor.submit(ring::take);
+            Thread.sleep(50);
+            ring.close();
+
+            Exception exception = assertThrows(Exception.class, consumer::get);
+            assertInstanceOf(SpscRing.ClosedException.class, exception.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
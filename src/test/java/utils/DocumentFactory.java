@@ -40,12 +40,15 @@ public class DocumentFactory {
         return loadDocumentFromResource("/xades/signed-changed-document.xml");
     }
 
-    private static Document loadDocumentFromResource(String name) {
+    public static byte[] loadBytesFromResource(String name) {
         try (InputStream inputStream = DocumentFactory.class.getResourceAsStream(name)) {
-            byte[] content = requireNonNull(inputStream).readAllBytes();
-            return fromBytes(content);
+            return requireNonNull(inputStream).readAllBytes();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private static Document loadDocumentFromResource(String name) {
+        return fromBytes(loadBytesFromResource(name));
+    }
 }
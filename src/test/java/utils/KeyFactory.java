@@ -9,11 +9,33 @@ import java.security.cert.X509Certificate;
 
 public class KeyFactory {
 
-    private static final KeyStore keyStore = loadKeyStore();
+    public static final String ROOT_CA_ALIAS = "root-ca";
+    public static final String INTERMEDIATE_CA_ALIAS = "intermediate-ca";
+    public static final String SIGNER_ALIAS = "signer";
+
+    private static final KeyStore keyStore = loadKeyStore("/test-keystore.jks");
+    // Root CA -> intermediate CA -> signer chain, for trust validation tests.
+    private static final KeyStore chainKeyStore = loadKeyStore("/test-chain-keystore.jks");
 
     public static X509Certificate getCertificate() {
+        return getCertificate(keyStore, "test-cert");
+    }
+
+    public static PrivateKey getPrivateKey() {
+        return getPrivateKey(keyStore, "test-cert");
+    }
+
+    public static X509Certificate getChainCertificate(String alias) {
+        return getCertificate(chainKeyStore, alias);
+    }
+
+    public static PrivateKey getChainPrivateKey(String alias) {
+        return getPrivateKey(chainKeyStore, alias);
+    }
+
+    private static X509Certificate getCertificate(KeyStore keyStore, String alias) {
         try {
-            Certificate certificate = keyStore.getCertificate("test-cert");
+            Certificate certificate = keyStore.getCertificate(alias);
             if (certificate instanceof X509Certificate x509Certificate) {
                 return x509Certificate;
             }
@@ -23,9 +45,9 @@ public class KeyFactory {
         }
     }
 
-    public static PrivateKey getPrivateKey() {
+    private static PrivateKey getPrivateKey(KeyStore keyStore, String alias) {
         try {
-            Key key = keyStore.getKey("test-cert", "password".toCharArray());
+            Key key = keyStore.getKey(alias, "password".toCharArray());
             if (key instanceof PrivateKey privateKey) {
                 return privateKey;
             }
@@ -35,8 +57,8 @@ public class KeyFactory {
         }
     }
 
-    private static KeyStore loadKeyStore() {
-        try (InputStream keyStoreStream = KeyFactory.class.getResourceAsStream("/test-keystore.jks")) {
+    private static KeyStore loadKeyStore(String name) {
+        try (InputStream keyStoreStream = KeyFactory.class.getResourceAsStream(name)) {
             KeyStore keyStore = KeyStore.getInstance("JKS");
             keyStore.load(keyStoreStream, "password".toCharArray());
             return keyStore;
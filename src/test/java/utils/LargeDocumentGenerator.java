@@ -0,0 +1,180 @@
+package utils;
+
+import org.w3c.dom.Document;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static document.DocumentTransformer.fromBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Generates documents of the {@code xsd/large-document.xsd} test schema, from
+ * a few kilobytes to gigabytes, for scaling tests and benchmarks.
+ * <p>
+ * The document is streamed, so its size is not limited by memory. Sections
+ * are written until the target size is reached, so the result is larger by
+ * at most one section. The same generator always produces the same document.
+ *
+ * @param targetSize       size of the document in bytes.
+ * @param textLength       average length of an item text, i.e. together
+ *                         with the size it drives the element count.
+ * @param itemsPerSection  items in each section, before a nested section.
+ * @param depth            nesting of sections, 1 means flat sections.
+ * @param namespaceDensity fraction of items in other namespaces, each of
+ *                         them declaring its namespace.
+ * @param attributeRatio   fraction of items with an attribute value instead
+ *                         of a text.
+ */
+public record LargeDocumentGenerator(
+        long targetSize,
+        int textLength,
+        int itemsPerSection,
+        int depth,
+        double namespaceDensity,
+        double attributeRatio,
+        long seed
+) {
+
+    public static final String NAMESPACE = "https://github.com/vkuzel/XAdES-Demo/large-document";
+    public static final String SCHEMA = "/xsd/large-document.xsd";
+
+    private static final String EXTENSION_NAMESPACE = "urn:xades-demo:extension:";
+    private static final int EXTENSION_NAMESPACES = 4;
+    // Includes characters escaped on output and non-ASCII ones, so
+    // canonicalization has some work to do.
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "R&D", "a<b", "\"quoted\"", "\u011b\u0161\u010d\u0159\u017e", "42"
+    };
+
+    public LargeDocumentGenerator {
+        if (targetSize <= 0 || textLength <= 0 || itemsPerSection <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("Sizes and counts have to be positive!");
+        }
+    }
+
+    public static LargeDocumentGenerator ofSize(long targetSize) {
+        return new LargeDocumentGenerator(targetSize, 32, 8, 3, 0.1, 0.2, 42);
+    }
+
+    public LargeDocumentGenerator withShape(int textLength, int itemsPerSection, int depth) {
+        return new LargeDocumentGenerator(targetSize, textLength, itemsPerSection, depth, namespaceDensity, attributeRatio, seed);
+    }
+
+    public LargeDocumentGenerator withMix(double namespaceDensity, double attributeRatio) {
+        return new LargeDocumentGenerator(targetSize, textLength, itemsPerSection, depth, namespaceDensity, attributeRatio, seed);
+    }
+
+    /**
+     * Builds the document in memory, use {@link #write(Path)} for the large
+     * ones.
+     */
+    public Document toDocument() {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream((int) Math.min(targetSize + 4096, Integer.MAX_VALUE - 8));
+        write(outputStream);
+        return fromBytes(outputStream.toByteArray());
+    }
+
+    public void write(Path path) {
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024)) {
+            write(outputStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void write(OutputStream outputStream) {
+        CountingOutputStream countingStream = new CountingOutputStream(outputStream);
+        Random random = new Random(seed);
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newDefaultFactory().createXMLStreamWriter(countingStream, UTF_8.name());
+            writer.writeStartDocument(UTF_8.name(), "1.0");
+            writer.writeStartElement("", "largeDocument", NAMESPACE);
+            writer.writeDefaultNamespace(NAMESPACE);
+            writer.writeStartElement(NAMESPACE, "someElement");
+            writer.writeCharacters(DocumentFactory.SOME_VALUE);
+            writer.writeEndElement();
+
+            int section = 0;
+            do {
+                writeSection(writer, random, "section-" + section++, 1);
+                // The writer buffers, the count is exact only after flush.
+                writer.flush();
+            } while (countingStream.count < targetSize);
+
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void writeSection(XMLStreamWriter writer, Random random, String name, int level) throws XMLStreamException {
+        writer.writeStartElement(NAMESPACE, "section");
+        writer.writeAttribute("name", name);
+        for (int i = 0; i < itemsPerSection; i++) {
+            writeItem(writer, random);
+        }
+        if (level < depth) {
+            writeSection(writer, random, name + "." + level, level + 1);
+        }
+        writer.writeEndElement();
+    }
+
+    private void writeItem(XMLStreamWriter writer, Random random) throws XMLStreamException {
+        if (random.nextDouble() < namespaceDensity) {
+            int extension = random.nextInt(EXTENSION_NAMESPACES);
+            String prefix = "ext" + extension;
+            writer.writeStartElement(prefix, "item", EXTENSION_NAMESPACE + extension);
+            writer.writeNamespace(prefix, EXTENSION_NAMESPACE + extension);
+        } else {
+            writer.writeStartElement(NAMESPACE, "item");
+        }
+
+        String text = text(random);
+        if (random.nextDouble() < attributeRatio) {
+            writer.writeAttribute("value", text);
+        } else {
+            writer.writeCharacters(text);
+        }
+        writer.writeEndElement();
+    }
+
+    private String text(Random random) {
+        StringBuilder text = new StringBuilder(textLength + 16);
+        // Text lengths vary around the configured average.
+        int length = textLength / 2 + random.nextInt(textLength + 1);
+        while (text.length() < length) {
+            if (!text.isEmpty()) text.append(' ');
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        private CountingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
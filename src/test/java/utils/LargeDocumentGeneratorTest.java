@@ -0,0 +1,68 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LargeDocumentGeneratorTest {
+
+    @Test
+    void generatedDocumentHasTargetSize() {
+        for (long targetSize : new long[]{1024, 64 * 1024, 1024 * 1024}) {
+            byte[] content = generate(LargeDocumentGenerator.ofSize(targetSize));
+
+            assertTrue(content.length >= targetSize, "Size " + content.length + " is under " + targetSize);
+            assertTrue(content.length < targetSize + 4096, "Size " + content.length + " is over " + targetSize);
+        }
+    }
+
+    @Test
+    void generatedDocumentMatchesSchema() throws SAXException, IOException {
+        SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        Schema schema = schemaFactory.newSchema(LargeDocumentGenerator.class.getResource(LargeDocumentGenerator.SCHEMA));
+        LargeDocumentGenerator generator = LargeDocumentGenerator.ofSize(32 * 1024)
+                .withShape(16, 4, 6)
+                .withMix(0.5, 0.5);
+
+        schema.newValidator().validate(new StreamSource(new ByteArrayInputStream(generate(generator))));
+    }
+
+    @Test
+    void generatorIsDeterministic() {
+        LargeDocumentGenerator generator = LargeDocumentGenerator.ofSize(16 * 1024);
+
+        assertArrayEquals(generate(generator), generate(generator));
+    }
+
+    @Test
+    void shapeAndMixAreApplied() {
+        LargeDocumentGenerator generator = LargeDocumentGenerator.ofSize(8 * 1024)
+                .withShape(16, 2, 5)
+                .withMix(0, 1);
+
+        Document document = generator.toDocument();
+        String content = new String(generate(generator), UTF_8);
+
+        assertEquals(LargeDocumentGenerator.NAMESPACE, document.getDocumentElement().getNamespaceURI());
+        assertFalse(content.contains("urn:xades-demo:extension:"));
+        assertTrue(content.contains("<section name=\"section-0.1.2.3.4\">"));
+        assertEquals(0, document.getElementsByTagNameNS(LargeDocumentGenerator.NAMESPACE, "item").item(0).getTextContent().length());
+    }
+
+    private static byte[] generate(LargeDocumentGenerator generator) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        generator.write(outputStream);
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,54 @@
+package utils;
+
+import document.ValidationTimes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects sign and validate times by document size and writes them as CSV
+ * to {@code build/reports/scaling}, to be plotted.
+ */
+public class ScalingReport implements AutoCloseable {
+
+    // Sizes grow 8 times up to this one, e.g. -Pscaling.maxSize=1073741824
+    // for a soak run. Large documents need a large heap, DOM takes about ten
+    // times the document size.
+    private static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+    private final String name;
+    private final List<String> rows = new ArrayList<>();
+
+    public ScalingReport(String name) {
+        this.name = name;
+        rows.add("size,signMillis,parseMillis,verifyMillis");
+    }
+
+    public static List<Long> sizes() {
+        String maxSizeProperty = System.getProperty("scaling.maxSize");
+        long maxSize = maxSizeProperty != null && !maxSizeProperty.isBlank() ? Long.parseLong(maxSizeProperty) : DEFAULT_MAX_SIZE;
+        List<Long> sizes = new ArrayList<>();
+        for (long size = 1024; size <= maxSize; size *= 8) sizes.add(size);
+        return sizes;
+    }
+
+    public void add(long size, Duration sign, ValidationTimes validation) {
+        String row = "%d,%.3f,%.3f,%.3f".formatted(size, millis(sign), millis(validation.parse()), millis(validation.verify()));
+        System.out.printf("*** %s scaling: %s%n", name, row);
+        rows.add(row);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Path directory = Files.createDirectories(Path.of("build", "reports", "scaling"));
+        Files.write(directory.resolve(name + ".csv"), rows);
+    }
+
+    private static double millis(Duration duration) {
+        return duration.toNanos() / 1_000_000.0;
+    }
+}
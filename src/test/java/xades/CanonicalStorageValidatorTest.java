@@ -0,0 +1,136 @@
+package xades;
+
+import document.DocumentTransformer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static document.DocumentTransformer.fromBytes;
+import static document.DocumentTransformer.toBytes;
+import static document.DocumentTransformer.toCanonicalBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Canonical documents are validated by the bytes, the others by the
+ * {@link XAdESValidator}, both have to agree on the outcome.
+ */
+class CanonicalStorageValidatorTest {
+
+    private static final List<String> DIGEST_ALGORITHMS = List.of(XAdESSigner.SHA256_DIGEST_ALGORITHM, XAdESSigner.SHA512_DIGEST_ALGORITHM);
+
+    private final XAdESValidator validator = new XAdESValidator(XAdESValidator.Options.defaults()
+            .withVerificationPath(VerificationPath.GENERIC));
+    private final CanonicalStorageValidator storageValidator = new CanonicalStorageValidator(validator);
+
+    @Test
+    void canonicalDocumentsAreValidatedByBytes() throws XAdESValidationException {
+        XAdESSigner migratingSigner = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM)
+                .withDocumentDigestAlgorithms(DIGEST_ALGORITHMS)
+                .withSectionDigests(true));
+        XAdESProfileSigner profileSigner = new XAdESProfileSigner(getCertificate(), getPrivateKey());
+
+        for (byte[] content : List.of(
+                toCanonicalBytes(signedDocument()),
+                toCanonicalBytes(migratingSigner.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument())),
+                toCanonicalBytes(profileSigner.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument())))) {
+            assertNotNull(storageValidator.validateCanonical(ByteBuffer.wrap(content)));
+            validator.validate(content);
+        }
+    }
+
+    @Test
+    void canonicalFormDropsComments() throws XAdESValidationException {
+        Document document = DocumentTransformer.fromString("""
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!-- before -->
+                <doc xmlns="urn:doc" xmlns:a="urn:a" xml:lang="en" a:attr="x &gt; y"><!-- inside --><a:item>1 &lt; 2</a:item></doc>
+                """);
+        byte[] content = toCanonicalBytes(signer().signEnveloped(document));
+
+        assertFalse(new String(content, UTF_8).contains("<!--"));
+        assertNotNull(storageValidator.validateCanonical(ByteBuffer.wrap(content)));
+    }
+
+    @Test
+    void changedCanonicalDocumentIsRejectedLikeByValidator() {
+        String content = new String(toCanonicalBytes(signedDocument()), UTF_8);
+        int item = content.indexOf("<item>") + "<item>".length();
+        byte[] changed = (content.substring(0, item) + "changed " + content.substring(item)).getBytes(UTF_8);
+
+        assertRejected(changed);
+    }
+
+    @Test
+    void changedSignatureIsRejectedByBytes() {
+        String content = new String(toCanonicalBytes(signedDocument()), UTF_8);
+        int signatureValue = content.indexOf("SignatureValue>") + "SignatureValue>".length();
+        byte[] changed = (content.substring(0, signatureValue) + "AAAA" + content.substring(signatureValue + 4)).getBytes(UTF_8);
+
+        assertThrows(XAdESValidationException.class, () -> storageValidator.validateCanonical(ByteBuffer.wrap(changed)));
+        assertRejected(changed);
+    }
+
+    @Test
+    void nonCanonicalDocumentIsValidatedByValidator() throws XAdESValidationException {
+        byte[] content = toBytes(signedDocument());
+
+        assertNull(storageValidator.validateCanonical(ByteBuffer.wrap(content)));
+        storageValidator.validate(content);
+    }
+
+    @Test
+    void documentWithoutEnvelopedSignatureIsValidatedByValidator() {
+        byte[] unsigned = toCanonicalBytes(LargeDocumentGenerator.ofSize(16 * 1024).toDocument());
+        Document document = signedDocument();
+        document.getDocumentElement().appendChild(document.createElementNS("urn:other", "after"));
+        byte[] signatureNotLast = toCanonicalBytes(document);
+
+        assertRejected(unsigned);
+        assertRejected(signatureNotLast);
+        assertRejected("<doc>".getBytes(UTF_8));
+    }
+
+    @Test
+    void validateFile() throws XAdESValidationException, IOException {
+        Path path = Files.createTempFile("signed-document", ".xml");
+        try {
+            Files.write(path, toCanonicalBytes(signedDocument()));
+
+            storageValidator.validate(path);
+            // Validation from the bytes does not change the stored document.
+            validator.validate(fromBytes(Files.readAllBytes(path)));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private void assertRejected(byte[] content) {
+        XAdESValidationException expected = assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+        XAdESValidationException exception = assertThrows(XAdESValidationException.class, () -> storageValidator.validate(content));
+        assertEquals(expected.getMessage(), exception.getMessage());
+    }
+
+    private static Document signedDocument() {
+        return signer().signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).withMix(0.5, 0.3).toDocument());
+    }
+
+    private static XAdESSigner signer() {
+        return new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+    }
+}
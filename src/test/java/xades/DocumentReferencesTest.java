@@ -0,0 +1,74 @@
+package xades;
+
+import document.DocumentTransformer;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DocumentReferencesTest {
+
+    private static final String DOCUMENT_REFERENCE = """
+            <ds:Reference URI="">
+                <ds:Transforms>
+                    <ds:Transform Algorithm="http://www.w3.org/2000/09/xmldsig#enveloped-signature"/>
+                    <ds:Transform Algorithm="http://www.w3.org/TR/2001/REC-xml-c14n-20010315">
+                    </ds:Transform>
+                </ds:Transforms>
+                <ds:DigestMethod Algorithm="http://www.w3.org/2001/04/xmlenc#sha256"/>
+                <ds:DigestValue>AAAA</ds:DigestValue>
+            </ds:Reference>
+            """;
+
+    private static final String PROPERTIES_REFERENCE = """
+            <ds:Reference URI="#properties">
+                <ds:DigestMethod Algorithm="http://www.w3.org/2001/04/xmlenc#sha256"/>
+                <ds:DigestValue>AAAA</ds:DigestValue>
+            </ds:Reference>
+            """;
+
+    @Test
+    void documentReferences() {
+        Element signature = signature(DOCUMENT_REFERENCE + PROPERTIES_REFERENCE);
+
+        List<Element> references = DocumentReferences.of(signature, Set.of());
+
+        assertEquals(1, references.size());
+        assertEquals("", references.get(0).getAttribute("URI"));
+    }
+
+    @Test
+    void transformWithParametersIsNotSupported() {
+        Element signature = signature(DOCUMENT_REFERENCE.replace("</ds:Transform>", "<ds:XPath>/</ds:XPath></ds:Transform>"));
+
+        assertNull(DocumentReferences.of(signature, Set.of()));
+    }
+
+    @Test
+    void exclusiveCanonicalizationIsNotSupported() {
+        Element signature = signature(DOCUMENT_REFERENCE.replace(
+                "http://www.w3.org/TR/2001/REC-xml-c14n-20010315", "http://www.w3.org/2001/10/xml-exc-c14n#"));
+
+        assertNull(DocumentReferences.of(signature, Set.of()));
+    }
+
+    @Test
+    void referencesOutOfSignatureAreNotSupported() {
+        assertNull(DocumentReferences.of(signature(DOCUMENT_REFERENCE + PROPERTIES_REFERENCE.replace("#properties", "#missing")), Set.of()));
+        assertNull(DocumentReferences.of(signature(DOCUMENT_REFERENCE + PROPERTIES_REFERENCE), Set.of("properties")));
+        assertNull(DocumentReferences.of(signature(DOCUMENT_REFERENCE + PROPERTIES_REFERENCE.replace("#properties", "#xpointer(id('properties'))")), Set.of()));
+    }
+
+    private static Element signature(String references) {
+        return DocumentTransformer.fromString("""
+                <ds:Signature xmlns:ds="http://www.w3.org/2000/09/xmldsig#">
+                    <ds:SignedInfo>
+                %s    </ds:SignedInfo>
+                    <ds:Object><Properties Id="properties"/></ds:Object>
+                </ds:Signature>
+                """.formatted(references)).getDocumentElement();
+    }
+}
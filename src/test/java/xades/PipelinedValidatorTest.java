@@ -0,0 +1,123 @@
+package xades;
+
+import metrics.HistogramMetrics;
+import metrics.SignatureMetrics;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static document.DocumentTransformer.fromBytes;
+import static document.DocumentTransformer.toBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Documents are validated by the stages and by the {@link XAdESValidator},
+ * both have to agree on the outcome.
+ */
+class PipelinedValidatorTest {
+
+    private static final List<String> DIGEST_ALGORITHMS = List.of(XAdESSigner.SHA256_DIGEST_ALGORITHM, XAdESSigner.SHA512_DIGEST_ALGORITHM);
+
+    private final HistogramMetrics metrics = new HistogramMetrics();
+    private final XAdESValidator validator = new XAdESValidator(XAdESValidator.Options.defaults()
+            .withMetrics(metrics)
+            .withVerificationPath(VerificationPath.GENERIC));
+    // Every document is validated by the stages.
+    private final PipelinedValidator pipelinedValidator = new PipelinedValidator(validator, 0, DIGEST_ALGORITHMS);
+
+    @Test
+    void validSignaturesAreConfirmed() throws XAdESValidationException {
+        XAdESSigner migratingSigner = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM)
+                .withDocumentDigestAlgorithms(DIGEST_ALGORITHMS));
+        XAdESProfileSigner profileSigner = new XAdESProfileSigner(getCertificate(), getPrivateKey());
+
+        pipelinedValidator.validate(signedDocument());
+        pipelinedValidator.validate(toBytes(migratingSigner.signEnveloped(LargeDocumentGenerator.ofSize(256 * 1024).toDocument())));
+        pipelinedValidator.validate(toBytes(profileSigner.signEnveloped(LargeDocumentGenerator.ofSize(256 * 1024).toDocument())));
+
+        assertEquals(3, metrics.snapshot().get(SignatureMetrics.Operation.XADES_VALIDATE).count());
+    }
+
+    @Test
+    void invalidSignaturesAreRejectedLikeByValidator() {
+        byte[] signed = signedDocument();
+
+        assertRejected(change(signed, document -> document.getDocumentElement().setAttribute("changed", "true")));
+        assertRejected(change(signed, document -> element(document, "SignatureValue").setTextContent("AAAA")));
+        assertRejected(change(signed, document -> element(document, "SigningTime").setTextContent("2000-01-01T00:00:00.000Z")));
+    }
+
+    @Test
+    void unsupportedDocumentsAreValidatedByValidator() throws XAdESValidationException {
+        byte[] signed = signedDocument();
+        String content = new String(signed, UTF_8);
+
+        // C14N 1.1 with comments, signed by an earlier version of the signer.
+        pipelinedValidator.validate(loadBytesFromResource("/xades/signed-document.xml"));
+        // Signed properties wrapped into the document.
+        assertRejected(change(signed, document -> document.getDocumentElement()
+                .appendChild(element(document, "SignedProperties").cloneNode(true))));
+        assertRejected(("<!DOCTYPE largeDocument>" + content.substring(content.indexOf("<largeDocument"))).getBytes(UTF_8));
+        assertRejected(content.substring(0, content.length() / 2).getBytes(UTF_8));
+    }
+
+    @Test
+    void smallDocumentsAreValidatedByValidator() throws XAdESValidationException {
+        PipelinedValidator defaultValidator = new PipelinedValidator(validator);
+
+        defaultValidator.validate(signedDocument());
+        byte[] changed = change(signedDocument(), document -> document.getDocumentElement().setAttribute("changed", "true"));
+        assertThrows(XAdESValidationException.class, () -> defaultValidator.validate(changed));
+    }
+
+    @Test
+    void validateFile() throws XAdESValidationException, IOException {
+        Path path = Files.createTempFile("signed-document", ".xml");
+        try {
+            Files.write(path, signedDocument());
+
+            pipelinedValidator.validate(path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private void assertRejected(byte[] content) {
+        XAdESValidationException expected = assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+        XAdESValidationException exception = assertThrows(XAdESValidationException.class, () -> pipelinedValidator.validate(content));
+        assertEquals(expected.getMessage(), exception.getMessage());
+    }
+
+    private static byte[] signedDocument() {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        return toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(256 * 1024).withMix(0.5, 0.3).toDocument()));
+    }
+
+    private static byte[] change(byte[] content, Consumer<Document> change) {
+        Document document = fromBytes(content);
+        change.accept(document);
+        return toBytes(document);
+    }
+
+    private static Element element(Document document, String localName) {
+        return (Element) document.getElementsByTagNameNS("*", localName).item(0);
+    }
+}
@@ -0,0 +1,187 @@
+package xades;
+
+import certificate.CertificateCache;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static document.DocumentTransformer.fromBytes;
+import static document.DocumentTransformer.toBytes;
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.*;
+
+/**
+ * Documents are validated by the generic and by the profile path, both
+ * have to agree on the outcome.
+ */
+class ProfileVerifierTest {
+
+    private static final String XADES_NAMESPACE = QualifyingPropertiesCodec.XADES_NAMESPACE;
+
+    private final XAdESValidator genericValidator = new XAdESValidator(XAdESValidator.Options.defaults()
+            .withVerificationPath(VerificationPath.GENERIC));
+    private final XAdESValidator profileValidator = new XAdESValidator();
+
+    @Test
+    void validSignaturesOfProfileAreConfirmed() {
+        XAdESSigner rsaSha256Signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        XAdESProfileSigner profileSigner = new XAdESProfileSigner(getCertificate(), getPrivateKey());
+
+        assertConfirmed(toBytes(rsaSha256Signer.signEnveloped(LargeDocumentGenerator.ofSize(16 * 1024).toDocument())));
+        assertConfirmed(toBytes(profileSigner.signEnveloped(LargeDocumentGenerator.ofSize(16 * 1024).toDocument())));
+    }
+
+    @Test
+    void changesOutsideSignedContentAreConfirmed() {
+        byte[] signed = signedDocument();
+
+        assertConfirmed(change(signed, document -> {
+            Element signature = signature(document);
+            for (Node child = signature.getFirstChild(); child != null; child = child.getNextSibling()) {
+                signature.insertBefore(document.createTextNode("\n  "), child);
+            }
+        }));
+        assertConfirmed(change(signed, document -> document.getDocumentElement()
+                .insertBefore(document.createComment("comment"), document.getDocumentElement().getFirstChild())));
+    }
+
+    @Test
+    void invalidSignaturesAreRejectedByBothPaths() {
+        byte[] signed = signedDocument();
+
+        assertRejected(change(signed, document -> document.getDocumentElement().setAttribute("changed", "true")));
+        assertRejected(change(signed, document -> element(document, XADES_NAMESPACE, "SigningTime")
+                .setTextContent("2000-01-01T00:00:00.000Z")));
+        assertRejected(change(signed, document -> flip(element(document, XMLNS, "SignatureValue"))));
+        assertRejected(change(signed, document -> flip(element(document, XMLNS, "DigestValue"))));
+        assertRejected(change(signed, document -> element(document, XMLNS, "SignedInfo")
+                .appendChild(document.createTextNode(" "))));
+        assertRejected(change(signed, document -> element(document, XMLNS, "X509Certificate")
+                .setTextContent(encoded(getChainCertificate(SIGNER_ALIAS)))));
+    }
+
+    @Test
+    void documentWithoutCanonicalFormIsRejectedByBothPaths() {
+        byte[] signed = signedDocument();
+
+        assertRejected(change(signed, document -> {
+            Element relative = document.createElementNS("rel", "b");
+            relative.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns", "rel");
+            document.getDocumentElement().insertBefore(relative, document.getDocumentElement().getFirstChild());
+        }));
+        // The failed digest does not affect the next verification.
+        assertConfirmed(signed);
+    }
+
+    @Test
+    void otherSignaturesTakeGenericPath() {
+        byte[] signed = signedDocument();
+
+        assertGeneric(loadBytesFromResource("/xmldsig/signed-document.xml"));
+        // C14N 1.1 with comments, signed by an earlier version of the signer.
+        assertGeneric(loadBytesFromResource("/xades/signed-document.xml"));
+        assertGeneric(loadBytesFromResource("/xades/signed-changed-document.xml"));
+        assertGeneric(change(signed, document -> element(document, XMLNS, "Reference").setAttribute("URI", "#other")));
+        // Signed properties wrapped into the document.
+        assertGeneric(change(signed, document -> document.getDocumentElement()
+                .appendChild(element(document, XADES_NAMESPACE, "SignedProperties").cloneNode(true))));
+    }
+
+    @Test
+    void documentReferencedByTwoDigestsTakesGenericPath() {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM)
+                .withDocumentDigestAlgorithms(List.of(XAdESSigner.SHA256_DIGEST_ALGORITHM, XAdESSigner.SHA512_DIGEST_ALGORITHM)));
+        byte[] signed = toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(4 * 1024).toDocument()));
+
+        assertGeneric(signed);
+        assertEquals("valid", outcome(genericValidator, signed));
+        assertNotEquals("valid", outcome(genericValidator, change(signed, document -> document.getDocumentElement().setAttribute("changed", "true"))));
+    }
+
+    private void assertConfirmed(byte[] content) {
+        assertNotNull(verifyProfile(content));
+        assertEquals("valid", outcome(genericValidator, content));
+        assertEquals("valid", outcome(profileValidator, content));
+    }
+
+    private void assertRejected(byte[] content) {
+        assertNull(verifyProfile(content));
+        String outcome = outcome(genericValidator, content);
+        assertNotEquals("valid", outcome);
+        assertEquals(outcome, outcome(profileValidator, content));
+    }
+
+    private void assertGeneric(byte[] content) {
+        assertNull(verifyProfile(content));
+        assertEquals(outcome(genericValidator, content), outcome(profileValidator, content));
+    }
+
+    private static ProfileVerifier.Result verifyProfile(byte[] content) {
+        Document document = fromBytes(content);
+        var signedProperties = document.getElementsByTagNameNS(XADES_NAMESPACE, "SignedProperties");
+        if (signedProperties.getLength() != 1) return null;
+        ((Element) signedProperties.item(0)).setIdAttribute("Id", true);
+        return ProfileVerifier.verify(signature(document), new CertificateCache(), null);
+    }
+
+    private static String outcome(XAdESValidator validator, byte[] content) {
+        try {
+            validator.validate(content);
+            return "valid";
+        } catch (XAdESValidationException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static byte[] signedDocument() {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA512_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        return toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(4 * 1024).toDocument()));
+    }
+
+    private static byte[] change(byte[] content, Consumer<Document> change) {
+        Document document = fromBytes(content);
+        change.accept(document);
+        return toBytes(document);
+    }
+
+    private static Element signature(Document document) {
+        return element(document, XMLNS, "Signature");
+    }
+
+    private static Element element(Document document, String namespace, String localName) {
+        return (Element) document.getElementsByTagNameNS(namespace, localName).item(0);
+    }
+
+    private static void flip(Element base64) {
+        String value = base64.getTextContent().trim();
+        char first = value.charAt(0) == 'A' ? 'B' : 'A';
+        base64.setTextContent(first + value.substring(1));
+    }
+
+    private static String encoded(X509Certificate certificate) {
+        try {
+            return Base64.getEncoder().encodeToString(certificate.getEncoded());
+        } catch (CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package xades;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import utils.LargeDocumentGenerator;
+import xades.QualifyingPropertiesCodec.QualifyingPropertiesException;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator.XAdESValidationException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static document.DocumentTransformer.toBytes;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class QualifyingPropertiesCodecTest {
+
+    private static final String SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+
+    @Test
+    void encodeAndDecode() throws Exception {
+        SigningProperties properties = new SigningProperties(
+                "signed-properties-1",
+                "#signature-1",
+                OffsetDateTime.of(2023, 3, 1, 12, 30, 15, 123_000_000, ZoneOffset.ofHours(1)),
+                SHA256,
+                new byte[]{1, 2, 3},
+                "CN=Issuer",
+                BigInteger.valueOf(42)
+        );
+
+        Element encoded = QualifyingPropertiesCodec.encode(newDocument(), properties);
+        SigningProperties decoded = QualifyingPropertiesCodec.decode(encoded);
+
+        assertEquals("2023-03-01T12:30:15.123+01:00", encoded.getElementsByTagNameNS(QualifyingPropertiesCodec.XADES_NAMESPACE, "SigningTime").item(0).getTextContent());
+        assertEquals(properties.signedPropertiesId(), decoded.signedPropertiesId());
+        assertEquals(properties.target(), decoded.target());
+        assertEquals(properties.signingTime(), decoded.signingTime());
+        assertEquals(properties.certificateDigestAlgorithm(), decoded.certificateDigestAlgorithm());
+        assertArrayEquals(properties.certificateDigest(), decoded.certificateDigest());
+        assertEquals(properties.issuerName(), decoded.issuerName());
+        assertEquals(properties.serialNumber(), decoded.serialNumber());
+    }
+
+    @Test
+    void signatureWithDomBoundPropertiesIsValid() throws XAdESValidationException, QualifyingPropertiesException {
+        X509Certificate certificate = getCertificate();
+        XAdESSigner signer = new XAdESSigner(certificate, getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA512_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        Document document = LargeDocumentGenerator.ofSize(1024).toDocument();
+
+        Document signed = signer.signEnveloped(document);
+
+        new XAdESValidator().validate(toBytes(signed));
+        Element qualifyingProperties = (Element) signed.getElementsByTagNameNS(QualifyingPropertiesCodec.XADES_NAMESPACE, "QualifyingProperties").item(0);
+        SigningProperties properties = QualifyingPropertiesCodec.decode(qualifyingProperties);
+        assertEquals(certificate.getSerialNumber(), properties.serialNumber());
+        assertEquals(certificate.getIssuerX500Principal().getName(), properties.issuerName());
+        assertTrue(properties.target().startsWith("#signature-"));
+    }
+
+    @Test
+    void decodeRejectsIncompleteProperties() throws ParserConfigurationException {
+        Document document = newDocument();
+        Element qualifyingProperties = document.createElementNS(QualifyingPropertiesCodec.XADES_NAMESPACE, "QualifyingProperties");
+
+        assertThrows(QualifyingPropertiesException.class, () -> QualifyingPropertiesCodec.decode(qualifyingProperties));
+    }
+
+    private static Document newDocument() throws ParserConfigurationException {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().newDocument();
+    }
+}
@@ -0,0 +1,86 @@
+package xades;
+
+import c14n.Canonicalizer.Algorithm;
+import c14n.SectionDigests;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import utils.LargeDocumentGenerator;
+import xades.SectionDigestsCodec.SectionDigestsException;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SectionDigestsCodecTest {
+
+    private static final String SHA256 = "http://www.w3.org/2001/04/xmlenc#sha256";
+
+    @Test
+    void encodeAndDecode() throws Exception {
+        Document document = LargeDocumentGenerator.ofSize(64 * 1024).toDocument();
+        SectionDigests digests = SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256");
+
+        Element encoded = SectionDigestsCodec.encode(document, digests, SHA256);
+        SectionDigests decoded = SectionDigestsCodec.decode(encoded);
+
+        assertTrue(SectionDigestsCodec.is(encoded));
+        assertEquals(Algorithm.C14N_10, decoded.algorithm());
+        assertEquals("SHA-256", decoded.jcaAlgorithm());
+        assertEquals(digests.sections(), decoded.sections());
+        assertArrayEquals(digests.root(), decoded.root());
+        assertEquals(List.of(), digests.changed(decoded));
+    }
+
+    @Test
+    void decodeThrowsExceptionForRootNotMatchingLeaves() {
+        Document document = LargeDocumentGenerator.ofSize(16 * 1024).toDocument();
+        Element encoded = SectionDigestsCodec.encode(document, SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256"), SHA256);
+        Element root = (Element) encoded.getElementsByTagNameNS(SectionDigestsCodec.SECTION_DIGESTS_NAMESPACE, "Root").item(0);
+        root.setTextContent("AAAA");
+
+        assertThrows(SectionDigestsException.class, () -> SectionDigestsCodec.decode(encoded));
+    }
+
+    @Test
+    void decodeThrowsExceptionForLeavesNotMatchingSections() {
+        Document document = LargeDocumentGenerator.ofSize(16 * 1024).toDocument();
+        Element encoded = SectionDigestsCodec.encode(document, SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256"), SHA256);
+        encoded.setAttribute("Sections", "7");
+
+        assertThrows(SectionDigestsException.class, () -> SectionDigestsCodec.decode(encoded));
+        encoded.setAttribute("Sections", "many");
+        assertThrows(SectionDigestsException.class, () -> SectionDigestsCodec.decode(encoded));
+    }
+
+    @Test
+    void decodeThrowsExceptionForSectionsWithoutLeaves() {
+        Document document = LargeDocumentGenerator.ofSize(16 * 1024).toDocument();
+        Element encoded = SectionDigestsCodec.encode(document, SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256"), SHA256);
+        encoded.setAttribute("Sections", Integer.toString(Integer.MAX_VALUE));
+        encoded.getElementsByTagNameNS(SectionDigestsCodec.SECTION_DIGESTS_NAMESPACE, "Leaves").item(0).setTextContent("");
+
+        assertThrows(SectionDigestsException.class, () -> SectionDigestsCodec.decode(encoded));
+    }
+
+    @Test
+    void decodeThrowsExceptionForLeavesNotOfDigestLength() {
+        Document document = LargeDocumentGenerator.ofSize(16 * 1024).toDocument();
+        Element encoded = SectionDigestsCodec.encode(document, SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256"), SHA256);
+        // Two leaves of 24 bytes instead of three of 32 bytes.
+        encoded.setAttribute("Sections", "2");
+        encoded.getElementsByTagNameNS(SectionDigestsCodec.SECTION_DIGESTS_NAMESPACE, "Leaves").item(0)
+                .setTextContent(Base64.getEncoder().encodeToString(new byte[48]));
+
+        assertThrows(SectionDigestsException.class, () -> SectionDigestsCodec.decode(encoded));
+    }
+
+    @Test
+    void decodeThrowsExceptionForUnsupportedAlgorithm() {
+        Document document = LargeDocumentGenerator.ofSize(16 * 1024).toDocument();
+        Element encoded = SectionDigestsCodec.encode(document, SectionDigests.of(document, null, Algorithm.C14N_10, "SHA-256"), "urn:unknown");
+
+        assertThrows(SectionDigestsException.class, () -> SectionDigestsCodec.decode(encoded));
+    }
+}
@@ -0,0 +1,148 @@
+package xades;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import utils.LargeDocumentGenerator;
+import xades.SignatureIndex.Part;
+import xades.SignatureIndex.SignatureIndexException;
+import xades.XAdESSigner.PropertiesBinding;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static document.DocumentTransformer.toBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.xml.crypto.dsig.XMLSignature.XMLNS;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class SignatureIndexTest {
+
+    private final Path document = createTempFile();
+
+    @AfterEach
+    void deleteFiles() throws IOException {
+        Files.deleteIfExists(SignatureIndex.sidecar(document));
+        Files.deleteIfExists(document);
+    }
+
+    @Test
+    void partsAreParsedFromTheirRanges() throws Exception {
+        byte[] content = toBytes(signedDocument());
+        Files.write(document, content);
+
+        SignatureIndex index = SignatureIndex.of(document);
+
+        for (Part part : Part.values()) {
+            SignatureIndex.Range range = index.range(part);
+            String element = new String(Arrays.copyOfRange(content, (int) range.start(), (int) range.end()), UTF_8);
+            assertTrue(element.startsWith("<"), part.name());
+            assertTrue(element.endsWith(">"), part.name());
+        }
+        Element keyInfo = index.parse(document, Part.KEY_INFO);
+        String certificate = keyInfo.getElementsByTagNameNS(XMLNS, "X509Certificate").item(0).getTextContent();
+        assertArrayEquals(getCertificate().getEncoded(), Base64.getMimeDecoder().decode(certificate));
+        Element qualifyingProperties = index.parse(document, Part.QUALIFYING_PROPERTIES);
+        assertEquals("#" + index.parse(document, Part.SIGNATURE).getAttribute("Id"),
+                QualifyingPropertiesCodec.decode(qualifyingProperties).target());
+        assertEquals("SignedInfo", index.parse(document, Part.SIGNED_INFO).getLocalName());
+    }
+
+    @Test
+    void partsInheritNamespacesOfAncestors() throws Exception {
+        Files.writeString(document, """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <!-- <ds:Signature> in a comment -->
+                <doc xmlns="urn:doc" xmlns:ds="http://www.w3.org/2000/09/xmldsig#" attr='a &gt; b'>
+                  <![CDATA[ <ds:Signature> in CDATA ]]>
+                  <empty/>
+                  <ds:Signature>
+                    <ds:SignedInfo><ds:Reference URI=""/></ds:SignedInfo>
+                    <ds:KeyInfo><ds:KeyName>key</ds:KeyName></ds:KeyInfo>
+                  </ds:Signature>
+                  <ds:Signature><ds:KeyInfo>second</ds:KeyInfo></ds:Signature>
+                </doc>
+                """);
+
+        SignatureIndex index = SignatureIndex.of(document);
+
+        assertEquals("key", index.parse(document, Part.KEY_INFO).getTextContent());
+        assertEquals("", ((Element) index.parse(document, Part.SIGNED_INFO).getElementsByTagNameNS(XMLNS, "Reference").item(0)).getAttribute("URI"));
+        assertNull(index.range(Part.QUALIFYING_PROPERTIES));
+        assertNull(index.parse(document, Part.QUALIFYING_PROPERTIES));
+    }
+
+    @Test
+    void sidecarIsReadUntilDocumentChanges() throws Exception {
+        Files.write(document, toBytes(signedDocument()));
+        SignatureIndex scanned = SignatureIndex.of(document);
+        assertTrue(Files.exists(SignatureIndex.sidecar(document)));
+
+        SignatureIndex read = SignatureIndex.read(SignatureIndex.sidecar(document));
+        for (Part part : Part.values()) {
+            assertEquals(scanned.range(part), read.range(part));
+        }
+        assertTrue(read.isOf(document));
+
+        Files.write(document, toBytes(signedDocument()));
+        Files.setLastModifiedTime(document, FileTime.fromMillis(Files.getLastModifiedTime(document).toMillis() + 2000));
+        assertFalse(read.isOf(document));
+        SignatureIndex rescanned = SignatureIndex.of(document);
+        assertTrue(rescanned.isOf(document));
+        assertEquals("KeyInfo", rescanned.parse(document, Part.KEY_INFO).getLocalName());
+    }
+
+    @Test
+    void damagedSidecarIsScannedAgain() throws Exception {
+        Files.write(document, toBytes(signedDocument()));
+        Files.write(SignatureIndex.sidecar(document), new byte[]{1, 2, 3});
+
+        SignatureIndex index = SignatureIndex.of(document);
+
+        assertEquals("KeyInfo", index.parse(document, Part.KEY_INFO).getLocalName());
+    }
+
+    @Test
+    void documentsWithoutSignatureOrWithDoctypeAreNotIndexed() throws IOException {
+        Files.write(document, toBytes(LargeDocumentGenerator.ofSize(16 * 1024).toDocument()));
+        assertThrows(SignatureIndexException.class, () -> SignatureIndex.scan(document));
+
+        Files.writeString(document, "<!DOCTYPE doc><doc><Signature xmlns=\"http://www.w3.org/2000/09/xmldsig#\"/></doc>");
+        assertThrows(SignatureIndexException.class, () -> SignatureIndex.scan(document));
+
+        Files.writeString(document, "<?xml version=\"1.0\" encoding=\"UTF-16\"?><doc/>");
+        assertThrows(SignatureIndexException.class, () -> SignatureIndex.scan(document));
+    }
+
+    @Test
+    void changedRangeIsReported() throws Exception {
+        Files.write(document, toBytes(signedDocument()));
+        SignatureIndex index = SignatureIndex.scan(document);
+
+        Files.write(document, ("<!-- shifted -->" + Files.readString(document)).getBytes(UTF_8));
+
+        assertThrows(SignatureIndexException.class, () -> index.parse(document, Part.KEY_INFO));
+    }
+
+    private static Document signedDocument() {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        return signer.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).withMix(0.5, 0.3).toDocument());
+    }
+
+    private static Path createTempFile() {
+        try {
+            return Files.createTempFile("signed-document", ".xml");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package xades;
+
+import c14n.Canonicalizer;
+import org.junit.jupiter.api.Test;
+import utils.LargeDocumentGenerator;
+import xades.SignatureInspector.Metadata;
+import xades.SignatureInspector.SignatureInspectionException;
+import xades.XAdESSigner.PropertiesBinding;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import static document.DocumentTransformer.toBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class SignatureInspectorTest {
+
+    private final SignatureInspector inspector = new SignatureInspector();
+
+    @Test
+    void inspectSignedDocument() throws SignatureInspectionException {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        OffsetDateTime before = OffsetDateTime.now().minusSeconds(1);
+        byte[] content = toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument()));
+
+        Metadata metadata = inspector.inspect(content);
+
+        assertTrue(metadata.signatureId().startsWith("signature-"), metadata.signatureId());
+        assertEquals(Canonicalizer.ALGORITHM, metadata.canonicalizationAlgorithm());
+        assertEquals(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM, metadata.signatureAlgorithm());
+        assertEquals(2, metadata.references().size());
+        assertEquals(new Metadata.Reference("", null, XAdESSigner.SHA256_DIGEST_ALGORITHM), metadata.references().get(0));
+        assertEquals("http://uri.etsi.org/01903#SignedProperties", metadata.references().get(1).type());
+        assertEquals(getCertificate(), metadata.certificate());
+        assertEquals(getCertificate().getSubjectX500Principal().getName(), metadata.signerSubject());
+        assertEquals(getCertificate().getSerialNumber(), metadata.serialNumber());
+        assertFalse(metadata.signingTime().isBefore(before));
+    }
+
+    @Test
+    void inspectStoredDocument() throws SignatureInspectionException {
+        Metadata metadata = inspector.inspect(loadBytesFromResource("/xades/signed-document.xml"));
+
+        assertEquals("http://www.w3.org/2006/12/xml-c14n11#WithComments", metadata.canonicalizationAlgorithm());
+        assertEquals(XAdESSigner.RSA_SHA512_SIGN_ALGORITHM, metadata.signatureAlgorithm());
+        assertEquals(OffsetDateTime.parse("2023-02-06T22:27:01.477+01:00"), metadata.signingTime());
+        assertNotNull(metadata.certificate());
+    }
+
+    @Test
+    void inspectionStopsAtEndOfSignature() throws SignatureInspectionException {
+        byte[] content = """
+                <doc xmlns:ds="http://www.w3.org/2000/09/xmldsig#">
+                  <ds:Signature>
+                    <ds:SignedInfo>
+                      <ds:SignatureMethod Algorithm="urn:signature"/>
+                      <ds:Reference><ds:DigestMethod Algorithm="urn:digest"/></ds:Reference>
+                    </ds:SignedInfo>
+                    <ds:KeyInfo><ds:X509Data><ds:X509SubjectName>CN=Subject</ds:X509SubjectName></ds:X509Data></ds:KeyInfo>
+                    <ds:Object>
+                      <QualifyingProperties xmlns="http://uri.etsi.org/01903/v1.3.2#">
+                        <SigningCertificate><Cert><IssuerSerial>
+                          <ds:X509IssuerName>CN=Issuer</ds:X509IssuerName>
+                          <ds:X509SerialNumber>42</ds:X509SerialNumber>
+                        </IssuerSerial></Cert></SigningCertificate>
+                      </QualifyingProperties>
+                    </ds:Object>
+                  </ds:Signature>
+                  <unclosed>
+                """.getBytes(UTF_8);
+
+        Metadata metadata = inspector.inspect(content);
+
+        assertNull(metadata.signatureId());
+        assertNull(metadata.canonicalizationAlgorithm());
+        assertEquals("urn:signature", metadata.signatureAlgorithm());
+        assertEquals(List.of(new Metadata.Reference(null, null, "urn:digest")), metadata.references());
+        assertNull(metadata.certificate());
+        assertEquals("CN=Subject", metadata.signerSubject());
+        assertEquals("CN=Issuer", metadata.issuerName());
+        assertEquals(42, metadata.serialNumber().intValue());
+        assertNull(metadata.signingTime());
+    }
+
+    @Test
+    void documentWithoutSignatureIsRejected() {
+        byte[] unsigned = toBytes(LargeDocumentGenerator.ofSize(16 * 1024).toDocument());
+
+        assertThrows(SignatureInspectionException.class, () -> inspector.inspect(unsigned));
+        assertThrows(SignatureInspectionException.class, () -> inspector.inspect("<doc>".getBytes(UTF_8)));
+    }
+
+    @Test
+    void documentWithDoctypeIsRejected() {
+        byte[] content = """
+                <?xml version="1.0"?>
+                <!DOCTYPE document [<!ENTITY secret SYSTEM "file:///etc/passwd">]>
+                <document>&secret;</document>
+                """.getBytes(UTF_8);
+
+        assertThrows(SignatureInspectionException.class, () -> inspector.inspect(content));
+    }
+}
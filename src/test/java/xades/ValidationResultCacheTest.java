@@ -0,0 +1,180 @@
+package xades;
+
+import certificate.RevocationChecker;
+import certificate.TrustValidator;
+import metrics.SignatureMetrics;
+import org.junit.jupiter.api.Test;
+import utils.LargeDocumentGenerator;
+import utils.MutableClock;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static document.DocumentTransformer.toBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static utils.KeyFactory.*;
+
+class ValidationResultCacheTest {
+
+    private final AtomicInteger validations = new AtomicInteger();
+    private final SignatureMetrics metrics = new SignatureMetrics() {
+        @Override
+        public void succeeded(Operation operation, long durationNanos) {
+            validations.incrementAndGet();
+        }
+
+        @Override
+        public void failed(Operation operation, long durationNanos, Exception exception) {
+            validations.incrementAndGet();
+        }
+    };
+    private final XAdESValidator validator = new XAdESValidator(XAdESValidator.Options.defaults()
+            .withMetrics(metrics)
+            .withVerificationPath(VerificationPath.GENERIC));
+    private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    private final AtomicReference<String> configuration = new AtomicReference<>("trust-store-1");
+
+    @Test
+    void repeatedValidationIsLookup() throws XAdESValidationException {
+        ValidationResultCache cache = cache(16);
+        byte[] content = signedDocument();
+
+        cache.validate(content);
+        cache.validate(content);
+        cache.validate(content.clone());
+
+        assertEquals(1, validations.get());
+        ValidationResultCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.size());
+        assertEquals(2.0 / 3, stats.hitRate(), 0.0001);
+    }
+
+    @Test
+    void rejectedSignatureIsCached() {
+        ValidationResultCache cache = cache(16);
+        String content = new String(signedDocument(), UTF_8);
+        int item = content.indexOf("<item>") + "<item>".length();
+        byte[] changed = (content.substring(0, item) + "changed " + content.substring(item)).getBytes(UTF_8);
+
+        XAdESValidationException first = assertThrows(XAdESValidationException.class, () -> cache.validate(changed));
+        XAdESValidationException second = assertThrows(XAdESValidationException.class, () -> cache.validate(changed));
+
+        assertEquals(first.getMessage(), second.getMessage());
+        assertEquals(1, validations.get());
+    }
+
+    @Test
+    void failedRevocationLookupIsNotCached() {
+        clock.instant = getChainCertificate(SIGNER_ALIAS).getNotBefore().toInstant().plus(Duration.ofDays(1));
+        TrustValidator trustValidator = new TrustValidator(List.of(getChainCertificate(INTERMEDIATE_CA_ALIAS)), clock,
+                TrustValidator.DEFAULT_CAPACITY, new RevocationChecker(clock, RevocationChecker.DEFAULT_REFRESH_AHEAD,
+                URI.create("http://127.0.0.1:1/ocsp"), Map.of()));
+        XAdESValidator trustingValidator = new XAdESValidator(XAdESValidator.Options.defaults()
+                .withTrustValidator(trustValidator)
+                .withMetrics(metrics)
+                .withVerificationPath(VerificationPath.GENERIC));
+        ValidationResultCache cache = new ValidationResultCache(trustingValidator, configuration::get, 16, Duration.ofMinutes(1), clock);
+        XAdESSigner signer = new XAdESSigner(getChainCertificate(SIGNER_ALIAS), getChainPrivateKey(SIGNER_ALIAS),
+                XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        byte[] content = toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(16 * 1024).toDocument()));
+
+        XAdESValidationException exception = assertThrows(XAdESValidationException.class, () -> cache.validate(content));
+        assertThrows(XAdESValidationException.class, () -> cache.validate(content));
+
+        assertTrue(exception.getMessage().contains("RevocationException"), exception.getMessage());
+        assertEquals(2, validations.get());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void resultsExpire() throws XAdESValidationException {
+        ValidationResultCache cache = cache(16);
+        byte[] content = signedDocument();
+
+        cache.validate(content);
+        clock.instant = clock.instant.plus(Duration.ofSeconds(59));
+        cache.validate(content);
+        clock.instant = clock.instant.plus(Duration.ofSeconds(1));
+        cache.validate(content);
+
+        assertEquals(2, validations.get());
+        assertEquals(1, cache.stats().expirations());
+    }
+
+    @Test
+    void changedConfigurationValidatesAgain() throws XAdESValidationException {
+        ValidationResultCache cache = cache(16);
+        byte[] content = signedDocument();
+
+        cache.validate(content);
+        configuration.set("trust-store-2");
+        cache.validate(content);
+        cache.validate(content);
+
+        assertEquals(2, validations.get());
+        assertNotEquals(ValidationResultCache.key("a", "bc".getBytes(UTF_8)), ValidationResultCache.key("ab", "c".getBytes(UTF_8)));
+    }
+
+    @Test
+    void leastRecentlyUsedResultIsEvicted() throws XAdESValidationException {
+        ValidationResultCache cache = cache(2);
+        byte[] first = signedDocument();
+        byte[] second = signedDocument();
+        byte[] third = signedDocument();
+
+        cache.validate(first);
+        cache.validate(second);
+        cache.validate(first);
+        cache.validate(third);
+        cache.validate(first);
+        cache.validate(second);
+
+        assertEquals(4, validations.get());
+        assertEquals(2, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+    }
+
+    @Test
+    void validateFile() throws XAdESValidationException, IOException {
+        ValidationResultCache cache = cache(16);
+        byte[] content = signedDocument();
+        Path path = Files.createTempFile("signed-document", ".xml");
+        try {
+            Files.write(path, content);
+
+            cache.validate(path);
+            cache.validate(content);
+
+            assertEquals(1, validations.get());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private ValidationResultCache cache(int capacity) {
+        return new ValidationResultCache(validator, configuration::get, capacity, Duration.ofMinutes(1), clock);
+    }
+
+    private static byte[] signedDocument() {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        return toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(16 * 1024).toDocument()));
+    }
+}
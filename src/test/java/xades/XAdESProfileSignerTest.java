@@ -0,0 +1,119 @@
+package xades;
+
+import c14n.Canonicalizer;
+import c14n.ParallelDigester;
+import document.DocumentTransformer;
+import metrics.HistogramMetrics;
+import metrics.SignatureMetrics;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import utils.LargeDocumentGenerator;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static document.DocumentTransformer.toBytes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+/**
+ * Signatures of the profile signer are validated by the generic JSR 105
+ * based {@link XAdESValidator}.
+ */
+class XAdESProfileSignerTest {
+
+    private final XAdESProfileSigner signer = new XAdESProfileSigner(getCertificate(), getPrivateKey());
+    private final XAdESValidator validator = new XAdESValidator(XAdESValidator.Options.defaults()
+            .withVerificationPath(VerificationPath.GENERIC));
+
+    @Test
+    void signEnveloped() throws XAdESValidationException {
+        Document document = LargeDocumentGenerator.ofSize(64 * 1024).toDocument();
+
+        Document signed = signer.signEnveloped(document);
+
+        validator.validate(toBytes(signed));
+    }
+
+    @Test
+    void signEnvelopedWithPrefixBoundByRoot() throws XAdESValidationException {
+        Document document = DocumentTransformer.fromString("""
+                <doc xmlns="urn:doc" xmlns:ns2="http://www.w3.org/2000/09/xmldsig#" xml:lang="en">\
+                <a attr="&quot;x&quot;">text &amp; more</a><?pi data?></doc>""");
+
+        Document signed = signer.signEnveloped(document);
+
+        validator.validate(toBytes(signed));
+        // The binding of the root element is reused.
+        Element signature = (Element) signed.getDocumentElement().getLastChild();
+        assertFalse(signature.hasAttribute("xmlns:ns2"));
+    }
+
+    @Test
+    void signEnvelopedWideDocumentDigestedInParallel() throws XAdESValidationException {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            XAdESProfileSigner parallelSigner = new XAdESProfileSigner(getCertificate(), getPrivateKey(), XAdESProfileSigner.Options.defaults()
+                    .withParallelDigester(new ParallelDigester(pool, 16)));
+
+            Document signed = parallelSigner.signEnveloped(LargeDocumentGenerator.ofSize(256 * 1024).toDocument());
+
+            validator.validate(toBytes(signed));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void signedDocumentChangeIsDetected() {
+        Document signed = signer.signEnveloped(LargeDocumentGenerator.ofSize(1024).toDocument());
+        signed.getDocumentElement().setAttribute("changed", "true");
+
+        assertThrows(XAdESValidationException.class, () -> validator.validate(toBytes(signed)));
+    }
+
+    @Test
+    void failedSignatureDoesNotAffectNextOne() throws XAdESValidationException {
+        Document relative = LargeDocumentGenerator.ofSize(64 * 1024).toDocument();
+        Element late = relative.createElementNS("rel", "late");
+        late.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns", "rel");
+        relative.getDocumentElement().appendChild(late);
+        assertThrows(Canonicalizer.CanonicalizationException.class, () -> signer.signEnveloped(relative));
+
+        Document signed = signer.signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+
+        validator.validate(toBytes(signed));
+    }
+
+    @Test
+    void signEnvelopedConcurrently() throws Exception {
+        HistogramMetrics metrics = new HistogramMetrics();
+        XAdESProfileSigner measuredSigner = new XAdESProfileSigner(getCertificate(), getPrivateKey(), XAdESProfileSigner.Options.defaults()
+                .withMetrics(metrics));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> signatures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                int size = 1024 * (i + 1);
+                signatures.add(executor.submit(() -> toBytes(measuredSigner.signEnveloped(LargeDocumentGenerator.ofSize(size).toDocument()))));
+            }
+            for (Future<byte[]> signature : signatures) {
+                validator.validate(signature.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(16, metrics.snapshot().get(SignatureMetrics.Operation.XADES_SIGN).count());
+    }
+}
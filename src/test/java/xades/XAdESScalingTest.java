@@ -0,0 +1,37 @@
+package xades;
+
+import document.ValidationTimes;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import utils.ScalingReport;
+import xades.XAdESValidator.XAdESValidationException;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static document.DocumentTransformer.toBytes;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class XAdESScalingTest {
+
+    private final XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey());
+    private final XAdESValidator validator = new XAdESValidator();
+
+    @Test
+    void signAndValidateGeneratedDocuments() throws XAdESValidationException, IOException {
+        try (ScalingReport report = new ScalingReport("xades")) {
+            for (long size : ScalingReport.sizes()) {
+                Document document = LargeDocumentGenerator.ofSize(size).toDocument();
+
+                long start = System.nanoTime();
+                Document signed = signer.signEnveloped(document);
+                Duration sign = Duration.ofNanos(System.nanoTime() - start);
+                ValidationTimes validation = validator.validate(toBytes(signed));
+
+                report.add(size, sign, validation);
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package xades;
 
+import c14n.CanonicalSegmentCache;
 import document.DocumentTransformer;
 import https.github_com.vkuzel.xades_demo.SingableDocumentType;
+import metrics.HistogramMetrics;
+import metrics.SignatureMetrics;
 import org.junit.jupiter.api.Test;
 import org.w3._2000._09.xmldsig_.KeyInfoType;
 import org.w3._2000._09.xmldsig_.ObjectType;
@@ -9,6 +12,10 @@ import org.w3._2000._09.xmldsig_.ReferenceType;
 import org.w3._2000._09.xmldsig_.SignedInfoType;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator.VerificationPath;
+import xades.XAdESValidator.XAdESValidationException;
 
 import javax.xml.bind.JAXBElement;
 import java.security.PrivateKey;
@@ -16,9 +23,11 @@ import java.security.cert.X509Certificate;
 import java.util.List;
 
 import static document.DocumentTransformer.fromDocument;
+import static document.DocumentTransformer.toBytes;
 import static document.DocumentTransformer.toPrettyString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static utils.DocumentFactory.SOME_VALUE;
 import static utils.DocumentFactory.createDocumentToSign;
 import static utils.KeyFactory.getCertificate;
@@ -64,4 +73,36 @@ public class XAdESSignerTest {
         assertEquals(1, qualifyingPropertiesElement.getElementsByTagName("SigningCertificate").getLength());
         assertEquals(1, qualifyingPropertiesElement.getElementsByTagName("SignaturePolicyIdentifier").getLength());
     }
+
+    @Test
+    void resignEditedDocumentCanonicalizesTheEditOnly() throws XAdESValidationException {
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM));
+        XAdESValidator validator = new XAdESValidator(XAdESValidator.Options.defaults().withVerificationPath(VerificationPath.GENERIC));
+        Document document = LargeDocumentGenerator.ofSize(256 * 1024).toDocument();
+        CanonicalSegmentCache cache = CanonicalSegmentCache.attach(document);
+        signer.signEnveloped(document);
+        long documentBytes = cache.canonicalizedBytes();
+
+        // The edit replaces the previous signature.
+        Element root = document.getDocumentElement();
+        root.removeChild(root.getLastChild());
+        ((Element) root.getFirstChild()).setTextContent("edited");
+        validator.validate(toBytes(signer.signEnveloped(document)));
+
+        assertTrue(cache.canonicalizedBytes() < documentBytes / 100, cache.canonicalizedBytes() + " of " + documentBytes);
+    }
+
+    @Test
+    void warmUpIsNotMeasured() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withMetrics(metrics));
+
+        signer.warmUp();
+
+        assertEquals(0, metrics.snapshot().get(SignatureMetrics.Operation.XADES_SIGN).count());
+    }
 }
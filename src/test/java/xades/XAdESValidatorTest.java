@@ -1,13 +1,43 @@
 package xades;
 
+import c14n.Canonicalizer;
+import c14n.Canonicalizer.Algorithm;
+import c14n.ParallelDigester;
+import c14n.SectionDigests;
+import certificate.TrustValidator;
+import document.ValidationTimes;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import utils.LargeDocumentGenerator;
+import xades.XAdESSigner.PropertiesBinding;
+import xades.XAdESValidator.VerificationPath;
 import xades.XAdESValidator.XAdESValidationException;
 
+import javax.xml.crypto.dsig.XMLSignature;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static document.DocumentTransformer.toBytes;
 import static document.DocumentTransformer.toPrettyString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static utils.DocumentFactory.createXadesSignedChangedDocument;
 import static utils.DocumentFactory.createXadesSignedDocument;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.*;
+import static xades.SectionDigestsCodec.SECTION_DIGESTS_NAMESPACE;
 
 public class XAdESValidatorTest {
 
@@ -28,4 +58,197 @@ public class XAdESValidatorTest {
 
         assertThrows(XAdESValidationException.class, () -> validator.validate(signedDocument));
     }
+
+    @Test
+    void validateTrustedCertificate() throws XAdESValidationException {
+        TrustValidator trustValidator = new TrustValidator(List.of(getCertificate()));
+        XAdESValidator trustingValidator = new XAdESValidator(XAdESValidator.Options.defaults().withTrustValidator(trustValidator));
+
+        trustingValidator.validate(createXadesSignedDocument());
+        trustingValidator.validate(createXadesSignedDocument());
+    }
+
+    @Test
+    void validateThrowsExceptionForUntrustedCertificate() {
+        TrustValidator trustValidator = new TrustValidator(List.of(getChainCertificate(ROOT_CA_ALIAS)));
+        XAdESValidator trustingValidator = new XAdESValidator(XAdESValidator.Options.defaults().withTrustValidator(trustValidator));
+        Document signedDocument = createXadesSignedDocument();
+
+        assertThrows(XAdESValidationException.class, () -> trustingValidator.validate(signedDocument));
+    }
+
+    @Test
+    void validateBytes() throws XAdESValidationException {
+        byte[] content = loadBytesFromResource("/xades/signed-document.xml");
+
+        ValidationTimes times = validator.validate(content);
+
+        assertFalse(times.parse().isNegative());
+        assertFalse(times.verify().isNegative());
+    }
+
+    @Test
+    void validateFile() throws XAdESValidationException, IOException {
+        Path path = Files.createTempFile("signed-document", ".xml");
+        try {
+            Files.write(path, loadBytesFromResource("/xades/signed-document.xml"));
+
+            validator.validate(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void validateBytesThrowsExceptionForChangedDocument() {
+        byte[] content = loadBytesFromResource("/xades/signed-changed-document.xml");
+
+        assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+    }
+
+    @Test
+    void validateWideDocumentDigestedInParallel() throws XAdESValidationException {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            ParallelDigester parallelDigester = new ParallelDigester(pool, 16);
+            XAdESSigner signer = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                    .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                    .withPropertiesBinding(PropertiesBinding.DOM)
+                    .withParallelDigester(parallelDigester));
+            byte[] content = toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(256 * 1024).toDocument()));
+
+            for (VerificationPath path : VerificationPath.values()) {
+                new XAdESValidator(XAdESValidator.Options.defaults()
+                        .withVerificationPath(path)
+                        .withParallelDigester(parallelDigester)).validate(content);
+                new XAdESValidator(XAdESValidator.Options.defaults().withVerificationPath(path)).validate(content);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void validateThrowsExceptionForChangedWideDocumentDigestedInParallel() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            ParallelDigester parallelDigester = new ParallelDigester(pool, 16);
+            Document signedDocument = new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                    .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                    .withPropertiesBinding(PropertiesBinding.DOM))
+                    .signEnveloped(LargeDocumentGenerator.ofSize(256 * 1024).toDocument());
+            signedDocument.getDocumentElement().getFirstChild().setTextContent("changed");
+            byte[] content = toBytes(signedDocument);
+
+            for (VerificationPath path : VerificationPath.values()) {
+                XAdESValidator parallelValidator = new XAdESValidator(XAdESValidator.Options.defaults()
+                        .withVerificationPath(path)
+                        .withParallelDigester(parallelDigester));
+                assertThrows(XAdESValidationException.class, () -> parallelValidator.validate(content));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void validateDocumentWithSectionDigests() throws XAdESValidationException {
+        Document signedDocument = sectionDigestsSigner().signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+        byte[] content = toBytes(signedDocument);
+
+        for (VerificationPath path : VerificationPath.values()) {
+            new XAdESValidator(XAdESValidator.Options.defaults().withVerificationPath(path)).validate(content);
+        }
+    }
+
+    @Test
+    void validateExceptionTellsChangedSections() {
+        Document signedDocument = sectionDigestsSigner().signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+        // The someElement is the section 0, section-n the section n + 1.
+        Element documentElement = signedDocument.getDocumentElement();
+        ((Element) documentElement.getChildNodes().item(3)).setAttribute("name", "changed");
+        ((Element) documentElement.getChildNodes().item(17)).getFirstChild().setTextContent("changed");
+        byte[] content = toBytes(signedDocument);
+
+        XAdESValidationException e = assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+
+        assertTrue(e.getMessage().contains("changed sections: 3 (section), 17 (section)"), e.getMessage());
+    }
+
+    @Test
+    void validateExceptionTellsAddedSections() {
+        Document signedDocument = sectionDigestsSigner().signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+        Element documentElement = signedDocument.getDocumentElement();
+        int sections = documentElement.getChildNodes().getLength() - 1;
+        documentElement.insertBefore(documentElement.getFirstChild().cloneNode(true), documentElement.getFirstChild());
+        byte[] content = toBytes(signedDocument);
+
+        XAdESValidationException e = assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+
+        assertTrue(e.getMessage().contains("sections: %d signed, %d found".formatted(sections, sections + 1)), e.getMessage());
+    }
+
+    @Test
+    void validateExceptionDoesNotTellSectionsOfForgedSectionDigests() throws Exception {
+        Document signedDocument = sectionDigestsSigner().signEnveloped(LargeDocumentGenerator.ofSize(64 * 1024).toDocument());
+        Element documentElement = signedDocument.getDocumentElement();
+        ((Element) documentElement.getChildNodes().item(3)).setAttribute("name", "changed");
+        // Digests of the changed document under a reference digest matching
+        // them, only the signature value does not.
+        Element sectionDigests = (Element) signedDocument.getElementsByTagNameNS(SECTION_DIGESTS_NAMESPACE, "SectionDigests").item(0);
+        Element object = (Element) sectionDigests.getParentNode();
+        Element signature = (Element) object.getParentNode();
+        object.replaceChild(SectionDigestsCodec.encode(signedDocument, SectionDigests.of(signedDocument, signature, Algorithm.C14N_10, "SHA-256"), XAdESSigner.SHA256_DIGEST_ALGORITHM), sectionDigests);
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        new Canonicalizer(Algorithm.C14N_10).canonicalize(object, sha256::update);
+        NodeList references = signature.getElementsByTagNameNS(XMLSignature.XMLNS, "Reference");
+        for (int i = 0; i < references.getLength(); i++) {
+            Element reference = (Element) references.item(i);
+            if (!reference.getAttribute("URI").equals("#" + object.getAttribute("Id"))) continue;
+            reference.getElementsByTagNameNS(XMLSignature.XMLNS, "DigestValue").item(0)
+                    .setTextContent(Base64.getEncoder().encodeToString(sha256.digest()));
+        }
+        byte[] content = toBytes(signedDocument);
+
+        XAdESValidationException e = assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+
+        assertTrue(e.getMessage().contains("reference[uri=#%s, digest=%s] validity: true".formatted(object.getAttribute("Id"), XAdESSigner.SHA256_DIGEST_ALGORITHM)), e.getMessage());
+        assertFalse(e.getMessage().contains("sections"), e.getMessage());
+    }
+
+    @Test
+    void validateExceptionOfDocumentWithoutSectionDigests() {
+        byte[] content = loadBytesFromResource("/xades/signed-changed-document.xml");
+
+        XAdESValidationException e = assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+
+        assertFalse(e.getMessage().contains("sections"), e.getMessage());
+    }
+
+    @Test
+    void validateBytesThrowsExceptionForMalformedDocument() {
+        byte[] content = "<document>".getBytes(UTF_8);
+
+        XAdESValidationException exception = assertThrows(XAdESValidationException.class, () -> validator.validate(content));
+        assertInstanceOf(SAXException.class, exception.getCause());
+    }
+
+    @Test
+    void validateBytesThrowsExceptionForDoctype() {
+        byte[] content = """
+                <?xml version="1.0"?>
+                <!DOCTYPE document [<!ENTITY secret SYSTEM "file:///etc/passwd">]>
+                <document>&secret;</document>
+                """.getBytes(UTF_8);
+
+        XAdESValidationException exception = assertThrows(XAdESValidationException.class, () -> validator.validate(new ByteArrayInputStream(content)));
+        assertInstanceOf(SAXException.class, exception.getCause());
+    }
+
+    private static XAdESSigner sectionDigestsSigner() {
+        return new XAdESSigner(getCertificate(), getPrivateKey(), XAdESSigner.Options.defaults()
+                .withSignatureAlgorithm(XAdESSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withPropertiesBinding(PropertiesBinding.DOM)
+                .withSectionDigests(true));
+    }
 }
@@ -0,0 +1,37 @@
+package xmldsig;
+
+import document.ValidationTimes;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import utils.LargeDocumentGenerator;
+import utils.ScalingReport;
+import xmldsig.XMLDSigValidator.XMLDSigValidationException;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static document.DocumentTransformer.toBytes;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
+
+class XMLDSigScalingTest {
+
+    private final XMLDSigSigner signer = new XMLDSigSigner(getCertificate(), getPrivateKey());
+    private final XMLDSigValidator validator = new XMLDSigValidator();
+
+    @Test
+    void signAndValidateGeneratedDocuments() throws XMLDSigValidationException, IOException {
+        try (ScalingReport report = new ScalingReport("xmldsig")) {
+            for (long size : ScalingReport.sizes()) {
+                Document document = LargeDocumentGenerator.ofSize(size).toDocument();
+
+                long start = System.nanoTime();
+                Document signed = signer.signEnveloped(document);
+                Duration sign = Duration.ofNanos(System.nanoTime() - start);
+                ValidationTimes validation = validator.validate(toBytes(signed));
+
+                report.add(size, sign, validation);
+            }
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package xmldsig;
 
 import https.github_com.vkuzel.xades_demo.SingableDocumentType;
+import metrics.HistogramMetrics;
+import metrics.SignatureMetrics;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 
@@ -38,4 +40,16 @@ class XMLDSigSignerTest {
         assertNotNull(signedDocument.getSignature().getSignedInfo());
         assertEquals(1, signedDocument.getSignature().getSignedInfo().getReference().size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void warmUpIsNotMeasured() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        XMLDSigSigner signer = new XMLDSigSigner(getCertificate(), getPrivateKey(), XMLDSigSigner.Options.defaults()
+                .withSignatureAlgorithm(XMLDSigSigner.RSA_SHA256_SIGN_ALGORITHM)
+                .withMetrics(metrics));
+
+        signer.warmUp();
+
+        assertEquals(0, metrics.snapshot().get(SignatureMetrics.Operation.XMLDSIG_SIGN).count());
+    }
+}
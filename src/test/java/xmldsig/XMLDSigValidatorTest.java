@@ -1,13 +1,30 @@
 package xmldsig;
 
+import c14n.ParallelDigester;
+import document.ValidationTimes;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import utils.LargeDocumentGenerator;
 import xmldsig.XMLDSigValidator.XMLDSigValidationException;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static document.DocumentTransformer.toBytes;
 import static document.DocumentTransformer.toPrettyString;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static utils.DocumentFactory.createXmlDigSignedChangedDocument;
 import static utils.DocumentFactory.createXmlDigSignedDocument;
+import static utils.DocumentFactory.loadBytesFromResource;
+import static utils.KeyFactory.getCertificate;
+import static utils.KeyFactory.getPrivateKey;
 
 class XMLDSigValidatorTest {
 
@@ -28,4 +45,69 @@ class XMLDSigValidatorTest {
 
         assertThrows(XMLDSigValidationException.class, () -> validator.validate(signedDocument));
     }
-}
\ No newline at end of file
+
+    @Test
+    void validateBytes() throws XMLDSigValidationException {
+        byte[] content = loadBytesFromResource("/xmldsig/signed-document.xml");
+
+        ValidationTimes times = validator.validate(content);
+
+        assertFalse(times.parse().isNegative());
+        assertFalse(times.verify().isNegative());
+    }
+
+    @Test
+    void validateFile() throws XMLDSigValidationException, IOException {
+        Path path = Files.createTempFile("signed-document", ".xml");
+        try {
+            Files.write(path, loadBytesFromResource("/xmldsig/signed-document.xml"));
+
+            validator.validate(path);
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void validateBytesThrowsExceptionForChangedDocument() {
+        byte[] content = loadBytesFromResource("/xmldsig/signed-changed-document.xml");
+
+        assertThrows(XMLDSigValidationException.class, () -> validator.validate(content));
+    }
+
+    @Test
+    void validateWideDocumentDigestedInParallel() throws XMLDSigValidationException {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            ParallelDigester parallelDigester = new ParallelDigester(pool, 16);
+            XMLDSigSigner signer = new XMLDSigSigner(getCertificate(), getPrivateKey(), XMLDSigSigner.Options.defaults()
+                    .withParallelDigester(parallelDigester));
+            byte[] content = toBytes(signer.signEnveloped(LargeDocumentGenerator.ofSize(256 * 1024).toDocument()));
+
+            new XMLDSigValidator(XMLDSigValidator.Options.defaults().withParallelDigester(parallelDigester)).validate(content);
+            validator.validate(content);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void validateBytesThrowsExceptionForMalformedDocument() {
+        byte[] content = "<document>".getBytes(UTF_8);
+
+        XMLDSigValidationException exception = assertThrows(XMLDSigValidationException.class, () -> validator.validate(content));
+        assertInstanceOf(SAXException.class, exception.getCause());
+    }
+
+    @Test
+    void validateBytesThrowsExceptionForDoctype() {
+        byte[] content = """
+                <?xml version="1.0"?>
+                <!DOCTYPE document [<!ENTITY secret SYSTEM "file:///etc/passwd">]>
+                <document>&secret;</document>
+                """.getBytes(UTF_8);
+
+        XMLDSigValidationException exception = assertThrows(XMLDSigValidationException.class, () -> validator.validate(new ByteArrayInputStream(content)));
+        assertInstanceOf(SAXException.class, exception.getCause());
+    }
+}